@@ -96,6 +96,18 @@ public int hashCode() {
    */
   CompletableFuture<AnalysisReport> stackAnalysis(String manifestFile) throws IOException;
 
+  /**
+   * Use for creating a stack analysis deserialized Json report for every module of a multi-module
+   * project, i.e. a Maven reactor, from a single resolution of the project.
+   *
+   * @param manifestFile the path for the aggregating manifest file
+   * @return the deserialized Json reports keyed by the module package url, wrapped in a
+   *     CompletableFuture
+   * @throws IOException when failed to load the manifest file
+   */
+  CompletableFuture<Map<String, AnalysisReport>> stackAnalysisPerModule(String manifestFile)
+      throws IOException;
+
   /**
    * Use for creating a component analysis deserialized Json report for a given type and content.
    *
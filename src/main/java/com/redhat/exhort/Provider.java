@@ -19,6 +19,7 @@
 import com.redhat.exhort.tools.Ecosystem;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Map;
 
 /**
  * The Provider abstraction is used for contracting providers providing a {@link Content} per
@@ -62,6 +63,19 @@ protected Provider(Ecosystem.Type ecosystem, Path manifest) {
    */
   public abstract Content provideStack() throws IOException;
 
+  /**
+   * Use for providing content for a stack analysis request per module of a multi-module project.
+   * Providers without modules provide the stack of the single project.
+   *
+   * @return A Content record per module, keyed by the module package url coordinates
+   * @throws IOException when failed to load the manifest file
+   */
+  public Map<String, Content> provideStackPerModule() throws IOException {
+    Content content = provideStack();
+    String root = objectMapper.readTree(content.buffer).at("/metadata/component/bom-ref").asText();
+    return Map.of(root, content);
+  }
+
   /**
    * Use for providing content for a component analysis request.
    *
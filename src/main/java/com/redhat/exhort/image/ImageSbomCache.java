@@ -0,0 +1,175 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.image;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.exhort.logging.LoggersFactory;
+import com.redhat.exhort.utils.CacheFiles;
+import com.redhat.exhort.utils.Environment;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The SBOMs generated by syft for images pinned by digest, which never change, kept gzipped on
+ * disk. An SBOM is stored under a digest of the canonical package URL of the image, carrying its
+ * digest and platform, of the version of syft and of its configuration. The least recently used
+ * SBOMs are evicted once the cache exceeds its size.
+ */
+final class ImageSbomCache {
+
+  static final String EXHORT_IMAGE_SBOM_CACHE = "EXHORT_IMAGE_SBOM_CACHE";
+  static final String EXHORT_IMAGE_SBOM_CACHE_DIR = "EXHORT_IMAGE_SBOM_CACHE_DIR";
+  static final String EXHORT_IMAGE_SBOM_CACHE_SIZE = "EXHORT_IMAGE_SBOM_CACHE_SIZE";
+
+  private static final Logger log = LoggersFactory.getLogger(ImageSbomCache.class.getName());
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final String EXTENSION = ".json.gz";
+  private static final long DEFAULT_SIZE_MB = 512;
+
+  private final Path directory;
+  private final long maxBytes;
+
+  ImageSbomCache(Path directory, long maxBytes) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * @return the cache configured by {@code EXHORT_IMAGE_SBOM_CACHE_DIR} and {@code
+   *     EXHORT_IMAGE_SBOM_CACHE_SIZE}, or null if {@code EXHORT_IMAGE_SBOM_CACHE} is false
+   */
+  static ImageSbomCache fromEnvironment() {
+    if (!Environment.getBoolean(EXHORT_IMAGE_SBOM_CACHE, true)) {
+      return null;
+    }
+    String directory = Environment.get(EXHORT_IMAGE_SBOM_CACHE_DIR, "");
+    long sizeMb = Environment.getLong(EXHORT_IMAGE_SBOM_CACHE_SIZE, DEFAULT_SIZE_MB);
+    return new ImageSbomCache(
+        directory.isBlank()
+            ? Path.of(System.getProperty("java.io.tmpdir")).resolve("exhort-image-sbom-cache")
+            : Path.of(directory),
+        sizeMb * 1024 * 1024);
+  }
+
+  /**
+   * @param key what the SBOM was generated from, i.e. the image, the version of syft and its
+   *     configuration
+   * @return the SBOM cached for the key, or null if there is none
+   */
+  JsonNode read(String key) {
+    Path file = fileOf(key);
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+      JsonNode sbom = MAPPER.readTree(in);
+      // the recently used SBOMs are the last evicted
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+      return sbom;
+    } catch (IOException e) {
+      log.fine("Ignoring the unreadable cached image SBOM " + file + ": " + e);
+      deleteQuietly(file);
+      return null;
+    }
+  }
+
+  /**
+   * Caches the SBOM, written aside and moved as other processes may read it, then evicts the least
+   * recently used SBOMs beyond the size of the cache.
+   */
+  void write(String key, JsonNode sbom) {
+    Path file = fileOf(key);
+    try {
+      Files.createDirectories(directory);
+      CacheFiles.write(
+          file,
+          out -> {
+            try (OutputStream gzip = new GZIPOutputStream(out)) {
+              MAPPER.writeValue(gzip, sbom);
+            }
+          });
+      evict();
+    } catch (IOException e) {
+      log.fine("Could not cache the image SBOM " + file + ": " + e);
+    }
+  }
+
+  private void evict() throws IOException {
+    List<Path> files;
+    try (Stream<Path> entries = Files.list(directory)) {
+      files =
+          entries
+              .filter(path -> path.getFileName().toString().endsWith(EXTENSION))
+              .collect(Collectors.toCollection(ArrayList::new));
+    }
+    long size = 0;
+    List<Entry> entries = new ArrayList<>();
+    for (Path path : files) {
+      try {
+        Entry entry = new Entry(path, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+        entries.add(entry);
+        size += entry.size;
+      } catch (IOException e) {
+        // evicted meanwhile by another process
+      }
+    }
+    entries.sort(Comparator.comparingLong(entry -> entry.lastUsed));
+    for (Entry entry : entries) {
+      if (size <= maxBytes) {
+        break;
+      }
+      deleteQuietly(entry.path);
+      size -= entry.size;
+    }
+  }
+
+  private Path fileOf(String key) {
+    return directory.resolve(CacheFiles.sha256(key) + EXTENSION);
+  }
+
+  private static void deleteQuietly(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      log.fine("Could not delete the cached image SBOM " + file + ": " + e);
+    }
+  }
+
+  private static final class Entry {
+    private final Path path;
+    private final long size;
+    private final long lastUsed;
+
+    private Entry(Path path, long size, long lastUsed) {
+      this.path = path;
+      this.size = size;
+      this.lastUsed = lastUsed;
+    }
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.image;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.packageurl.MalformedPackageURLException;
+import com.redhat.exhort.logging.LoggersFactory;
+import com.redhat.exhort.utils.Environment;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Generates the SBOMs of a batch of images on a pool of its own, syft being run for a bounded
+ * number of images at a time. Every image is generated apart, an image failing or exceeding its
+ * timeout, or the one of the batch, being left out of the batch rather than failing it.
+ */
+public final class ImageSbomScheduler {
+
+  public static final String PROP_EXHORT_IMAGE_PARALLELISM = "EXHORT_IMAGE_PARALLELISM";
+  public static final String PROP_EXHORT_IMAGE_TIMEOUT = "EXHORT_IMAGE_TIMEOUT";
+  public static final String PROP_EXHORT_IMAGE_BATCH_TIMEOUT = "EXHORT_IMAGE_BATCH_TIMEOUT";
+
+  private static final Logger log = LoggersFactory.getLogger(ImageSbomScheduler.class.getName());
+  private static final AtomicInteger POOLS = new AtomicInteger();
+
+  /** Generates the SBOM of an image, giving up at the deadline (null for none). */
+  @FunctionalInterface
+  public interface Generator {
+    JsonNode generate(ImageRef imageRef, Instant deadline)
+        throws IOException, MalformedPackageURLException;
+  }
+
+  private final int parallelism;
+  private final Duration timeout;
+  private final Duration batchTimeout;
+  private final Generator generator;
+
+  /**
+   * A scheduler running syft for up to {@code EXHORT_IMAGE_PARALLELISM} images at a time (the
+   * number of processors, at most 4, by default), every image taking at most {@code
+   * EXHORT_IMAGE_TIMEOUT} seconds once its generation started and the batch at most {@code
+   * EXHORT_IMAGE_BATCH_TIMEOUT} seconds once submitted (no timeouts by default).
+   */
+  public ImageSbomScheduler() {
+    this(
+        Environment.getInt(
+            PROP_EXHORT_IMAGE_PARALLELISM, Math.min(4, Runtime.getRuntime().availableProcessors())),
+        Duration.ofSeconds(Environment.getInt(PROP_EXHORT_IMAGE_TIMEOUT, 0)),
+        Duration.ofSeconds(Environment.getInt(PROP_EXHORT_IMAGE_BATCH_TIMEOUT, 0)),
+        ImageUtils::generateImageSBOM);
+  }
+
+  /**
+   * A scheduler without a timeout for the batch.
+   *
+   * @see #ImageSbomScheduler(int, Duration, Duration, Generator)
+   */
+  public ImageSbomScheduler(int parallelism, Duration timeout, Generator generator) {
+    this(parallelism, timeout, Duration.ZERO, generator);
+  }
+
+  /**
+   * @param parallelism the number of images generated at a time
+   * @param timeout the time an image may take once its generation started, zero or negative for no
+   *     timeout
+   * @param batchTimeout the time every image of the batch may take from its submission, queued
+   *     images included, zero or negative for no timeout
+   * @param generator the generator of the SBOM of an image
+   */
+  public ImageSbomScheduler(
+      int parallelism, Duration timeout, Duration batchTimeout, Generator generator) {
+    this.parallelism = Math.max(1, parallelism);
+    this.timeout = timeout;
+    this.batchTimeout = batchTimeout;
+    this.generator = generator;
+  }
+
+  /**
+   * Starts the generation of the SBOMs of the images, a single image without a timeout being
+   * generated in the calling thread. The pool ends once every image is generated, its threads not
+   * keeping the JVM alive.
+   *
+   * @return the SBOM being generated for every image, completed with a {@link TimeoutException}
+   *     once the image took longer than the timeout since its generation started, or the batch
+   *     longer than its timeout since the submission, whether the image was still queued or being
+   *     generated. The generator is given the earlier of both deadlines, syft being killed once it
+   *     is reached.
+   */
+  public Map<ImageRef, CompletableFuture<JsonNode>> submit(Collection<ImageRef> imageRefs) {
+    Map<ImageRef, CompletableFuture<JsonNode>> sboms = new LinkedHashMap<>();
+    Instant batchDeadline = null;
+    if (isSet(batchTimeout)) {
+      batchDeadline = Instant.now().plus(batchTimeout);
+    }
+    for (ImageRef imageRef : imageRefs) {
+      CompletableFuture<JsonNode> sbom = new CompletableFuture<>();
+      if (batchDeadline != null) {
+        sbom.orTimeout(batchTimeout.toMillis(), TimeUnit.MILLISECONDS);
+      }
+      sboms.put(imageRef, sbom);
+    }
+    AtomicInteger generated = new AtomicInteger();
+    Instant generationDeadline = batchDeadline;
+    if (sboms.size() == 1 && batchDeadline == null && !isSet(timeout)) {
+      sboms.forEach((imageRef, sbom) -> generate(imageRef, sbom, null, generated, 1));
+      return sboms;
+    }
+    int pool = POOLS.incrementAndGet();
+    AtomicInteger threads = new AtomicInteger();
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            Math.max(1, Math.min(sboms.size(), parallelism)),
+            runnable -> {
+              Thread thread =
+                  new Thread(
+                      runnable,
+                      String.format("exhort-image-sbom-%d-%d", pool, threads.incrementAndGet()));
+              thread.setDaemon(true);
+              return thread;
+            });
+    try {
+      sboms.forEach(
+          (imageRef, sbom) ->
+              executor.execute(
+                  () -> generate(imageRef, sbom, generationDeadline, generated, sboms.size())));
+    } finally {
+      executor.shutdown();
+    }
+    return sboms;
+  }
+
+  /**
+   * @return the SBOMs of the images, an image whose generation failed or timed out being logged and
+   *     left out
+   * @throws RuntimeException if the generation of every image failed
+   */
+  public Map<ImageRef, JsonNode> generateAll(Collection<ImageRef> imageRefs) {
+    Map<ImageRef, JsonNode> sboms = new LinkedHashMap<>();
+    RuntimeException failure = null;
+    for (Map.Entry<ImageRef, CompletableFuture<JsonNode>> sbom : submit(imageRefs).entrySet()) {
+      try {
+        sboms.put(sbom.getKey(), sbom.getValue().get());
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof TimeoutException) {
+          cause =
+              new RuntimeException(
+                  String.format(
+                      "The SBOM of image %s was not generated within %s",
+                      sbom.getKey(), describeTimeouts()),
+                  cause);
+        }
+        log.warning(
+            String.format(
+                "Leaving image %s out of the analysis, its SBOM could not be generated: %s",
+                sbom.getKey(), cause));
+        if (failure == null) {
+          failure =
+              cause instanceof RuntimeException
+                  ? (RuntimeException) cause
+                  : new RuntimeException(cause);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+    if (sboms.isEmpty() && failure != null) {
+      throw failure;
+    }
+    return sboms;
+  }
+
+  /**
+   * Generates the SBOM of an image, its timeout starting now.
+   *
+   * @param batchDeadline the deadline of the batch, or null for none
+   */
+  private void generate(
+      ImageRef imageRef,
+      CompletableFuture<JsonNode> sbom,
+      Instant batchDeadline,
+      AtomicInteger generated,
+      int total) {
+    // the batch timed out while the image was queued
+    if (sbom.isDone()) {
+      return;
+    }
+    Instant deadline = batchDeadline;
+    if (isSet(timeout)) {
+      Instant imageDeadline = Instant.now().plus(timeout);
+      if (deadline == null || imageDeadline.isBefore(deadline)) {
+        deadline = imageDeadline;
+      }
+      sbom.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+    try {
+      sbom.complete(generator.generate(imageRef, deadline));
+      log.fine(
+          String.format(
+              "Generated the SBOM of image %s, %d of %d",
+              imageRef, generated.incrementAndGet(), total));
+    } catch (IOException | MalformedPackageURLException | RuntimeException e) {
+      sbom.completeExceptionally(e);
+    }
+  }
+
+  private String describeTimeouts() {
+    if (isSet(timeout) && isSet(batchTimeout)) {
+      return String.format("%s, or %s for the batch", timeout, batchTimeout);
+    }
+    return isSet(timeout) ? timeout.toString() : String.format("%s for the batch", batchTimeout);
+  }
+
+  private static boolean isSet(Duration timeout) {
+    return !timeout.isZero() && !timeout.isNegative();
+  }
+}
@@ -24,15 +24,22 @@
 import com.fasterxml.jackson.databind.node.TextNode;
 import com.github.packageurl.MalformedPackageURLException;
 import com.redhat.exhort.tools.Operations;
+import com.redhat.exhort.utils.CacheFiles;
 import com.redhat.exhort.utils.Environment;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.AbstractMap;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -63,6 +70,8 @@ public class ImageUtils {
   public static final String ARG_VERSION = "--version";
 
   private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+  // the version of the syft binaries, by path, modification time and size
+  private static final Map<String, String> SYFT_VERSIONS = new ConcurrentHashMap<>();
 
   private static final Map<String, String> archMapping =
       Map.ofEntries(
@@ -106,7 +115,104 @@ static String updatePATHEnv(String execPath) {
 
   public static JsonNode generateImageSBOM(ImageRef imageRef)
       throws IOException, MalformedPackageURLException {
-    var output = execSyft(imageRef);
+    return generateImageSBOM(imageRef, null);
+  }
+
+  /**
+   * @param deadline the instant syft is killed at if it is still running, or null for none
+   */
+  public static JsonNode generateImageSBOM(ImageRef imageRef, Instant deadline)
+      throws IOException, MalformedPackageURLException {
+    var cache = ImageSbomCache.fromEnvironment();
+    var cacheKey = cache != null ? sbomCacheKey(imageRef) : null;
+    if (cacheKey != null) {
+      var cached = cache.read(cacheKey);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    var sbom = execSyftSBOM(imageRef, deadline);
+    if (cacheKey != null) {
+      cache.write(cacheKey, sbom);
+    }
+    return sbom;
+  }
+
+  /**
+   * @return what the SBOM of an image pinned by digest is generated from, i.e. its canonical
+   *     package URL, the version and the configuration of syft, or null if the image is not pinned
+   *     or the version of syft is unknown
+   */
+  static String sbomCacheKey(ImageRef imageRef) throws IOException, MalformedPackageURLException {
+    if (imageRef.getImage().getDigest() == null) {
+      return null;
+    }
+    var version = syftVersion();
+    if (version == null) {
+      return null;
+    }
+    var key = new StringBuilder();
+    key.append(imageRef.getPackageURL().canonicalize()).append('\n');
+    key.append(version).append('\n');
+    key.append(Environment.get(EXHORT_SYFT_IMAGE_SOURCE, "")).append('\n');
+    var syftConfigPath = Environment.get(EXHORT_SYFT_CONFIG_PATH, "");
+    var configFiles =
+        syftConfigPath.isEmpty()
+            ? List.of(
+                Path.of(".syft.yaml"),
+                Path.of(".syft", "config.yaml"),
+                Path.of(System.getProperty("user.home"), ".syft.yaml"))
+            : List.of(Path.of(syftConfigPath));
+    for (var configFile : configFiles) {
+      if (Files.isRegularFile(configFile)) {
+        key.append(configFile.toAbsolutePath()).append(' ');
+        key.append(CacheFiles.sha256(Files.readAllBytes(configFile))).append('\n');
+      }
+    }
+    // syft reads its configuration from the environment as well
+    new TreeMap<>(System.getenv())
+        .forEach(
+            (name, value) -> {
+              if (name.startsWith("SYFT_")) {
+                key.append(name).append('=').append(value).append('\n');
+              }
+            });
+    return key.toString();
+  }
+
+  /**
+   * @return the version of syft, run once per binary as long as it is not replaced, or null if it
+   *     is unknown
+   */
+  private static String syftVersion() throws IOException {
+    var syft = Operations.getCustomPathOrElse(SYFT);
+    var binary = Operations.findExecutable(syft);
+    String binaryKey = null;
+    if (binary != null) {
+      binaryKey =
+          String.format(
+              "%s:%d:%d", binary, Files.getLastModifiedTime(binary).toMillis(), Files.size(binary));
+      var cached = SYFT_VERSIONS.get(binaryKey);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    var version = Operations.runProcessGetFullOutput(null, new String[] {syft, ARG_VERSION}, null);
+    if (version == null
+        || version.getExitCode() != 0
+        || version.getOutput() == null
+        || version.getOutput().isBlank()) {
+      return null;
+    }
+    if (binaryKey != null) {
+      SYFT_VERSIONS.put(binaryKey, version.getOutput().strip());
+    }
+    return version.getOutput().strip();
+  }
+
+  private static JsonNode execSyftSBOM(ImageRef imageRef, Instant deadline)
+      throws IOException, MalformedPackageURLException {
+    var output = execSyft(imageRef, deadline);
 
     if (!output.getError().isEmpty() || output.getExitCode() != 0) {
       throw new RuntimeException(output.getError());
@@ -130,6 +236,10 @@ public static JsonNode generateImageSBOM(ImageRef imageRef)
   }
 
   static Operations.ProcessExecOutput execSyft(ImageRef imageRef) {
+    return execSyft(imageRef, null);
+  }
+
+  static Operations.ProcessExecOutput execSyft(ImageRef imageRef, Instant deadline) {
     var syft = Operations.getExecutable(SYFT, ARG_VERSION);
     var docker = Operations.getCustomPathOrElse(DOCKER);
     var podman = Operations.getCustomPathOrElse(PODMAN);
@@ -187,8 +297,12 @@ static Operations.ProcessExecOutput execSyft(ImageRef imageRef) {
               };
     }
 
-    return Operations.runProcessGetFullOutput(
-        null, cmd, envs.isEmpty() ? null : envs.toArray(new String[1]));
+    var envList = envs.isEmpty() ? null : envs.toArray(new String[1]);
+    if (deadline != null) {
+      return Operations.runProcessGetFullOutput(
+          null, cmd, envList, Duration.between(Instant.now(), deadline));
+    }
+    return Operations.runProcessGetFullOutput(null, cmd, envList);
   }
 
   static List<String> getSyftEnvs(String dockerPath, String podmanPath) {
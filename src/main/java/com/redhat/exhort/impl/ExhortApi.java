@@ -16,6 +16,7 @@
 package com.redhat.exhort.impl;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -25,7 +26,7 @@
 import com.redhat.exhort.Provider;
 import com.redhat.exhort.api.v4.AnalysisReport;
 import com.redhat.exhort.image.ImageRef;
-import com.redhat.exhort.image.ImageUtils;
+import com.redhat.exhort.image.ImageSbomScheduler;
 import com.redhat.exhort.logging.LoggersFactory;
 import com.redhat.exhort.tools.Ecosystem;
 import com.redhat.exhort.utils.Environment;
@@ -45,13 +46,13 @@
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
-import java.util.AbstractMap;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
@@ -503,6 +504,45 @@ private HttpRequest buildStackRequest(final String manifestFile, final MediaType
     return buildRequest(content, uri, acceptType, "Stack Analysis");
   }
 
+  @Override
+  public CompletableFuture<Map<String, AnalysisReport>> stackAnalysisPerModule(
+      final String manifestFile) throws IOException {
+    var provider = Ecosystem.getProvider(Path.of(manifestFile));
+    return this.performBatchAnalysis(
+        () -> getBatchModuleSboms(provider),
+        MediaType.APPLICATION_JSON,
+        HttpResponse.BodyHandlers.ofString(),
+        this::getBatchModuleAnalysisReports,
+        Collections::emptyMap,
+        "Stack Analysis");
+  }
+
+  Map<String, JsonNode> getBatchModuleSboms(final Provider provider) {
+    try {
+      Map<String, JsonNode> sboms = new TreeMap<>();
+      for (var module : provider.provideStackPerModule().entrySet()) {
+        sboms.put(module.getKey(), mapper.readTree(module.getValue().buffer));
+      }
+      return sboms;
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  Map<String, AnalysisReport> getBatchModuleAnalysisReports(
+      final HttpResponse<String> httpResponse) {
+    if (httpResponse.statusCode() == 200) {
+      try {
+        return this.mapper.readValue(
+            httpResponse.body(), new TypeReference<TreeMap<String, AnalysisReport>>() {});
+      } catch (JsonProcessingException e) {
+        throw new CompletionException(e);
+      }
+    } else {
+      return Collections.emptyMap();
+    }
+  }
+
   @Override
   public CompletableFuture<Map<ImageRef, AnalysisReport>> imageAnalysis(
       final Set<ImageRef> imageRefs) throws IOException {
@@ -527,19 +567,16 @@ public CompletableFuture<byte[]> imageAnalysisHtml(Set<ImageRef> imageRefs) thro
   }
 
   Map<String, JsonNode> getBatchImageSboms(final Set<ImageRef> imageRefs) {
-    return imageRefs.parallelStream()
-        .map(
-            imageRef -> {
-              try {
-                return new AbstractMap.SimpleEntry<>(
-                    imageRef.getPackageURL().canonicalize(),
-                    ImageUtils.generateImageSBOM(imageRef));
-              } catch (IOException | MalformedPackageURLException ex) {
-                throw new RuntimeException(ex);
-              }
-            })
-        .collect(
-            Collectors.toMap(AbstractMap.SimpleEntry::getKey, AbstractMap.SimpleEntry::getValue));
+    Map<String, JsonNode> sboms = new TreeMap<>();
+    for (Map.Entry<ImageRef, JsonNode> sbom :
+        new ImageSbomScheduler().generateAll(imageRefs).entrySet()) {
+      try {
+        sboms.put(sbom.getKey().getPackageURL().canonicalize(), sbom.getValue());
+      } catch (MalformedPackageURLException ex) {
+        throw new RuntimeException(ex);
+      }
+    }
+    return sboms;
   }
 
   Map<ImageRef, AnalysisReport> getBatchImageAnalysisReports(
@@ -22,6 +22,8 @@
 import com.redhat.exhort.Api;
 import com.redhat.exhort.Provider;
 import com.redhat.exhort.logging.LoggersFactory;
+import com.redhat.exhort.providers.golang.model.GoMod;
+import com.redhat.exhort.providers.golang.model.VendorModules;
 import com.redhat.exhort.sbom.Sbom;
 import com.redhat.exhort.sbom.SbomFactory;
 import com.redhat.exhort.tools.Ecosystem.Type;
@@ -34,13 +36,20 @@
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -52,8 +61,15 @@ public final class GoModulesProvider extends Provider {
 
   public static final String PROP_EXHORT_GO_MVS_LOGIC_ENABLED = "EXHORT_GO_MVS_LOGIC_ENABLED";
   private static final Logger log = LoggersFactory.getLogger(GoModulesProvider.class.getName());
+  // the directives of go.mod other than require
+  private static final Set<String> GO_MOD_DIRECTIVES =
+      Set.of(
+          "module", "go", "toolchain", "godebug", "exclude", "replace", "retract", "tool", "use");
   public static final String DEFAULT_MAIN_VERSION = "v0.0.0";
-  private final String goExecutable;
+  private static final Pattern SEMVER_PATTERN =
+      Pattern.compile(
+          "v(\\d+)(?:\\.(\\d+))?(?:\\.(\\d+))?(?:-([0-9A-Za-z.-]+))?(?:\\+[0-9A-Za-z.-]+)?");
+  private String goExecutable;
 
   public String getMainModuleVersion() {
     return mainModuleVersion;
@@ -63,7 +79,6 @@ public String getMainModuleVersion() {
 
   public GoModulesProvider(Path manifest) {
     super(Type.GOLANG, manifest);
-    this.goExecutable = Operations.getExecutable("go", "version");
     this.mainModuleVersion = getDefaultMainModuleVersion();
   }
 
@@ -123,114 +138,73 @@ private PackageURL toPurl(String dependency, String delimiter) {
   }
 
   Sbom getDependenciesSbom(Path manifestPath, boolean buildTree) throws IOException {
-    var goModulesResult = buildGoModulesDependencies(manifestPath);
     determineMainModuleVersion(manifestPath.getParent());
-    Sbom sbom;
-    List<PackageURL> ignoredDeps = getIgnoredDeps(manifestPath);
+    GoMod goMod = new GoMod(manifestPath);
+    List<PackageURL> ignoredDeps = getIgnoredDeps(goMod);
     boolean matchManifestVersions =
         Environment.getBoolean(Provider.PROP_MATCH_MANIFEST_VERSIONS, false);
-    if (matchManifestVersions) {
-      String[] goModGraphLines = goModulesResult.split(Operations.GENERIC_LINE_SEPARATOR);
-      performManifestVersionsCheck(goModGraphLines, manifestPath);
-    }
     if (!buildTree) {
-      sbom = buildSbomFromList(goModulesResult, ignoredDeps);
-    } else {
-      sbom = buildSbomFromGraph(goModulesResult, ignoredDeps, manifestPath);
+      // the direct dependencies are the requirements of go.mod, go is not needed for them
+      if (matchManifestVersions) {
+        performManifestVersionsCheck(getInstalledRequirements(manifestPath), goMod);
+      }
+      return buildSbomFromGoMod(goMod, ignoredDeps);
     }
-    return sbom;
-  }
-
-  private void performManifestVersionsCheck(String[] goModGraphLines, Path manifestPath) {
-    try {
-      String goModLines = Files.readString(manifestPath);
-      String[] lines = goModLines.split(Operations.GENERIC_LINE_SEPARATOR);
-      String root = getParentVertex(goModGraphLines[0]);
-      List<String> comparisonLines =
-          Arrays.stream(goModGraphLines)
-              .filter((line) -> line.startsWith(root))
-              .map(GoModulesProvider::getChildVertex)
-              .collect(Collectors.toList());
-      List<String> goModDependencies = collectAllDepsFromManifest(lines, goModLines);
-      comparisonLines.forEach(
-          (dependency) -> {
-            String[] parts = dependency.split("@");
-            String version = parts[1];
-            String depName = parts[0];
-            goModDependencies.forEach(
-                (dep) -> {
-                  String[] artifactParts = dep.trim().split(" ");
-                  String currentDepName = artifactParts[0];
-                  String currentVersion = artifactParts[1];
-                  if (currentDepName.trim().equals(depName.trim())) {
-                    if (!currentVersion.trim().equals(version.trim())) {
-                      throw new RuntimeException(
-                          String.format(
-                              "Can't continue with analysis - versions mismatch for"
-                                  + " dependency name=%s, manifest version=%s, installed"
-                                  + " Version=%s, if you want to allow version mismatch for"
-                                  + " analysis between installed and requested packages,"
-                                  + " set environment variable/setting -"
-                                  + " %s=false",
-                              depName,
-                              currentVersion,
-                              version,
-                              Provider.PROP_MATCH_MANIFEST_VERSIONS));
-                    }
-                  }
-                });
-          });
-    } catch (IOException e) {
-      throw new RuntimeException(
-          "Failed to open go.mod file for manifest versions check validation!");
+    var goModulesResult = buildGoModulesDependencies(manifestPath);
+    // Each entry contains a key of the module, and the list represents the module direct
+    // dependencies, so pairing of the key with each of the dependencies in a list is basically an
+    // edge in the graph.
+    Map<String, List<String>> edges = parseModGraph(goModulesResult);
+    String rootPackage = getParentVertex(goModulesResult);
+    if (matchManifestVersions) {
+      performManifestVersionsCheck(edges.getOrDefault(rootPackage, Collections.emptyList()), goMod);
     }
+    return buildSbomFromGraph(edges, rootPackage, ignoredDeps, goMod);
   }
 
-  private List<String> collectAllDepsFromManifest(String[] lines, String goModLines) {
-    // collect all deps that starts with require keyword
-    List<String> result =
-        Arrays.stream(lines)
-            .filter((line) -> line.trim().startsWith("require") && !line.contains("("))
-            .map((dep) -> dep.substring("require".length()).trim())
-            .collect(Collectors.toList());
-
-    // collect all deps that are inside `require` blocks
-    String currentSegmentOfGoMod = goModLines;
-    Map<String, Integer> requirePosObject = decideRequireBlockIndex(currentSegmentOfGoMod);
-    while (requirePosObject.get("index") > -1) {
-      String depsInsideRequirementsBlock =
-          currentSegmentOfGoMod
-              .substring(requirePosObject.get("index") + requirePosObject.get("length"))
-              .trim();
-      int endOfBlockIndex = depsInsideRequirementsBlock.indexOf(")");
-      int currentIndex = 0;
-      while (currentIndex < endOfBlockIndex) {
-        int endOfLinePosition =
-            depsInsideRequirementsBlock.indexOf(System.lineSeparator(), currentIndex);
-        String dependency =
-            depsInsideRequirementsBlock.substring(currentIndex, endOfLinePosition).trim();
-        result.add(dependency);
-        currentIndex = endOfLinePosition + 1;
-      }
-      currentSegmentOfGoMod = currentSegmentOfGoMod.substring(endOfBlockIndex + 1).trim();
-      requirePosObject = decideRequireBlockIndex(currentSegmentOfGoMod);
+  /**
+   * Gets the installed versions of the main module requirements, from vendor/modules.txt when the
+   * module is vendored, or from the go mod graph output otherwise.
+   *
+   * @return the installed requirements, as module@version
+   */
+  private List<String> getInstalledRequirements(Path manifestPath) throws IOException {
+    Path modulesTxt = manifestPath.resolveSibling("vendor").resolve("modules.txt");
+    if (Files.isRegularFile(modulesTxt)) {
+      VendorModules vendorModules = new VendorModules(modulesTxt);
+      return vendorModules.versions.entrySet().stream()
+          .filter(module -> vendorModules.explicit.contains(module.getKey()))
+          .map(module -> String.format("%s@%s", module.getKey(), module.getValue()))
+          .collect(Collectors.toList());
     }
-
-    return result;
+    String goModulesResult = buildGoModulesDependencies(manifestPath);
+    return parseModGraph(goModulesResult)
+        .getOrDefault(getParentVertex(goModulesResult), Collections.emptyList());
   }
 
-  private Map<String, Integer> decideRequireBlockIndex(String currentSegmentOfGoMod) {
-    int index = currentSegmentOfGoMod.indexOf("require(");
-    int length = "require(".length();
-    if (index == -1) {
-      index = currentSegmentOfGoMod.indexOf("require (");
-      length = "require (".length();
-      if (index == -1) {
-        index = currentSegmentOfGoMod.indexOf("require  (");
-        length = "require  (".length();
+  private void performManifestVersionsCheck(List<String> installedRequirements, GoMod goMod) {
+    Map<String, String> manifestVersions = new HashMap<>();
+    goMod.requires.forEach(require -> manifestVersions.put(require.path, require.version));
+    for (String dependency : installedRequirements) {
+      int separator = dependency.lastIndexOf('@');
+      if (separator < 0) {
+        continue;
+      }
+      String depName = dependency.substring(0, separator);
+      String version = dependency.substring(separator + 1);
+      String currentVersion = manifestVersions.get(depName);
+      if (currentVersion != null && !currentVersion.equals(version)) {
+        throw new RuntimeException(
+            String.format(
+                "Can't continue with analysis - versions mismatch for"
+                    + " dependency name=%s, manifest version=%s, installed"
+                    + " Version=%s, if you want to allow version mismatch for"
+                    + " analysis between installed and requested packages,"
+                    + " set environment variable/setting -"
+                    + " %s=false",
+                depName, currentVersion, version, Provider.PROP_MATCH_MANIFEST_VERSIONS));
       }
     }
-    return Map.of("index", index, "length", length);
   }
 
   public void determineMainModuleVersion(Path directory) {
@@ -255,47 +229,29 @@ public void determineMainModuleVersion(Path directory) {
   }
 
   private Sbom buildSbomFromGraph(
-      String goModulesResult, List<PackageURL> ignoredDeps, Path manifestPath) {
-    // Each entry contains a key of the module, and the list represents the module direct
-    // dependencies , so
-    // pairing of the key with each of the dependencies in a list is basically an edge in the graph.
-    Map<String, List<String>> edges = new HashMap<>();
-    // iterate over go mod graph line by line and create map , with each entry to contain module as
-    // a key , and
-    // value of list of that module' dependencies.
-    List<String> linesList =
-        Arrays.asList(goModulesResult.split(Operations.GENERIC_LINE_SEPARATOR));
-
-    int startingIndex = 0;
-    for (String line : linesList) {
-      if (!edges.containsKey(getParentVertex(line))) {
-        // Collect all direct dependencies of the current module into a list.
-        List<String> deps =
-            collectAllDirectDependencies(linesList.subList(startingIndex, linesList.size()), line);
-        edges.put(getParentVertex(line), deps);
-        startingIndex += deps.size();
-      }
-    }
+      Map<String, List<String>> edges,
+      String rootPackage,
+      List<PackageURL> ignoredDeps,
+      GoMod goMod) {
     boolean goMvsLogicEnabled = Environment.getBoolean(PROP_EXHORT_GO_MVS_LOGIC_ENABLED, true);
     if (goMvsLogicEnabled) {
-      edges = getFinalPackagesVersionsForModule(edges, manifestPath);
+      edges = getFinalPackagesVersionsForModule(edges, rootPackage, goMod);
     }
     //    Build Sbom
-    String rootPackage = getParentVertex(linesList.get(0));
 
     PackageURL root = toPurl(rootPackage, "@");
     Sbom sbom = SbomFactory.newInstance(Sbom.BelongingCondition.PURL, "sensitive");
     sbom.addRoot(root);
+    // every module is converted to a package url once, however many edges it takes part in
+    Map<String, PackageURL> purls = new HashMap<>();
     edges.forEach(
         (key, value) -> {
-          PackageURL source = toPurl(key, "@");
-          value.stream()
-              .filter(dep -> !isGoToolchainEntry(dep))
-              .forEach(
-                  dep -> {
-                    PackageURL targetPurl = toPurl(dep, "@");
-                    sbom.addDependency(source, targetPurl, null);
-                  });
+          PackageURL source = purls.computeIfAbsent(key, module -> toPurl(module, "@"));
+          value.forEach(
+              dep -> {
+                PackageURL targetPurl = purls.computeIfAbsent(dep, module -> toPurl(module, "@"));
+                sbom.addDependency(source, targetPurl, null);
+              });
         });
     List<String> ignoredDepsPurl =
         ignoredDeps.stream().map(PackageURL::getCoordinates).collect(Collectors.toList());
@@ -314,16 +270,20 @@ private Sbom buildSbomFromGraph(
   }
 
   private Map<String, List<String>> getFinalPackagesVersionsForModule(
-      Map<String, List<String>> edges, Path manifestPath) {
-    Operations.runProcessGetOutput(manifestPath.getParent(), "go", "mod", "download");
-    String finalVersionsForAllModules =
-        Operations.runProcessGetOutput(manifestPath.getParent(), "go", "list", "-m", "all");
-    Map<String, String> finalModulesVersions =
-        Arrays.stream(finalVersionsForAllModules.split(Operations.GENERIC_LINE_SEPARATOR))
-            .filter(string -> string.trim().split(" ").length == 2)
-            .collect(
-                Collectors.toMap(
-                    t -> t.split(" ")[0], t -> t.split(" ")[1], (first, second) -> second));
+      Map<String, List<String>> edges, String mainModule, GoMod goMod) {
+    Map<String, String> finalModulesVersions = selectModuleVersions(edges, mainModule);
+    // like go list -m all, which lists a replaced module with its replacement, the replaced
+    // modules keep the versions of the graph
+    goMod.replaces.forEach(
+        replace -> {
+          if (replace.oldVersion == null
+              || replace.oldVersion.equals(finalModulesVersions.get(replace.oldPath))) {
+            finalModulesVersions.remove(replace.oldPath);
+          }
+        });
+    // the selected version of every module@version is looked up once, the edges sharing the
+    // resulting strings
+    Map<String, String> selectedVersions = new HashMap<>();
     Map<String, List<String>> listWithModifiedVersions = new HashMap<>();
     // Process all entries, including those without versions (like the root module)
     edges.forEach(
@@ -344,7 +304,7 @@ private Map<String, List<String>> getFinalPackagesVersionsForModule(
             }
           }
           List<String> packagesWithFinalVersions =
-              getListOfPackagesWithFinalVersions(finalModulesVersions, value);
+              getListOfPackagesWithFinalVersions(finalModulesVersions, selectedVersions, value);
           listWithModifiedVersions.put(packageWithSelectedVersion, packagesWithFinalVersions);
         });
 
@@ -352,12 +312,117 @@ private Map<String, List<String>> getFinalPackagesVersionsForModule(
   }
 
   private List<String> getListOfPackagesWithFinalVersions(
-      Map<String, String> finalModulesVersions, List<String> packages) {
-    return packages.stream()
-        .map(
-            (packageWithVersion) ->
-                getPackageWithFinalVersion(finalModulesVersions, packageWithVersion))
-        .collect(Collectors.toList());
+      Map<String, String> finalModulesVersions,
+      Map<String, String> selectedVersions,
+      List<String> packages) {
+    List<String> packagesWithFinalVersions = new ArrayList<>(packages.size());
+    for (String packageWithVersion : packages) {
+      packagesWithFinalVersions.add(
+          selectedVersions.computeIfAbsent(
+              packageWithVersion, p -> getPackageWithFinalVersion(finalModulesVersions, p)));
+    }
+    return packagesWithFinalVersions;
+  }
+
+  /**
+   * Computes the minimal version selection of the module graph, the build list go list -m all
+   * prints, without running go. The module versions reachable from the main module are visited once
+   * each, and the highest semantic version of every module is selected. The go mod graph output is
+   * already pruned and adjusted for the exclude directives by go.
+   *
+   * @param edges the direct dependencies of every module version, as parsed by {@link
+   *     #parseModGraph(String)}
+   * @param mainModule the main module, the root of the graph
+   * @return the selected version of every module path
+   */
+  static Map<String, String> selectModuleVersions(
+      Map<String, List<String>> edges, String mainModule) {
+    Map<String, String> selected = new HashMap<>();
+    Set<String> visited = new HashSet<>();
+    Deque<String> queue = new ArrayDeque<>();
+    visited.add(mainModule);
+    queue.add(mainModule);
+    while (!queue.isEmpty()) {
+      for (String dependency : edges.getOrDefault(queue.poll(), Collections.emptyList())) {
+        if (!visited.add(dependency)) {
+          continue;
+        }
+        queue.add(dependency);
+        int separator = dependency.lastIndexOf('@');
+        String module = dependency.substring(0, Math.max(separator, 0));
+        // the toolchain is not a module of the build list, and the main module is always
+        // selected without a version
+        if (separator > 0 && !module.equals("toolchain") && !module.equals(mainModule)) {
+          selected.merge(
+              module,
+              dependency.substring(separator + 1),
+              (first, second) -> compareSemver(first, second) >= 0 ? first : second);
+        }
+      }
+    }
+    return selected;
+  }
+
+  /**
+   * Compares two module versions by semantic versioning precedence, ignoring the build metadata
+   * such as {@code +incompatible}. Pseudo-versions compare as the pre-releases they are.
+   */
+  static int compareSemver(String first, String second) {
+    String[] firstParts = splitSemver(first);
+    String[] secondParts = splitSemver(second);
+    if (firstParts == null || secondParts == null) {
+      return first.compareTo(second);
+    }
+    for (int i = 0; i < 3; i++) {
+      int result = compareNumeric(firstParts[i], secondParts[i]);
+      if (result != 0) {
+        return result;
+      }
+    }
+    // a version without pre-release has a higher precedence than one with
+    if (firstParts[3] == null || secondParts[3] == null) {
+      return firstParts[3] == null ? (secondParts[3] == null ? 0 : 1) : -1;
+    }
+    String[] firstIdentifiers = firstParts[3].split("\\.");
+    String[] secondIdentifiers = secondParts[3].split("\\.");
+    for (int i = 0; i < Math.min(firstIdentifiers.length, secondIdentifiers.length); i++) {
+      boolean firstNumeric = firstIdentifiers[i].chars().allMatch(Character::isDigit);
+      boolean secondNumeric = secondIdentifiers[i].chars().allMatch(Character::isDigit);
+      int result;
+      if (firstNumeric && secondNumeric) {
+        result = compareNumeric(firstIdentifiers[i], secondIdentifiers[i]);
+      } else if (firstNumeric || secondNumeric) {
+        // numeric identifiers have a lower precedence than alphanumeric ones
+        result = firstNumeric ? -1 : 1;
+      } else {
+        result = firstIdentifiers[i].compareTo(secondIdentifiers[i]);
+      }
+      if (result != 0) {
+        return result;
+      }
+    }
+    return Integer.compare(firstIdentifiers.length, secondIdentifiers.length);
+  }
+
+  private static String[] splitSemver(String version) {
+    Matcher matcher = SEMVER_PATTERN.matcher(version);
+    if (!matcher.matches()) {
+      return null;
+    }
+    return new String[] {
+      matcher.group(1),
+      Objects.requireNonNullElse(matcher.group(2), "0"),
+      Objects.requireNonNullElse(matcher.group(3), "0"),
+      matcher.group(4)
+    };
+  }
+
+  private static int compareNumeric(String first, String second) {
+    // compare by length first, the numbers may exceed a long
+    if (first.length() != second.length()) {
+      return Integer.compare(first.length(), second.length());
+    }
+    return first.compareTo(second);
   }
 
   public static String getPackageWithFinalVersion(
@@ -377,12 +442,36 @@ private boolean dependencyNotToBeIgnored(List<PackageURL> ignoredDeps, PackageUR
             dependencyPurl -> dependencyPurl.getCoordinates().equals(checkedPurl.getCoordinates()));
   }
 
-  private static List<String> collectAllDirectDependencies(List<String> targetLines, String edge) {
-    return targetLines.stream()
-        .filter(line -> getParentVertex(line).equals(getParentVertex(edge)))
-        .map(GoModulesProvider::getChildVertex)
-        .filter(dep -> !isGoToolchainEntry(dep))
-        .collect(Collectors.toList());
+  /**
+   * Groups the edges of the go mod graph output by their parent module in a single pass over the
+   * output. The module@version strings are interned, so every occurrence of a module, as a parent
+   * or as a child, shares one instance. Go toolchain entries are left out.
+   *
+   * @param goModGraphOutput the output of go mod graph, one "parent child" edge per line
+   * @return the direct dependencies of every module, in the order of the output
+   */
+  static Map<String, List<String>> parseModGraph(String goModGraphOutput) {
+    // the modules are iterated in the order of the go mod graph output
+    Map<String, List<String>> edges = new LinkedHashMap<>();
+    Map<String, String> interned = new HashMap<>();
+    goModGraphOutput
+        .lines()
+        .forEach(
+            line -> {
+              String edge = line.trim();
+              int separator = edge.indexOf(' ');
+              if (separator < 0) {
+                return;
+              }
+              int childEnd = edge.indexOf(' ', separator + 1);
+              String parent = interned.computeIfAbsent(edge.substring(0, separator), k -> k);
+              String child = edge.substring(separator + 1, childEnd < 0 ? edge.length() : childEnd);
+              List<String> deps = edges.computeIfAbsent(parent, k -> new ArrayList<>());
+              if (!isGoToolchainEntry(child)) {
+                deps.add(interned.computeIfAbsent(child, k -> k));
+              }
+            });
+    return edges;
   }
 
   private static boolean isGoToolchainEntry(String dependency) {
@@ -393,7 +482,7 @@ private static boolean isGoToolchainEntry(String dependency) {
 
   private String buildGoModulesDependencies(Path manifestPath) {
     String[] goModulesDeps;
-    goModulesDeps = new String[] {goExecutable, "mod", "graph"};
+    goModulesDeps = new String[] {getGoExecutable(), "mod", "graph"};
 
     // execute the clean command
     String goModulesOutput =
@@ -407,20 +496,35 @@ private String buildGoModulesDependencies(Path manifestPath) {
     return goModulesOutput;
   }
 
-  private Sbom buildSbomFromList(String golangDeps, List<PackageURL> ignoredDeps) {
-    String[] allModulesFlat = golangDeps.split(Operations.GENERIC_LINE_SEPARATOR);
-    String parentVertex = getParentVertex(allModulesFlat[0]);
-    PackageURL root = toPurl(parentVertex, "@");
-    // Get only direct dependencies of root package/module, and that's it.
-    List<String> deps = collectAllDirectDependencies(Arrays.asList(allModulesFlat), parentVertex);
+  private String getGoExecutable() {
+    if (goExecutable == null) {
+      goExecutable = Operations.getExecutable("go", "version");
+    }
+    return goExecutable;
+  }
+
+  private Sbom buildSbomFromGoMod(GoMod goMod, List<PackageURL> ignoredDeps) {
+    PackageURL root = toPurl(goMod.module, "@");
+    // the requirements are sorted by module path like in the go mod graph output, a module
+    // required twice is required at the highest version
+    Map<String, GoMod.Require> requires = new TreeMap<>();
+    goMod.requires.stream()
+        .filter(require -> !goMod.isExcluded(require))
+        .forEach(
+            require ->
+                requires.merge(
+                    require.path,
+                    require,
+                    (first, second) ->
+                        compareSemver(first.version, second.version) >= 0 ? first : second));
 
     Sbom sbom = SbomFactory.newInstance(Sbom.BelongingCondition.PURL, "sensitive");
     sbom.addRoot(root);
-    deps.stream()
-        .filter(dep -> !isGoToolchainEntry(dep))
+    requires
+        .values()
         .forEach(
-            dep -> {
-              PackageURL targetPurl = toPurl(dep, "@");
+            require -> {
+              PackageURL targetPurl = toPurl(require.toString(), "@");
               if (dependencyNotToBeIgnored(ignoredDeps, targetPurl)) {
                 sbom.addDependency(root, targetPurl, null);
               }
@@ -437,67 +541,38 @@ private Sbom buildSbomFromList(String golangDeps, List<PackageURL> ignoredDeps)
     return sbom;
   }
 
-  private List<PackageURL> getIgnoredDeps(Path manifestPath) throws IOException {
-
-    List<String> goModlines = Files.readAllLines(manifestPath);
-    List<PackageURL> ignored =
-        goModlines.stream()
-            .filter(this::IgnoredLine)
-            .map(this::extractPackageName)
-            .map(dep -> toPurl(dep, "\\s{1,3}"))
-            .collect(Collectors.toList());
-    return ignored;
-  }
-
-  private String extractPackageName(String line) {
-    String trimmedRow = line.trim();
-    int firstRemarkNotationOccurrence = trimmedRow.indexOf("//");
-    return trimmedRow.substring(0, firstRemarkNotationOccurrence).trim();
+  private List<PackageURL> getIgnoredDeps(GoMod goMod) {
+    return goMod.requires.stream()
+        .filter(require -> require.ignored)
+        .map(require -> toPurl(require.toString(), "@"))
+        .collect(Collectors.toList());
   }
 
+  /**
+   * Tells whether a line of a go.mod file is a requirement marked with an exhortignore comment,
+   * either a single line require directive or a line of a require block.
+   *
+   * @param line a line of a go.mod file
+   * @return whether the line is an ignored requirement
+   * @deprecated the ignored requirements are read along with the whole go.mod, see {@link
+   *     GoMod.Require#ignored}
+   */
+  @Deprecated
   public boolean IgnoredLine(String line) {
-    boolean result = false;
-    if (line.contains("exhortignore")) {
-      // if exhortignore is alone in a comment or is in a comment together with indirect or as a
-      // comment inside a
-      // comment ( e.g // indirect  //exhort)
-      // then this line is to be checked if it's a comment after a package name.
-      if (Pattern.matches(".+//\\s*exhortignore", line)
-          || Pattern.matches(".+//\\sindirect (//)?\\s*exhortignore", line)) {
-        String trimmedRow = line.trim();
-        // filter out lines where exhortignore has no meaning
-        if (!trimmedRow.startsWith("module ")
-            && !trimmedRow.startsWith("go ")
-            && !trimmedRow.startsWith("require (")
-            && !trimmedRow.startsWith("require(")
-            && !trimmedRow.startsWith("exclude ")
-            && !trimmedRow.startsWith("replace ")
-            && !trimmedRow.startsWith("retract ")
-            && !trimmedRow.startsWith("use ")
-            && !trimmedRow.contains(
-                "=>")) { // only for lines that after trimming starts with "require " or starting
-          // with
-          // package name followd by one space, and then a semver version.
-          if (trimmedRow.startsWith("require ")
-              || Pattern.matches(
-                  "^[a-z.0-9/-]+\\s{1,2}[vV][0-9]\\.[0-9](\\.[0-9]){0,2}.*", trimmedRow)) {
-            result = true;
-          }
-        }
-      }
+    String trimmed = line.trim();
+    String directive = trimmed.split("\\s+", 2)[0];
+    if (trimmed.contains("=>") || GO_MOD_DIRECTIVES.contains(directive)) {
+      return false;
     }
-    return result;
+    GoMod goMod =
+        new GoMod(directive.equals("require") ? trimmed : String.format("require (%n%s%n)", line));
+    return goMod.requires.size() == 1 && goMod.requires.get(0).ignored;
   }
 
   private static String getParentVertex(String edge) {
-    String[] edgeParts = edge.trim().split(" ");
-    return edgeParts[0];
-  }
-
-  private static String getChildVertex(String edge) {
-
-    String[] edgeParts = edge.trim().split(" ");
-    return edgeParts[1];
+    String trimmed = edge.trim();
+    int separator = trimmed.indexOf(' ');
+    return separator < 0 ? trimmed : trimmed.substring(0, separator);
   }
 
   private static String getDefaultMainModuleVersion() {
@@ -17,6 +17,9 @@
 
 import static com.redhat.exhort.impl.ExhortApi.debugLoggingIsNeeded;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.github.packageurl.MalformedPackageURLException;
 import com.github.packageurl.PackageURL;
 import com.redhat.exhort.Api;
@@ -26,7 +29,11 @@
 import com.redhat.exhort.sbom.SbomFactory;
 import com.redhat.exhort.tools.Ecosystem.Type;
 import com.redhat.exhort.tools.Operations;
+import com.redhat.exhort.utils.CacheFiles;
+import com.redhat.exhort.utils.Environment;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -34,6 +41,10 @@
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -56,14 +67,75 @@ public final class GradleProvider extends BaseJavaProvider {
 
   private static final Logger log = LoggersFactory.getLogger(GradleProvider.class.getName());
 
-  private final String gradleExecutable = Operations.getExecutable("gradle", "--version");
+  private static final String GRADLE = "gradle";
+  private static final String PROP_GRADLE_INIT_SCRIPT_ENABLED = "EXHORT_GRADLE_INIT_SCRIPT_ENABLED";
+  private static final String PROP_GRADLE_DAEMON_ENABLED = "EXHORT_GRADLE_DAEMON_ENABLED";
+  private static final String PROP_PREFER_GRADLEW = "EXHORT_PREFER_GRADLEW";
+  private static final String PROP_GRADLE_CONFIGURATION_CACHE_ENABLED =
+      "EXHORT_GRADLE_CONFIGURATION_CACHE_ENABLED";
+  private static final String PROP_GRADLE_LOCKFILE_ENABLED = "EXHORT_GRADLE_LOCKFILE_ENABLED";
+  private static final String LOCKFILE = "gradle.lockfile";
+  // the declaring configurations whose dependencies are direct dependencies of each classpath
+  private static final Set<String> RUNTIME_DECLARATIONS =
+      Set.of("implementation", "api", "runtimeOnly");
+  private static final Set<String> COMPILE_DECLARATIONS =
+      Set.of("implementation", "api", "compileOnly", "compileOnlyApi");
+  private static final String INIT_SCRIPT = "exhort-dependency-graph.gradle";
+  private static final String GRAPH_TASK = "exhortDependencyGraph";
+  // the init script is written once per content to a stable path, Gradle keys the configuration
+  // cache entries with the init script paths
+  private static Path initScriptPath;
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private static final String TREE_MARKER = "--- ";
+  private static final String CONFLICT_MARKER = " -> ";
+  private static final List<String> TRAILING_ANNOTATIONS = List.of(" (n)", " (c)", " (*)");
+  private static final Pattern ROOT_PROJECT_PATTERN = Pattern.compile("Root project '(.+)'");
+  // key-value pairs of the properties task output
+  private static final Pattern PROPERTY_PATTERN = Pattern.compile("([^:]+):\\s+(.+)");
+  private static final Pattern NAMED_PARAMS_PATTERN =
+      Pattern.compile("(group|name|version)\\s*[:=]\\s*['\"](.*?)['\"]");
+  private static final Pattern DECLARATION_PATTERN =
+      Pattern.compile(
+          "^\\s*(implementation|api|compileOnly|compileOnlyApi|runtimeOnly)\\s*[\\s(](.*)$");
+  private static final Pattern LIBS_ACCESSOR_PATTERN = Pattern.compile("libs\\.([\\w.]+)");
+  private static final Pattern PROJECT_COORDINATE_PATTERN =
+      Pattern.compile("^\\s*(group|version)\\s*=\\s*['\"](.*?)['\"]");
+  private static final Pattern ROOT_PROJECT_NAME_PATTERN =
+      Pattern.compile("rootProject\\.name\\s*=\\s*['\"](.*?)['\"]");
+  private static final Pattern QUOTED_PATTERN = Pattern.compile("['\"](.*?)['\"]");
+  private static final Pattern BLOCK_NAME_PATTERN =
+      Pattern.compile("(\\w+)\\s*(?:\\([^()]*\\))?\\s*$");
+  // the blocks whose dependency declarations are not the ones of the project classpaths
+  private static final Set<String> FOREIGN_DECLARATION_BLOCKS =
+      Set.of("buildscript", "constraints", "subprojects");
+
+  // selected on first use, the lockfile path does not run gradle
+  private String gradleExecutable;
+  private final Map<Path, VersionCatalog> versionCatalogs = new ConcurrentHashMap<>();
 
   public GradleProvider(Path manifest) {
     super(Type.GRADLE, manifest);
   }
 
+  private String getGradleExecutable() {
+    if (gradleExecutable == null) {
+      gradleExecutable = selectGradleRuntime(manifest);
+    }
+    return gradleExecutable;
+  }
+
   @Override
   public Content provideStack() throws IOException {
+    if (isInitScriptEnabled()) {
+      Optional<Sbom> graphSbom = buildSbomFromDependencyGraph(AnalysisType.STACK);
+      if (graphSbom.isPresent()) {
+        var ignored = getIgnoredDeps(manifest);
+        return new Content(
+            graphSbom.get().filterIgnoredDeps(ignored).getAsJsonString().getBytes(),
+            Api.CYCLONEDX_MEDIA_TYPE);
+      }
+    }
     Path tempFile = getDependencies(manifest);
     if (debugLoggingIsNeeded()) {
       String stackAnalysisDependencyTree = Files.readString(tempFile);
@@ -81,6 +153,71 @@ public Content provideStack() throws IOException {
         sbom.filterIgnoredDeps(ignored).getAsJsonString().getBytes(), Api.CYCLONEDX_MEDIA_TYPE);
   }
 
+  /**
+   * Provides a stack analysis content for the project and every one of its subprojects. The init
+   * script task is executed once for the whole build, writing the graph of each project, and the
+   * SBOMs are built in parallel. Dependencies on other subprojects are kept as regular edges.
+   * Projects without the runtime and compile classpath configurations, like a root project only
+   * aggregating its subprojects, are not included.
+   *
+   * @return the content of each project, keyed by the project package url coordinates
+   * @throws IOException when failed to run the init script task or to read its output
+   */
+  @Override
+  public Map<String, Content> provideStackPerModule() throws IOException {
+    if (!isInitScriptEnabled()) {
+      return super.provideStackPerModule();
+    }
+    Path graphsDir = Files.createTempDirectory("exhort_graph_");
+    try {
+      runDependencyGraphTask(manifest, graphsDir, true);
+    } catch (RuntimeException e) {
+      deleteDependencyGraphs(graphsDir);
+      log.warning(
+          String.format(
+              "Failed to run the Gradle init script task, analyzing the project alone: %s",
+              e.getMessage()));
+      return super.provideStackPerModule();
+    }
+    try {
+      List<Path> graphFiles;
+      try (var files = Files.list(graphsDir)) {
+        graphFiles = files.sorted().collect(Collectors.toList());
+      }
+      return graphFiles.parallelStream()
+          .map(this::buildProjectGraph)
+          .filter(graph -> graph.hasClasspath)
+          .collect(
+              Collectors.toMap(
+                  graph -> graph.root.getCoordinates(),
+                  graph -> graph.content,
+                  (first, second) -> first,
+                  TreeMap::new));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      deleteDependencyGraphs(graphsDir);
+    }
+  }
+
+  private ProjectGraph buildProjectGraph(Path graphFile) {
+    try {
+      var graph = buildSbomFromJsonGraph(graphFile, AnalysisType.STACK);
+      // the ignored dependencies are marked in the build file of each project
+      List<String> ignored =
+          graph.buildFile != null && Files.isRegularFile(graph.buildFile)
+              ? getIgnoredDeps(graph.buildFile)
+              : Collections.emptyList();
+      graph.content =
+          new Content(
+              graph.sbom.filterIgnoredDeps(ignored).getAsJsonString().getBytes(),
+              Api.CYCLONEDX_MEDIA_TYPE);
+      return graph;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
   private List<String> getIgnoredDeps(Path manifestPath) throws IOException {
     List<String> buildGradleLines = Files.readAllLines(manifestPath);
     List<String> ignored = new ArrayList<>();
@@ -95,7 +232,7 @@ private List<String> getIgnoredDeps(Path manifestPath) throws IOException {
     for (String dependency : ignoredLines) {
       String ignoredDepInfo;
       if (depHasLibsNotation(dependency)) {
-        ignoredDepInfo = getDepFromNotation(dependency, manifestPath);
+        ignoredDepInfo = getDepFromNotation(dependency, getVersionCatalog(manifestPath));
       } else {
         ignoredDepInfo = getDepInfo(dependency);
       }
@@ -113,8 +250,7 @@ private String getDepInfo(String dependencyLine) {
     if (dependencyLine.contains("group:")
         && dependencyLine.contains("name:")
         && dependencyLine.contains("version:")) {
-      Pattern pattern = Pattern.compile("(group|name|version):\\s*['\"](.*?)['\"]");
-      Matcher matcher = pattern.matcher(dependencyLine);
+      Matcher matcher = NAMED_PARAMS_PATTERN.matcher(dependencyLine);
       String groupId = null, artifactId = null, version = null;
 
       while (matcher.find()) {
@@ -139,8 +275,7 @@ private String getDepInfo(String dependencyLine) {
       }
     } else {
       // Regular expression pattern to capture content inside single or double quotes
-      Pattern pattern = Pattern.compile("['\"](.*?)['\"]");
-      Matcher matcher = pattern.matcher(dependencyLine);
+      Matcher matcher = QUOTED_PATTERN.matcher(dependencyLine);
       // Check if the matcher finds a match
       if (matcher.find()) {
         // Get the matched string inside single or double quotes
@@ -160,21 +295,14 @@ private String getDepInfo(String dependencyLine) {
     return null;
   }
 
-  private String getDepFromNotation(String dependency, Path manifestPath) throws IOException {
-    // Extract everything after "libs."
-    String alias = dependency.substring(dependency.indexOf("libs.") + "libs.".length()).trim();
-    alias = alias.replace(".", "-").replace(")", "");
-
-    // Read and parse the TOML file
-    TomlParseResult toml = Toml.parse(getLibsVersionsTomlPath(manifestPath));
-    TomlTable librariesTable = toml.getTable("libraries");
-    TomlTable dependencyTable = librariesTable.getTable(alias);
-    if (dependencyTable != null) {
-      String groupId = dependencyTable.getString("module").split(":")[0];
-      String artifactId = dependencyTable.getString("module").split(":")[1];
-      String version =
-          toml.getTable("versions").getString(dependencyTable.getString("version.ref"));
-      PackageURL ignoredPackageUrl = toPurl(groupId, artifactId, version);
+  private String getDepFromNotation(String dependency, VersionCatalog catalog) {
+    Matcher matcher = LIBS_ACCESSOR_PATTERN.matcher(dependency);
+    if (!matcher.find()) {
+      return null;
+    }
+    DependencyAggregator library = catalog.find(matcher.group(1));
+    if (library != null) {
+      PackageURL ignoredPackageUrl = toPurl(library.groupId, library.artifactId, library.version);
       return ignoredPackageUrl.getCoordinates();
     }
 
@@ -185,6 +313,108 @@ private Path getLibsVersionsTomlPath(Path manifestPath) {
     return manifestPath.getParent().resolve("gradle/libs.versions.toml");
   }
 
+  /**
+   * Gets the version catalog of the build script, parsing it only on first use.
+   *
+   * @param manifestPath the path of the build script
+   * @return the version catalog, empty when the project has none
+   * @throws IOException if failed to read the version catalog
+   */
+  private VersionCatalog getVersionCatalog(Path manifestPath) throws IOException {
+    try {
+      return versionCatalogs.computeIfAbsent(
+          getLibsVersionsTomlPath(manifestPath),
+          path -> {
+            try {
+              return VersionCatalog.parse(path);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * The libraries of a Gradle version catalog. Gradle separates the segments of an alias with
+   * dashes, underscores or dots alike, the aliases are normalized to dots so they can be looked up
+   * by the {@code libs} accessors of the build scripts.
+   */
+  private static final class VersionCatalog {
+    private final Map<String, DependencyAggregator> libraries = new HashMap<>();
+
+    private static VersionCatalog parse(Path tomlPath) throws IOException {
+      var catalog = new VersionCatalog();
+      if (!Files.isRegularFile(tomlPath)) {
+        return catalog;
+      }
+      TomlParseResult toml = Toml.parse(tomlPath);
+      TomlTable versions = toml.getTable("versions");
+      TomlTable libraries = toml.getTable("libraries");
+      if (libraries == null) {
+        return catalog;
+      }
+      for (String alias : libraries.keySet()) {
+        DependencyAggregator library = null;
+        if (libraries.isString(alias)) {
+          // the group:artifact:version shorthand notation
+          String[] parts = libraries.getString(alias).split(":");
+          if (parts.length >= 2) {
+            library = new DependencyAggregator();
+            library.groupId = parts[0];
+            library.artifactId = parts[1];
+            library.version = parts.length > 2 ? parts[2] : null;
+          }
+        } else if (libraries.isTable(alias)) {
+          library = parseLibrary(libraries.getTable(alias), versions);
+        }
+        if (library != null) {
+          catalog.libraries.put(normalize(alias), library);
+        }
+      }
+      return catalog;
+    }
+
+    private static DependencyAggregator parseLibrary(TomlTable table, TomlTable versions) {
+      var library = new DependencyAggregator();
+      if (table.isString("module")) {
+        String[] module = table.getString("module").split(":");
+        if (module.length != 2) {
+          return null;
+        }
+        library.groupId = module[0];
+        library.artifactId = module[1];
+      } else if (table.isString("group") && table.isString("name")) {
+        library.groupId = table.getString("group");
+        library.artifactId = table.getString("name");
+      } else {
+        return null;
+      }
+      if (table.isString("version")) {
+        library.version = table.getString("version");
+      } else if (table.isString("version.ref") && versions != null) {
+        String versionRef = table.getString("version.ref");
+        library.version = versions.isString(versionRef) ? versions.getString(versionRef) : null;
+      }
+      return library;
+    }
+
+    private static String normalize(String alias) {
+      return alias.replace('-', '.').replace('_', '.');
+    }
+
+    /**
+     * Finds the library of a {@code libs} accessor.
+     *
+     * @param accessor the accessor following {@code libs.}, i.e. {@code io.quarkus.quarkus.agroal}
+     * @return the library, or {@code null} if the catalog holds no library for the accessor
+     */
+    private DependencyAggregator find(String accessor) {
+      return libraries.get(normalize(accessor));
+    }
+  }
+
   public PackageURL toPurl(String groupId, String artifactId, String version) {
     try {
       return new PackageURL(Type.MAVEN.getType(), groupId, artifactId, version, null, null);
@@ -194,10 +424,9 @@ public PackageURL toPurl(String groupId, String artifactId, String version) {
   }
 
   private boolean depHasLibsNotation(String depToBeIgnored) {
-    Pattern pattern = Pattern.compile(":");
-    Matcher matcher = pattern.matcher(depToBeIgnored.trim());
-    return (depToBeIgnored.trim().startsWith("library(") || depToBeIgnored.trim().contains("libs."))
-        && (matcher.results().count() <= 1);
+    String dependency = depToBeIgnored.trim();
+    return (dependency.startsWith("library(") || dependency.contains("libs."))
+        && dependency.chars().filter(c -> c == ':').count() <= 1;
   }
 
   private boolean isIgnoredLine(String line) {
@@ -223,7 +452,7 @@ private Path getDependencies(Path manifestPath) throws IOException {
     // create a temp file for storing the dependency tree in
     var tempFile = Files.createTempFile("exhort_graph_", null);
     // the command will create the dependency tree in the temp file
-    String gradleCommand = gradleExecutable + " dependencies";
+    String gradleCommand = getGradleExecutable() + " dependencies";
 
     String[] cmdList = gradleCommand.split("\\s+");
     String gradleOutput =
@@ -233,9 +462,289 @@ private Path getDependencies(Path manifestPath) throws IOException {
     return tempFile;
   }
 
+  private boolean isInitScriptEnabled() {
+    return Environment.getBoolean(PROP_GRADLE_INIT_SCRIPT_ENABLED, true);
+  }
+
+  /**
+   * Selects the Gradle executable for the project. The Gradle wrapper of the project, looked up
+   * from the manifest directory up to the repository root, is preferred as it runs the Gradle
+   * version the build was written for, unless {@code EXHORT_PREFER_GRADLEW} is false or a custom
+   * path is set in {@code EXHORT_GRADLE_PATH}.
+   *
+   * @param manifestPath the path of the build script
+   * @return the path of the Gradle wrapper or of the Gradle executable
+   */
+  private String selectGradleRuntime(final Path manifestPath) {
+    boolean customPath = !GRADLE.equals(Operations.getCustomPathOrElse(GRADLE));
+    if (!customPath && Environment.getBoolean(PROP_PREFER_GRADLEW, true) && manifestPath != null) {
+      String wrapperName = Operations.isWindows() ? "gradlew.bat" : "gradlew";
+      String gradlew =
+          JavaMavenProvider.traverseForMvnw(wrapperName, manifestPath.toString(), null);
+      if (gradlew != null) {
+        if (debugLoggingIsNeeded()) {
+          log.info(String.format("using gradle wrapper from : %s", gradlew));
+        }
+        return gradlew;
+      }
+    }
+    // If the gradle wrapper is not preferred or not found, fall back to use gradle
+    String gradle = Operations.getExecutable(GRADLE, "--version");
+    if (debugLoggingIsNeeded()) {
+      log.info(String.format("using gradle executable from : %s", gradle));
+    }
+    return gradle;
+  }
+
+  /**
+   * Builds the SBOM of the project from the dependency graph written by the bundled init script
+   * task, resolving the {@code runtimeClasspath} and {@code compileClasspath} configurations in a
+   * single Gradle invocation. The graph is deleted once read.
+   *
+   * @param analysisType the type of analysis to perform ({@code STACK} or {@code COMPONENT})
+   * @return the SBOM of the project, or empty if the task failed or wrote no readable graph, the
+   *     project being then analyzed from the output of the dependencies task
+   * @throws IOException if failed to create the init script or the output directory
+   */
+  private Optional<Sbom> buildSbomFromDependencyGraph(AnalysisType analysisType)
+      throws IOException {
+    Path graphsDir = Files.createTempDirectory("exhort_graph_");
+    try {
+      runDependencyGraphTask(manifest, graphsDir, false);
+      // only the project of the manifest directory writes its graph
+      Path graphFile;
+      try (var files = Files.list(graphsDir)) {
+        graphFile =
+            files
+                .findFirst()
+                .orElseThrow(
+                    () ->
+                        new IOException(
+                            String.format("Gradle dependency graph not found for %s", manifest)));
+      }
+      if (debugLoggingIsNeeded()) {
+        String dependencyGraph = Files.readString(graphFile);
+        log.info(
+            String.format(
+                "Package Manager Gradle Dependency Graph Output: %s %s",
+                System.lineSeparator(), dependencyGraph));
+      }
+      return Optional.of(buildSbomFromJsonGraph(graphFile, analysisType).sbom);
+    } catch (IOException | RuntimeException e) {
+      log.warning(
+          String.format(
+              "Failed to get the Gradle dependency graph, falling back to the dependencies task:"
+                  + " %s",
+              e.getMessage()));
+      return Optional.empty();
+    } finally {
+      deleteDependencyGraphs(graphsDir);
+    }
+  }
+
+  /**
+   * Runs the bundled init script task in a single Gradle invocation. The invocation uses the Gradle
+   * daemon when {@code EXHORT_GRADLE_DAEMON_ENABLED} is true, so later analyses skip the JVM
+   * startup, otherwise the daemon setting of the build applies. The configuration cache is enabled
+   * on Gradle versions supporting it, so unchanged builds skip the configuration phase. Older
+   * versions ignore the configuration cache property, and a build incompatible with it is reported
+   * as a warning and runs without it.
+   *
+   * @param manifestPath the path of the build script, its directory is the project to analyze
+   * @param graphsDir the directory to write a JSON dependency graph per project into
+   * @param allProjects whether to write the graphs of the subprojects as well
+   * @throws IOException if failed to create the init script
+   */
+  private void runDependencyGraphTask(Path manifestPath, Path graphsDir, boolean allProjects)
+      throws IOException {
+    List<String> args = new ArrayList<>();
+    args.add(getGradleExecutable());
+    if (Environment.getBoolean(PROP_GRADLE_DAEMON_ENABLED, false)) {
+      args.add("--daemon");
+    }
+    args.add("--init-script");
+    args.add(getInitScript().toString());
+    args.add(GRAPH_TASK);
+    args.add(String.format("-DexhortGraphOutput=%s", graphsDir));
+    if (allProjects) {
+      args.add("-DexhortGraphAllProjects=true");
+    }
+    if (Environment.getBoolean(PROP_GRADLE_CONFIGURATION_CACHE_ENABLED, true)) {
+      args.add("-Dorg.gradle.configuration-cache=true");
+      args.add("-Dorg.gradle.configuration-cache.problems=warn");
+    }
+    args.add("-q");
+    Operations.runProcess(manifestPath.getParent(), args.toArray(String[]::new));
+  }
+
+  private static synchronized Path getInitScript() throws IOException {
+    if (initScriptPath != null && Files.isRegularFile(initScriptPath)) {
+      return initScriptPath;
+    }
+    byte[] content;
+    try (var is = GradleProvider.class.getResourceAsStream(INIT_SCRIPT)) {
+      if (is == null) {
+        throw new IllegalStateException(
+            String.format("Unable to find the Gradle init script %s", INIT_SCRIPT));
+      }
+      content = is.readAllBytes();
+    }
+    var hash = CacheFiles.sha256(content);
+    var target =
+        Path.of(System.getProperty("java.io.tmpdir"))
+            .resolve(String.format("exhort-dependency-graph-%s.gradle", hash.substring(0, 16)));
+    if (!Files.isRegularFile(target)) {
+      // other processes may be reading the script
+      CacheFiles.write(target, content);
+    }
+    initScriptPath = target;
+    return target;
+  }
+
+  private static void deleteDependencyGraphs(Path graphsDir) throws IOException {
+    try (var files = Files.list(graphsDir)) {
+      for (Path file : files.collect(Collectors.toList())) {
+        Files.deleteIfExists(file);
+      }
+    }
+    Files.deleteIfExists(graphsDir);
+  }
+
+  /**
+   * Builds an SBOM from the JSON dependency graph written by the init script, using a streaming
+   * parser. The runtime classpath dependencies are added as {@code REQUIRED} and the compile
+   * classpath ones as {@code OPTIONAL}, for {@code AnalysisType.COMPONENT} only the direct
+   * dependencies are added.
+   *
+   * @param graphFile the path of the JSON dependency graph
+   * @param analysisType the type of analysis to perform ({@code STACK} or {@code COMPONENT})
+   * @return the project graph holding the constructed {@code Sbom} with parsed dependencies
+   * @throws IOException if an I/O error occurs while reading the graph or it is malformed
+   */
+  private ProjectGraph buildSbomFromJsonGraph(Path graphFile, AnalysisType analysisType)
+      throws IOException {
+    var graph = new ProjectGraph();
+    Sbom sbom = SbomFactory.newInstance(Sbom.BelongingCondition.PURL, "sensitive");
+    graph.sbom = sbom;
+    try (JsonParser parser = JSON_FACTORY.createParser(graphFile.toFile())) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException(
+            String.format("Unexpected Gradle dependency graph content in %s", graphFile));
+      }
+      String group = null;
+      String name = null;
+      String version = null;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        switch (field) {
+          case "group":
+            group = parser.getText();
+            break;
+          case "name":
+            name = parser.getText();
+            break;
+          case "version":
+            version = parser.getText();
+            break;
+          case "buildFile":
+            graph.buildFile = Path.of(parser.getText());
+            break;
+          case "configurations":
+            // the init script writes the project coordinates ahead of the configurations
+            PackageURL root = toPurl(group, name, version);
+            sbom.addRoot(root);
+            graph.root = root;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+              graph.hasClasspath = true;
+              String configuration = parser.getCurrentName();
+              parser.nextToken();
+              if (RUNTIME_CLASSPATH.equals(configuration)) {
+                parseJsonDependencies(parser, root, sbom, REQUIRED, analysisType);
+              } else if (COMPILE_CLASSPATH.equals(configuration)) {
+                parseJsonDependencies(parser, root, sbom, OPTIONAL, analysisType);
+              } else {
+                parser.skipChildren();
+              }
+            }
+            break;
+          default:
+            parser.skipChildren();
+        }
+      }
+    }
+    return graph;
+  }
+
+  /** The project of a JSON dependency graph written by the init script. */
+  private static final class ProjectGraph {
+    private PackageURL root;
+    private Path buildFile;
+    private boolean hasClasspath;
+    private Sbom sbom;
+    private Content content;
+  }
+
+  private void parseJsonDependencies(
+      JsonParser parser, PackageURL source, Sbom sbom, String scope, AnalysisType analysisType)
+      throws IOException {
+    // the parser points at the start of the dependencies array
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      String group = null;
+      String name = null;
+      String version = null;
+      PackageURL target = null;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        switch (field) {
+          case "group":
+            group = parser.getText();
+            break;
+          case "name":
+            name = parser.getText();
+            break;
+          case "version":
+            version = parser.getText();
+            break;
+          case "dependencies":
+            // add the dependency before its own dependencies to keep the tree order
+            target = toDependencyPurl(group, name, version);
+            sbom.addDependency(source, target, scope);
+            if (analysisType == AnalysisType.STACK) {
+              parseJsonDependencies(parser, target, sbom, scope, analysisType);
+            } else {
+              parser.skipChildren();
+            }
+            break;
+          default:
+            parser.skipChildren();
+        }
+      }
+      if (target == null) {
+        sbom.addDependency(source, toDependencyPurl(group, name, version), scope);
+      }
+    }
+  }
+
+  private PackageURL toDependencyPurl(String module, String version) {
+    int separator = module.indexOf(':');
+    return toDependencyPurl(
+        module.substring(0, separator), module.substring(separator + 1), version);
+  }
+
+  private PackageURL toDependencyPurl(String group, String name, String version) {
+    var dependency = new DependencyAggregator();
+    dependency.groupId = group;
+    dependency.artifactId = name;
+    dependency.version = version;
+    dependency.scope = "compile";
+    return dependency.toPurl();
+  }
+
   private Path getProperties(Path manifestPath) throws IOException {
     Path propsTempFile = Files.createTempFile("propsfile", ".txt");
-    String propCmd = gradleExecutable + " properties";
+    String propCmd = getGradleExecutable() + " properties";
     String[] propCmdList = propCmd.split("\\s+");
     String properties =
         Operations.runProcessGetOutput(Path.of(manifestPath.getParent().toString()), propCmdList);
@@ -249,18 +758,15 @@ private Path getProperties(Path manifestPath) throws IOException {
    * Builds a Software Bill of Materials (SBOM) from a text format file based on the specified
    * analysis type.
    *
-   * <p>This method initializes an SBOM, extracts the root dependency, and processes runtime and
-   * compile configuration lines from the provided text format file. Depending on the {@code
-   * analysisType}:
+   * <p>This method scans the text format file once with {@code scanDependenciesOutput}, collecting
+   * the root project name and the normalized dependencies of the runtime and compile
+   * configurations. Depending on the {@code analysisType}:
    *
    * <ul>
-   *   <li>For {@code AnalysisType.STACK}, it uses {@code prepareLinesForParsingDependencyTree} to
-   *       prepare lines and parses the full dependency tree for both runtime (as {@code REQUIRED})
-   *       and compile (as {@code OPTIONAL}) configurations.
-   *   <li>For {@code AnalysisType.COMPONENT}, it uses {@code
-   *       prepareLinesForParsingDirectDependency} to prepare lines, filters for lines with a depth
-   *       of 1 using {@code ProcessedLine}, and parses the filtered dependencies for runtime (as
+   *   <li>For {@code AnalysisType.STACK}, it adds the full dependency tree for both runtime (as
    *       {@code REQUIRED}) and compile (as {@code OPTIONAL}) configurations.
+   *   <li>For {@code AnalysisType.COMPONENT}, it adds only the dependencies with a depth of 1 for
+   *       runtime (as {@code REQUIRED}) and compile (as {@code OPTIONAL}) configurations.
    * </ul>
    *
    * The resulting SBOM includes the root dependency and parsed dependencies with appropriate
@@ -276,56 +782,60 @@ private Sbom buildSbomFromTextFormat(
       Path textFormatFile, Map<String, String> propertiesMap, AnalysisType analysisType)
       throws IOException {
     Sbom sbom = SbomFactory.newInstance(Sbom.BelongingCondition.PURL, "sensitive");
-    String root = getRoot(textFormatFile, propertiesMap);
+    DependenciesOutput output = scanDependenciesOutput(textFormatFile);
 
-    PackageURL rootPurl = parseDep(root);
+    PackageURL rootPurl =
+        toPurl(propertiesMap.get("group"), output.rootProject, propertiesMap.get("version"));
     sbom.addRoot(rootPurl);
 
-    List<String> runtimeConfig = extractLines(textFormatFile, RUNTIME_CLASSPATH);
-    List<String> compileConfig = extractLines(textFormatFile, COMPILE_CLASSPATH);
-
-    if (analysisType == AnalysisType.STACK) {
-      List<String> runtimePreparedLines = prepareLinesForParsingDependencyTree(runtimeConfig);
-      List<String> compilePreparedLines = prepareLinesForParsingDependencyTree(compileConfig);
-
-      parseDependencyTree(root, 0, runtimePreparedLines.toArray(new String[0]), sbom, REQUIRED);
-      parseDependencyTree(root, 0, compilePreparedLines.toArray(new String[0]), sbom, OPTIONAL);
-
-    } else {
-      List<ProcessedLine> runtimePreparedLines =
-          prepareLinesForParsingDirectDependency(runtimeConfig);
-      List<ProcessedLine> compilePreparedLines =
-          prepareLinesForParsingDirectDependency(compileConfig);
-
-      List<String> runtimeArrayForSbom = new ArrayList<>();
-      for (ProcessedLine line : runtimePreparedLines) {
-        if (line.getDepth() == 1) {
-          runtimeArrayForSbom.add(line.getLine());
-        }
-      }
-      parseDependencyTree(root, 0, runtimeArrayForSbom.toArray(new String[0]), sbom, REQUIRED);
+    addDependencies(rootPurl, output.runtimeClasspath, sbom, REQUIRED, analysisType);
+    addDependencies(rootPurl, output.compileClasspath, sbom, OPTIONAL, analysisType);
+    return sbom;
+  }
 
-      List<String> compileArrayForSbom = new ArrayList<>();
-      for (ProcessedLine line : compilePreparedLines) {
-        if (line.getDepth() == 1) {
-          compileArrayForSbom.add(line.getLine());
-        }
+  /**
+   * Adds the scanned dependencies of a configuration to the SBOM in a single pass. The last
+   * dependency seen at each depth is kept, so the source of every dependency is the last one seen
+   * at the depth above it.
+   *
+   * @param root the root of the SBOM
+   * @param lines the scanned dependencies of the configuration, in the order of the tree
+   * @param sbom the SBOM to add the dependencies to
+   * @param scope the scope of the configuration
+   * @param analysisType the type of analysis to perform ({@code STACK} or {@code COMPONENT})
+   */
+  private void addDependencies(
+      PackageURL root,
+      List<ProcessedLine> lines,
+      Sbom sbom,
+      String scope,
+      AnalysisType analysisType) {
+    List<PackageURL> sources = new ArrayList<>();
+    sources.add(root);
+    for (ProcessedLine line : lines) {
+      if (analysisType == AnalysisType.COMPONENT && line.getDepth() != 1) {
+        continue;
       }
-      parseDependencyTree(root, 0, compileArrayForSbom.toArray(new String[0]), sbom, OPTIONAL);
+      // a dependency below a skipped one is added to the closest dependency above it
+      int depth = Math.min(line.getDepth(), sources.size());
+      String[] coordinates = line.getLine().split(":");
+      PackageURL target = toDependencyPurl(coordinates[0], coordinates[1], coordinates[2]);
+      sbom.addDependency(sources.get(depth - 1), target, scope);
+      sources.subList(depth, sources.size()).clear();
+      sources.add(target);
     }
-    return sbom;
   }
 
   /**
    * A class representing a processed line of text with an associated indentation depth.
    *
-   * <p>This class encapsulates a line of text and its corresponding depth level, typically used to
-   * represent hierarchical or structured data such as dependencies. The class provides methods to
-   * access the line and depth, and overrides the {@code toString} method to provide a meaningful
+   * <p>This class encapsulates the normalized {@code group:name:version} coordinates of a
+   * dependency and its corresponding depth level in the dependency tree. The class provides methods
+   * to access the line and depth, and overrides the {@code toString} method to provide a meaningful
    * string representation.
    */
   static class ProcessedLine {
-    /** The text content of the processed line. */
+    /** The normalized coordinates of the processed line. */
     public final String line;
 
     /** The indentation depth associated with the line. */
@@ -334,7 +844,7 @@ static class ProcessedLine {
     /**
      * Constructs a new {@code ProcessedLine} with the specified line and depth.
      *
-     * @param line the text content of the line
+     * @param line the normalized coordinates of the line
      * @param depth the indentation depth of the line
      */
     public ProcessedLine(String line, int depth) {
@@ -356,177 +866,140 @@ public String toString() {
     }
   }
 
-  /**
-   * Prepares a list of strings for parsing direct dependencies by transforming and filtering lines
-   * into {@code ProcessedLine} objects.
-   *
-   * <p>This method processes each input line, skipping empty lines or those ending with " FAILED".
-   * For valid lines, it:
-   *
-   * <ul>
-   *   <li>Calculates the indentation depth using {@code getIndentationLevel}.
-   *   <li>Applies transformations to the line using {@code replaceLine}.
-   *   <li>Checks if the transformed line contains a version using {@code containsVersion}.
-   *   <li>If a version is present, creates a new {@code ProcessedLine} with the transformed line
-   *       appended with ":compile" and the calculated depth, and adds it to the result list.
-   * </ul>
-   *
-   * The resulting list contains only lines that meet the version criteria, encapsulated as {@code
-   * ProcessedLine} objects.
-   *
-   * @param lines the list of input strings to process
-   * @return a list of {@code ProcessedLine} objects representing valid, transformed lines with
-   *     their indentation depths
-   */
-  private List<ProcessedLine> prepareLinesForParsingDirectDependency(List<String> lines) {
-    List<ProcessedLine> result = new ArrayList<>();
-
-    for (String line : lines) {
-      if (line.trim().isEmpty() || line.endsWith(" FAILED")) {
-        continue;
-      }
-
-      int depth = getIndentationLevel(line);
-
-      line = replaceLine(line);
-      if (containsVersion(line)) {
-        result.add(new ProcessedLine(line + ":compile", depth));
-      }
-    }
-
-    return result;
+  /** The root project name and runtime and compile dependencies of the dependencies task. */
+  private static final class DependenciesOutput {
+    private String rootProject;
+    private List<ProcessedLine> runtimeClasspath = Collections.emptyList();
+    private List<ProcessedLine> compileClasspath = Collections.emptyList();
   }
 
   /**
-   * Prepares a list of strings for parsing a dependency tree by transforming and filtering lines.
-   *
-   * <p>This method processes each input line, skipping empty lines or those ending with " FAILED".
-   * For valid lines, it:
-   *
-   * <ul>
-   *   <li>Applies transformations to the line using {@code replaceLine}.
-   *   <li>Checks if the transformed line contains a version using {@code containsVersion}.
-   *   <li>If a version is present, appends ":compile" to the line and adds it to the result list.
-   * </ul>
+   * Scans the text output of the dependencies task in a single pass.
    *
-   * The resulting list contains only transformed lines that meet the version criteria, suitable for
-   * dependency tree parsing.
+   * <p>The root project name is taken from the first {@code Root project} line. The first section
+   * of each of the runtime and compile configurations is collected up to the empty line ending it,
+   * every dependency line being normalized by {@code processLine}.
    *
-   * @param lines the list of input strings to process
-   * @return a list of transformed strings, each appended with ":compile", representing valid
-   *     dependency lines
+   * @param textFormatFile the path to the text format file containing dependency information
+   * @return the root project name and the normalized dependencies of both configurations
+   * @throws IOException if an I/O error occurs while reading the text format file
    */
-  private List<String> prepareLinesForParsingDependencyTree(List<String> lines) {
-    List<String> result = new ArrayList<>();
-
-    for (String line : lines) {
-      if (line.trim().isEmpty() || line.endsWith(" FAILED")) {
-        continue;
-      }
-
-      line = replaceLine(line);
-      if (containsVersion(line)) {
-        result.add(line + ":compile");
+  private DependenciesOutput scanDependenciesOutput(Path textFormatFile) throws IOException {
+    DependenciesOutput output = new DependenciesOutput();
+    List<ProcessedLine> section = null;
+    try (BufferedReader reader = Files.newBufferedReader(textFormatFile)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (section != null) {
+          if (line.isBlank()) {
+            section = null;
+          } else {
+            ProcessedLine processedLine = processLine(line);
+            if (processedLine != null) {
+              section.add(processedLine);
+            }
+          }
+        } else if (output.rootProject == null && line.contains("Root project")) {
+          Matcher matcher = ROOT_PROJECT_PATTERN.matcher(line);
+          if (matcher.find()) {
+            output.rootProject = matcher.group(1);
+          }
+        } else if (line.startsWith(RUNTIME_CLASSPATH) && output.runtimeClasspath.isEmpty()) {
+          section = new ArrayList<>();
+          output.runtimeClasspath = section;
+        } else if (line.startsWith(COMPILE_CLASSPATH) && output.compileClasspath.isEmpty()) {
+          section = new ArrayList<>();
+          output.compileClasspath = section;
+        }
       }
     }
-
-    return result;
+    return output;
   }
 
   /**
-   * Processes a given line of text by applying a series of string replacements to standardize its
-   * format.
+   * Processes a dependency line of the dependencies task output into its depth and normalized
+   * coordinates, without using regular expressions.
    *
-   * <p>This method performs multiple transformations on the input line, including:
+   * <p>This method skips lines ending with " FAILED" and lines without a tree marker. For the other
+   * lines, it:
    *
    * <ul>
-   *   <li>Replacing triple dashes ("---") with a single dash ("-") and four spaces with two spaces.
-   *   <li>Simplifying colon-separated patterns of the form ":X:Y -> Z" to ":X:Z".
-   *   <li>Transforming colon-separated patterns of the form "X:Y:Z" to "X:Y:jar:Z".
-   *   <li>Removing trailing annotations such as " (n)", " (c)", or " (*)".
-   *   <li>Appending ":compile" to the end of the line.
+   *   <li>Calculates the indentation depth using {@code getIndentationLevel}.
+   *   <li>Removes trailing annotations such as " (n)", " (c)", or " (*)".
+   *   <li>Resolves conflicts of the form "group:name:X -> Z" or "group:name -> Z" to the selected
+   *       version Z.
+   *   <li>Checks that the version is a numeric version and the dependency isn't a "libs." catalog
+   *       reference.
    * </ul>
    *
-   * The transformed line is then returned.
-   *
-   * @param line the input string to be processed
-   * @return the transformed string after applying all replacements
+   * @param line the dependency line to process
+   * @return the processed line with the {@code group:name:version} coordinates and the depth, or
+   *     {@code null} if the line isn't a dependency with a version
    */
-  private String replaceLine(String line) {
-    line = line.replaceAll("---", "-").replaceAll("    ", "  ");
-    line = line.replaceAll(":(.*):(.*) -> (.*)$", ":$1:$3");
-    line = line.replaceAll("(.*):(.*):(.*)$", "$1:$2:jar:$3");
-    line = line.replaceAll(" \\(n\\)$", "");
-    line = line.replaceAll(" \\(c\\)$", "");
-    line = line.replaceAll(" \\(\\*\\)", "");
-    return line;
+  private ProcessedLine processLine(String line) {
+    if (line.endsWith(" FAILED")) {
+      return null;
+    }
+    int depth = getIndentationLevel(line);
+    if (depth == -1) {
+      return null;
+    }
+    String dependency = line.substring(line.indexOf(TREE_MARKER) + TREE_MARKER.length()).trim();
+    for (String annotation : TRAILING_ANNOTATIONS) {
+      if (dependency.endsWith(annotation)) {
+        dependency = dependency.substring(0, dependency.length() - annotation.length());
+      }
+    }
+    int conflict = dependency.indexOf(CONFLICT_MARKER);
+    String requested = conflict == -1 ? dependency : dependency.substring(0, conflict);
+    String[] parts = requested.split(":");
+    if (parts.length < 2 || (conflict == -1 && parts.length < 3)) {
+      return null;
+    }
+    String version =
+        conflict == -1
+            ? parts[2]
+            : dependency.substring(conflict + CONFLICT_MARKER.length()).trim();
+    if (!isNumericVersion(version) || dependency.contains("libs.")) {
+      return null;
+    }
+    return new ProcessedLine(String.join(":", parts[0], parts[1], version), depth);
   }
 
   /**
-   * Determines the indentation level of a given line of text based on specific patterns.
+   * Determines the indentation level of a given line of text of the dependencies task output.
    *
-   * <p>This method analyzes the input line to calculate its indentation level. If the line starts
-   * with a '+' or '\', it is considered to have an indentation level of 1. Otherwise, it counts
-   * occurrences of specific indentation patterns ("| " or " ") to determine the level. If no such
-   * patterns are found, it returns -1; otherwise, it returns the count of patterns plus 1.
+   * <p>The level is derived from the position of the tree marker ("+--- " or "\--- "), every level
+   * of indentation ("| " or " ") being five characters wide. A line starting with the tree marker
+   * has an indentation level of 1. If no tree marker is found, it returns -1.
    *
    * @param line the input string to analyze for indentation
-   * @return the indentation level of the line; returns 1 if the line starts with '+' or '\', the
-   *     count of indentation patterns plus 1 if patterns are found, or -1 if no patterns are found
+   * @return the indentation level of the line, or -1 if the line has no tree marker
    */
   public int getIndentationLevel(String line) {
-    if (line.matches("^[\\\\+].*")) {
-      return 1;
+    int marker = line.indexOf(TREE_MARKER);
+    if (marker < 1 || (line.charAt(marker - 1) != '+' && line.charAt(marker - 1) != '\\')) {
+      return -1;
     }
-
-    Pattern pattern = Pattern.compile("\\| {4}| {5}");
-    Matcher matcher = pattern.matcher(line);
-    int count = 0;
-    while (matcher.find()) {
-      count++;
-    }
-
-    return count == 0 ? -1 : count + 1;
+    return (marker - 1) / 5 + 1;
   }
 
-  private boolean containsVersion(String line) {
-    String lineStripped = line.replace("(n)", "").trim();
-    Pattern pattern1 =
-        Pattern.compile("\\W*[a-z0-9.-]+:[a-z0-9.-]+:[0-9]+[.][0-9]+(.[0-9]+)?(.*)?.*");
-    Pattern pattern2 = Pattern.compile(".*version:\\s?(')?[0-9]+[.][0-9]+(.[0-9]+)?(')?");
-    Matcher matcher1 = pattern1.matcher(lineStripped);
-    Matcher matcher2 = pattern2.matcher(lineStripped);
-    return (matcher1.find() || matcher2.find()) && !lineStripped.contains("libs.");
-  }
-
-  private String getRoot(Path textFormatFile, Map<String, String> propertiesMap)
-      throws IOException {
-    String group = propertiesMap.get("group");
-    String version = propertiesMap.get("version");
-    String rootName = extractRootProjectValue(textFormatFile);
-    return group + ':' + rootName + ':' + "jar" + ':' + version;
-  }
-
-  private String extractRootProjectValue(Path inputFilePath) throws IOException {
-    List<String> lines = Files.readAllLines(inputFilePath);
-    for (String line : lines) {
-      if (line.contains("Root project")) {
-        Pattern pattern = Pattern.compile("Root project '(.+)'");
-        Matcher matcher = pattern.matcher(line);
-        if (matcher.find()) {
-          return matcher.group(1);
-        }
-      }
+  private static boolean isNumericVersion(String version) {
+    // at least a major and a minor version, i.e. 1.2, 1.2.3 or 1.2.3.Final
+    int index = 0;
+    while (index < version.length() && Character.isDigit(version.charAt(index))) {
+      index++;
     }
-    return null;
+    return index > 0
+        && index < version.length() - 1
+        && version.charAt(index) == '.'
+        && Character.isDigit(version.charAt(index + 1));
   }
 
   private Map<String, String> extractProperties(Path manifestPath) throws IOException {
     Path propsTempFile = getProperties(manifestPath);
     String content = Files.readString(propsTempFile);
-    // Define the regular expression pattern for key-value pairs
-    Pattern pattern = Pattern.compile("([^:]+):\\s+(.+)");
-    Matcher matcher = pattern.matcher(content);
+    Matcher matcher = PROPERTY_PATTERN.matcher(content);
     // Create a Map to store key-value pairs
     Map<String, String> keyValueMap = new HashMap<>();
 
@@ -544,31 +1017,281 @@ private Map<String, String> extractProperties(Path manifestPath) throws IOExcept
     }
   }
 
-  private List<String> extractLines(Path inputFilePath, String startMarker) throws IOException {
-    List<String> lines = Files.readAllLines(inputFilePath);
-    List<String> extractedLines = new ArrayList<>();
-    boolean startFound = false;
+  /**
+   * Builds the component analysis SBOM without invoking Gradle, from the dependencies declared in
+   * the build script and the versions locked for them in {@code gradle.lockfile}. The dependencies
+   * declared with {@code implementation}, {@code api} and {@code runtimeOnly} are added as {@code
+   * REQUIRED} with their {@code runtimeClasspath} locked version, and the ones declared with {@code
+   * implementation}, {@code api}, {@code compileOnly} and {@code compileOnlyApi} as {@code
+   * OPTIONAL} with their {@code compileClasspath} locked version, like the direct dependencies
+   * resolved by Gradle.
+   *
+   * <p>Only the declarations of the top level {@code dependencies} block and the {@code group} and
+   * {@code version} set at the top level of the build script are read. The declarations of the
+   * {@code buildscript}, {@code constraints} and {@code subprojects} blocks are skipped.
+   *
+   * <p>Nothing is returned, so Gradle resolves the dependencies, when the lock state is missing:
+   * there is no lockfile, one of the classpath configurations is not locked or a declared
+   * dependency is not locked. This is also the case when the project coordinates are not set in the
+   * build script, a declaration is not a plain module notation, like a project, a platform or a
+   * catalog bundle, or is nested in another block, like a condition.
+   *
+   * @param manifestPath the path of the build script
+   * @return the constructed {@code Sbom}, or empty if the lock state is missing
+   * @throws IOException if failed to read the build script, the lockfile or the version catalog
+   */
+  private Optional<Sbom> buildSbomFromLockfile(Path manifestPath) throws IOException {
+    Path lockfilePath = manifestPath.getParent().resolve(LOCKFILE);
+    if (!Files.isRegularFile(lockfilePath)) {
+      return Optional.empty();
+    }
+    Map<String, Map<String, String>> locked = parseLockfile(lockfilePath);
+    if (!locked.containsKey(RUNTIME_CLASSPATH) || !locked.containsKey(COMPILE_CLASSPATH)) {
+      return logLockStateMissing(lockfilePath, "the classpath configurations are not locked");
+    }
+    String group = null;
+    String version = null;
+    List<String[]> declarations = new ArrayList<>();
+    VersionCatalog catalog = getVersionCatalog(manifestPath);
+    BuildScriptBlocks blocks = new BuildScriptBlocks();
+    for (String line : Files.readAllLines(manifestPath)) {
+      // the blocks enclosing the line, the ones it opens or closes are tracked for the next lines
+      List<String> enclosing = blocks.getEnclosing();
+      blocks.advance(line);
+      Matcher coordinate = PROJECT_COORDINATE_PATTERN.matcher(line);
+      if (enclosing.isEmpty() && coordinate.find()) {
+        if ("group".equals(coordinate.group(1))) {
+          group = coordinate.group(2);
+        } else {
+          version = coordinate.group(2);
+        }
+        continue;
+      }
+      Matcher declaration = DECLARATION_PATTERN.matcher(line);
+      boolean declared = declaration.find();
+      if (declared && !enclosing.equals(List.of("dependencies"))) {
+        if (enclosing.isEmpty()
+            || enclosing.stream().anyMatch(FOREIGN_DECLARATION_BLOCKS::contains)) {
+          continue;
+        }
+        return logLockStateMissing(
+            lockfilePath, "declaration nested in " + String.join(" ", enclosing));
+      } else if (declared) {
+        String module = getDeclaredModule(extractPackageName(declaration.group(2)), catalog);
+        if (module == null) {
+          return logLockStateMissing(lockfilePath, "unsupported declaration " + line.trim());
+        }
+        declarations.add(new String[] {declaration.group(1), module});
+      }
+    }
+    if (group == null || version == null) {
+      return logLockStateMissing(lockfilePath, "the project coordinates are not set");
+    }
+
+    Sbom sbom = SbomFactory.newInstance(Sbom.BelongingCondition.PURL, "sensitive");
+    PackageURL root = toPurl(group, getProjectName(manifestPath), version);
+    sbom.addRoot(root);
+    for (String[] declaration : declarations) {
+      if (RUNTIME_DECLARATIONS.contains(declaration[0])) {
+        String lockedVersion = locked.get(RUNTIME_CLASSPATH).get(declaration[1]);
+        if (lockedVersion == null) {
+          return logLockStateMissing(lockfilePath, declaration[1] + " is not locked");
+        }
+        sbom.addDependency(root, toDependencyPurl(declaration[1], lockedVersion), REQUIRED);
+      }
+    }
+    for (String[] declaration : declarations) {
+      if (COMPILE_DECLARATIONS.contains(declaration[0])) {
+        String lockedVersion = locked.get(COMPILE_CLASSPATH).get(declaration[1]);
+        if (lockedVersion == null) {
+          return logLockStateMissing(lockfilePath, declaration[1] + " is not locked");
+        }
+        sbom.addDependency(root, toDependencyPurl(declaration[1], lockedVersion), OPTIONAL);
+      }
+    }
+    return Optional.of(sbom);
+  }
+
+  /**
+   * Tracks the blocks of a build script line by line, the braces of comments and string literals
+   * being left out. A block is named after the identifier preceding its opening brace, i.e. {@code
+   * dependencies} for the dependencies block and {@code withType} for a {@code
+   * tasks.withType(Javadoc)} block.
+   */
+  private static final class BuildScriptBlocks {
+    private final List<String> blocks = new ArrayList<>();
+    private boolean insideComment;
+
+    /**
+     * @return the names of the blocks enclosing the next line, the outermost first
+     */
+    List<String> getEnclosing() {
+      return List.copyOf(blocks);
+    }
+
+    void advance(String line) {
+      StringBuilder code = new StringBuilder();
+      char quote = 0;
+      for (int i = 0; i < line.length(); i++) {
+        char c = line.charAt(i);
+        char next = i + 1 < line.length() ? line.charAt(i + 1) : 0;
+        if (insideComment) {
+          if (c == '*' && next == '/') {
+            insideComment = false;
+            i++;
+          }
+        } else if (quote != 0) {
+          if (c == '\\') {
+            i++;
+          } else if (c == quote) {
+            quote = 0;
+          }
+        } else if (c == '/' && next == '/') {
+          break;
+        } else if (c == '/' && next == '*') {
+          insideComment = true;
+          i++;
+        } else if (c == '\'' || c == '"') {
+          quote = c;
+        } else if (c == '{') {
+          Matcher name = BLOCK_NAME_PATTERN.matcher(code);
+          blocks.add(name.find() ? name.group(1) : "");
+          code.setLength(0);
+        } else if (c == '}') {
+          if (!blocks.isEmpty()) {
+            blocks.remove(blocks.size() - 1);
+          }
+          code.setLength(0);
+        } else {
+          code.append(c);
+        }
+      }
+    }
+  }
+
+  private Optional<Sbom> logLockStateMissing(Path lockfilePath, String reason) {
+    if (debugLoggingIsNeeded()) {
+      log.info(
+          String.format(
+              "Gradle lock state in %s is missing, %s, resolving with Gradle",
+              lockfilePath, reason));
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Parses a {@code gradle.lockfile}, each line holding the locked module version and the
+   * configurations locking it, i.e. {@code group:name:version=compileClasspath,runtimeClasspath}.
+   * The {@code empty} line lists the locked configurations without dependencies.
+   *
+   * @param lockfilePath the path of the lockfile
+   * @return the locked {@code group:name} versions, keyed by the locked configurations
+   * @throws IOException if failed to read the lockfile
+   */
+  private static Map<String, Map<String, String>> parseLockfile(Path lockfilePath)
+      throws IOException {
+    Map<String, Map<String, String>> locked = new HashMap<>();
+    try (BufferedReader reader = Files.newBufferedReader(lockfilePath)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int separator = line.lastIndexOf('=');
+        if (line.startsWith("#") || separator < 0) {
+          continue;
+        }
+        String module = line.substring(0, separator).trim();
+        int versionSeparator = module.lastIndexOf(':');
+        for (String configuration : line.substring(separator + 1).split(",")) {
+          var versions = locked.computeIfAbsent(configuration.trim(), k -> new HashMap<>());
+          if (!"empty".equals(module) && versionSeparator > 0) {
+            versions.put(
+                module.substring(0, versionSeparator), module.substring(versionSeparator + 1));
+          }
+        }
+      }
+    }
+    locked.remove("");
+    return locked;
+  }
 
-    for (String line : lines) {
-      // If the start marker is found, set startFound to true
-      if (line.startsWith(startMarker)) {
-        startFound = true;
-        continue; // Skip the line containing the startMarker
+  /**
+   * Gets the {@code group:name} of a dependency declaration, written as a string notation, named
+   * parameters or a version catalog accessor.
+   *
+   * @param notation the declaration following the configuration name
+   * @param catalog the version catalog of the project
+   * @return the {@code group:name} of the declared module, or {@code null} if it is not a plain
+   *     module notation
+   */
+  private String getDeclaredModule(String notation, VersionCatalog catalog) {
+    String dependency = notation.trim();
+    while (dependency.startsWith("(")) {
+      dependency = dependency.substring(1).trim();
+    }
+    if (dependency.startsWith("libs.")) {
+      Matcher matcher = LIBS_ACCESSOR_PATTERN.matcher(dependency);
+      DependencyAggregator library = matcher.find() ? catalog.find(matcher.group(1)) : null;
+      return library != null ? library.groupId + ":" + library.artifactId : null;
+    }
+    if (dependency.startsWith("group")) {
+      String groupId = null;
+      String artifactId = null;
+      Matcher matcher = NAMED_PARAMS_PATTERN.matcher(dependency);
+      while (matcher.find()) {
+        if ("group".equals(matcher.group(1))) {
+          groupId = matcher.group(2);
+        } else if ("name".equals(matcher.group(1))) {
+          artifactId = matcher.group(2);
+        }
       }
-      // If startFound is true and the line is not empty, add it to the extractedLines list
-      if (startFound && !line.trim().isEmpty()) {
-        extractedLines.add(line);
+      return groupId != null && artifactId != null ? groupId + ":" + artifactId : null;
+    }
+    if (dependency.startsWith("'") || dependency.startsWith("\"")) {
+      Matcher matcher = QUOTED_PATTERN.matcher(dependency);
+      if (matcher.find() && !matcher.group(1).contains("$")) {
+        String[] parts = matcher.group(1).split(":");
+        if (parts.length >= 2) {
+          return parts[0] + ":" + parts[1];
+        }
       }
-      // If an empty line is encountered, break out of the loop
-      if (startFound && line.trim().isEmpty()) {
-        break;
+    }
+    return null;
+  }
+
+  private String getProjectName(Path manifestPath) throws IOException {
+    Path projectDir = manifestPath.toAbsolutePath().getParent();
+    for (String settings : List.of("settings.gradle", "settings.gradle.kts")) {
+      Path settingsPath = projectDir.resolve(settings);
+      if (Files.isRegularFile(settingsPath)) {
+        Matcher matcher = ROOT_PROJECT_NAME_PATTERN.matcher(Files.readString(settingsPath));
+        if (matcher.find()) {
+          return matcher.group(1);
+        }
       }
     }
-    return extractedLines;
+    // the name of a project defaults to the name of its directory
+    return projectDir.getFileName().toString();
   }
 
   @Override
   public Content provideComponent() throws IOException {
+    if (Environment.getBoolean(PROP_GRADLE_LOCKFILE_ENABLED, true)) {
+      Optional<Sbom> lockedSbom = buildSbomFromLockfile(manifest);
+      if (lockedSbom.isPresent()) {
+        var ignored = getIgnoredDeps(manifest);
+        return new Content(
+            lockedSbom.get().filterIgnoredDeps(ignored).getAsJsonString().getBytes(),
+            Api.CYCLONEDX_MEDIA_TYPE);
+      }
+    }
+    if (isInitScriptEnabled()) {
+      Optional<Sbom> graphSbom = buildSbomFromDependencyGraph(AnalysisType.COMPONENT);
+      if (graphSbom.isPresent()) {
+        var ignored = getIgnoredDeps(manifest);
+        return new Content(
+            graphSbom.get().filterIgnoredDeps(ignored).getAsJsonString().getBytes(),
+            Api.CYCLONEDX_MEDIA_TYPE);
+      }
+    }
 
     Path tempFile = getDependencies(manifest);
     Map<String, String> propertiesMap = extractProperties(manifest);
@@ -26,16 +26,24 @@
 import com.redhat.exhort.sbom.SbomFactory;
 import com.redhat.exhort.tools.Ecosystem.Type;
 import com.redhat.exhort.tools.Operations;
+import com.redhat.exhort.utils.CacheFiles;
 import com.redhat.exhort.utils.Environment;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -57,6 +65,14 @@ public final class JavaMavenProvider extends BaseJavaProvider {
   private final String mvnExecutable;
   private static final String MVN = Operations.isWindows() ? "mvn.cmd" : "mvn";
   private static final String ARG_VERSION = "-v";
+  private static final int POM_CACHE_SIZE = 64;
+  // the factory lookup is expensive, share a single instance for all parsing
+  private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+  // parsed poms keyed by the hash of their content
+  private static final Map<String, PomModel> POM_MODELS = newLruCache(POM_CACHE_SIZE);
+  // effective poms keyed by the hash of the pom, its local parent chain, the mvn arguments and
+  // configuration and the JDK
+  private static final Map<String, EffectivePom> EFFECTIVE_POMS = newLruCache(POM_CACHE_SIZE);
 
   public JavaMavenProvider(Path manifest) {
     super(Type.MAVEN, manifest);
@@ -66,30 +82,93 @@ public JavaMavenProvider(Path manifest) {
 
   @Override
   public Content provideStack() throws IOException {
+    var project = getProjectDescriptor(manifest);
+    Sbom sbom;
+    if (project.isReactor()) {
+      var treeFile = runDependencyTree(true, List.of());
+      sbom = buildReactorSbom(project, splitReactorTrees(Files.readAllLines(treeFile)));
+    } else {
+      var ignoredDeps = project.getIgnoredDependencies(project.root());
+      var treeFile = runDependencyTree(false, ignoredDeps);
+      sbom = buildSbomFromTextFormat(treeFile).filterIgnoredDeps(toCoordinates(ignoredDeps));
+    }
+    // build and return content for constructing request to the backend
+    return new Content(sbom.getAsJsonString().getBytes(), Api.CYCLONEDX_MEDIA_TYPE);
+  }
+
+  /**
+   * Provides a stack analysis content for every module of a Maven reactor. The dependency tree goal
+   * is executed once for the whole reactor, its output is split per module and the SBOMs are built
+   * in parallel. Inter-module dependencies are kept as regular edges. The dependencies ignored in a
+   * module pom, or in its local parents, are filtered from the SBOM of that module only. The
+   * aggregating poms themselves are not included, for a single module project the map contains only
+   * the project.
+   *
+   * @return the content of each module, keyed by the module package url coordinates
+   * @throws IOException when failed to load the manifest file or the dependency tree output
+   */
+  @Override
+  public Map<String, Content> provideStackPerModule() throws IOException {
+    var project = getProjectDescriptor(manifest);
+    var treeFile =
+        runDependencyTree(
+            project.isReactor(),
+            project.isReactor() ? List.of() : project.getIgnoredDependencies(project.root()));
+    var trees = splitReactorTrees(Files.readAllLines(treeFile));
+    // resolve the ignored dependencies of every module before building the SBOMs in parallel
+    Map<List<String>, List<String>> ignored = new IdentityHashMap<>();
+    for (List<String> tree : trees) {
+      ignored.put(tree, toCoordinates(project.getIgnoredDependencies(project.pomOf(tree))));
+    }
+    return trees.parallelStream()
+        .filter(tree -> !project.isReactor() || !project.isAggregatorTree(tree))
+        .collect(
+            Collectors.toMap(
+                tree -> parseDep(tree.get(0)).getCoordinates(),
+                tree ->
+                    new Content(
+                        buildSbomFromTree(tree)
+                            .filterIgnoredDeps(ignored.get(tree))
+                            .getAsJsonString()
+                            .getBytes(),
+                        Api.CYCLONEDX_MEDIA_TYPE),
+                (first, second) -> first,
+                TreeMap::new));
+  }
+
+  private Path runDependencyTree(boolean reactor, List<DependencyAggregator> ignoredDeps)
+      throws IOException {
     var mvnCleanCmd = buildMvnCommandArgs("clean", "-f", manifest.toString(), "--batch-mode", "-q");
     var mvnEnvs = getMvnExecEnvs();
     // execute the clean command
     Operations.runProcess(manifest.getParent(), mvnCleanCmd.toArray(String[]::new), mvnEnvs);
     // create a temp file for storing the dependency tree in
     var tmpFile = Files.createTempFile("exhort_dot_graph_", null);
-    // the tree command will build the project and create the dependency tree in the temp file
-    var mvnTreeCmd =
-        buildMvnCommandArgs(
-            "org.apache.maven.plugins:maven-dependency-plugin:3.6.0:tree",
-            "-Dverbose",
-            "-DoutputType=text",
-            String.format("-DoutputFile=%s", tmpFile.toString()),
-            "-f",
-            manifest.toString(),
-            "--batch-mode",
-            "-q");
-    // if we have dependencies marked as ignored, exclude them from the tree command
-    var ignored =
-        getDependencies(manifest).stream()
-            .filter(d -> d.ignored)
-            .map(DependencyAggregator::toPurl)
-            .map(PackageURL::getCoordinates)
-            .collect(Collectors.toList());
+    // the tree command will build the project and create the dependency tree in the temp file,
+    // in a reactor every module appends its own tree to the same file
+    List<String> treeArgs =
+        new ArrayList<>(
+            List.of(
+                "org.apache.maven.plugins:maven-dependency-plugin:3.6.0:tree",
+                "-Dverbose",
+                "-DoutputType=text",
+                String.format("-DoutputFile=%s", tmpFile.toString()),
+                String.format("-DappendOutput=%s", reactor)));
+    // if we have dependencies marked as ignored, exclude them from the tree command. The plugin
+    // keeps the ancestors of the artifacts it prints, so an excluded artifact having dependencies
+    // is still printed along with them, only excluded leaves are left out. The ignored
+    // dependencies are removed from the SBOM anyway.
+    if (!ignoredDeps.isEmpty()) {
+      treeArgs.add(
+          String.format(
+              "-Dexcludes=%s",
+              ignoredDeps.stream()
+                  .map(DependencyAggregator::toExcludePattern)
+                  .distinct()
+                  .collect(Collectors.joining(","))));
+    }
+    treeArgs.addAll(List.of("-f", manifest.toString(), "--batch-mode", "-q"));
+    var mvnTreeCmd = buildMvnCommandArgs(treeArgs.toArray(String[]::new));
     // execute the tree command
     Operations.runProcess(manifest.getParent(), mvnTreeCmd.toArray(String[]::new), mvnEnvs);
     if (debugLoggingIsNeeded()) {
@@ -99,27 +178,101 @@ public Content provideStack() throws IOException {
               "Package Manager Maven Stack Analysis Dependency Tree Output: %s %s",
               System.lineSeparator(), stackAnalysisDependencyTree));
     }
+    return tmpFile;
+  }
 
-    var sbom = buildSbomFromTextFormat(tmpFile);
-    // build and return content for constructing request to the backend
-    return new Content(
-        sbom.filterIgnoredDeps(ignored).getAsJsonString().getBytes(), Api.CYCLONEDX_MEDIA_TYPE);
+  private static List<String> toCoordinates(List<DependencyAggregator> dependencies) {
+    return dependencies.stream()
+        .map(DependencyAggregator::toPurl)
+        .map(PackageURL::getCoordinates)
+        .collect(Collectors.toList());
   }
 
   private Sbom buildSbomFromTextFormat(Path textFormatFile) throws IOException {
+    return buildSbomFromTree(Files.readAllLines(textFormatFile));
+  }
+
+  private Sbom buildSbomFromTree(List<String> lines) {
     var sbom = SbomFactory.newInstance(Sbom.BelongingCondition.PURL, "sensitive");
-    List<String> lines = Files.readAllLines(textFormatFile);
     var root = lines.get(0);
     var rootPurl = parseDep(root);
     sbom.addRoot(rootPurl);
-    lines.remove(0);
-    String[] array = new String[lines.size()];
-    lines.toArray(array);
-    //    createSbomIteratively(lines,sbom);
+    String[] array = lines.subList(1, lines.size()).toArray(String[]::new);
     parseDependencyTree(root, 0, array, sbom, null);
     return sbom;
   }
 
+  /**
+   * Build a single SBOM of the reactor, rooted at its aggregating pom. The components are shared by
+   * the modules, so the dependencies ignored in a module are pruned from the tree of that module
+   * rather than filtered from the SBOM, the modules requiring them without ignoring them keep them.
+   */
+  private Sbom buildReactorSbom(ProjectDescriptor project, List<List<String>> trees)
+      throws IOException {
+    var aggregator = trees.stream().filter(project::isRootTree).findFirst().orElse(trees.get(0));
+    var sbom = SbomFactory.newInstance(Sbom.BelongingCondition.PURL, "sensitive");
+    var rootPurl = parseDep(aggregator.get(0));
+    sbom.addRoot(rootPurl);
+    for (List<String> tree : trees) {
+      var moduleRoot = tree.get(0);
+      if (tree != aggregator) {
+        // the nested aggregating poms only declare modules, their dependencies are inherited
+        if (project.isAggregatorTree(tree)) {
+          continue;
+        }
+        sbom.addDependency(rootPurl, parseDep(moduleRoot), null);
+      }
+      var ignored = toCoordinates(project.getIgnoredDependencies(project.pomOf(tree)));
+      String[] array = pruneIgnored(tree, ignored).toArray(String[]::new);
+      parseDependencyTree(moduleRoot, 0, array, sbom, null);
+    }
+    return sbom;
+  }
+
+  /**
+   * @return the lines of the tree below its root, without the ignored dependencies and their
+   *     subtrees
+   */
+  private List<String> pruneIgnored(List<String> tree, List<String> ignored) {
+    List<String> lines = new ArrayList<>();
+    int prunedDepth = Integer.MAX_VALUE;
+    for (String line : tree.subList(1, tree.size())) {
+      int depth = getDepth(line);
+      if (depth > prunedDepth) {
+        continue;
+      }
+      prunedDepth = Integer.MAX_VALUE;
+      if (ignored.contains(parseDep(line).getCoordinates())) {
+        prunedDepth = depth;
+        continue;
+      }
+      lines.add(line);
+    }
+    return lines;
+  }
+
+  /**
+   * Split the text output of the dependency tree goal into the trees of the reactor modules. Each
+   * tree starts with the root line of its module, which is the only line with depth 0.
+   */
+  private List<List<String>> splitReactorTrees(List<String> lines) {
+    List<List<String>> trees = new ArrayList<>();
+    List<String> current = null;
+    for (String line : lines) {
+      if (line.isBlank()) {
+        continue;
+      }
+      if (getDepth(line) == 0) {
+        current = new ArrayList<>();
+        trees.add(current);
+      }
+      if (current != null) {
+        current.add(line);
+      }
+    }
+    return trees;
+  }
+
   @Override
   public Content provideComponent() throws IOException {
     // build effective pom command
@@ -127,29 +280,23 @@ public Content provideComponent() throws IOException {
   }
 
   private Content generateSbomFromEffectivePom() throws IOException {
-    var tmpEffPom = Files.createTempFile("exhort_eff_pom_", ".xml");
-    var mvnEffPomCmd =
-        buildMvnCommandArgs(
-            "clean",
-            "help:effective-pom",
-            String.format("-Doutput=%s", tmpEffPom.toString()),
-            "-f",
-            manifest.toString(),
-            "--batch-mode",
-            "-q");
-    // execute the effective pom command
-    Operations.runProcess(
-        manifest.getParent(), mvnEffPomCmd.toArray(String[]::new), getMvnExecEnvs());
-    if (debugLoggingIsNeeded()) {
-      String CaEffectivePoM = Files.readString(tmpEffPom);
+    var effectivePomKey = getEffectivePomKey();
+    var effectivePom = Objects.isNull(effectivePomKey) ? null : EFFECTIVE_POMS.get(effectivePomKey);
+    if (Objects.isNull(effectivePom)) {
+      effectivePom = runEffectivePom();
+      if (!Objects.isNull(effectivePomKey)) {
+        EFFECTIVE_POMS.put(effectivePomKey, effectivePom);
+      }
+    } else if (debugLoggingIsNeeded()) {
       log.info(
           String.format(
-              "Package Manager Maven Component Analysis Effective POM Output : %s %s",
-              System.lineSeparator(), CaEffectivePoM));
+              "Package Manager Maven Component Analysis reusing the Effective POM of %s, the pom"
+                  + " and its parents haven't changed",
+              manifest));
     }
     // if we have dependencies marked as ignored grab ignored dependencies from the original pom
     // the effective-pom goal doesn't carry comments
-    List<DependencyAggregator> dependencies = getDependencies(manifest);
+    List<DependencyAggregator> dependencies = getPomModel(manifest).dependencies;
     var ignored =
         dependencies.stream()
             .filter(d -> d.ignored)
@@ -159,9 +306,8 @@ private Content generateSbomFromEffectivePom() throws IOException {
         dependencies.stream()
             .filter(DependencyAggregator::isTestDependency)
             .collect(Collectors.toSet());
-    var deps = getDependencies(tmpEffPom);
-    var sbom = SbomFactory.newInstance().addRoot(getRoot(tmpEffPom));
-    deps.stream()
+    var sbom = SbomFactory.newInstance().addRoot(effectivePom.root);
+    effectivePom.dependencies.stream()
         .filter(dep -> !testsDeps.contains(dep))
         .map(DependencyAggregator::toPurl)
         .filter(dep -> ignored.stream().noneMatch(artifact -> artifact.isCoordinatesEquals(dep)))
@@ -171,11 +317,189 @@ private Content generateSbomFromEffectivePom() throws IOException {
     return new Content(sbom.getAsJsonString().getBytes(), Api.CYCLONEDX_MEDIA_TYPE);
   }
 
+  private EffectivePom runEffectivePom() throws IOException {
+    var tmpEffPom = Files.createTempFile("exhort_eff_pom_", ".xml");
+    var mvnEffPomCmd =
+        buildMvnCommandArgs(
+            "clean",
+            "help:effective-pom",
+            String.format("-Doutput=%s", tmpEffPom.toString()),
+            "-f",
+            manifest.toString(),
+            "--batch-mode",
+            "-q");
+    // execute the effective pom command
+    Operations.runProcess(
+        manifest.getParent(), mvnEffPomCmd.toArray(String[]::new), getMvnExecEnvs());
+    if (debugLoggingIsNeeded()) {
+      String CaEffectivePoM = Files.readString(tmpEffPom);
+      log.info(
+          String.format(
+              "Package Manager Maven Component Analysis Effective POM Output : %s %s",
+              System.lineSeparator(), CaEffectivePoM));
+    }
+    var effectivePom = new EffectivePom(getRoot(tmpEffPom), getDependencies(tmpEffPom));
+    Files.deleteIfExists(tmpEffPom);
+    return effectivePom;
+  }
+
+  /**
+   * Get the key of the effective pom of the manifest. The effective pom depends on the pom, its
+   * parents, the mvn arguments and configuration, i.e. the user settings and the {@code .mvn}
+   * directory of the project, and on the JDK activating profiles. So the key is the hash of the pom
+   * contents along the local parent chain, of the mvn arguments, of the configuration files and of
+   * the JDK.
+   *
+   * @return the key of the effective pom, or null if it can't be cached, i.e. a parent or an
+   *     imported bom is a snapshot resolved from a repository
+   * @throws IOException when failed to read one of the poms
+   */
+  private String getEffectivePomKey() throws IOException {
+    var key = new StringBuilder(String.join(" ", buildMvnCommandArgs()));
+    appendJdk(key);
+    var userSettings =
+        Objects.requireNonNullElse(
+            Operations.getMavenConfig("USER_SETTINGS"),
+            Path.of(System.getProperty("user.home"), ".m2", "settings.xml").toString());
+    key.append(':').append(CacheFiles.sha256(Path.of(userSettings), ""));
+    var mvnDir = getMavenConfigDir(manifest.toAbsolutePath().normalize().getParent());
+    if (!Objects.isNull(mvnDir)) {
+      key.append(':').append(CacheFiles.sha256(mvnDir.resolve("maven.config"), ""));
+      key.append(':').append(CacheFiles.sha256(mvnDir.resolve("jvm.config"), ""));
+      key.append(':').append(CacheFiles.sha256(mvnDir.resolve("extensions.xml"), ""));
+    }
+    Set<Path> visited = new HashSet<>();
+    List<PomModel> chain = new ArrayList<>();
+    Path pom = manifest.toAbsolutePath().normalize();
+    while (!Objects.isNull(pom) && visited.add(pom)) {
+      var model = getPomModel(pom);
+      chain.add(model);
+      key.append(':').append(model.hash);
+      if (!model.hasParent) {
+        break;
+      }
+      pom = getLocalParent(pom, model);
+      if (Objects.isNull(pom)
+          && !Objects.isNull(model.parentVersion)
+          && model.parentVersion.trim().endsWith("-SNAPSHOT")) {
+        return null;
+      }
+    }
+    if (importsSnapshot(chain)) {
+      return null;
+    }
+    return CacheFiles.sha256(key.toString());
+  }
+
+  /**
+   * Whether a pom of the local parent chain imports a bom which may be a snapshot, i.e. its version
+   * is a snapshot or refers to a property not defined along the chain.
+   */
+  private static boolean importsSnapshot(List<PomModel> chain) {
+    Map<String, String> properties = new HashMap<>();
+    // the properties of a pom override the ones of its parents
+    for (int i = chain.size() - 1; i >= 0; i--) {
+      properties.putAll(chain.get(i).properties);
+    }
+    for (var model : chain) {
+      for (var version : model.importedVersions) {
+        var resolved = version;
+        for (int i = 0; i < 10 && resolved.contains("${"); i++) {
+          var start = resolved.indexOf("${");
+          var end = resolved.indexOf('}', start);
+          var value = end < 0 ? null : properties.get(resolved.substring(start + 2, end));
+          if (Objects.isNull(value)) {
+            return true;
+          }
+          resolved = resolved.substring(0, start) + value + resolved.substring(end + 1);
+        }
+        if (resolved.contains("${") || resolved.endsWith("-SNAPSHOT")) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /** Appends the JDK running mvn, either the one of JAVA_HOME or the one found in the path. */
+  private void appendJdk(StringBuilder key) throws IOException {
+    var mvnEnvs = getMvnExecEnvs();
+    if (Objects.isNull(mvnEnvs)) {
+      key.append(':').append(Environment.get("PATH", ""));
+      return;
+    }
+    var javaHome = mvnEnvs.get(PROP_JAVA_HOME);
+    key.append(':').append(javaHome);
+    // the release file carries the version of the JDK, which may be updated in place
+    key.append(':').append(CacheFiles.sha256(Path.of(javaHome, "release"), ""));
+  }
+
+  /**
+   * @return the {@code .mvn} directory of the project, looked up from the directory of the pom up
+   *     to the root like mvn does to find the base directory of the project, or null if none
+   */
+  private static Path getMavenConfigDir(Path directory) {
+    for (Path dir = directory; !Objects.isNull(dir); dir = dir.getParent()) {
+      if (Files.isDirectory(dir.resolve(".mvn"))) {
+        return dir.resolve(".mvn");
+      }
+    }
+    return null;
+  }
+
+  private static Path getLocalParent(Path pom, PomModel model) {
+    // an empty relative path means the parent is always resolved from a repository
+    if (Objects.isNull(model.parentRelativePath) || model.parentRelativePath.isBlank()) {
+      return null;
+    }
+    var parent = pom.getParent().resolve(model.parentRelativePath.trim()).normalize();
+    if (Files.isDirectory(parent)) {
+      parent = parent.resolve("pom.xml");
+    }
+    return Files.isRegularFile(parent) ? parent : null;
+  }
+
+  /**
+   * Get the parsed model of a pom. The model is cached by the hash of the pom contents, so a pom is
+   * parsed only once as long as it isn't modified.
+   *
+   * @param manifestPath the path of the pom
+   * @return the parsed model of the pom
+   * @throws IOException when failed to read or parse the pom
+   */
+  private static PomModel getPomModel(final Path manifestPath) throws IOException {
+    var content = Files.readAllBytes(manifestPath);
+    var hash = CacheFiles.sha256(content);
+    var model = POM_MODELS.get(hash);
+    if (Objects.isNull(model)) {
+      model = parsePomModel(hash, content);
+      POM_MODELS.put(hash, model);
+    }
+    return model;
+  }
+
+  private static <V> Map<String, V> newLruCache(int maxSize) {
+    return Collections.synchronizedMap(
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+            return size() > maxSize;
+          }
+        });
+  }
+
+  private static XMLStreamReader createXMLStreamReader(InputStream inputStream)
+      throws XMLStreamException {
+    // StAX doesn't guarantee a thread-safe factory, only the creation of readers is synchronized
+    synchronized (XML_INPUT_FACTORY) {
+      return XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+    }
+  }
+
   private PackageURL getRoot(final Path manifestPath) throws IOException {
     XMLStreamReader reader = null;
-    try {
-      reader =
-          XMLInputFactory.newInstance().createXMLStreamReader(Files.newInputStream(manifestPath));
+    try (var inputStream = Files.newInputStream(manifestPath)) {
+      reader = createXMLStreamReader(inputStream);
       DependencyAggregator dependencyAggregator = null;
       boolean isRoot = false;
       while (reader.hasNext()) {
@@ -222,13 +546,20 @@ private PackageURL getRoot(final Path manifestPath) throws IOException {
     throw new IllegalStateException("Unable to retrieve Root dependency from effective pom");
   }
 
-  private List<DependencyAggregator> getDependencies(final Path manifestPath) throws IOException {
+  private static List<DependencyAggregator> getDependencies(final Path manifestPath)
+      throws IOException {
+    try (var inputStream = Files.newInputStream(manifestPath)) {
+      return getDependencies(inputStream);
+    }
+  }
+
+  private static List<DependencyAggregator> getDependencies(final InputStream inputStream)
+      throws IOException {
     List<DependencyAggregator> deps = new ArrayList<>();
     XMLStreamReader reader = null;
     try {
       // get a xml stream reader for the manifest file
-      reader =
-          XMLInputFactory.newInstance().createXMLStreamReader(Files.newInputStream(manifestPath));
+      reader = createXMLStreamReader(inputStream);
       // the following dependencyIgnore object is used to aggregate dependency data over iterations
       // when a "dependency" tag starts, it will be initiated,
       // when a "dependency" tag ends, it will be parsed, act upon, and reset
@@ -332,6 +663,149 @@ private List<DependencyAggregator> getDependencies(final Path manifestPath) thro
     return deps;
   }
 
+  private ProjectDescriptor getProjectDescriptor(final Path manifestPath) throws IOException {
+    var root = manifestPath.toAbsolutePath().normalize();
+    Map<String, Path> poms = new LinkedHashMap<>();
+    Set<Path> aggregators = new HashSet<>();
+    collectModulePoms(root, poms, aggregators, new HashSet<>());
+    return new ProjectDescriptor(root, poms, aggregators);
+  }
+
+  /** Collect the pom and the poms of its modules, the modules of nested reactors included. */
+  private static void collectModulePoms(
+      Path pom, Map<String, Path> poms, Set<Path> aggregators, Set<Path> visited)
+      throws IOException {
+    if (!visited.add(pom) || !Files.isRegularFile(pom)) {
+      return;
+    }
+    var model = getPomModel(pom);
+    poms.putIfAbsent(model.getKey(), pom);
+    if (!model.modules.isEmpty()) {
+      aggregators.add(pom);
+    }
+    for (String name : model.modules) {
+      var module = pom.getParent().resolve(name.trim()).normalize();
+      collectModulePoms(
+          Files.isDirectory(module) ? module.resolve("pom.xml") : module,
+          poms,
+          aggregators,
+          visited);
+    }
+  }
+
+  private static PomModel parsePomModel(String hash, byte[] content) throws IOException {
+    String groupId = null;
+    String parentGroupId = null;
+    String artifactId = null;
+    List<String> modules = new ArrayList<>();
+    boolean hasParent = false;
+    // maven looks up the parent in the parent directory by default
+    String parentRelativePath = "../pom.xml";
+    String parentVersion = null;
+    Map<String, String> properties = new HashMap<>();
+    List<String> importedVersions = new ArrayList<>();
+    XMLStreamReader reader = null;
+    try {
+      reader = createXMLStreamReader(new ByteArrayInputStream(content));
+      // depth 1 is the project tag, its own coordinates, parent and modules list are at depth 2
+      int depth = 0;
+      boolean insideModules = false;
+      boolean insideParent = false;
+      boolean insideProperties = false;
+      boolean insideDependencyManagement = false;
+      // the scope and version of a managed dependency, at depth 5
+      String managedScope = null;
+      String managedVersion = null;
+      while (reader.hasNext()) {
+        reader.next(); // get the next event
+        if (reader.isStartElement()) {
+          depth++;
+          if (depth == 2 && "artifactId".equals(reader.getLocalName())) {
+            artifactId = reader.getElementText().trim();
+            depth--;
+          } else if (depth == 2 && "groupId".equals(reader.getLocalName())) {
+            groupId = reader.getElementText().trim();
+            depth--;
+          } else if (depth == 2 && "modules".equals(reader.getLocalName())) {
+            insideModules = true;
+          } else if (depth == 2 && "parent".equals(reader.getLocalName())) {
+            hasParent = true;
+            insideParent = true;
+          } else if (depth == 2 && "properties".equals(reader.getLocalName())) {
+            insideProperties = true;
+          } else if (depth == 2 && "dependencyManagement".equals(reader.getLocalName())) {
+            insideDependencyManagement = true;
+          } else if (depth == 3 && insideProperties) {
+            properties.put(reader.getLocalName(), reader.getElementText().trim());
+            depth--;
+          } else if (depth == 5
+              && insideDependencyManagement
+              && "scope".equals(reader.getLocalName())) {
+            managedScope = reader.getElementText().trim();
+            depth--;
+          } else if (depth == 5
+              && insideDependencyManagement
+              && "version".equals(reader.getLocalName())) {
+            managedVersion = reader.getElementText().trim();
+            depth--;
+          } else if (depth == 3 && insideModules && "module".equals(reader.getLocalName())) {
+            modules.add(reader.getElementText().trim());
+            depth--;
+          } else if (depth == 3 && insideParent && "relativePath".equals(reader.getLocalName())) {
+            parentRelativePath = reader.getElementText();
+            depth--;
+          } else if (depth == 3 && insideParent && "groupId".equals(reader.getLocalName())) {
+            parentGroupId = reader.getElementText().trim();
+            depth--;
+          } else if (depth == 3 && insideParent && "version".equals(reader.getLocalName())) {
+            parentVersion = reader.getElementText();
+            depth--;
+          }
+        } else if (reader.isEndElement()) {
+          if (depth == 2 && "modules".equals(reader.getLocalName())) {
+            insideModules = false;
+          } else if (depth == 2 && "parent".equals(reader.getLocalName())) {
+            insideParent = false;
+          } else if (depth == 2 && "properties".equals(reader.getLocalName())) {
+            insideProperties = false;
+          } else if (depth == 2 && "dependencyManagement".equals(reader.getLocalName())) {
+            insideDependencyManagement = false;
+          } else if (depth == 4
+              && insideDependencyManagement
+              && "dependency".equals(reader.getLocalName())) {
+            if ("import".equals(managedScope)) {
+              importedVersions.add(Objects.requireNonNullElse(managedVersion, ""));
+            }
+            managedScope = null;
+            managedVersion = null;
+          }
+          depth--;
+        }
+      }
+    } catch (XMLStreamException exc) {
+      throw new IOException(exc);
+    } finally {
+      if (!Objects.isNull(reader)) {
+        try {
+          reader.close(); // close stream if open
+        } catch (XMLStreamException e) {
+          //
+        }
+      }
+    }
+    return new PomModel(
+        hash,
+        Objects.isNull(groupId) ? parentGroupId : groupId,
+        artifactId,
+        modules,
+        hasParent,
+        parentRelativePath,
+        parentVersion,
+        properties,
+        importedVersions,
+        getDependencies(new ByteArrayInputStream(content)));
+  }
+
   Map<String, String> getMvnExecEnvs() {
     var javaHome = Environment.get(PROP_JAVA_HOME);
     if (javaHome != null && !javaHome.isBlank()) {
@@ -362,6 +836,123 @@ private List<String> buildMvnCommandArgs(String... baseArgs) {
     return args;
   }
 
+  /** The poms of a project and of its reactor modules, keyed by group-id:artifact-id. */
+  private final class ProjectDescriptor {
+    private final Path root;
+    private final Map<String, Path> poms;
+    private final Set<Path> aggregators;
+
+    private ProjectDescriptor(Path root, Map<String, Path> poms, Set<Path> aggregators) {
+      this.root = root;
+      this.poms = poms;
+      this.aggregators = aggregators;
+    }
+
+    Path root() {
+      return root;
+    }
+
+    boolean isReactor() {
+      return poms.size() > 1;
+    }
+
+    /**
+     * @return the pom of the module of a tree, or the project pom if the module is unknown
+     */
+    Path pomOf(List<String> tree) {
+      var module = parseDep(tree.get(0));
+      return poms.getOrDefault(module.getNamespace() + ":" + module.getName(), root);
+    }
+
+    boolean isRootTree(List<String> tree) {
+      return pomOf(tree).equals(root);
+    }
+
+    /**
+     * @return whether the tree is the one of the project pom or of a nested aggregating pom
+     */
+    boolean isAggregatorTree(List<String> tree) {
+      return aggregators.contains(pomOf(tree));
+    }
+
+    /**
+     * Get the dependencies marked as ignored in a pom or in its local parents, whose dependencies
+     * the pom inherits.
+     *
+     * @return the ignored dependencies of the pom
+     */
+    List<DependencyAggregator> getIgnoredDependencies(Path pom) throws IOException {
+      List<DependencyAggregator> ignored = new ArrayList<>();
+      Set<Path> visited = new HashSet<>();
+      while (!Objects.isNull(pom) && visited.add(pom)) {
+        var model = getPomModel(pom);
+        model.dependencies.stream().filter(d -> d.ignored).forEach(ignored::add);
+        pom = model.hasParent ? getLocalParent(pom, model) : null;
+      }
+      return ignored;
+    }
+  }
+
+  /**
+   * The parsed contents of a pom which are needed for the analysis. A model depends only on the pom
+   * contents, paths are kept as declared and resolved against the pom location by the caller.
+   */
+  private static final class PomModel {
+    private final String hash;
+    private final String groupId;
+    private final String artifactId;
+    private final List<String> modules;
+    private final boolean hasParent;
+    private final String parentRelativePath;
+    private final String parentVersion;
+    private final Map<String, String> properties;
+    // the versions of the boms imported in the dependency management
+    private final List<String> importedVersions;
+    private final List<DependencyAggregator> dependencies;
+
+    private PomModel(
+        String hash,
+        String groupId,
+        String artifactId,
+        List<String> modules,
+        boolean hasParent,
+        String parentRelativePath,
+        String parentVersion,
+        Map<String, String> properties,
+        List<String> importedVersions,
+        List<DependencyAggregator> dependencies) {
+      this.hash = hash;
+      this.groupId = groupId;
+      this.artifactId = artifactId;
+      this.modules = Collections.unmodifiableList(modules);
+      this.hasParent = hasParent;
+      this.parentRelativePath = parentRelativePath;
+      this.parentVersion = parentVersion;
+      this.properties = Collections.unmodifiableMap(properties);
+      this.importedVersions = Collections.unmodifiableList(importedVersions);
+      this.dependencies = Collections.unmodifiableList(dependencies);
+    }
+
+    /**
+     * @return the key of the module, i.e. group-id:artifact-id, the group id being inherited from
+     *     the parent when not declared
+     */
+    String getKey() {
+      return groupId + ":" + artifactId;
+    }
+  }
+
+  /** The root and the direct dependencies of an effective pom. */
+  private static final class EffectivePom {
+    private final PackageURL root;
+    private final List<DependencyAggregator> dependencies;
+
+    private EffectivePom(PackageURL root, List<DependencyAggregator> dependencies) {
+      this.root = root;
+      this.dependencies = Collections.unmodifiableList(dependencies);
+    }
+  }
+
   // NOTE if we want to include "scope" tags in ignore,
   // add property here and a case in the start-element-switch in the getIgnored method
 
@@ -384,6 +975,19 @@ public String toString() {
       return String.format("%s:%s:%s:%s", groupId, artifactId, scope, version);
     }
 
+    /**
+     * Get the artifact pattern of the dependency to use as excludes for the dependency:tree plugin.
+     * The pattern syntax is group-id:artifact-id:type:version, a version which is missing or refers
+     * to a property matches any version.
+     *
+     * @return an exclude pattern for the dependency:tree plugin, i.e.
+     *     group-id:artifact-id:*:version
+     */
+    String toExcludePattern() {
+      var versionPattern = Objects.isNull(version) || version.contains("${") ? "*" : version.trim();
+      return String.format("%s:%s:*:%s", groupId, artifactId, versionPattern);
+    }
+
     public boolean isValid() {
       return Objects.nonNull(groupId) && Objects.nonNull(artifactId) && Objects.nonNull(version);
     }
@@ -15,16 +15,29 @@
  */
 package com.redhat.exhort.providers;
 
+import com.redhat.exhort.logging.LoggersFactory;
+import com.redhat.exhort.providers.javascript.model.DependencyGraph;
+import com.redhat.exhort.providers.javascript.model.PackageLock;
 import com.redhat.exhort.tools.Ecosystem;
 import com.redhat.exhort.tools.Operations;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
 
 /**
  * Concrete implementation of the {@link JavaScriptProvider} used for converting dependency trees
- * for npm projects (package.json) into a SBOM content for Stack analysis or Component analysis.
+ * for npm projects (package.json) into a SBOM content for Stack analysis or Component analysis. The
+ * dependencies are read from the package-lock.json, npm lists them only when the lock file is
+ * outdated or written by npm 6 and before.
  */
 public final class JavaScriptNpmProvider extends JavaScriptProvider {
 
+  private static final Logger log = LoggersFactory.getLogger(JavaScriptNpmProvider.class.getName());
+
   public static final String LOCK_FILE = "package-lock.json";
   public static final String CMD_NAME = Operations.isWindows() ? "npm.cmd" : "npm";
 
@@ -53,4 +66,40 @@ protected String[] listDepsCmd(boolean includeTransitive, Path manifestDir) {
       "--json"
     };
   }
+
+  @Override
+  protected boolean listsSharedDependenciesBreadthFirst() {
+    return true;
+  }
+
+  @Override
+  protected Map<Path, DependencyGraph> readLockFile(Path manifestDir, List<Path> workspaces) {
+    Path lockFile = manifestDir.resolve(LOCK_FILE);
+    if (!Files.isRegularFile(lockFile)) {
+      return null;
+    }
+    try {
+      PackageLock packageLock = PackageLock.read(lockFile);
+      Map<Path, DependencyGraph> graphs = new HashMap<>();
+      for (Path workspace : workspaces) {
+        Path packageJson = manifestDir.resolve(workspace).resolve("package.json");
+        String location = workspacePath(workspace, "");
+        if (!packageLock.isUpToDate(location, objectMapper.readTree(packageJson.toFile()))) {
+          log.fine(
+              "The dependencies of "
+                  + packageJson
+                  + " differ from "
+                  + lockFile
+                  + ", listing them with npm");
+          return null;
+        }
+        graphs.put(workspace, packageLock.toGraph(location));
+      }
+      return graphs;
+    } catch (IOException | IllegalStateException e) {
+      log.fine(
+          "Could not read " + lockFile + ", listing the dependencies with npm: " + e.getMessage());
+      return null;
+    }
+  }
 }
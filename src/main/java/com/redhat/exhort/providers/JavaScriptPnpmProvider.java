@@ -17,16 +17,30 @@
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.redhat.exhort.logging.LoggersFactory;
+import com.redhat.exhort.providers.javascript.model.DependencyGraph;
+import com.redhat.exhort.providers.javascript.model.PnpmLock;
 import com.redhat.exhort.tools.Ecosystem;
 import com.redhat.exhort.tools.Operations;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
 
 /**
  * Concrete implementation of the {@link JavaScriptProvider} used for converting dependency trees
  * for pnpm projects (package.json) into a SBOM content for Stack analysis or Component analysis.
+ * The dependencies are read from the pnpm-lock.yaml, pnpm lists them only when the lock file is
+ * outdated or of a version other than 6 or 9.
  */
 public final class JavaScriptPnpmProvider extends JavaScriptProvider {
 
+  private static final Logger log =
+      LoggersFactory.getLogger(JavaScriptPnpmProvider.class.getName());
+
   public static final String LOCK_FILE = "pnpm-lock.yaml";
   public static final String CMD_NAME = Operations.isWindows() ? "pnpm.cmd" : "pnpm";
 
@@ -69,4 +83,35 @@ protected JsonNode buildDependencyTree(boolean includeTransitive) throws JsonPro
     var depTree = super.buildDependencyTree(includeTransitive);
     return depTree.get(0);
   }
+
+  @Override
+  protected Map<Path, DependencyGraph> readLockFile(Path manifestDir, List<Path> workspaces) {
+    Path lockFile = manifestDir.resolve(LOCK_FILE);
+    if (!Files.isRegularFile(lockFile)) {
+      return null;
+    }
+    try {
+      PnpmLock pnpmLock = PnpmLock.read(lockFile);
+      Map<Path, DependencyGraph> graphs = new HashMap<>();
+      for (Path workspace : workspaces) {
+        Path packageJson = manifestDir.resolve(workspace).resolve("package.json");
+        String importer = workspacePath(workspace, ".");
+        if (!pnpmLock.isUpToDate(importer, objectMapper.readTree(packageJson.toFile()))) {
+          log.fine(
+              "The dependencies of "
+                  + packageJson
+                  + " differ from "
+                  + lockFile
+                  + ", listing them with pnpm");
+          return null;
+        }
+        graphs.put(workspace, pnpmLock.toGraph(importer));
+      }
+      return graphs;
+    } catch (IOException | IllegalStateException e) {
+      log.fine(
+          "Could not read " + lockFile + ", listing the dependencies with pnpm: " + e.getMessage());
+      return null;
+    }
+  }
 }
@@ -24,7 +24,9 @@
 import com.redhat.exhort.Api;
 import com.redhat.exhort.Provider;
 import com.redhat.exhort.logging.LoggersFactory;
+import com.redhat.exhort.providers.javascript.model.DependencyGraph;
 import com.redhat.exhort.providers.javascript.model.Manifest;
+import com.redhat.exhort.providers.javascript.model.Workspaces;
 import com.redhat.exhort.sbom.Sbom;
 import com.redhat.exhort.sbom.SbomFactory;
 import com.redhat.exhort.tools.Ecosystem;
@@ -32,17 +34,25 @@
 import com.redhat.exhort.utils.Environment;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 /**
  * Abstract implementation of the {@link Provider} used for converting dependency trees for
@@ -52,7 +62,11 @@
 public abstract class JavaScriptProvider extends Provider {
 
   public static final String ENV_NODE_HOME = "NODE_HOME";
+  public static final String PROP_EXHORT_JS_LOCK_FILE_STAMP = "EXHORT_JS_LOCK_FILE_STAMP";
+  public static final String PROP_EXHORT_JS_MERGE_WORKSPACES = "EXHORT_JS_MERGE_WORKSPACES";
   private static final String PROP_PATH = "PATH";
+  // the directory of the project itself, relative to the project
+  private static final Path PROJECT = Path.of("");
 
   private static final Logger log = LoggersFactory.getLogger(JavaScriptProvider.class.getName());
 
@@ -90,6 +104,69 @@ public Content provideStack() throws IOException {
         sbom.getAsJsonString().getBytes(StandardCharsets.UTF_8), Api.CYCLONEDX_MEDIA_TYPE);
   }
 
+  /**
+   * Provides a stack analysis content for every workspace of the project, declared by the {@code
+   * workspaces} of its package.json or by its pnpm-workspace.yaml. The lock file of the project is
+   * updated and read once for all the workspaces, and the SBOMs are built in parallel. Dependencies
+   * on other workspaces are kept as regular edges. The project itself is included only if it has
+   * production dependencies of its own, for a project without workspaces the map contains only the
+   * project. When the lock file cannot be read for the workspaces, the dependencies of every
+   * workspace are listed by the package manager instead, one workspace after the other.
+   *
+   * @return the content of each workspace, keyed by the workspace package url coordinates
+   * @throws IOException when failed to load the manifests or the lock file
+   * @throws IllegalStateException when two workspaces have the same coordinates
+   */
+  @Override
+  public Map<String, Content> provideStackPerModule() throws IOException {
+    Path manifestDir = getManifestDir();
+    List<Path> workspaces = findWorkspaces(manifestDir);
+    if (workspaces.isEmpty()) {
+      return new TreeMap<>(Map.of(manifest.root.getCoordinates(), provideStack()));
+    }
+    List<Path> projects = new ArrayList<>();
+    if (!manifest.dependencies.isEmpty()) {
+      projects.add(PROJECT);
+    }
+    projects.addAll(workspaces);
+    Map<Path, DependencyGraph> graphs = readWorkspacesLockFile(manifestDir, projects);
+    List<Sbom> sboms;
+    if (graphs != null) {
+      try {
+        sboms =
+            projects.parallelStream()
+                .map(project -> buildWorkspaceSbom(manifestDir, project, graphs.get(project)))
+                .collect(Collectors.toList());
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    } else {
+      // the package manager updates the lock file shared by the workspaces, one at a time
+      sboms = new ArrayList<>();
+      for (Path project : projects) {
+        sboms.add(listWorkspaceSbom(manifestDir, project));
+      }
+    }
+    Map<String, Content> contents = new TreeMap<>();
+    Map<String, Path> projectsByCoordinates = new HashMap<>();
+    for (int i = 0; i < projects.size(); i++) {
+      Sbom sbom = sboms.get(i);
+      String coordinates = sbom.getRoot().getCoordinates();
+      Path other = projectsByCoordinates.putIfAbsent(coordinates, projects.get(i));
+      if (other != null) {
+        throw new IllegalStateException(
+            String.format(
+                "Workspaces '%s' and '%s' of %s have the same coordinates %s",
+                other, projects.get(i), manifestDir, coordinates));
+      }
+      contents.put(
+          coordinates,
+          new Content(
+              sbom.getAsJsonString().getBytes(StandardCharsets.UTF_8), Api.CYCLONEDX_MEDIA_TYPE));
+    }
+    return contents;
+  }
+
   @Override
   public Content provideComponent() throws IOException {
     return new Content(
@@ -118,7 +195,20 @@ public static PackageURL toPurl(String name) {
     }
   }
 
-  private void addDependenciesOf(Sbom sbom, PackageURL from, JsonNode node) {
+  /**
+   * Adds the dependencies of a package of the tree listed by the package manager. The subtrees of a
+   * package listed several times being identical, the dependencies of a package are walked once,
+   * from the first occurrence listing them.
+   *
+   * @param purls the package urls of the packages met, by name@version
+   * @param walked the packages whose dependencies were walked, by name@version
+   */
+  private void addDependenciesOf(
+      Sbom sbom,
+      PackageURL from,
+      JsonNode node,
+      Map<String, PackageURL> purls,
+      Set<String> walked) {
     var dependencies = node.get("dependencies");
     if (dependencies == null) {
       return;
@@ -126,15 +216,28 @@ private void addDependenciesOf(Sbom sbom, PackageURL from, JsonNode node) {
     Iterator<Entry<String, JsonNode>> fields = dependencies.fields();
     while (fields.hasNext()) {
       Entry<String, JsonNode> e = fields.next();
-      String name = e.getKey();
       JsonNode versionNode = e.getValue().get("version");
       if (versionNode == null) {
         continue; // ignore optional dependencies
       }
-      String version = versionNode.asText();
-      PackageURL purl = toPurl(name, version);
-      sbom.addDependency(from, purl, null);
-      addDependenciesOf(sbom, purl, e.getValue());
+      addDependency(sbom, from, e.getKey(), versionNode.asText(), e.getValue(), purls, walked);
+    }
+  }
+
+  private void addDependency(
+      Sbom sbom,
+      PackageURL from,
+      String name,
+      String version,
+      JsonNode node,
+      Map<String, PackageURL> purls,
+      Set<String> walked) {
+    String key = name + "@" + version;
+    PackageURL purl = purls.computeIfAbsent(key, k -> toPurl(name, version));
+    sbom.addDependency(from, purl, null);
+    // a package listed without its dependencies, e.g. deduped by npm, is walked where listed with
+    if (node.has("dependencies") && walked.add(key)) {
+      addDependenciesOf(sbom, purl, node, purls, walked);
     }
   }
 
@@ -150,35 +253,226 @@ protected final String[] getExecEnvAsArgs() {
   }
 
   private Sbom getDependencySbom() throws IOException {
-    var depTree = buildDependencyTree(true);
+    if (Environment.getBoolean(PROP_EXHORT_JS_MERGE_WORKSPACES, false)) {
+      Path manifestDir = getManifestDir();
+      List<Path> workspaces = findWorkspaces(manifestDir);
+      if (!workspaces.isEmpty()) {
+        return getMergedWorkspacesSbom(manifestDir, workspaces);
+      }
+    }
     var sbom = SbomFactory.newInstance();
     sbom.addRoot(manifest.root);
-    addDependenciesToSbom(sbom, depTree);
+    var graph = readLockFile(getManifestDir());
+    if (graph != null) {
+      addDependenciesToSbom(sbom, manifest.root, graph);
+    } else {
+      addListedDependenciesToSbom(sbom);
+    }
     sbom.filterIgnoredDeps(manifest.ignored);
     return sbom;
   }
 
+  /**
+   * Builds a single SBOM of the project and of all its workspaces, every workspace being a
+   * dependency of the project, from the lock file read once, or listed by the package manager when
+   * it cannot be read.
+   */
+  private Sbom getMergedWorkspacesSbom(Path manifestDir, List<Path> workspaces) throws IOException {
+    List<Path> projects = new ArrayList<>();
+    projects.add(PROJECT);
+    projects.addAll(workspaces);
+    Map<Path, DependencyGraph> graphs = readWorkspacesLockFile(manifestDir, projects);
+    if (graphs == null) {
+      return getListedMergedWorkspacesSbom(manifestDir, workspaces);
+    }
+    var sbom = SbomFactory.newInstance();
+    sbom.addRoot(manifest.root);
+    addDependenciesToSbom(sbom, manifest.root, graphs.get(PROJECT));
+    Set<String> ignored = new HashSet<>(manifest.ignored);
+    for (Path workspace : workspaces) {
+      var workspaceManifest = new Manifest(manifestDir.resolve(workspace).resolve("package.json"));
+      sbom.addDependency(manifest.root, workspaceManifest.root, null);
+      addDependenciesToSbom(sbom, workspaceManifest.root, graphs.get(workspace));
+      ignored.addAll(workspaceManifest.ignored);
+    }
+    sbom.filterIgnoredDeps(ignored);
+    return sbom;
+  }
+
+  /**
+   * Builds the single SBOM of the project and of all its workspaces from the dependencies of every
+   * workspace listed by the package manager, when the lock file cannot be read.
+   */
+  private Sbom getListedMergedWorkspacesSbom(Path manifestDir, List<Path> workspaces)
+      throws IOException {
+    var sbom = listWorkspaceSbom(manifestDir, PROJECT);
+    for (Path workspace : workspaces) {
+      var workspaceSbom = listWorkspaceSbom(manifestDir, workspace);
+      sbom.addDependency(manifest.root, workspaceSbom.getRoot(), null);
+      JsonNode dependencies =
+          objectMapper.readTree(workspaceSbom.getAsJsonString()).path("dependencies");
+      for (JsonNode dependency : dependencies) {
+        PackageURL from = parsePurl(dependency.get("ref").asText());
+        for (JsonNode target : dependency.path("dependsOn")) {
+          sbom.addDependency(from, parsePurl(target.asText()), null);
+        }
+      }
+    }
+    return sbom;
+  }
+
+  /**
+   * Lists the dependencies of a workspace with the package manager run in its directory, the
+   * ignored dependencies of the workspace being left out.
+   */
+  private Sbom listWorkspaceSbom(Path manifestDir, Path workspace) throws IOException {
+    JavaScriptProvider provider =
+        workspace.equals(PROJECT)
+            ? this
+            : JavaScriptProviderFactory.create(
+                manifestDir.resolve(workspace).resolve("package.json"), lockFileName());
+    var sbom = SbomFactory.newInstance();
+    sbom.addRoot(provider.manifest.root);
+    provider.addListedDependenciesToSbom(sbom);
+    return sbom.filterIgnoredDeps(provider.manifest.ignored);
+  }
+
+  private static PackageURL parsePurl(String purl) {
+    try {
+      return new PackageURL(purl);
+    } catch (MalformedPackageURLException e) {
+      throw new IllegalStateException("Invalid package url " + purl, e);
+    }
+  }
+
+  private Sbom buildWorkspaceSbom(Path manifestDir, Path workspace, DependencyGraph graph) {
+    try {
+      var workspaceManifest = new Manifest(manifestDir.resolve(workspace).resolve("package.json"));
+      var sbom = SbomFactory.newInstance();
+      sbom.addRoot(workspaceManifest.root);
+      addDependenciesToSbom(sbom, workspaceManifest.root, graph);
+      return sbom.filterIgnoredDeps(workspaceManifest.ignored);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static List<Path> findWorkspaces(Path manifestDir) throws IOException {
+    return Workspaces.find(manifestDir).stream()
+        .map(manifestDir::relativize)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Reads the lock file for the project and its workspaces, letting the package manager update it
+   * once when it cannot be read as it is.
+   *
+   * @return the dependencies of every workspace, or null if they must be listed by the package
+   *     manager
+   */
+  private Map<Path, DependencyGraph> readWorkspacesLockFile(
+      Path manifestDir, List<Path> workspaces) {
+    var graphs = readLockFile(manifestDir, workspaces);
+    if (graphs == null) {
+      updateLockFile(manifestDir);
+      graphs = readLockFile(manifestDir, workspaces);
+    }
+    if (graphs == null) {
+      log.warning(
+          String.format(
+              "Unable to read the workspaces of %s from its lock file %s, listing the dependencies"
+                  + " of every workspace with %s",
+              manifestDir, lockFileName(), cmd));
+    }
+    return graphs;
+  }
+
+  /**
+   * Adds the packages of the graph in the order of the tree listed by the package manager, where
+   * the dependencies of a package required by several others are listed under the first one met,
+   * breadth first or depth first.
+   */
+  private void addDependenciesToSbom(Sbom sbom, PackageURL root, DependencyGraph graph) {
+    Map<DependencyGraph.Node, DependencyGraph.Node> listedUnder = new IdentityHashMap<>();
+    if (listsSharedDependenciesBreadthFirst()) {
+      Deque<DependencyGraph.Node> queue = new ArrayDeque<>();
+      for (DependencyGraph.Node dependency : graph.getDependencies()) {
+        listedUnder.put(dependency, null);
+        queue.add(dependency);
+      }
+      while (!queue.isEmpty()) {
+        DependencyGraph.Node node = queue.poll();
+        for (DependencyGraph.Node dependency : node.getDependencies()) {
+          if (!listedUnder.containsKey(dependency)) {
+            listedUnder.put(dependency, node);
+            queue.add(dependency);
+          }
+        }
+      }
+    } else {
+      listDepthFirst(null, graph.getDependencies(), listedUnder);
+    }
+    for (DependencyGraph.Node dependency : graph.getDependencies()) {
+      addDependenciesOf(sbom, root, null, dependency, listedUnder);
+    }
+  }
+
+  private static void listDepthFirst(
+      DependencyGraph.Node parent,
+      List<DependencyGraph.Node> dependencies,
+      Map<DependencyGraph.Node, DependencyGraph.Node> listedUnder) {
+    for (DependencyGraph.Node dependency : dependencies) {
+      if (!listedUnder.containsKey(dependency)) {
+        listedUnder.put(dependency, parent);
+        listDepthFirst(dependency, dependency.getDependencies(), listedUnder);
+      }
+    }
+  }
+
+  private void addDependenciesOf(
+      Sbom sbom,
+      PackageURL from,
+      DependencyGraph.Node parent,
+      DependencyGraph.Node node,
+      Map<DependencyGraph.Node, DependencyGraph.Node> listedUnder) {
+    PackageURL purl = toPurl(node.name, node.version);
+    sbom.addDependency(from, purl, null);
+    if (listedUnder.get(node) == parent) {
+      for (DependencyGraph.Node dependency : node.getDependencies()) {
+        addDependenciesOf(sbom, purl, node, dependency, listedUnder);
+      }
+    }
+  }
+
   protected void addDependenciesToSbom(Sbom sbom, JsonNode depTree) {
     var deps = depTree.get("dependencies");
     if (deps == null) {
       return;
     }
+    Map<String, PackageURL> purls = new HashMap<>();
+    Set<String> walked = new HashSet<>();
     deps.fields()
         .forEachRemaining(
             e -> {
               var version = e.getValue().get("version").asText();
-              var target = toPurl(e.getKey(), version);
-              sbom.addDependency(manifest.root, target, null);
-              addDependenciesOf(sbom, target, e.getValue());
+              addDependency(sbom, manifest.root, e.getKey(), version, e.getValue(), purls, walked);
             });
   }
 
   private Sbom getDirectDependencySbom() throws IOException {
-    var depTree = buildDependencyTree(false);
     var sbom = SbomFactory.newInstance();
     sbom.addRoot(manifest.root);
+    Map<String, PackageURL> direct = new TreeMap<>();
+    var graph = readLockFile(getManifestDir());
+    if (graph != null) {
+      graph
+          .getDependenciesByName()
+          .forEach((name, d) -> direct.put(name, toPurl(d.name, d.version)));
+    } else {
+      direct.putAll(getListedRootDependencies());
+    }
     // include only production dependencies for component analysis
-    getRootDependencies(depTree).entrySet().stream()
+    direct.entrySet().stream()
         .filter(e -> manifest.dependencies.contains(e.getKey()))
         .map(Entry::getValue)
         .forEach(p -> sbom.addDependency(manifest.root, p, null));
@@ -206,23 +500,76 @@ protected Map<String, PackageURL> getRootDependencies(JsonNode depTree) {
     return direct;
   }
 
-  protected JsonNode buildDependencyTree(boolean includeTransitive) throws JsonProcessingException {
-    // clean command used to clean build target
-    Path manifestDir;
+  private DependencyGraph readLockFile(Path manifestDir) {
+    var graphs = readLockFile(manifestDir, List.of(PROJECT));
+    return graphs == null ? null : graphs.get(PROJECT);
+  }
+
+  /**
+   * Reads the dependencies of the project and of its workspaces from its lock file, read once,
+   * sparing the package manager processes listing them.
+   *
+   * @param manifestDir the directory of the package.json and of its lock file
+   * @param workspaces the directories of the workspaces relative to the project, the empty path
+   *     being the project itself
+   * @return the production dependencies of every workspace, or null if they must be listed by the
+   *     package manager, the lock file being missing, outdated or of an unsupported version
+   */
+  protected Map<Path, DependencyGraph> readLockFile(Path manifestDir, List<Path> workspaces) {
+    return null;
+  }
+
+  /**
+   * @param workspace the directory of a workspace relative to the project
+   * @param project the path of the project itself in the lock file
+   * @return the path of the workspace in the lock file, e.g. {@code packages/a}
+   */
+  protected static String workspacePath(Path workspace, String project) {
+    String path = workspace.toString().replace('\\', '/');
+    return path.isEmpty() ? project : path;
+  }
+
+  /**
+   * @return whether the package manager lists the dependencies of a package required by several
+   *     others under the first one met breadth first, rather than depth first
+   */
+  protected boolean listsSharedDependenciesBreadthFirst() {
+    return false;
+  }
+
+  private Path getManifestDir() {
     try {
       // MacOS requires resolving to the CanonicalPath to avoid problems with /var
       // being a symlink
       // of /private/var
-      manifestDir = Path.of(manifest.path.getParent().toFile().getCanonicalPath());
+      return Path.of(manifest.path.getParent().toFile().getCanonicalPath());
     } catch (IOException e) {
       throw new RuntimeException(
           String.format(
               "Unable to resolve manifest directory %s, got %s",
               manifest.path.getParent(), e.getMessage()));
     }
-    var createPackageLock = updateLockFileCmd(manifestDir);
-    // execute the clean command
-    Operations.runProcess(manifestDir, createPackageLock, getExecEnv());
+  }
+
+  /**
+   * Adds the dependencies listed by the package manager to the SBOM, from the tree of {@link
+   * #buildDependencyTree(boolean)} by default.
+   */
+  protected void addListedDependenciesToSbom(Sbom sbom) throws IOException {
+    addDependenciesToSbom(sbom, buildDependencyTree(true));
+  }
+
+  /**
+   * @return the direct dependencies listed by the package manager, from the tree of {@link
+   *     #buildDependencyTree(boolean)} by default
+   */
+  protected Map<String, PackageURL> getListedRootDependencies() throws IOException {
+    return getRootDependencies(buildDependencyTree(false));
+  }
+
+  protected JsonNode buildDependencyTree(boolean includeTransitive) throws JsonProcessingException {
+    Path manifestDir = getManifestDir();
+    updateLockFile(manifestDir);
     String[] allDeps = listDepsCmd(includeTransitive, manifestDir);
     // execute the clean command
     String output = Operations.runProcessGetOutput(manifestDir, allDeps, getExecEnvAsArgs());
@@ -234,6 +581,39 @@ protected JsonNode buildDependencyTree(boolean includeTransitive) throws JsonPro
     return objectMapper.readTree(output);
   }
 
+  /**
+   * Lists the dependencies with the package manager, its output being read as it runs rather than
+   * held in memory.
+   *
+   * @param includeTransitive whether to list the transitive dependencies too
+   * @param reader reads the dependencies listed by the package manager
+   * @return what the reader read
+   */
+  protected <T> T readListedDependencies(
+      boolean includeTransitive, Operations.OutputReader<T> reader) {
+    Path manifestDir = getManifestDir();
+    updateLockFile(manifestDir);
+    String[] allDeps = listDepsCmd(includeTransitive, manifestDir);
+    return Operations.runProcessReadOutput(manifestDir, allDeps, getExecEnvAsArgs(), reader);
+  }
+
+  private void updateLockFile(Path manifestDir) {
+    var createPackageLock = updateLockFileCmd(manifestDir);
+    var stamp =
+        Environment.getBoolean(PROP_EXHORT_JS_LOCK_FILE_STAMP, true)
+            ? LockFileStamp.of(manifestDir, lockFileName(), createPackageLock)
+            : null;
+    if (stamp != null && stamp.isFresh()) {
+      log.fine("The lock file is consistent with package.json, skipping its update");
+    } else {
+      // execute the clean command
+      Operations.runProcess(manifestDir, createPackageLock, getExecEnv());
+      if (stamp != null) {
+        stamp.update();
+      }
+    }
+  }
+
   protected String parseDepTreeOutput(String output) {
     // Do nothing by default
     return output;
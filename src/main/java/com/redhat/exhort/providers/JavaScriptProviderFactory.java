@@ -43,4 +43,13 @@ public static Provider create(final Path manifestPath) {
             "No known lock file found for %s. Supported lock files: %s",
             manifestPath, validLockFiles));
   }
+
+  /**
+   * @param manifestPath the package.json of a workspace, whose lock file is the one of the project
+   * @param lockFileName the lock file of the project, telling its package manager
+   * @return the provider of the package manager of the project for the workspace
+   */
+  static JavaScriptProvider create(final Path manifestPath, final String lockFileName) {
+    return (JavaScriptProvider) JS_PROVIDERS.get(lockFileName).apply(manifestPath);
+  }
 }
@@ -17,21 +17,34 @@
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.github.packageurl.PackageURL;
+import com.redhat.exhort.logging.LoggersFactory;
+import com.redhat.exhort.providers.javascript.model.DependencyGraph;
+import com.redhat.exhort.providers.javascript.model.YarnLock;
 import com.redhat.exhort.sbom.Sbom;
 import com.redhat.exhort.tools.Ecosystem;
 import com.redhat.exhort.tools.Operations;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
 /**
  * Concrete implementation of the {@link JavaScriptProvider} used for converting dependency trees
  * for yarn projects (package.json) into a SBOM content for Stack analysis or Component analysis.
  *
- * <p>Depending on the Yarn version used a different {@link YarnProcessor} will be used
+ * <p>Depending on the Yarn version used a different {@link YarnProcessor} will be used. The
+ * dependencies are read from the yarn.lock, yarn lists them only when the lock file is outdated or
+ * of the format of another version of yarn.
  */
 public final class JavaScriptYarnProvider extends JavaScriptProvider {
 
+  private static final Logger log =
+      LoggersFactory.getLogger(JavaScriptYarnProvider.class.getName());
+
   public static final String LOCK_FILE = "yarn.lock";
   public static final String CMD_NAME = Operations.isWindows() ? "yarn.cmd" : "yarn";
 
@@ -60,8 +73,25 @@ protected String[] listDepsCmd(boolean includeTransitive, Path manifestDir) {
   }
 
   @Override
-  protected String parseDepTreeOutput(String output) {
-    return processor.parseDepTreeOutput(output);
+  protected JsonNode buildDependencyTree(boolean includeTransitive) {
+    return readListedDependencies(
+        includeTransitive, output -> processor.readDepTree(objectMapper, output));
+  }
+
+  @Override
+  protected void addListedDependenciesToSbom(Sbom sbom) {
+    readListedDependencies(
+        true,
+        output -> {
+          processor.addDependenciesToSbom(sbom, objectMapper, output);
+          return null;
+        });
+  }
+
+  @Override
+  protected Map<String, PackageURL> getListedRootDependencies() {
+    return readListedDependencies(
+        false, output -> processor.getRootDependencies(objectMapper, output));
   }
 
   @Override
@@ -74,6 +104,42 @@ protected Map<String, PackageURL> getRootDependencies(JsonNode depTree) {
     return processor.getRootDependencies(depTree);
   }
 
+  @Override
+  protected Map<Path, DependencyGraph> readLockFile(Path manifestDir, List<Path> workspaces) {
+    Path lockFile = manifestDir.resolve(LOCK_FILE);
+    if (!Files.isRegularFile(lockFile)) {
+      return null;
+    }
+    try {
+      YarnLock yarnLock = YarnLock.read(lockFile);
+      if (!processor.readsLockFile(yarnLock)) {
+        log.fine(lockFile + " was written by another version of yarn, listing the dependencies");
+        return null;
+      }
+      Map<Path, DependencyGraph> graphs = new HashMap<>();
+      for (Path workspace : workspaces) {
+        Path packageJsonFile = manifestDir.resolve(workspace).resolve("package.json");
+        JsonNode packageJson = objectMapper.readTree(packageJsonFile.toFile());
+        String path = workspacePath(workspace, ".");
+        if (!yarnLock.isUpToDate(path, packageJson)) {
+          log.fine(
+              "The dependencies of "
+                  + packageJsonFile
+                  + " differ from "
+                  + lockFile
+                  + ", listing them with yarn");
+          return null;
+        }
+        graphs.put(workspace, yarnLock.toGraph(path, packageJson));
+      }
+      return graphs;
+    } catch (IOException | IllegalStateException e) {
+      log.fine(
+          "Could not read " + lockFile + ", listing the dependencies with yarn: " + e.getMessage());
+      return null;
+    }
+  }
+
   private YarnProcessor resolveVersion(Path manifestPath) {
     var cmd = Operations.getCustomPathOrElse(CMD_NAME);
     var output =
@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.providers;
+
+import com.redhat.exhort.logging.LoggersFactory;
+import com.redhat.exhort.providers.javascript.model.Workspaces;
+import com.redhat.exhort.utils.CacheFiles;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * The hashes of the manifests and of the lock file of a javascript project, taken once the package
+ * manager updated the lock file and persisted in the temporary directory. As long as they are
+ * unchanged, the lock file and the installed packages are consistent with the manifests, and the
+ * package manager is not asked to update them again.
+ */
+final class LockFileStamp {
+
+  private static final Logger log = LoggersFactory.getLogger(LockFileStamp.class.getName());
+
+  // the files written by npm, pnpm, Yarn Classic and Yarn Berry when installing the packages, the
+  // packages being listed from the installation by some of them
+  private static final List<String> INSTALL_STATE_FILES =
+      List.of(
+          "node_modules/.package-lock.json",
+          "node_modules/.modules.yaml",
+          "node_modules/.yarn-integrity",
+          ".yarn/install-state.gz");
+
+  private final Path file;
+  private final Path manifestDir;
+  private final String lockFileName;
+
+  private LockFileStamp(Path file, Path manifestDir, String lockFileName) {
+    this.file = file;
+    this.manifestDir = manifestDir;
+    this.lockFileName = lockFileName;
+  }
+
+  /**
+   * @param manifestDir the directory of the package.json and of its lock file
+   * @param lockFileName the name of the lock file
+   * @param updateCommand the command updating the lock file, a stamp being kept per command
+   */
+  static LockFileStamp of(Path manifestDir, String lockFileName, String[] updateCommand) {
+    return new LockFileStamp(fileFor(manifestDir, updateCommand), manifestDir, lockFileName);
+  }
+
+  static Path fileFor(Path manifestDir, String[] updateCommand) {
+    String key = manifestDir + "\n" + String.join(" ", updateCommand);
+    return Path.of(System.getProperty("java.io.tmpdir"))
+        .resolve(String.format("exhort-js-lock-%s.stamp", CacheFiles.sha256(key).substring(0, 16)));
+  }
+
+  /**
+   * @return whether the files of the project are the ones stamped after the last update
+   */
+  boolean isFresh() {
+    if (!Files.isRegularFile(file)) {
+      return false;
+    }
+    try {
+      return Files.readString(file, StandardCharsets.UTF_8).equals(hash());
+    } catch (IOException e) {
+      log.fine("Ignoring the unreadable lock file stamp " + file + ": " + e);
+      return false;
+    }
+  }
+
+  /** Stamps the files of the project, written aside and moved as other processes may read it. */
+  void update() {
+    try {
+      CacheFiles.write(file, hash().getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      log.fine("Could not write the lock file stamp " + file + ": " + e);
+    }
+  }
+
+  /**
+   * @return a digest of the package.json, of the lock file, of the package.json of every workspace
+   *     and of the installation state, a missing file being part of the state
+   */
+  private String hash() throws IOException {
+    List<Path> files = new ArrayList<>();
+    files.add(manifestDir.resolve("package.json"));
+    files.add(manifestDir.resolve(lockFileName));
+    files.add(manifestDir.resolve(Workspaces.PNPM_WORKSPACE));
+    for (Path workspace : Workspaces.find(manifestDir)) {
+      files.add(workspace.resolve("package.json"));
+    }
+    INSTALL_STATE_FILES.forEach(name -> files.add(manifestDir.resolve(name)));
+    StringBuilder state = new StringBuilder();
+    for (Path path : files) {
+      state.append(manifestDir.relativize(path)).append(' ');
+      state.append(CacheFiles.sha256(path, "-"));
+      state.append('\n');
+    }
+    return CacheFiles.sha256(state.toString());
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.providers;
+
+import static com.redhat.exhort.impl.ExhortApi.debugLoggingIsNeeded;
+
+import com.github.packageurl.MalformedPackageURLException;
+import com.github.packageurl.PackageURL;
+import com.redhat.exhort.Api;
+import com.redhat.exhort.Provider;
+import com.redhat.exhort.logging.LoggersFactory;
+import com.redhat.exhort.providers.python.model.PythonLockFile;
+import com.redhat.exhort.sbom.Sbom;
+import com.redhat.exhort.sbom.SbomFactory;
+import com.redhat.exhort.tools.Ecosystem;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Concrete implementation of the {@link Provider} used for converting the lock file of a python
+ * project, a uv.lock or a poetry.lock next to its pyproject.toml, or a pylock.toml, into a SBOM
+ * content for Stack analysis or Component analysis. The packages are read from the lock file, no
+ * python environment is involved.
+ */
+public final class PythonLockFileProvider extends Provider {
+
+  private static final Logger log =
+      LoggersFactory.getLogger(PythonLockFileProvider.class.getName());
+  private static final String DEFAULT_PIP_ROOT_COMPONENT_NAME = "default-pip-root";
+  private static final String DEFAULT_PIP_ROOT_COMPONENT_VERSION = "0.0.0";
+  // a requirement string of an array, or a key of a poetry dependencies table
+  private static final Pattern IGNORED_REQUIREMENT =
+      Pattern.compile("^\\s*(?:\"([^\"]+)\"|'([^']+)'|([A-Za-z0-9][A-Za-z0-9._-]*)\\s*=)");
+
+  public PythonLockFileProvider(Path manifest) {
+    super(Ecosystem.Type.PYTHON, manifest);
+  }
+
+  @Override
+  public Content provideStack() throws IOException {
+    PythonLockFile lockFile = PythonLockFile.read(manifest);
+    Sbom sbom = SbomFactory.newInstance(Sbom.BelongingCondition.PURL, "sensitive");
+    sbom.addRoot(getRoot(lockFile));
+    Set<PythonLockFile.Package> added = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (PythonLockFile.Package dependency : lockFile.dependencies) {
+      addAllDependencies(sbom.getRoot(), dependency, sbom, added);
+    }
+    return toContent(sbom);
+  }
+
+  private void addAllDependencies(
+      PackageURL source,
+      PythonLockFile.Package dependency,
+      Sbom sbom,
+      Set<PythonLockFile.Package> added) {
+    PackageURL packageURL = toPurl(dependency.name, dependency.version);
+    sbom.addDependency(source, packageURL, null);
+    // the relationships of a package are added on its first visit, which also breaks cycles
+    if (added.add(dependency)) {
+      for (PythonLockFile.Package transitive : dependency.getDependencies()) {
+        addAllDependencies(packageURL, transitive, sbom, added);
+      }
+    }
+  }
+
+  @Override
+  public Content provideComponent() throws IOException {
+    PythonLockFile lockFile = PythonLockFile.read(manifest);
+    Sbom sbom = SbomFactory.newInstance();
+    sbom.addRoot(getRoot(lockFile));
+    for (PythonLockFile.Package dependency : lockFile.dependencies) {
+      sbom.addDependency(sbom.getRoot(), toPurl(dependency.name, dependency.version), null);
+    }
+    return toContent(sbom);
+  }
+
+  private Content toContent(Sbom sbom) throws IOException {
+    handleIgnoredDependencies(sbom);
+    String sbomJson = sbom.getAsJsonString();
+    if (debugLoggingIsNeeded()) {
+      log.info(
+          String.format(
+              "Python lock file SBOM: %s %s %s",
+              System.lineSeparator(), sbomJson, System.lineSeparator()));
+    }
+    return new Content(sbomJson.getBytes(StandardCharsets.UTF_8), Api.CYCLONEDX_MEDIA_TYPE);
+  }
+
+  /**
+   * The packages marked by an {@code exhortignore} comment in the pyproject.toml are removed, along
+   * with the dependencies only they bring, whatever version the lock file resolved.
+   */
+  private void handleIgnoredDependencies(Sbom sbom) throws IOException {
+    Path pyproject = manifest.toAbsolutePath().getParent().resolve(PythonLockFile.PYPROJECT);
+    if (!Files.isRegularFile(pyproject)) {
+      return;
+    }
+    Set<String> ignored =
+        Files.readAllLines(pyproject).stream()
+            .filter(line -> line.contains("#exhortignore") || line.contains("# exhortignore"))
+            .map(PythonLockFileProvider::ignoredName)
+            .filter(name -> name != null)
+            .map(name -> toPurl(name, "*").getName())
+            .collect(Collectors.toSet());
+    if (!ignored.isEmpty()) {
+      sbom.setBelongingCriteriaBinaryAlgorithm(Sbom.BelongingCondition.NAME);
+      sbom.filterIgnoredDeps(ignored);
+    }
+  }
+
+  private static String ignoredName(String line) {
+    Matcher matcher = IGNORED_REQUIREMENT.matcher(line);
+    if (!matcher.find()) {
+      return null;
+    }
+    if (matcher.group(3) != null) {
+      return matcher.group(3);
+    }
+    String requirement = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+    PythonLockFile.Requirement parsed = PythonLockFile.Requirement.parse(requirement);
+    return parsed == null ? null : parsed.name;
+  }
+
+  private PackageURL getRoot(PythonLockFile lockFile) {
+    if (lockFile.name == null) {
+      return toPurl(DEFAULT_PIP_ROOT_COMPONENT_NAME, DEFAULT_PIP_ROOT_COMPONENT_VERSION);
+    }
+    return toPurl(
+        lockFile.name,
+        lockFile.version != null ? lockFile.version : DEFAULT_PIP_ROOT_COMPONENT_VERSION);
+  }
+
+  private PackageURL toPurl(String name, String version) {
+    try {
+      return new PackageURL(Ecosystem.Type.PYTHON.getType(), null, name, version, null, null);
+    } catch (MalformedPackageURLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void validateLockFile(Path lockFileDir) {
+    if (PythonLockFile.findLockFile(manifest) == null) {
+      throw new IllegalStateException(
+          String.format(
+              "Lock file does not exist or is not supported. Execute one of %s to generate it.",
+              List.of("uv lock", "poetry lock", "pip lock")));
+    }
+  }
+}
@@ -31,14 +31,18 @@
 import com.redhat.exhort.utils.PythonControllerBase;
 import com.redhat.exhort.utils.PythonControllerRealEnv;
 import com.redhat.exhort.utils.PythonControllerVirtualEnv;
+import com.redhat.exhort.utils.PythonDependencyNode;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -47,6 +51,7 @@ public final class PythonPipProvider extends Provider {
   private static final Logger log = LoggersFactory.getLogger(PythonPipProvider.class.getName());
   private static final String DEFAULT_PIP_ROOT_COMPONENT_NAME = "default-pip-root";
   private static final String DEFAULT_PIP_ROOT_COMPONENT_VERSION = "0.0.0";
+  private static final Map<String, String> CHECKED_EXECUTABLES = new ConcurrentHashMap<>();
 
   public void setPythonController(PythonControllerBase pythonController) {
     this.pythonController = pythonController;
@@ -61,13 +66,14 @@ public PythonPipProvider(Path manifest) {
   @Override
   public Content provideStack() throws IOException {
     PythonControllerBase pythonController = getPythonController();
-    List<Map<String, Object>> dependencies =
-        pythonController.getDependencies(manifest.toString(), true);
+    List<PythonDependencyNode> dependencies =
+        pythonController.getDependencyGraph(manifest.toString(), true);
     printDependenciesTree(dependencies);
     Sbom sbom = SbomFactory.newInstance(Sbom.BelongingCondition.PURL, "sensitive");
     sbom.addRoot(toPurl(DEFAULT_PIP_ROOT_COMPONENT_NAME, DEFAULT_PIP_ROOT_COMPONENT_VERSION));
-    for (Map<String, Object> component : dependencies) {
-      addAllDependencies(sbom.getRoot(), component, sbom);
+    Set<PythonDependencyNode> added = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (PythonDependencyNode component : dependencies) {
+      addAllDependencies(sbom.getRoot(), component, sbom, added);
     }
     byte[] requirementsFile = Files.readAllBytes(manifest);
     handleIgnoredDependencies(new String(requirementsFile), sbom);
@@ -75,17 +81,20 @@ public Content provideStack() throws IOException {
         sbom.getAsJsonString().getBytes(StandardCharsets.UTF_8), Api.CYCLONEDX_MEDIA_TYPE);
   }
 
-  private void addAllDependencies(PackageURL source, Map<String, Object> component, Sbom sbom) {
+  private void addAllDependencies(
+      PackageURL source,
+      PythonDependencyNode component,
+      Sbom sbom,
+      Set<PythonDependencyNode> added) {
 
-    PackageURL packageURL =
-        toPurl((String) component.get("name"), (String) component.get("version"));
+    PackageURL packageURL = toPurl(component.getName(), component.getVersion());
     sbom.addDependency(source, packageURL, null);
 
-    List<Map<String, Object>> directDeps =
-        (List<Map<String, Object>>) component.get("dependencies");
-    if (directDeps != null) {
-      for (Map<String, Object> dep : directDeps) {
-        addAllDependencies(packageURL, dep, sbom);
+    // a shared node always has the same subtree, its relationships are added on its first visit
+    List<PythonDependencyNode> directDeps = component.getDependencies();
+    if (directDeps != null && added.add(component)) {
+      for (PythonDependencyNode dep : directDeps) {
+        addAllDependencies(packageURL, dep, sbom, added);
       }
     }
   }
@@ -93,17 +102,15 @@ private void addAllDependencies(PackageURL source, Map<String, Object> component
   @Override
   public Content provideComponent() throws IOException {
     PythonControllerBase pythonController = getPythonController();
-    List<Map<String, Object>> dependencies =
-        pythonController.getDependencies(manifest.toString(), false);
+    List<PythonDependencyNode> dependencies =
+        pythonController.getDependencyGraph(manifest.toString(), false);
     printDependenciesTree(dependencies);
     Sbom sbom = SbomFactory.newInstance();
     sbom.addRoot(toPurl(DEFAULT_PIP_ROOT_COMPONENT_NAME, DEFAULT_PIP_ROOT_COMPONENT_VERSION));
     dependencies.forEach(
         (component) ->
             sbom.addDependency(
-                sbom.getRoot(),
-                toPurl((String) component.get("name"), (String) component.get("version")),
-                null));
+                sbom.getRoot(), toPurl(component.getName(), component.getVersion()), null));
 
     var manifestContent = Files.readString(manifest);
     handleIgnoredDependencies(manifestContent, sbom);
@@ -111,7 +118,7 @@ public Content provideComponent() throws IOException {
         sbom.getAsJsonString().getBytes(StandardCharsets.UTF_8), Api.CYCLONEDX_MEDIA_TYPE);
   }
 
-  private void printDependenciesTree(List<Map<String, Object>> dependencies)
+  private void printDependenciesTree(List<PythonDependencyNode> dependencies)
       throws JsonProcessingException {
     if (debugLoggingIsNeeded()) {
       String pythonControllerTree =
@@ -237,6 +244,13 @@ private PythonControllerBase getPythonController() {
   }
 
   private String getExecutable(String command, String args) {
+    // starting pip takes longer than reading the environment, the binaries are checked once
+    String configured =
+        Operations.getCustomPathOrElse("python3") + ";;" + Operations.getCustomPathOrElse("pip3");
+    return CHECKED_EXECUTABLES.computeIfAbsent(configured, k -> findExecutables(command, args));
+  }
+
+  private String findExecutables(String command, String args) {
     String python = Operations.getCustomPathOrElse("python3");
     String pip = Operations.getCustomPathOrElse("pip3");
     try {
@@ -16,11 +16,15 @@
 package com.redhat.exhort.providers;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.github.packageurl.PackageURL;
 import com.redhat.exhort.providers.javascript.model.Manifest;
+import com.redhat.exhort.providers.javascript.model.YarnLock;
 import com.redhat.exhort.sbom.Sbom;
-import com.redhat.exhort.tools.Operations;
+import java.io.IOException;
+import java.io.Reader;
 import java.nio.file.Path;
 import java.util.Map;
 import java.util.TreeMap;
@@ -73,27 +77,55 @@ protected Map<String, PackageURL> getRootDependencies(JsonNode depTree) {
     }
 
     for (JsonNode node : nodes) {
-      var depName = node.get("value").asText();
+      addRootDependency(rootDeps, node);
+    }
+    return rootDeps;
+  }
 
-      if (!isRoot(depName)) {
-        var versionIdx = depName.lastIndexOf("@");
-        var name = depName.substring(0, versionIdx);
-        var version = node.get("children").get("Version").asText();
-        rootDeps.put(name, JavaScriptProvider.toPurl(name, version));
+  /**
+   * yarn info prints a JSON object per package, each one read and added as it comes rather than
+   * collected into a tree first.
+   */
+  @Override
+  Map<String, PackageURL> getRootDependencies(ObjectMapper mapper, Reader output)
+      throws IOException {
+    Map<String, PackageURL> rootDeps = new TreeMap<>();
+    try (MappingIterator<JsonNode> nodes = mapper.readerFor(JsonNode.class).readValues(output)) {
+      while (nodes.hasNextValue()) {
+        addRootDependency(rootDeps, nodes.nextValue());
       }
     }
     return rootDeps;
   }
 
+  private void addRootDependency(Map<String, PackageURL> rootDeps, JsonNode node) {
+    var depName = node.get("value").asText();
+
+    if (!isRoot(depName)) {
+      var versionIdx = depName.lastIndexOf("@");
+      var name = depName.substring(0, versionIdx);
+      var version = node.get("children").get("Version").asText();
+      rootDeps.put(name, JavaScriptProvider.toPurl(name, version));
+    }
+  }
+
   private boolean isRoot(String name) {
     return name.endsWith("@workspace:.");
   }
 
+  /**
+   * yarn info prints a JSON object per package, read one after the other from the output rather
+   * than rewriting it into an array.
+   */
   @Override
-  public String parseDepTreeOutput(String output) {
-    return "["
-        + output.trim().replaceAll(Operations.GENERIC_LINE_SEPARATOR, "").replace("}{", "},{")
-        + "]";
+  JsonNode readDepTree(ObjectMapper mapper, Reader output) throws IOException {
+    ArrayNode nodes = mapper.createArrayNode();
+    try (MappingIterator<JsonNode> values = mapper.readerFor(JsonNode.class).readValues(output)) {
+      while (values.hasNextValue()) {
+        nodes.add(values.nextValue());
+      }
+    }
+    return nodes;
   }
 
   private PackageURL purlFromNode(String normalizedLocator, JsonNode node) {
@@ -107,21 +139,40 @@ void addDependenciesToSbom(Sbom sbom, JsonNode depTree) {
     if (depTree == null) {
       return;
     }
-    depTree.forEach(
-        n -> {
-          var depName = n.get("value").asText();
-          var from = isRoot(depName) ? sbom.getRoot() : purlFromNode(depName, n);
-          var deps = (ArrayNode) n.get("children").get("Dependencies");
-          if (deps != null && !deps.isEmpty()) {
-            deps.forEach(
-                d -> {
-                  var target = purlFromlocator(d.get("locator").asText());
-                  if (target != null) {
-                    sbom.addDependency(from, target, null);
-                  }
-                });
-          }
-        });
+    depTree.forEach(n -> addDependenciesOf(sbom, n));
+  }
+
+  /**
+   * yarn info prints a JSON object per package, the dependencies of each one added to the SBOM as
+   * it comes rather than collected into a tree first.
+   */
+  @Override
+  void addDependenciesToSbom(Sbom sbom, ObjectMapper mapper, Reader output) throws IOException {
+    try (MappingIterator<JsonNode> nodes = mapper.readerFor(JsonNode.class).readValues(output)) {
+      while (nodes.hasNextValue()) {
+        addDependenciesOf(sbom, nodes.nextValue());
+      }
+    }
+  }
+
+  private void addDependenciesOf(Sbom sbom, JsonNode n) {
+    var depName = n.get("value").asText();
+    var from = isRoot(depName) ? sbom.getRoot() : purlFromNode(depName, n);
+    var deps = (ArrayNode) n.get("children").get("Dependencies");
+    if (deps != null && !deps.isEmpty()) {
+      deps.forEach(
+          d -> {
+            var target = purlFromlocator(d.get("locator").asText());
+            if (target != null) {
+              sbom.addDependency(from, target, null);
+            }
+          });
+    }
+  }
+
+  @Override
+  boolean readsLockFile(YarnLock yarnLock) {
+    return yarnLock.getLockfileVersion() > 1;
   }
 
   private PackageURL purlFromlocator(String locator) {
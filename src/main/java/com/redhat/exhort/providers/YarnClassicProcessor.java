@@ -19,10 +19,13 @@
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.github.packageurl.PackageURL;
 import com.redhat.exhort.providers.javascript.model.Manifest;
+import com.redhat.exhort.providers.javascript.model.YarnLock;
 import com.redhat.exhort.sbom.Sbom;
 import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
 /** Concrete implementation of the Yarn Classic processor, supporting Yarn 1.x */
@@ -107,10 +110,28 @@ void addDependenciesToSbom(Sbom sbom, JsonNode depTree) {
           }
         });
 
-    trees.forEach(n -> addChildrenToSbom(sbom, n, purls));
+    Set<String> walked = new HashSet<>();
+    trees.forEach(
+        n -> {
+          if (walked.add(new NodeMetaData(n).key())) {
+            addChildrenToSbom(sbom, n, purls, walked);
+          }
+        });
+  }
+
+  @Override
+  boolean readsLockFile(YarnLock yarnLock) {
+    return yarnLock.getLockfileVersion() == 1;
   }
 
-  void addChildrenToSbom(Sbom sbom, JsonNode node, Map<String, PackageURL> purls) {
+  /**
+   * Adds the dependencies of a package listed by yarn. The children of a package listed several
+   * times being identical, they are walked once.
+   *
+   * @param walked the packages whose children were walked, by name@version
+   */
+  void addChildrenToSbom(
+      Sbom sbom, JsonNode node, Map<String, PackageURL> purls, Set<String> walked) {
     var dep = new NodeMetaData(node);
     var children = (ArrayNode) node.get("children");
     if (children != null) {
@@ -122,7 +143,9 @@ void addChildrenToSbom(Sbom sbom, JsonNode node, Map<String, PackageURL> purls)
             if (from != null && target != null) {
               sbom.addDependency(from, target, null);
             }
-            addChildrenToSbom(sbom, c, purls);
+            if (c.has("children") && walked.add(child.key())) {
+              addChildrenToSbom(sbom, c, purls, walked);
+            }
           });
     }
   }
@@ -143,5 +166,10 @@ private static class NodeMetaData {
       var shadowNode = node.get("shadow");
       this.shadow = shadowNode != null && shadowNode.asBoolean();
     }
+
+    // a shadowed package resolves to the listed one of the same name
+    String key() {
+      return shadow ? "shadow:" + nodeName : nodeName;
+    }
   }
 }
@@ -16,9 +16,13 @@
 package com.redhat.exhort.providers;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.packageurl.PackageURL;
 import com.redhat.exhort.providers.javascript.model.Manifest;
+import com.redhat.exhort.providers.javascript.model.YarnLock;
 import com.redhat.exhort.sbom.Sbom;
+import java.io.IOException;
+import java.io.Reader;
 import java.nio.file.Path;
 import java.util.Map;
 
@@ -41,7 +45,37 @@ public YarnProcessor(String packageManager, Manifest manifest) {
 
   abstract void addDependenciesToSbom(Sbom sbom, JsonNode depTree);
 
-  public String parseDepTreeOutput(String output) {
-    return output;
+  /**
+   * @param yarnLock the lock file of the project
+   * @return whether the lock file is of the format written by this version of yarn, which would
+   *     otherwise migrate it
+   */
+  abstract boolean readsLockFile(YarnLock yarnLock);
+
+  /**
+   * @param mapper the mapper of the provider
+   * @param output the dependencies listed by yarn, read as yarn runs
+   * @return the tree of the dependencies
+   */
+  JsonNode readDepTree(ObjectMapper mapper, Reader output) throws IOException {
+    return mapper.readTree(output);
+  }
+
+  /**
+   * Adds the dependencies listed by yarn to the SBOM.
+   *
+   * @param output the dependencies listed by yarn, read as yarn runs
+   */
+  void addDependenciesToSbom(Sbom sbom, ObjectMapper mapper, Reader output) throws IOException {
+    addDependenciesToSbom(sbom, readDepTree(mapper, output));
+  }
+
+  /**
+   * @param output the dependencies listed by yarn, read as yarn runs
+   * @return the direct dependencies listed by yarn
+   */
+  Map<String, PackageURL> getRootDependencies(ObjectMapper mapper, Reader output)
+      throws IOException {
+    return getRootDependencies(readDepTree(mapper, output));
   }
 }
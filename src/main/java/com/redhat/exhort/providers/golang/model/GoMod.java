@@ -0,0 +1,208 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.providers.golang.model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A go.mod file, read by a lexer following the go.mod syntax: directives on a single line or
+ * grouped in a block ({@code require (...)}), quoted or bare tokens and line comments. The comment
+ * of a requirement tells whether it is indirect and whether it is ignored by an {@code
+ * exhortignore} marker.
+ */
+public final class GoMod {
+
+  // exhortignore alone in the comment, after indirect, or in a comment inside the comment
+  private static final Pattern IGNORE_COMMENT =
+      Pattern.compile("(?:.*//)?(?:\\sindirect (?://)?)?\\s*exhortignore");
+
+  public final String module;
+  public final List<Require> requires;
+  public final List<Replace> replaces;
+  public final Set<String> excludes;
+
+  public GoMod(Path manifestPath) throws IOException {
+    this(Files.readString(manifestPath));
+  }
+
+  public GoMod(String content) {
+    String modulePath = null;
+    List<Require> requireList = new ArrayList<>();
+    List<Replace> replaceList = new ArrayList<>();
+    Set<String> excludeSet = new HashSet<>();
+    String block = null;
+    for (String line : content.split("\\r?\\n")) {
+      List<String> tokens = new ArrayList<>();
+      String comment = tokenize(line, tokens);
+      if (tokens.isEmpty()) {
+        continue;
+      }
+      List<String> args;
+      String verb;
+      if (block != null) {
+        if (tokens.get(0).equals(")")) {
+          block = null;
+          continue;
+        }
+        verb = block;
+        args = tokens;
+      } else {
+        verb = tokens.get(0);
+        args = tokens.subList(1, tokens.size());
+        if (args.size() == 1 && args.get(0).equals("(")) {
+          block = verb;
+          continue;
+        }
+      }
+      switch (verb) {
+        case "module":
+          if (!args.isEmpty()) {
+            modulePath = args.get(0);
+          }
+          break;
+        case "require":
+          if (args.size() >= 2) {
+            requireList.add(new Require(args.get(0), args.get(1), comment));
+          }
+          break;
+        case "exclude":
+          if (args.size() >= 2) {
+            excludeSet.add(args.get(0) + "@" + args.get(1));
+          }
+          break;
+        case "replace":
+          int arrow = args.indexOf("=>");
+          if (arrow == 1 || arrow == 2) {
+            replaceList.add(
+                new Replace(
+                    args.get(0),
+                    arrow == 2 ? args.get(1) : null,
+                    args.size() > arrow + 1 ? args.get(arrow + 1) : null,
+                    args.size() > arrow + 2 ? args.get(arrow + 2) : null));
+          }
+          break;
+        default:
+          // go, toolchain, retract, godebug and tool take no part in the dependencies
+      }
+    }
+    this.module = modulePath;
+    this.requires = Collections.unmodifiableList(requireList);
+    this.replaces = Collections.unmodifiableList(replaceList);
+    this.excludes = Collections.unmodifiableSet(excludeSet);
+  }
+
+  /**
+   * Since Go 1.16 a requirement on a version excluded by the main module is ignored.
+   *
+   * @param require a requirement of this file
+   * @return whether the required version is excluded
+   */
+  public boolean isExcluded(Require require) {
+    return excludes.contains(require.toString());
+  }
+
+  /**
+   * Splits a line into its tokens: quoted strings, parentheses, the replace arrow and bare words.
+   *
+   * @return the comment ending the line, without its leading slashes, or null if there is none
+   */
+  private static String tokenize(String line, List<String> tokens) {
+    int length = line.length();
+    int i = 0;
+    while (i < length) {
+      char c = line.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (line.startsWith("//", i)) {
+        return line.substring(i + 2).stripTrailing();
+      } else if (c == '(' || c == ')') {
+        tokens.add(String.valueOf(c));
+        i++;
+      } else if (line.startsWith("=>", i)) {
+        tokens.add("=>");
+        i += 2;
+      } else if (c == '"' || c == '`') {
+        StringBuilder token = new StringBuilder();
+        i++;
+        while (i < length && line.charAt(i) != c) {
+          if (c == '"' && line.charAt(i) == '\\' && i + 1 < length) {
+            i++;
+          }
+          token.append(line.charAt(i++));
+        }
+        tokens.add(token.toString());
+        i++;
+      } else {
+        int start = i;
+        while (i < length
+            && !Character.isWhitespace(line.charAt(i))
+            && "()\"`".indexOf(line.charAt(i)) < 0
+            && !line.startsWith("//", i)
+            && !line.startsWith("=>", i)) {
+          i++;
+        }
+        tokens.add(line.substring(start, i));
+      }
+    }
+    return null;
+  }
+
+  /** A require directive, a module path and its minimal required version. */
+  public static final class Require {
+    public final String path;
+    public final String version;
+    public final boolean indirect;
+    public final boolean ignored;
+
+    Require(String path, String version, String comment) {
+      this.path = path;
+      this.version = version;
+      this.indirect = comment != null && comment.trim().startsWith("indirect");
+      this.ignored = comment != null && IGNORE_COMMENT.matcher(comment).matches();
+    }
+
+    @Override
+    public String toString() {
+      return path + "@" + version;
+    }
+  }
+
+  /**
+   * A replace directive. Without an old version all the versions of the module are replaced, a
+   * replacement without a version is a directory.
+   */
+  public static final class Replace {
+    public final String oldPath;
+    public final String oldVersion;
+    public final String newPath;
+    public final String newVersion;
+
+    Replace(String oldPath, String oldVersion, String newPath, String newVersion) {
+      this.oldPath = oldPath;
+      this.oldVersion = oldVersion;
+      this.newPath = newPath;
+      this.newVersion = newVersion;
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.providers.golang.model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The vendor/modules.txt file written by go mod vendor, listing the version of every vendored
+ * module, followed by its packages. A {@code ## explicit} annotation marks the modules required by
+ * go.mod, which go keeps consistent with the vendored versions.
+ */
+public final class VendorModules {
+
+  /** The vendored version of every module path, in the order of the file. */
+  public final Map<String, String> versions;
+
+  /** The module paths explicitly required by go.mod. */
+  public final Set<String> explicit;
+
+  public VendorModules(Path modulesTxt) throws IOException {
+    Map<String, String> moduleVersions = new LinkedHashMap<>();
+    Set<String> explicitModules = new HashSet<>();
+    String current = null;
+    for (String line : Files.readAllLines(modulesTxt)) {
+      if (line.startsWith("## ")) {
+        // annotations of the module above, like "## explicit; go 1.19"
+        if (current != null && line.substring(3).trim().split(";")[0].trim().equals("explicit")) {
+          explicitModules.add(current);
+        }
+      } else if (line.startsWith("# ")) {
+        // "# path version", "# path version => replacement [version]" or "# path => replacement"
+        String[] parts = line.substring(2).trim().split("\\s+");
+        current = parts[0];
+        if (parts.length > 1 && !parts[1].equals("=>")) {
+          moduleVersions.put(current, parts[1]);
+        }
+      }
+    }
+    this.versions = Collections.unmodifiableMap(moduleVersions);
+    this.explicit = Collections.unmodifiableSet(explicitModules);
+  }
+}
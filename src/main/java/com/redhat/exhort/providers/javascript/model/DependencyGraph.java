@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.providers.javascript.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The production dependencies of a javascript project, as resolved by its lock file. A package
+ * installed once is a single node, whatever the number of packages depending on it, so the graph
+ * may have cycles.
+ */
+public final class DependencyGraph {
+
+  private final Map<String, Node> dependencies;
+
+  /**
+   * @param dependencies the direct dependencies of the project, by the name the package.json
+   *     requires them, in the order the package manager lists them
+   */
+  public DependencyGraph(Map<String, Node> dependencies) {
+    this.dependencies = Collections.unmodifiableMap(new LinkedHashMap<>(dependencies));
+  }
+
+  /**
+   * @return the direct dependencies of the project, in the order the package manager lists them
+   */
+  public List<Node> getDependencies() {
+    return new ArrayList<>(dependencies.values());
+  }
+
+  /**
+   * @return the direct dependencies of the project, by the name the package.json requires them,
+   *     which differs from the name of a package required under an alias
+   */
+  public Map<String, Node> getDependenciesByName() {
+    return dependencies;
+  }
+
+  /** A package installed for the project, under the name it is required by. */
+  public static final class Node {
+
+    public final String name;
+    public final String version;
+    private List<Node> dependencies = List.of();
+
+    public Node(String name, String version) {
+      this.name = name;
+      this.version = version;
+    }
+
+    /**
+     * @return the dependencies of the package, in the order the package manager lists them
+     */
+    public List<Node> getDependencies() {
+      return dependencies;
+    }
+
+    public void setDependencies(List<Node> dependencies) {
+      this.dependencies = List.copyOf(dependencies);
+    }
+
+    @Override
+    public String toString() {
+      return name + "@" + version;
+    }
+  }
+}
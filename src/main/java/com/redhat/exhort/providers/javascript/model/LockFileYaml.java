@@ -0,0 +1,383 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.providers.javascript.model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A reader of the YAML written by the javascript package managers for their lock files, read line
+ * by line. Only the block mappings and sequences, the quoted and plain scalars, and the flow
+ * mappings and sequences they write are supported; anchors, tags and block scalars are not. A
+ * mapping is read as a {@link Map}, a sequence as a {@link List} and a scalar as a {@link String}.
+ */
+final class LockFileYaml {
+
+  private final BufferedReader reader;
+  private int lineNumber;
+  private Line next;
+
+  private LockFileYaml(BufferedReader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * @param file the YAML file
+   * @return the top level mapping of the file
+   */
+  static Map<String, Object> read(Path file) throws IOException {
+    return read(file, null);
+  }
+
+  /**
+   * @param file the YAML file
+   * @param sections the top level keys to read, the content of the others is skipped, or null to
+   *     read all of them
+   * @return the top level mapping of the file
+   */
+  static Map<String, Object> read(Path file, Set<String> sections) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      LockFileYaml yaml = new LockFileYaml(reader);
+      Map<String, Object> document = new LinkedHashMap<>();
+      Line line;
+      while ((line = yaml.peek()) != null) {
+        if (line.indent != 0 || line.isSequenceItem()) {
+          throw new IOException("Unexpected content at line " + line.number + " of " + file);
+        }
+        yaml.next = null;
+        String[] entry = parseKey(line);
+        if (sections == null || sections.contains(entry[0])) {
+          document.put(entry[0], yaml.readValue(entry[1], 0));
+        } else {
+          yaml.skipChildren();
+        }
+      }
+      return document;
+    }
+  }
+
+  private Object readValue(String inline, int indent) throws IOException {
+    if (!inline.isEmpty()) {
+      return parseScalar(completeFlow(inline));
+    }
+    Line line = peek();
+    if (line == null) {
+      return null;
+    }
+    if (line.indent > indent) {
+      return line.isSequenceItem() ? readSequence(line.indent) : readMapping(line.indent);
+    }
+    // a sequence may be indented as the key holding it
+    if (line.indent == indent && line.isSequenceItem()) {
+      return readSequence(indent);
+    }
+    return null;
+  }
+
+  private Map<String, Object> readMapping(int indent) throws IOException {
+    Map<String, Object> mapping = new LinkedHashMap<>();
+    Line line;
+    while ((line = peek()) != null && line.indent == indent && !line.isSequenceItem()) {
+      next = null;
+      String[] entry = parseKey(line);
+      mapping.put(entry[0], readValue(entry[1], indent));
+    }
+    return mapping;
+  }
+
+  private List<Object> readSequence(int indent) throws IOException {
+    List<Object> sequence = new ArrayList<>();
+    Line line;
+    while ((line = peek()) != null && line.indent == indent && line.isSequenceItem()) {
+      next = null;
+      String item = line.text.substring(1).trim();
+      int itemIndent = indent + line.text.indexOf(item.isEmpty() ? "-" : item);
+      if (item.isEmpty()) {
+        sequence.add(readValue("", indent));
+      } else if (!item.startsWith("{") && !item.startsWith("[") && isMappingEntry(item)) {
+        // a mapping starting on the line of the item, its next keys are aligned on the first one
+        next = new Line(line.number, itemIndent, item);
+        sequence.add(readMapping(itemIndent));
+      } else {
+        sequence.add(parseScalar(completeFlow(item)));
+      }
+    }
+    return sequence;
+  }
+
+  private void skipChildren() throws IOException {
+    Line line;
+    while ((line = peek()) != null && (line.indent > 0 || line.isSequenceItem())) {
+      next = null;
+    }
+  }
+
+  /** Appends the next lines to a flow mapping or sequence until it is closed. */
+  private String completeFlow(String value) throws IOException {
+    if (!value.startsWith("{") && !value.startsWith("[")) {
+      return value;
+    }
+    StringBuilder flow = new StringBuilder(value);
+    while (!isBalanced(flow)) {
+      String raw = reader.readLine();
+      if (raw == null) {
+        break;
+      }
+      lineNumber++;
+      flow.append(' ').append(raw.trim());
+    }
+    return flow.toString();
+  }
+
+  private static boolean isBalanced(CharSequence flow) {
+    int depth = 0;
+    char quote = 0;
+    for (int i = 0; i < flow.length(); i++) {
+      char c = flow.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        } else if (c == '\\' && quote == '"') {
+          i++;
+        }
+      } else if (c == '\'' || c == '"') {
+        quote = c;
+      } else if (c == '{' || c == '[') {
+        depth++;
+      } else if (c == '}' || c == ']') {
+        depth--;
+      }
+    }
+    return depth <= 0;
+  }
+
+  private Line peek() throws IOException {
+    if (next != null) {
+      return next;
+    }
+    String raw;
+    while ((raw = reader.readLine()) != null) {
+      lineNumber++;
+      String trimmed = raw.trim();
+      if (trimmed.isEmpty() || trimmed.startsWith("#") || trimmed.equals("---")) {
+        continue;
+      }
+      int indent = 0;
+      while (raw.charAt(indent) == ' ') {
+        indent++;
+      }
+      next = new Line(lineNumber, indent, stripComment(raw.substring(indent)));
+      return next;
+    }
+    return null;
+  }
+
+  private static boolean isMappingEntry(String text) {
+    try {
+      parseKey(new Line(0, 0, text));
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * @return the key of the mapping entry of the line, unquoted, and its inline value, empty if the
+   *     value is on the next lines
+   */
+  private static String[] parseKey(Line line) throws IOException {
+    String text = line.text;
+    int end;
+    String key;
+    if (text.startsWith("'") || text.startsWith("\"")) {
+      end = closingQuote(text, 0);
+      if (end < 0) {
+        throw new IOException("Unterminated key at line " + line.number);
+      }
+      key = unquote(text.substring(0, end + 1));
+      end++;
+      if (end >= text.length() || text.charAt(end) != ':') {
+        throw new IOException("Missing ':' after the key at line " + line.number);
+      }
+    } else {
+      end = text.indexOf(": ");
+      if (end < 0) {
+        if (!text.endsWith(":")) {
+          throw new IOException("Not a mapping entry at line " + line.number);
+        }
+        end = text.length() - 1;
+      }
+      key = text.substring(0, end).trim();
+    }
+    return new String[] {key, text.substring(end + 1).trim()};
+  }
+
+  private static int closingQuote(String text, int start) {
+    char quote = text.charAt(start);
+    for (int i = start + 1; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (quote == '"' && c == '\\') {
+        i++;
+      } else if (c == quote) {
+        if (quote == '\'' && i + 1 < text.length() && text.charAt(i + 1) == '\'') {
+          i++;
+        } else {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  private static String stripComment(String text) {
+    char quote = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        } else if (c == '\\' && quote == '"') {
+          i++;
+        }
+      } else if ((c == '\'' || c == '"') && (i == 0 || " :{[,-".indexOf(text.charAt(i - 1)) >= 0)) {
+        quote = c;
+      } else if (c == '#' && i > 0 && text.charAt(i - 1) == ' ') {
+        return text.substring(0, i).trim();
+      }
+    }
+    return text;
+  }
+
+  private static Object parseScalar(String value) {
+    if (value.startsWith("{") && value.endsWith("}")) {
+      Map<String, Object> mapping = new LinkedHashMap<>();
+      for (String entry : splitFlow(value.substring(1, value.length() - 1))) {
+        int colon = flowKeyEnd(entry);
+        if (colon < 0) {
+          mapping.put(unquote(entry), null);
+        } else {
+          mapping.put(
+              unquote(entry.substring(0, colon).trim()),
+              parseScalar(entry.substring(colon + 1).trim()));
+        }
+      }
+      return mapping;
+    }
+    if (value.startsWith("[") && value.endsWith("]")) {
+      List<Object> sequence = new ArrayList<>();
+      for (String item : splitFlow(value.substring(1, value.length() - 1))) {
+        sequence.add(parseScalar(item));
+      }
+      return sequence;
+    }
+    return unquote(value);
+  }
+
+  private static int flowKeyEnd(String entry) {
+    if (entry.startsWith("'") || entry.startsWith("\"")) {
+      int end = closingQuote(entry, 0);
+      return end >= 0 && end + 1 < entry.length() && entry.charAt(end + 1) == ':' ? end + 1 : -1;
+    }
+    int colon = entry.indexOf(": ");
+    return colon >= 0 ? colon : entry.endsWith(":") ? entry.length() - 1 : -1;
+  }
+
+  /** Splits the content of a flow collection on its top level commas. */
+  private static List<String> splitFlow(String content) {
+    List<String> items = new ArrayList<>();
+    int depth = 0;
+    char quote = 0;
+    int start = 0;
+    for (int i = 0; i < content.length(); i++) {
+      char c = content.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        } else if (c == '\\' && quote == '"') {
+          i++;
+        }
+      } else if (c == '\'' || c == '"') {
+        quote = c;
+      } else if (c == '{' || c == '[') {
+        depth++;
+      } else if (c == '}' || c == ']') {
+        depth--;
+      } else if (c == ',' && depth == 0) {
+        items.add(content.substring(start, i).trim());
+        start = i + 1;
+      }
+    }
+    String last = content.substring(start).trim();
+    if (!last.isEmpty()) {
+      items.add(last);
+    }
+    return items;
+  }
+
+  private static String unquote(String value) {
+    if (value.length() >= 2 && value.startsWith("'") && value.endsWith("'")) {
+      return value.substring(1, value.length() - 1).replace("''", "'");
+    }
+    if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+      StringBuilder unescaped = new StringBuilder();
+      for (int i = 1; i < value.length() - 1; i++) {
+        char c = value.charAt(i);
+        if (c == '\\' && i + 1 < value.length() - 1) {
+          char escaped = value.charAt(++i);
+          switch (escaped) {
+            case 'n':
+              unescaped.append('\n');
+              break;
+            case 't':
+              unescaped.append('\t');
+              break;
+            default:
+              unescaped.append(escaped);
+          }
+        } else {
+          unescaped.append(c);
+        }
+      }
+      return unescaped.toString();
+    }
+    return value;
+  }
+
+  private static final class Line {
+
+    private final int number;
+    private final int indent;
+    private final String text;
+
+    private Line(int number, int indent, String text) {
+      this.number = number;
+      this.indent = indent;
+      this.text = text;
+    }
+
+    private boolean isSequenceItem() {
+      return text.equals("-") || text.startsWith("- ");
+    }
+  }
+}
@@ -43,8 +43,13 @@ public Manifest(Path manifestPath) throws IOException {
     }
     var content = loadManifest(manifestPath);
     this.dependencies = loadDependencies(content);
-    this.name = content.get("name").asText();
-    this.version = content.get("version").asText();
+    // a private package, e.g. a workspace, may have no name, npm names it after its directory
+    this.name =
+        content.hasNonNull("name")
+            ? content.get("name").asText()
+            : manifestPath.toAbsolutePath().getParent().getFileName().toString();
+    // a private package, e.g. a workspace, may have no version
+    this.version = content.hasNonNull("version") ? content.get("version").asText() : null;
     this.root = JavaScriptProvider.toPurl(name, version);
     this.ignored = loadIgnored(content);
   }
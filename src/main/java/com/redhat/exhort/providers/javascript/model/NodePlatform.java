@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.providers.javascript.model;
+
+import com.redhat.exhort.utils.Environment;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The platform and the architecture the packages of a lock file are installed for, as named by
+ * node, e.g. {@code linux} and {@code x64}. The ones of this host are used, unless set in {@code
+ * EXHORT_JS_PLATFORM} and {@code EXHORT_JS_ARCH}.
+ */
+final class NodePlatform {
+
+  private static final String PROP_EXHORT_JS_PLATFORM = "EXHORT_JS_PLATFORM";
+  private static final String PROP_EXHORT_JS_ARCH = "EXHORT_JS_ARCH";
+
+  private final String platform;
+  private final String arch;
+
+  private NodePlatform(String platform, String arch) {
+    this.platform = platform;
+    this.arch = arch;
+  }
+
+  static NodePlatform current() {
+    return new NodePlatform(
+        Environment.get(PROP_EXHORT_JS_PLATFORM, nodePlatform(System.getProperty("os.name", ""))),
+        Environment.get(PROP_EXHORT_JS_ARCH, nodeArch(System.getProperty("os.arch", ""))));
+  }
+
+  /**
+   * @param os the platforms accepted by a package, e.g. {@code ["linux", "darwin"]}, or rejected by
+   *     it, e.g. {@code ["!win32"]}, empty for every platform
+   * @param cpu the architectures accepted or rejected by a package, empty for every architecture
+   * @return whether the package is installed on this platform
+   */
+  boolean accepts(List<String> os, List<String> cpu) {
+    return matches(os, platform) && matches(cpu, arch);
+  }
+
+  private static boolean matches(List<String> accepted, String value) {
+    if (accepted.isEmpty()) {
+      return true;
+    }
+    boolean onlyRejections = true;
+    for (String candidate : accepted) {
+      if (candidate.startsWith("!")) {
+        if (candidate.substring(1).equals(value)) {
+          return false;
+        }
+      } else {
+        onlyRejections = false;
+        if (candidate.equals(value) || candidate.equals("any")) {
+          return true;
+        }
+      }
+    }
+    return onlyRejections;
+  }
+
+  private static String nodePlatform(String osName) {
+    String name = osName.toLowerCase(Locale.ROOT);
+    if (name.startsWith("windows")) {
+      return "win32";
+    }
+    if (name.startsWith("mac")) {
+      return "darwin";
+    }
+    if (name.startsWith("sunos") || name.startsWith("solaris")) {
+      return "sunos";
+    }
+    return name.replace(" ", "");
+  }
+
+  private static String nodeArch(String osArch) {
+    switch (osArch) {
+      case "amd64":
+      case "x86_64":
+        return "x64";
+      case "aarch64":
+        return "arm64";
+      case "x86":
+      case "i386":
+      case "i686":
+        return "ia32";
+      case "ppc64le":
+        return "ppc64";
+      default:
+        return osArch;
+    }
+  }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.providers.javascript.model;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code packages} section of a package-lock.json, version 2 or 3, read with a streaming
+ * parser. Every package installed by npm is keyed by its location in the project, e.g. {@code
+ * node_modules/a/node_modules/b}, the dependencies of a package being resolved from the {@code
+ * node_modules} of its location and then of each of its parents, as node does.
+ */
+public final class PackageLock {
+
+  private static final JsonFactory FACTORY = new JsonFactory();
+  private static final String ROOT = "";
+  private static final String NODE_MODULES = "node_modules/";
+  // the sections of package.json copied to the root package of the lock file
+  private static final List<String> MANIFEST_SECTIONS =
+      List.of("dependencies", "optionalDependencies", "peerDependencies", "devDependencies");
+
+  // npm ls sorts the packages by name@version with the collation of the english locale, where
+  // punctuation sorts before digits and digits before letters
+  private static final Comparator<DependencyGraph.Node> NPM_LS_ORDER =
+      Comparator.comparing(
+          (DependencyGraph.Node node) -> node.name + "@" + node.version, PackageLock::collate);
+
+  private final int lockfileVersion;
+  private final Map<String, Entry> packages;
+  private final NodePlatform platform;
+
+  private PackageLock(int lockfileVersion, Map<String, Entry> packages, NodePlatform platform) {
+    this.lockfileVersion = lockfileVersion;
+    this.packages = packages;
+    this.platform = platform;
+  }
+
+  /**
+   * @param lockFile a package-lock.json
+   * @return the packages of the lock file, the other sections are skipped
+   * @throws IllegalStateException if the lock file has no {@code packages} section, as written by
+   *     npm 6 and before
+   */
+  public static PackageLock read(Path lockFile) throws IOException {
+    int lockfileVersion = 0;
+    Map<String, Entry> packages = null;
+    try (JsonParser parser = FACTORY.createParser(lockFile.toFile())) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Invalid lock file " + lockFile);
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        if ("lockfileVersion".equals(field)) {
+          lockfileVersion = parser.getValueAsInt();
+        } else if ("packages".equals(field) && parser.currentToken() == JsonToken.START_OBJECT) {
+          packages = readPackages(parser);
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+    if (lockfileVersion < 2 || packages == null || !packages.containsKey(ROOT)) {
+      throw new IllegalStateException(
+          String.format("Lock file version %d has no packages section", lockfileVersion));
+    }
+    return new PackageLock(lockfileVersion, packages, NodePlatform.current());
+  }
+
+  private static Map<String, Entry> readPackages(JsonParser parser) throws IOException {
+    Map<String, Entry> packages = new HashMap<>();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String location = parser.getCurrentName();
+      parser.nextToken();
+      packages.put(location, readEntry(parser));
+    }
+    return packages;
+  }
+
+  private static Entry readEntry(JsonParser parser) throws IOException {
+    Entry entry = new Entry();
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return entry;
+    }
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      switch (field) {
+        case "name":
+          entry.name = parser.getValueAsString();
+          break;
+        case "version":
+          entry.version = parser.getValueAsString();
+          break;
+        case "resolved":
+          entry.resolved = parser.getValueAsString();
+          break;
+        case "link":
+          entry.link = parser.getValueAsBoolean();
+          break;
+        case "os":
+          entry.os = readArray(parser);
+          break;
+        case "cpu":
+          entry.cpu = readArray(parser);
+          break;
+        case "dependencies":
+        case "optionalDependencies":
+        case "peerDependencies":
+        case "devDependencies":
+          entry.sections.put(field, readStrings(parser));
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    return entry;
+  }
+
+  private static Map<String, String> readStrings(JsonParser parser) throws IOException {
+    Map<String, String> values = new LinkedHashMap<>();
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return values;
+    }
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      parser.nextToken();
+      values.put(name, parser.getValueAsString());
+      parser.skipChildren();
+    }
+    return values;
+  }
+
+  private static List<String> readArray(JsonParser parser) throws IOException {
+    List<String> values = new ArrayList<>();
+    if (parser.currentToken() != JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return values;
+    }
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      values.add(parser.getValueAsString());
+      parser.skipChildren();
+    }
+    return values;
+  }
+
+  private static int collate(String left, String right) {
+    int length = Math.min(left.length(), right.length());
+    for (int i = 0; i < length; i++) {
+      int difference = collationRank(left.charAt(i)) - collationRank(right.charAt(i));
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return left.length() != right.length() ? left.length() - right.length() : left.compareTo(right);
+  }
+
+  private static int collationRank(char c) {
+    if (Character.isLetter(c)) {
+      return 0x20000 + Character.toLowerCase(c);
+    }
+    if (Character.isDigit(c)) {
+      return 0x10000 + c;
+    }
+    int punctuation = "_-,;:!?.'\"()[]{}@*/\\&#%`^+<=>|~$".indexOf(c);
+    return punctuation >= 0 ? punctuation : 0x100 + c;
+  }
+
+  public int getLockfileVersion() {
+    return lockfileVersion;
+  }
+
+  /**
+   * @param packageJson the content of the package.json of the project
+   * @return whether the lock file was written for the dependencies declared by the package.json,
+   *     otherwise npm would update it before listing the dependencies
+   */
+  public boolean isUpToDate(JsonNode packageJson) {
+    return isUpToDate(ROOT, packageJson);
+  }
+
+  /**
+   * @param workspace the directory of a workspace relative to the project, e.g. {@code packages/a},
+   *     or the empty string for the project itself
+   * @param packageJson the content of the package.json of the workspace
+   * @return whether the lock file was written for the dependencies declared by the package.json
+   */
+  public boolean isUpToDate(String workspace, JsonNode packageJson) {
+    Entry root = packages.get(workspace);
+    if (root == null) {
+      return false;
+    }
+    for (String section : MANIFEST_SECTIONS) {
+      Map<String, String> declared = new LinkedHashMap<>();
+      JsonNode node = packageJson.get(section);
+      if (node != null && node.isObject()) {
+        node.fields().forEachRemaining(e -> declared.put(e.getKey(), e.getValue().asText()));
+      }
+      if (!declared.equals(root.section(section))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the production dependencies of the project, the dev dependencies of the root package
+   *     and the optional dependencies which are not installed are left out
+   * @throws IllegalStateException if a required dependency is missing from the lock file
+   */
+  public DependencyGraph toGraph() {
+    return toGraph(ROOT);
+  }
+
+  /**
+   * @param workspace the directory of a workspace relative to the project, e.g. {@code packages/a},
+   *     or the empty string for the project itself
+   * @return the production dependencies of the workspace, which resolves the packages from its own
+   *     {@code node_modules} and then from the ones of its parent directories
+   * @throws IllegalStateException if the workspace or a required dependency is missing from the
+   *     lock file
+   */
+  public DependencyGraph toGraph(String workspace) {
+    if (!packages.containsKey(workspace)) {
+      throw new IllegalStateException(
+          String.format("Workspace %s is missing from the lock file", workspace));
+    }
+    Map<String, DependencyGraph.Node> nodes = new HashMap<>();
+    Deque<String> pending = new ArrayDeque<>();
+    Map<String, DependencyGraph.Node> direct = resolveDependencies(workspace, nodes, pending);
+    while (!pending.isEmpty()) {
+      String location = pending.pop();
+      DependencyGraph.Node node = nodes.get(location);
+      node.setDependencies(new ArrayList<>(resolveDependencies(location, nodes, pending).values()));
+    }
+    return new DependencyGraph(direct);
+  }
+
+  private Map<String, DependencyGraph.Node> resolveDependencies(
+      String location, Map<String, DependencyGraph.Node> nodes, Deque<String> pending) {
+    String realLocation = realLocation(location);
+    Entry entry = packages.get(realLocation);
+    Map<String, Boolean> required = new LinkedHashMap<>();
+    entry.section("dependencies").keySet().forEach(name -> required.put(name, true));
+    entry.section("optionalDependencies").keySet().forEach(name -> required.put(name, false));
+    // a peer missing from the lock file, optional or not, is reported by npm and left out
+    entry.section("peerDependencies").keySet().forEach(name -> required.putIfAbsent(name, false));
+    List<Map.Entry<String, DependencyGraph.Node>> dependencies = new ArrayList<>();
+    for (Map.Entry<String, Boolean> dependency : required.entrySet()) {
+      String name = dependency.getKey();
+      String resolved = resolve(realLocation, name);
+      if (resolved != null && !packages.get(realLocation(resolved)).isInstallable(platform)) {
+        // a package of another platform, which npm does not install on this one
+        continue;
+      }
+      if (resolved == null) {
+        if (dependency.getValue()) {
+          throw new IllegalStateException(
+              String.format(
+                  "Dependency %s of %s is missing from the lock file",
+                  name, location.isEmpty() ? "the project" : location));
+        }
+        continue;
+      }
+      DependencyGraph.Node node = nodes.get(resolved);
+      if (node == null) {
+        Entry installed = packages.get(resolved);
+        Entry real = packages.get(realLocation(resolved));
+        if (real.version == null) {
+          // a linked package without a version, which npm lists without one
+          continue;
+        }
+        // a package installed under an alias is listed under its own name
+        String packageName =
+            installed.name != null ? installed.name : real.name != null ? real.name : name;
+        node = new DependencyGraph.Node(packageName, real.version);
+        nodes.put(resolved, node);
+        pending.push(resolved);
+      }
+      dependencies.add(Map.entry(name, node));
+    }
+    dependencies.sort(Map.Entry.comparingByValue(NPM_LS_ORDER));
+    Map<String, DependencyGraph.Node> byName = new LinkedHashMap<>();
+    dependencies.forEach(dependency -> byName.put(dependency.getKey(), dependency.getValue()));
+    return byName;
+  }
+
+  /**
+   * @return the location of the package installed for the given one, the location of a linked
+   *     package being the directory it links to
+   */
+  private String realLocation(String location) {
+    Entry entry = packages.get(location);
+    if (entry.link && entry.resolved != null && packages.containsKey(entry.resolved)) {
+      return entry.resolved;
+    }
+    return location;
+  }
+
+  /**
+   * @return the location of the package named {@code name} required by the package at {@code
+   *     location}, or null if none is installed
+   */
+  private String resolve(String location, String name) {
+    String base = location;
+    while (true) {
+      String candidate = base.isEmpty() ? NODE_MODULES + name : base + "/" + NODE_MODULES + name;
+      if (packages.containsKey(candidate)) {
+        return candidate;
+      }
+      if (base.isEmpty()) {
+        return null;
+      }
+      int nested = base.lastIndexOf("/" + NODE_MODULES);
+      if (nested >= 0) {
+        base = base.substring(0, nested);
+      } else if (base.startsWith(NODE_MODULES)) {
+        base = ROOT;
+      } else {
+        // a workspace of the project, its parent directories are searched up to the root
+        int parent = base.lastIndexOf('/');
+        base = parent >= 0 ? base.substring(0, parent) : ROOT;
+      }
+    }
+  }
+
+  private static final class Entry {
+
+    private String name;
+    private String version;
+    private String resolved;
+    private boolean link;
+    private List<String> os = List.of();
+    private List<String> cpu = List.of();
+    private final Map<String, Map<String, String>> sections = new HashMap<>(4);
+
+    private Map<String, String> section(String name) {
+      return sections.getOrDefault(name, Map.of());
+    }
+
+    private boolean isInstallable(NodePlatform platform) {
+      return platform.accepts(os, cpu);
+    }
+  }
+}
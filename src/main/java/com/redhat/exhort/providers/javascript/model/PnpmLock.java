@@ -0,0 +1,339 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.providers.javascript.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A pnpm-lock.yaml, version 6 or 9. The projects of the lock file, the {@code importers}, require
+ * packages by name and by a reference to their key in the {@code packages} section, e.g. {@code
+ * debug@3.2.7(supports-color@5.5.0)} for a package whose peer dependencies are resolved. In version
+ * 9, the dependencies of the packages are in the {@code snapshots} section and the {@code packages}
+ * section holds their metadata only.
+ */
+public final class PnpmLock {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final String ROOT = ".";
+  private static final String LINK = "link:";
+  private static final Set<String> SECTIONS =
+      Set.of(
+          "lockfileVersion",
+          "importers",
+          "packages",
+          "snapshots",
+          "dependencies",
+          "optionalDependencies",
+          "devDependencies");
+  // the sections of package.json recorded for every project of the lock file
+  private static final List<String> MANIFEST_SECTIONS =
+      List.of("dependencies", "optionalDependencies", "devDependencies");
+
+  private final Path directory;
+  private final int lockfileVersion;
+  private final Map<String, Map<String, Object>> importers;
+  private final Map<String, Object> packages;
+  private final Map<String, Object> snapshots;
+  private final NodePlatform platform;
+
+  private PnpmLock(
+      Path directory,
+      int lockfileVersion,
+      Map<String, Map<String, Object>> importers,
+      Map<String, Object> packages,
+      Map<String, Object> snapshots,
+      NodePlatform platform) {
+    this.directory = directory;
+    this.lockfileVersion = lockfileVersion;
+    this.importers = importers;
+    this.packages = packages;
+    this.snapshots = snapshots;
+    this.platform = platform;
+  }
+
+  /**
+   * @param lockFile a pnpm-lock.yaml
+   * @return the projects and the packages of the lock file
+   * @throws IllegalStateException if the lock file is of a version other than 6 or 9
+   */
+  public static PnpmLock read(Path lockFile) throws IOException {
+    Map<String, Object> document = LockFileYaml.read(lockFile, SECTIONS);
+    String version = String.valueOf(document.get("lockfileVersion"));
+    int lockfileVersion;
+    try {
+      lockfileVersion = (int) Double.parseDouble(version);
+    } catch (NumberFormatException e) {
+      lockfileVersion = 0;
+    }
+    if (lockfileVersion != 6 && lockfileVersion != 9) {
+      throw new IllegalStateException(
+          String.format("Lock file version %s is not supported", version));
+    }
+    Map<String, Map<String, Object>> importers = new HashMap<>();
+    Map<String, Object> importersSection = mapping(document.get("importers"));
+    if (importersSection.isEmpty()) {
+      // a lock file of a single project records its dependencies at the top level
+      importers.put(ROOT, document);
+    } else {
+      importersSection.forEach((path, importer) -> importers.put(path, mapping(importer)));
+    }
+    if (!importers.containsKey(ROOT)) {
+      throw new IllegalStateException("Lock file has no root project");
+    }
+    return new PnpmLock(
+        lockFile.toAbsolutePath().getParent(),
+        lockfileVersion,
+        importers,
+        mapping(document.get("packages")),
+        lockfileVersion >= 9 ? mapping(document.get("snapshots")) : null,
+        NodePlatform.current());
+  }
+
+  public int getLockfileVersion() {
+    return lockfileVersion;
+  }
+
+  /**
+   * @param packageJson the content of the package.json of the project
+   * @return whether the lock file was written for the dependencies declared by the package.json,
+   *     otherwise pnpm would refuse to install from it
+   */
+  public boolean isUpToDate(JsonNode packageJson) {
+    return isUpToDate(ROOT, packageJson);
+  }
+
+  /**
+   * @param importer the directory of a project of the workspace relative to the root one, e.g.
+   *     {@code packages/a}, or {@code .} for the root project
+   * @param packageJson the content of the package.json of the project
+   * @return whether the lock file was written for the dependencies declared by the package.json
+   */
+  public boolean isUpToDate(String importer, JsonNode packageJson) {
+    Map<String, Object> root = importers.get(importer);
+    if (root == null) {
+      return false;
+    }
+    for (String section : MANIFEST_SECTIONS) {
+      Map<String, String> declared = new HashMap<>();
+      JsonNode node = packageJson.get(section);
+      if (node != null && node.isObject()) {
+        node.fields().forEachRemaining(e -> declared.put(e.getKey(), e.getValue().asText()));
+      }
+      Map<String, String> locked = new HashMap<>();
+      mapping(root.get(section))
+          .forEach((name, dependency) -> locked.put(name, specifier(dependency)));
+      if (!declared.equals(locked)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the production dependencies of the project, by name, the packages of other platforms
+   *     being left out
+   * @throws IllegalStateException if a package required is missing from the lock file
+   */
+  public DependencyGraph toGraph() throws IOException {
+    return toGraph(ROOT);
+  }
+
+  /**
+   * @param importer the directory of a project of the workspace relative to the root one, e.g.
+   *     {@code packages/a}, or {@code .} for the root project
+   * @return the production dependencies of the project, by name
+   * @throws IllegalStateException if the project or a package required is missing from the lock
+   *     file
+   */
+  public DependencyGraph toGraph(String importer) throws IOException {
+    if (!importers.containsKey(importer)) {
+      throw new IllegalStateException(
+          String.format("Project %s is missing from the lock file", importer));
+    }
+    Map<String, DependencyGraph.Node> nodes = new HashMap<>();
+    Map<DependencyGraph.Node, Map<String, Object>> dependenciesOf = new HashMap<>();
+    Deque<DependencyGraph.Node> pending = new ArrayDeque<>();
+    Map<String, DependencyGraph.Node> direct =
+        resolveDependencies(importers.get(importer), importer, nodes, dependenciesOf, pending);
+    while (!pending.isEmpty()) {
+      DependencyGraph.Node node = pending.pop();
+      Map<String, Object> entry = dependenciesOf.remove(node);
+      String linked = (String) entry.get(LINK);
+      node.setDependencies(
+          new ArrayList<>(
+              resolveDependencies(entry, linked, nodes, dependenciesOf, pending).values()));
+    }
+    return new DependencyGraph(direct);
+  }
+
+  /**
+   * @param entry an importer, or the snapshot of a package
+   * @param importer the path of the importer, or null for a package
+   */
+  private Map<String, DependencyGraph.Node> resolveDependencies(
+      Map<String, Object> entry,
+      String importer,
+      Map<String, DependencyGraph.Node> nodes,
+      Map<DependencyGraph.Node, Map<String, Object>> dependenciesOf,
+      Deque<DependencyGraph.Node> pending)
+      throws IOException {
+    Map<String, Boolean> required = new LinkedHashMap<>();
+    Map<String, String> references = new HashMap<>();
+    for (String section : List.of("dependencies", "optionalDependencies")) {
+      for (Map.Entry<String, Object> dependency : mapping(entry.get(section)).entrySet()) {
+        required.put(dependency.getKey(), section.equals("dependencies"));
+        references.put(dependency.getKey(), reference(dependency.getValue()));
+      }
+    }
+    List<Map.Entry<String, DependencyGraph.Node>> dependencies = new ArrayList<>();
+    for (Map.Entry<String, Boolean> dependency : required.entrySet()) {
+      String name = dependency.getKey();
+      String reference = references.get(name);
+      String key;
+      Map<String, Object> dependencyEntry;
+      String packageName;
+      String version;
+      if (reference.startsWith(LINK)) {
+        // a project of the workspace, its name and version are read from its package.json
+        String linked = linkedImporter(importer, reference.substring(LINK.length()));
+        key = LINK + linked;
+        dependencyEntry = importers.get(linked);
+        JsonNode workspace = dependencyEntry == null ? null : readWorkspaceManifest(linked);
+        if (workspace == null || !workspace.hasNonNull("version")) {
+          continue;
+        }
+        packageName = workspace.hasNonNull("name") ? workspace.get("name").asText() : name;
+        version = workspace.get("version").asText();
+        dependencyEntry = new HashMap<>(dependencyEntry);
+        dependencyEntry.put(LINK, linked);
+      } else {
+        key = packageKey(name, reference);
+        Map<String, Object> metadata = mapping(packages.get(withoutPeers(key)));
+        dependencyEntry =
+            snapshots != null ? asMapping(snapshots.get(key)) : asMapping(packages.get(key));
+        if (dependencyEntry == null) {
+          if (dependency.getValue()) {
+            throw new IllegalStateException(
+                String.format(
+                    "Package %s required by %s is missing from the lock file", key, name));
+          }
+          continue;
+        }
+        if (!platform.accepts(strings(metadata.get("os")), strings(metadata.get("cpu")))) {
+          // a package of another platform, which pnpm does not install on this one
+          continue;
+        }
+        // a package required under an alias is listed under its own name
+        String nameAndVersion = withoutPeers(key.startsWith("/") ? key.substring(1) : key);
+        int at = nameAndVersion.indexOf('@', 1);
+        packageName = nameAndVersion.substring(0, at);
+        version =
+            metadata.get("version") instanceof String
+                ? (String) metadata.get("version")
+                : nameAndVersion.substring(at + 1);
+      }
+      DependencyGraph.Node node = nodes.get(key);
+      if (node == null) {
+        node = new DependencyGraph.Node(packageName, version);
+        nodes.put(key, node);
+        dependenciesOf.put(node, dependencyEntry);
+        pending.push(node);
+      }
+      dependencies.add(Map.entry(name, node));
+    }
+    dependencies.sort(Map.Entry.comparingByValue(Comparator.comparing(node -> node.name)));
+    Map<String, DependencyGraph.Node> byName = new LinkedHashMap<>();
+    dependencies.forEach(dependency -> byName.put(dependency.getKey(), dependency.getValue()));
+    return byName;
+  }
+
+  /**
+   * @return the key of a package in the lock file, from the name it is required by and the
+   *     reference recorded for it, which is the key itself for a package installed under an alias
+   */
+  private String packageKey(String name, String reference) {
+    if (lockfileVersion < 9) {
+      return reference.startsWith("/") ? reference : "/" + name + "@" + reference;
+    }
+    int at = withoutPeers(reference).indexOf('@', 1);
+    return at > 0 && !reference.contains(":") ? reference : name + "@" + reference;
+  }
+
+  private static String withoutPeers(String key) {
+    int peers = key.indexOf('(');
+    return peers > 0 ? key.substring(0, peers) : key;
+  }
+
+  private static String linkedImporter(String importer, String target) {
+    Path base = ROOT.equals(importer) || importer == null ? Path.of("") : Path.of(importer);
+    String linked = base.resolve(target).normalize().toString().replace('\\', '/');
+    return linked.isEmpty() ? ROOT : linked;
+  }
+
+  private JsonNode readWorkspaceManifest(String importer) throws IOException {
+    Path manifest = directory.resolve(importer).resolve("package.json");
+    return Files.isRegularFile(manifest) ? MAPPER.readTree(manifest.toFile()) : null;
+  }
+
+  /**
+   * @return the reference to the package resolved for a dependency of a project, {@code {specifier:
+   *     ^1.0.0, version: 1.0.2}}, or of a package, {@code 1.0.2}
+   */
+  private static String reference(Object dependency) {
+    if (dependency instanceof Map) {
+      return String.valueOf(((Map<?, ?>) dependency).get("version"));
+    }
+    return String.valueOf(dependency);
+  }
+
+  private static String specifier(Object dependency) {
+    if (dependency instanceof Map) {
+      return String.valueOf(((Map<?, ?>) dependency).get("specifier"));
+    }
+    return String.valueOf(dependency);
+  }
+
+  private static List<String> strings(Object value) {
+    List<String> strings = new ArrayList<>();
+    if (value instanceof List) {
+      ((List<?>) value).forEach(item -> strings.add(String.valueOf(item)));
+    }
+    return strings;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> asMapping(Object value) {
+    return value instanceof Map ? (Map<String, Object>) value : null;
+  }
+
+  private static Map<String, Object> mapping(Object value) {
+    Map<String, Object> mapping = asMapping(value);
+    return mapping != null ? mapping : Map.of();
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.providers.javascript.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The workspaces of a javascript project, declared by the {@code workspaces} of its package.json,
+ * as npm and yarn do, or by the {@code packages} of its pnpm-workspace.yaml. Both are lists of glob
+ * patterns of directories, e.g. {@code packages/*}, a pattern starting with {@code !} excluding the
+ * directories it matches.
+ */
+public final class Workspaces {
+
+  public static final String PNPM_WORKSPACE = "pnpm-workspace.yaml";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private Workspaces() {}
+
+  /**
+   * @param projectDir the directory of the package.json of the project
+   * @return the directories of the workspaces holding a package.json, sorted, or an empty list if
+   *     the project declares none
+   */
+  public static List<Path> find(Path projectDir) throws IOException {
+    List<String> patterns = patterns(projectDir);
+    if (patterns.isEmpty()) {
+      return List.of();
+    }
+    List<PathMatcher> included = new ArrayList<>();
+    List<PathMatcher> excluded = new ArrayList<>();
+    // the directories at the maximum depth of the walk are visited as files
+    int maxDepth = 0;
+    for (String pattern : patterns) {
+      boolean exclusion = pattern.startsWith("!");
+      String glob = normalize(exclusion ? pattern.substring(1) : pattern);
+      if (glob.isEmpty()) {
+        continue;
+      }
+      PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+      (exclusion ? excluded : included).add(matcher);
+      if (!exclusion) {
+        maxDepth =
+            glob.contains("**")
+                ? Integer.MAX_VALUE
+                : Math.max(maxDepth, glob.split("/").length + 1);
+      }
+    }
+    if (included.isEmpty()) {
+      return List.of();
+    }
+    Set<Path> workspaces = new TreeSet<>();
+    Files.walkFileTree(
+        projectDir,
+        Set.of(),
+        maxDepth,
+        new SimpleFileVisitor<>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+            Path relative = projectDir.relativize(dir);
+            String name = relative.getFileName() == null ? "" : relative.getFileName().toString();
+            if (name.equals("node_modules") || name.startsWith(".")) {
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+            if (!relative.toString().isEmpty()
+                && included.stream().anyMatch(m -> m.matches(relative))
+                && excluded.stream().noneMatch(m -> m.matches(relative))
+                && Files.isRegularFile(dir.resolve("package.json"))) {
+              workspaces.add(dir);
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path file, IOException e) {
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    return List.copyOf(workspaces);
+  }
+
+  private static List<String> patterns(Path projectDir) throws IOException {
+    List<String> patterns = new ArrayList<>();
+    Path pnpmWorkspace = projectDir.resolve(PNPM_WORKSPACE);
+    if (Files.isRegularFile(pnpmWorkspace)) {
+      Object packages = LockFileYaml.read(pnpmWorkspace, Set.of("packages")).get("packages");
+      if (packages instanceof List) {
+        ((List<?>) packages).forEach(pattern -> patterns.add(String.valueOf(pattern)));
+      }
+      return patterns;
+    }
+    Path manifest = projectDir.resolve("package.json");
+    if (!Files.isRegularFile(manifest)) {
+      return patterns;
+    }
+    JsonNode workspaces = MAPPER.readTree(manifest.toFile()).get("workspaces");
+    // yarn also accepts {"packages": [...], "nohoist": [...]}
+    if (workspaces != null && workspaces.isObject()) {
+      workspaces = workspaces.get("packages");
+    }
+    if (workspaces != null && workspaces.isArray()) {
+      workspaces.forEach(pattern -> patterns.add(pattern.asText()));
+    }
+    return patterns;
+  }
+
+  private static String normalize(String pattern) {
+    String glob = pattern.trim().replace('\\', '/');
+    while (glob.startsWith("./")) {
+      glob = glob.substring(2);
+    }
+    while (glob.endsWith("/")) {
+      glob = glob.substring(0, glob.length() - 1);
+    }
+    return glob;
+  }
+}
@@ -0,0 +1,511 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.providers.javascript.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A yarn.lock, written by Yarn Classic (version 1, in a format of its own) or by Yarn Berry (a YAML
+ * document with a {@code __metadata} section). Every package of the lock file is keyed by the
+ * descriptors resolved to it, e.g. {@code "debug@^2.6.9, debug@~2.6.0"} in version 1 or {@code
+ * "debug@npm:^2.6.9, debug@npm:~2.6.0"} with Yarn Berry, and a dependency {@code debug: ^2.6.9} of
+ * a package is resolved by its descriptor {@code debug@^2.6.9}.
+ */
+public final class YarnLock {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final String METADATA = "__metadata";
+  private static final String NPM = "npm:";
+  private static final String VIRTUAL = "virtual:";
+  private static final String WORKSPACE = "@workspace:";
+  private static final String ROOT = ".";
+  private static final List<String> PRODUCTION_SECTIONS =
+      List.of("dependencies", "optionalDependencies");
+  // the sections of package.json resolved by the lock file
+  private static final List<String> MANIFEST_SECTIONS =
+      List.of("dependencies", "optionalDependencies", "devDependencies");
+
+  private final Path directory;
+  private final int lockfileVersion;
+  private final Map<String, Map<String, Object>> packages;
+  private final NodePlatform platform;
+  // the workspaces of a project of Yarn Classic, which does not lock them, by name
+  private Map<String, Map<String, Object>> classicWorkspaces;
+
+  private YarnLock(
+      Path directory,
+      int lockfileVersion,
+      Map<String, Map<String, Object>> packages,
+      NodePlatform platform) {
+    this.directory = directory;
+    this.lockfileVersion = lockfileVersion;
+    this.packages = packages;
+    this.platform = platform;
+  }
+
+  /**
+   * @param lockFile a yarn.lock
+   * @return the packages of the lock file, by descriptor
+   */
+  public static YarnLock read(Path lockFile) throws IOException {
+    int lockfileVersion;
+    Map<String, Object> document;
+    if (isBerry(lockFile)) {
+      document = LockFileYaml.read(lockFile);
+      String version = String.valueOf(mapping(document.get(METADATA)).get("version"));
+      try {
+        lockfileVersion = Integer.parseInt(version);
+      } catch (NumberFormatException e) {
+        throw new IllegalStateException(
+            String.format("Lock file version %s is not supported", version));
+      }
+    } else {
+      document = readClassic(lockFile);
+      lockfileVersion = 1;
+    }
+    Map<String, Map<String, Object>> packages = new HashMap<>();
+    for (Map.Entry<String, Object> entry : document.entrySet()) {
+      Map<String, Object> lockedPackage = asMapping(entry.getValue());
+      if (METADATA.equals(entry.getKey()) || lockedPackage == null) {
+        continue;
+      }
+      for (String descriptor : splitDescriptors(entry.getKey())) {
+        packages.put(descriptor, lockedPackage);
+      }
+    }
+    return new YarnLock(
+        lockFile.toAbsolutePath().getParent(), lockfileVersion, packages, NodePlatform.current());
+  }
+
+  /**
+   * @return 1 for a lock file written by Yarn Classic, otherwise the version of the {@code
+   *     __metadata} section written by Yarn Berry
+   */
+  public int getLockfileVersion() {
+    return lockfileVersion;
+  }
+
+  /**
+   * @param packageJson the content of the package.json of the project
+   * @return whether the lock file resolves the dependencies declared by the package.json, otherwise
+   *     yarn would refuse to install from it
+   */
+  public boolean isUpToDate(JsonNode packageJson) throws IOException {
+    return isUpToDate(ROOT, packageJson);
+  }
+
+  /**
+   * @param workspace the directory of a workspace relative to the project, e.g. {@code packages/a},
+   *     or {@code .} for the project itself
+   * @param packageJson the content of the package.json of the workspace
+   * @return whether the lock file resolves the dependencies declared by the package.json
+   */
+  public boolean isUpToDate(String workspace, JsonNode packageJson) throws IOException {
+    Map<String, String> declared = declaredDependencies(packageJson, MANIFEST_SECTIONS);
+    if (lockfileVersion == 1) {
+      Map<String, Map<String, Object>> workspaces = classicWorkspaces();
+      return declared.entrySet().stream()
+          .allMatch(
+              e ->
+                  packages.containsKey(e.getKey() + "@" + e.getValue())
+                      || workspaces.containsKey(e.getKey()));
+    }
+    Map<String, Object> lockedWorkspace = workspace(workspace);
+    if (lockedWorkspace == null) {
+      return false;
+    }
+    Map<String, Object> locked = mapping(lockedWorkspace.get("dependencies"));
+    if (locked.size() != declared.size()) {
+      return false;
+    }
+    // yarn records the semver ranges of the registry with their protocol
+    return declared.entrySet().stream()
+        .allMatch(
+            e -> {
+              Object reference = locked.get(e.getKey());
+              return e.getValue().equals(reference) || (NPM + e.getValue()).equals(reference);
+            });
+  }
+
+  /**
+   * @param packageJson the content of the package.json of the project
+   * @return the production dependencies of the project, by name, the packages of other platforms
+   *     being left out
+   * @throws IllegalStateException if a package required is missing from the lock file
+   */
+  public DependencyGraph toGraph(JsonNode packageJson) throws IOException {
+    return toGraph(ROOT, packageJson);
+  }
+
+  /**
+   * @param workspace the directory of a workspace relative to the project, e.g. {@code packages/a},
+   *     or {@code .} for the project itself
+   * @param packageJson the content of the package.json of the workspace
+   * @return the production dependencies of the workspace, by name
+   * @throws IllegalStateException if the workspace or a package required is missing from the lock
+   *     file
+   */
+  public DependencyGraph toGraph(String workspace, JsonNode packageJson) throws IOException {
+    Map<String, DependencyGraph.Node> nodes = new HashMap<>();
+    Map<DependencyGraph.Node, Map<String, Object>> dependenciesOf = new HashMap<>();
+    Deque<DependencyGraph.Node> pending = new ArrayDeque<>();
+    Map<String, Object> root;
+    if (lockfileVersion == 1) {
+      // Yarn Classic does not lock the project itself, its dependencies are read from package.json
+      root = new HashMap<>();
+      for (String section : PRODUCTION_SECTIONS) {
+        root.put(section, declaredDependencies(packageJson, List.of(section)));
+      }
+    } else {
+      root = workspace(workspace);
+      if (root == null) {
+        throw new IllegalStateException(String.format("Lock file has no workspace %s", workspace));
+      }
+    }
+    Map<String, DependencyGraph.Node> direct =
+        resolveDependencies(root, packageJson, nodes, dependenciesOf, pending);
+    while (!pending.isEmpty()) {
+      DependencyGraph.Node node = pending.pop();
+      Map<String, Object> lockedPackage = dependenciesOf.remove(node);
+      JsonNode manifest = isWorkspace(lockedPackage) ? readWorkspaceManifest(lockedPackage) : null;
+      node.setDependencies(
+          new ArrayList<>(
+              resolveDependencies(lockedPackage, manifest, nodes, dependenciesOf, pending)
+                  .values()));
+    }
+    return new DependencyGraph(direct);
+  }
+
+  /**
+   * @param lockedPackage a package of the lock file
+   * @param packageJson the package.json of a workspace, whose development dependencies are left
+   *     out, or null for a package of the registry
+   */
+  private Map<String, DependencyGraph.Node> resolveDependencies(
+      Map<String, Object> lockedPackage,
+      JsonNode packageJson,
+      Map<String, DependencyGraph.Node> nodes,
+      Map<DependencyGraph.Node, Map<String, Object>> dependenciesOf,
+      Deque<DependencyGraph.Node> pending)
+      throws IOException {
+    Map<String, Boolean> required = new LinkedHashMap<>();
+    Map<String, String> references = new HashMap<>();
+    for (String section : PRODUCTION_SECTIONS) {
+      for (Map.Entry<String, Object> dependency : mapping(lockedPackage.get(section)).entrySet()) {
+        required.put(dependency.getKey(), section.equals("dependencies"));
+        references.put(dependency.getKey(), String.valueOf(dependency.getValue()));
+      }
+    }
+    if (packageJson != null) {
+      required.keySet().retainAll(declaredDependencies(packageJson, PRODUCTION_SECTIONS).keySet());
+    }
+    List<Map.Entry<String, DependencyGraph.Node>> dependencies = new ArrayList<>();
+    for (Map.Entry<String, Boolean> dependency : required.entrySet()) {
+      String name = dependency.getKey();
+      String descriptor = name + "@" + references.get(name);
+      Map<String, Object> resolved = resolve(descriptor);
+      if (resolved == null) {
+        if (dependency.getValue()) {
+          throw new IllegalStateException(
+              String.format("Package %s is missing from the lock file", descriptor));
+        }
+        continue;
+      }
+      if (!isInstallable(resolved)) {
+        // a package of another platform, which yarn does not install on this one
+        continue;
+      }
+      String key = locator(descriptor, resolved);
+      DependencyGraph.Node node = nodes.get(key);
+      if (node == null) {
+        String packageName = packageName(key);
+        String version = String.valueOf(resolved.get("version"));
+        if (isWorkspace(resolved)) {
+          // a workspace of the project, its version is read from its package.json
+          JsonNode workspace = readWorkspaceManifest(resolved);
+          if (workspace == null || !workspace.hasNonNull("version")) {
+            continue;
+          }
+          version = workspace.get("version").asText();
+        }
+        node = new DependencyGraph.Node(packageName, version);
+        nodes.put(key, node);
+        dependenciesOf.put(node, resolved);
+        pending.push(node);
+      }
+      dependencies.add(Map.entry(name, node));
+    }
+    dependencies.sort(Map.Entry.comparingByValue(Comparator.comparing(node -> node.name)));
+    Map<String, DependencyGraph.Node> byName = new LinkedHashMap<>();
+    dependencies.forEach(dependency -> byName.put(dependency.getKey(), dependency.getValue()));
+    return byName;
+  }
+
+  /**
+   * @return the package a descriptor resolves to, the virtual descriptors of the packages with peer
+   *     dependencies, e.g. {@code react-dom@virtual:0123456789#npm:^18.0.0}, resolving to the
+   *     package of the descriptor they wrap
+   */
+  private Map<String, Object> resolve(String descriptor) throws IOException {
+    Map<String, Object> resolved = packages.get(descriptor);
+    int at = descriptor.indexOf('@', 1);
+    if (resolved == null && lockfileVersion == 1) {
+      resolved = classicWorkspaces().get(descriptor.substring(0, at));
+    }
+    if (resolved == null && descriptor.startsWith(VIRTUAL, at + 1)) {
+      String name = descriptor.substring(0, at);
+      resolved = packages.get(name + "@" + descriptor.substring(descriptor.indexOf('#') + 1));
+    }
+    if (resolved == null && lockfileVersion > 1 && descriptor.indexOf(':', at) < 0) {
+      resolved = packages.get(descriptor.substring(0, at + 1) + NPM + descriptor.substring(at + 1));
+    }
+    return resolved;
+  }
+
+  /**
+   * @return the locator identifying a package of the lock file, e.g. {@code
+   *     string-width@npm:4.2.3}, under the name of the package itself for a package required under
+   *     an alias
+   */
+  private String locator(String descriptor, Map<String, Object> resolved) {
+    if (resolved.get("resolution") instanceof String) {
+      return (String) resolved.get("resolution");
+    }
+    // Yarn Classic records the version only, an alias being resolved by npm:<name>@<range>
+    int at = descriptor.indexOf('@', 1);
+    String name = descriptor.substring(0, at);
+    String range = descriptor.substring(at + 1);
+    if (range.startsWith(NPM) && range.indexOf('@', NPM.length() + 1) > 0) {
+      name = range.substring(NPM.length(), range.indexOf('@', NPM.length() + 1));
+    }
+    return name + "@" + NPM + resolved.get("version");
+  }
+
+  private static String packageName(String locator) {
+    return locator.substring(0, locator.indexOf('@', 1));
+  }
+
+  /**
+   * @return the package of a workspace locked by Yarn Berry, or null if missing
+   */
+  private Map<String, Object> workspace(String path) {
+    return packages.values().stream()
+        .filter(p -> String.valueOf(p.get("resolution")).endsWith(WORKSPACE + path))
+        .findFirst()
+        .orElse(null);
+  }
+
+  /**
+   * @return the workspaces of a project of Yarn Classic by name, as packages of the lock file
+   *     resolved to their directory
+   */
+  private Map<String, Map<String, Object>> classicWorkspaces() throws IOException {
+    if (classicWorkspaces == null) {
+      Map<String, Map<String, Object>> workspaces = new HashMap<>();
+      for (Path workspace : Workspaces.find(directory)) {
+        JsonNode packageJson = MAPPER.readTree(workspace.resolve("package.json").toFile());
+        if (!packageJson.hasNonNull("name")) {
+          continue;
+        }
+        String name = packageJson.get("name").asText();
+        String path = directory.relativize(workspace).toString().replace('\\', '/');
+        Map<String, Object> lockedPackage = new HashMap<>();
+        lockedPackage.put("resolution", name + WORKSPACE + path);
+        lockedPackage.put(
+            "version",
+            packageJson.hasNonNull("version") ? packageJson.get("version").asText() : null);
+        for (String section : PRODUCTION_SECTIONS) {
+          lockedPackage.put(section, declaredDependencies(packageJson, List.of(section)));
+        }
+        workspaces.put(name, lockedPackage);
+      }
+      classicWorkspaces = workspaces;
+    }
+    return classicWorkspaces;
+  }
+
+  /**
+   * @return whether a package is installed on this platform, from the {@code conditions} recorded
+   *     by Yarn Berry, e.g. {@code os=darwin & (cpu=x64 | cpu=arm64)}, Yarn Classic recording none
+   */
+  private boolean isInstallable(Map<String, Object> lockedPackage) {
+    if (!(lockedPackage.get("conditions") instanceof String)) {
+      return true;
+    }
+    Map<String, List<String>> accepted = Map.of("os", new ArrayList<>(), "cpu", new ArrayList<>());
+    String conditions = ((String) lockedPackage.get("conditions")).replaceAll("[()]", "");
+    for (String condition : conditions.split("[&|]")) {
+      String[] keyValue = condition.trim().split("=", 2);
+      boolean rejected = keyValue[0].endsWith("!");
+      String key = rejected ? keyValue[0].substring(0, keyValue[0].length() - 1) : keyValue[0];
+      if (keyValue.length == 2 && accepted.containsKey(key)) {
+        accepted.get(key).add(rejected ? "!" + keyValue[1] : keyValue[1]);
+      }
+    }
+    return platform.accepts(accepted.get("os"), accepted.get("cpu"));
+  }
+
+  private static boolean isWorkspace(Map<String, Object> lockedPackage) {
+    return String.valueOf(lockedPackage.get("resolution")).contains(WORKSPACE);
+  }
+
+  private JsonNode readWorkspaceManifest(Map<String, Object> lockedPackage) throws IOException {
+    String resolution = String.valueOf(lockedPackage.get("resolution"));
+    String path = resolution.substring(resolution.indexOf(WORKSPACE) + WORKSPACE.length());
+    Path manifest = directory.resolve(path).resolve("package.json");
+    return Files.isRegularFile(manifest) ? MAPPER.readTree(manifest.toFile()) : null;
+  }
+
+  private static Map<String, String> declaredDependencies(
+      JsonNode packageJson, List<String> sections) {
+    Map<String, String> declared = new LinkedHashMap<>();
+    for (String section : sections) {
+      JsonNode node = packageJson.get(section);
+      if (node != null && node.isObject()) {
+        node.fields().forEachRemaining(e -> declared.put(e.getKey(), e.getValue().asText()));
+      }
+    }
+    return declared;
+  }
+
+  private static boolean isBerry(Path lockFile) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(lockFile, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String trimmed = line.trim();
+        if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+          return trimmed.equals(METADATA + ":");
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Reads a lock file of Yarn Classic, made of {@code key value} lines and of {@code key:} lines
+   * opening a section indented below them.
+   */
+  private static Map<String, Object> readClassic(Path lockFile) throws IOException {
+    Map<String, Object> document = new LinkedHashMap<>();
+    Deque<Map<String, Object>> sections = new ArrayDeque<>();
+    Deque<Integer> indents = new ArrayDeque<>();
+    sections.push(document);
+    indents.push(-1);
+    int lineNumber = 0;
+    try (BufferedReader reader = Files.newBufferedReader(lockFile, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        String text = line.trim();
+        if (text.isEmpty() || text.startsWith("#")) {
+          continue;
+        }
+        int indent = line.indexOf(text.charAt(0));
+        while (indents.peek() >= indent) {
+          indents.pop();
+          sections.pop();
+        }
+        if (text.endsWith(":")) {
+          // the keys of a package are kept quoted, to be split into descriptors
+          Map<String, Object> section = new LinkedHashMap<>();
+          String key = text.substring(0, text.length() - 1);
+          sections.peek().put(indents.peek() < 0 ? key : unquote(key), section);
+          sections.push(section);
+          indents.push(indent);
+        } else {
+          int end = text.startsWith("\"") ? closingQuote(text) + 1 : text.indexOf(' ');
+          if (end <= 0 || end >= text.length()) {
+            throw new IOException(
+                String.format("Invalid entry at line %d of %s", lineNumber, lockFile));
+          }
+          sections.peek().put(unquote(text.substring(0, end)), unquote(text.substring(end).trim()));
+        }
+      }
+    }
+    return document;
+  }
+
+  /** Splits the key of a package into its descriptors, separated by commas. */
+  private static List<String> splitDescriptors(String key) {
+    List<String> descriptors = new ArrayList<>();
+    boolean quoted = false;
+    int start = 0;
+    for (int i = 0; i < key.length(); i++) {
+      char c = key.charAt(i);
+      if (c == '"') {
+        quoted = !quoted;
+      } else if (c == '\\' && quoted) {
+        i++;
+      } else if (c == ',' && !quoted) {
+        descriptors.add(unquote(key.substring(start, i).trim()));
+        start = i + 1;
+      }
+    }
+    descriptors.add(unquote(key.substring(start).trim()));
+    return descriptors;
+  }
+
+  private static int closingQuote(String text) {
+    for (int i = 1; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == '"') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static String unquote(String value) {
+    if (value.length() < 2 || !value.startsWith("\"") || !value.endsWith("\"")) {
+      return value;
+    }
+    StringBuilder unescaped = new StringBuilder();
+    for (int i = 1; i < value.length() - 1; i++) {
+      char c = value.charAt(i);
+      if (c == '\\' && i + 1 < value.length() - 1) {
+        c = value.charAt(++i);
+      }
+      unescaped.append(c);
+    }
+    return unescaped.toString();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> asMapping(Object value) {
+    return value instanceof Map ? (Map<String, Object>) value : null;
+  }
+
+  private static Map<String, Object> mapping(Object value) {
+    Map<String, Object> mapping = asMapping(value);
+    return mapping != null ? mapping : Map.of();
+  }
+}
@@ -0,0 +1,497 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.providers.python.model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.tomlj.Toml;
+import org.tomlj.TomlArray;
+import org.tomlj.TomlParseResult;
+import org.tomlj.TomlTable;
+
+/**
+ * The packages resolved by a lock file of a python project, a {@code uv.lock} or a {@code
+ * poetry.lock} next to its {@code pyproject.toml}, or a {@code pylock.toml} (PEP 751). The lock
+ * files record the dependencies of every package, the dependency graph is built from them alone,
+ * without installing anything. A lock file resolves the packages for all the platforms, the
+ * dependencies restricted to other platforms by their markers are part of the graph.
+ */
+public final class PythonLockFile {
+
+  public static final String UV_LOCK = "uv.lock";
+  public static final String POETRY_LOCK = "poetry.lock";
+  public static final String PYLOCK = "pylock.toml";
+  public static final String PYPROJECT = "pyproject.toml";
+
+  private static final Pattern PYLOCK_NAME = Pattern.compile("pylock\\.(?:[^.]+\\.)?toml");
+  private static final Pattern REQUIREMENT =
+      Pattern.compile("^\\s*([A-Za-z0-9](?:[A-Za-z0-9._-]*[A-Za-z0-9])?)\\s*(?:\\[([^]]*)])?");
+
+  /** The name of the project, or null if the manifest does not tell it. */
+  public final String name;
+
+  /** The version of the project, or null if the manifest does not tell it. */
+  public final String version;
+
+  /** The packages the project requires, along with their own dependencies. */
+  public final List<Package> dependencies;
+
+  private PythonLockFile(String name, String version, List<Package> dependencies) {
+    this.name = name;
+    this.version = version;
+    this.dependencies = dependencies;
+  }
+
+  /**
+   * @param fileName the name of a file
+   * @return whether the file is a pylock.toml, possibly named after its purpose like {@code
+   *     pylock.dev.toml}
+   */
+  public static boolean isPylock(String fileName) {
+    return PYLOCK_NAME.matcher(fileName).matches();
+  }
+
+  /**
+   * @param manifest a pyproject.toml or a pylock.toml
+   * @return the lock file resolving the packages of the manifest, or null if there is none
+   */
+  public static Path findLockFile(Path manifest) {
+    if (isPylock(manifest.getFileName().toString())) {
+      return manifest;
+    }
+    Path directory = manifest.toAbsolutePath().getParent();
+    for (String lockFile : List.of(UV_LOCK, POETRY_LOCK, PYLOCK)) {
+      Path candidate = directory.resolve(lockFile);
+      if (Files.isRegularFile(candidate)) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param manifest a pyproject.toml or a pylock.toml
+   * @return the packages resolved by the lock file of the manifest
+   * @throws IOException if there is no lock file or it can't be parsed
+   */
+  public static PythonLockFile read(Path manifest) throws IOException {
+    Path lockFile = findLockFile(manifest);
+    if (lockFile == null) {
+      throw new IOException("No uv.lock, poetry.lock or pylock.toml next to " + manifest);
+    }
+    Path pyprojectFile = manifest.toAbsolutePath().getParent().resolve(PYPROJECT);
+    TomlTable pyproject =
+        Files.isRegularFile(pyprojectFile) ? parse(pyprojectFile) : Toml.parse("");
+    TomlParseResult lock = parse(lockFile);
+    String fileName = lockFile.getFileName().toString();
+    String name = firstString(pyproject, "project", "name", "tool", "poetry", "name");
+    String version = firstString(pyproject, "project", "version", "tool", "poetry", "version");
+    List<Package> dependencies;
+    if (fileName.equals(UV_LOCK)) {
+      dependencies = readUvLock(lock, pyproject);
+    } else if (fileName.equals(POETRY_LOCK)) {
+      dependencies = readPoetryLock(lock, pyproject);
+    } else {
+      dependencies = readPylock(lock, pyproject);
+    }
+    return new PythonLockFile(name, version, dependencies);
+  }
+
+  private static TomlParseResult parse(Path file) throws IOException {
+    TomlParseResult result = Toml.parse(file);
+    if (result.hasErrors()) {
+      throw new IOException(
+          String.format("Failed to parse %s: %s", file, result.errors().get(0).toString()));
+    }
+    return result;
+  }
+
+  /**
+   * uv records the dependencies of every package as tables naming them, with their version and
+   * source when several packages have the same name. The project is the package of the lock file
+   * with the source {@code editable = "."} or {@code virtual = "."}.
+   */
+  private static List<Package> readUvLock(TomlTable lock, TomlTable pyproject) {
+    Packages packages = new Packages();
+    List<TomlTable> tables = tables(lock.getArray("package"));
+    List<Package> nodes = new ArrayList<>();
+    TomlTable root = null;
+    for (TomlTable table : tables) {
+      TomlTable source = table.getTable("source");
+      if (root == null && source != null && isProjectSource(source)) {
+        root = table;
+        nodes.add(null);
+        continue;
+      }
+      nodes.add(packages.add(table.getString("name"), table.getString("version")));
+    }
+    for (int i = 0; i < tables.size(); i++) {
+      Package node = nodes.get(i);
+      if (node != null) {
+        TomlTable table = tables.get(i);
+        for (TomlTable dependency : tables(table.getArray("dependencies"))) {
+          node.addAll(uvDependency(packages, tables, nodes, dependency));
+        }
+      }
+    }
+    if (root == null) {
+      return packages.resolveAll(projectRequirements(pyproject));
+    }
+    Set<Package> direct = new LinkedHashSet<>();
+    for (TomlTable dependency : tables(root.getArray("dependencies"))) {
+      direct.addAll(uvDependency(packages, tables, nodes, dependency));
+    }
+    return new ArrayList<>(direct);
+  }
+
+  private static boolean isProjectSource(TomlTable source) {
+    return ".".equals(source.getString("editable")) || ".".equals(source.getString("virtual"));
+  }
+
+  private static List<Package> uvDependency(
+      Packages packages, List<TomlTable> tables, List<Package> nodes, TomlTable dependency) {
+    List<Package> targets =
+        packages.resolve(dependency.getString("name"), dependency.getString("version"));
+    TomlArray extras = dependency.getArray("extra");
+    if (extras != null) {
+      // the requested extras add the optional dependencies of the package
+      for (int i = 0; i < tables.size(); i++) {
+        Package target = nodes.get(i);
+        TomlTable optional = tables.get(i).getTable("optional-dependencies");
+        if (target == null || optional == null || !targets.contains(target)) {
+          continue;
+        }
+        for (String extra : strings(extras)) {
+          TomlArray extraDependencies = optional.getArray(List.of(extra));
+          for (TomlTable extraDependency : tables(extraDependencies)) {
+            target.addAll(
+                packages.resolve(
+                    extraDependency.getString("name"), extraDependency.getString("version")));
+          }
+        }
+      }
+    }
+    return targets;
+  }
+
+  /**
+   * Poetry records the dependencies of every package as the constraints the package declares, the
+   * optional ones being installed only for the extras requiring them. The requirements of the
+   * project are in its pyproject.toml.
+   */
+  private static List<Package> readPoetryLock(TomlTable lock, TomlTable pyproject) {
+    Packages packages = new Packages();
+    List<TomlTable> tables = tables(lock.getArray("package"));
+    List<Package> nodes = new ArrayList<>();
+    for (TomlTable table : tables) {
+      nodes.add(packages.add(table.getString("name"), table.getString("version")));
+    }
+    Map<Package, TomlTable> extrasOf = new HashMap<>();
+    for (int i = 0; i < tables.size(); i++) {
+      TomlTable extras = tables.get(i).getTable("extras");
+      if (extras != null) {
+        extrasOf.put(nodes.get(i), extras);
+      }
+    }
+    for (int i = 0; i < tables.size(); i++) {
+      TomlTable dependencies = tables.get(i).getTable("dependencies");
+      if (dependencies == null) {
+        continue;
+      }
+      for (Map.Entry<String, Object> dependency : dependencies.entrySet()) {
+        Object constraint = dependency.getValue();
+        if (isOptional(constraint)) {
+          continue;
+        }
+        List<Package> targets = packages.resolve(dependency.getKey(), null);
+        nodes.get(i).addAll(targets);
+        addPoetryExtras(packages, extrasOf, targets, poetryExtras(constraint));
+      }
+    }
+    List<Requirement> requirements = new ArrayList<>(projectRequirements(pyproject));
+    TomlTable poetryDependencies = pyproject.getTable(List.of("tool", "poetry", "dependencies"));
+    if (poetryDependencies != null) {
+      for (Map.Entry<String, Object> dependency : poetryDependencies.entrySet()) {
+        if (!dependency.getKey().equalsIgnoreCase("python") && !isOptional(dependency.getValue())) {
+          requirements.add(
+              new Requirement(dependency.getKey(), poetryExtras(dependency.getValue())));
+        }
+      }
+    }
+    for (Requirement requirement : requirements) {
+      addPoetryExtras(
+          packages, extrasOf, packages.resolve(requirement.name, null), requirement.extras);
+    }
+    return packages.resolveAll(requirements);
+  }
+
+  /** Adds the packages required by the extras of the targets to their dependencies. */
+  private static void addPoetryExtras(
+      Packages packages,
+      Map<Package, TomlTable> extrasOf,
+      List<Package> targets,
+      List<String> extras) {
+    for (String extra : extras) {
+      for (Package target : targets) {
+        TomlTable extrasTable = extrasOf.get(target);
+        TomlArray requirements = extrasTable == null ? null : extrasTable.getArray(List.of(extra));
+        for (String requirement : strings(requirements)) {
+          Requirement parsed = Requirement.parse(requirement);
+          if (parsed != null) {
+            target.addAll(packages.resolve(parsed.name, null));
+          }
+        }
+      }
+    }
+  }
+
+  private static boolean isOptional(Object constraint) {
+    if (constraint instanceof TomlTable) {
+      return Boolean.TRUE.equals(((TomlTable) constraint).getBoolean("optional"));
+    }
+    if (constraint instanceof TomlArray) {
+      // a constraint per marker, optional if all of them are
+      List<TomlTable> alternatives = tables((TomlArray) constraint);
+      return !alternatives.isEmpty() && alternatives.stream().allMatch(PythonLockFile::isOptional);
+    }
+    return false;
+  }
+
+  private static List<String> poetryExtras(Object constraint) {
+    List<String> extras = new ArrayList<>();
+    if (constraint instanceof TomlTable) {
+      extras.addAll(strings(((TomlTable) constraint).getArray("extras")));
+    } else if (constraint instanceof TomlArray) {
+      for (TomlTable alternative : tables((TomlArray) constraint)) {
+        extras.addAll(strings(alternative.getArray("extras")));
+      }
+    }
+    return extras;
+  }
+
+  /**
+   * A pylock.toml may record the dependencies of its packages, but it doesn't tell the requirements
+   * of the project. They are the ones of the pyproject.toml next to it when there is one, otherwise
+   * the packages no other package depends on, or all the packages if the lock file records no
+   * dependencies.
+   */
+  private static List<Package> readPylock(TomlTable lock, TomlTable pyproject) {
+    Packages packages = new Packages();
+    List<TomlTable> tables = tables(lock.getArray("packages"));
+    List<Package> nodes = new ArrayList<>();
+    for (TomlTable table : tables) {
+      nodes.add(packages.add(table.getString("name"), table.getString("version")));
+    }
+    Set<Package> required = new HashSet<>();
+    for (int i = 0; i < tables.size(); i++) {
+      for (TomlTable dependency : tables(tables.get(i).getArray("dependencies"))) {
+        List<Package> targets =
+            packages.resolve(dependency.getString("name"), dependency.getString("version"));
+        nodes.get(i).addAll(targets);
+        required.addAll(targets);
+      }
+    }
+    List<Requirement> requirements = projectRequirements(pyproject);
+    if (!requirements.isEmpty()) {
+      return packages.resolveAll(requirements);
+    }
+    List<Package> direct = new ArrayList<>();
+    for (Package node : nodes) {
+      if (!required.contains(node) && !direct.contains(node)) {
+        direct.add(node);
+      }
+    }
+    return direct;
+  }
+
+  private static List<Requirement> projectRequirements(TomlTable pyproject) {
+    List<Requirement> requirements = new ArrayList<>();
+    for (String requirement : strings(pyproject.getArray(List.of("project", "dependencies")))) {
+      Requirement parsed = Requirement.parse(requirement);
+      if (parsed != null) {
+        requirements.add(parsed);
+      }
+    }
+    return requirements;
+  }
+
+  private static String firstString(
+      TomlTable table,
+      String section,
+      String key,
+      String alternativeTool,
+      String alternativeSection,
+      String alternativeKey) {
+    String value = table.getString(List.of(section, key));
+    if (value == null) {
+      value = table.getString(List.of(alternativeTool, alternativeSection, alternativeKey));
+    }
+    return value;
+  }
+
+  private static List<TomlTable> tables(TomlArray array) {
+    List<TomlTable> tables = new ArrayList<>();
+    if (array != null) {
+      for (int i = 0; i < array.size(); i++) {
+        if (array.get(i) instanceof TomlTable) {
+          tables.add(array.getTable(i));
+        }
+      }
+    }
+    return tables;
+  }
+
+  private static List<String> strings(TomlArray array) {
+    List<String> strings = new ArrayList<>();
+    if (array != null) {
+      for (int i = 0; i < array.size(); i++) {
+        if (array.get(i) instanceof String) {
+          strings.add(array.getString(i));
+        }
+      }
+    }
+    return strings;
+  }
+
+  /**
+   * @return the name normalized following PEP 503, the way the lock files and pip compare names
+   */
+  public static String canonicalName(String name) {
+    return name.replaceAll("[-_.]+", "-").toLowerCase(Locale.ROOT);
+  }
+
+  /** A requirement of the project, its name and the extras it requests. */
+  public static final class Requirement {
+
+    public final String name;
+    public final List<String> extras;
+
+    Requirement(String name, List<String> extras) {
+      this.name = name;
+      this.extras = extras;
+    }
+
+    /**
+     * @param requirement a PEP 508 requirement, like {@code requests[socks]>=2.31 ; python_version
+     *     > "3.8"}, or a poetry one, like {@code pysocks (>=1.5.6,!=1.5.7)}
+     * @return the requirement, or null if it doesn't start with a name
+     */
+    public static Requirement parse(String requirement) {
+      Matcher matcher = REQUIREMENT.matcher(requirement);
+      if (!matcher.find()) {
+        return null;
+      }
+      List<String> extras = new ArrayList<>();
+      if (matcher.group(2) != null) {
+        for (String extra : matcher.group(2).split(",")) {
+          if (!extra.isBlank()) {
+            extras.add(extra.trim());
+          }
+        }
+      }
+      return new Requirement(matcher.group(1), extras);
+    }
+  }
+
+  /** A package resolved by the lock file, along with the packages it depends on. */
+  public static final class Package {
+
+    public final String name;
+    public final String version;
+    private final Set<Package> dependencies = new LinkedHashSet<>();
+
+    Package(String name, String version) {
+      this.name = name;
+      this.version = version;
+    }
+
+    /**
+     * @return the packages this one depends on, in the order of the lock file
+     */
+    public List<Package> getDependencies() {
+      return new ArrayList<>(dependencies);
+    }
+
+    void addAll(List<Package> packages) {
+      for (Package dependency : packages) {
+        if (dependency != this) {
+          dependencies.add(dependency);
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      return name + "@" + version;
+    }
+  }
+
+  /** The packages of a lock file by their normalized name, several versions sharing a name. */
+  private static final class Packages {
+
+    private final Map<String, List<Package>> byName = new LinkedHashMap<>();
+
+    Package add(String name, String version) {
+      Package node = new Package(name, version);
+      byName.computeIfAbsent(canonicalName(name), k -> new ArrayList<>()).add(node);
+      return node;
+    }
+
+    /**
+     * @return the package of the name and version, or all the packages of the name when the version
+     *     isn't given
+     */
+    List<Package> resolve(String name, String version) {
+      if (name == null) {
+        return List.of();
+      }
+      List<Package> candidates = byName.getOrDefault(canonicalName(name), List.of());
+      if (version == null || candidates.size() < 2) {
+        return candidates;
+      }
+      List<Package> matching = new ArrayList<>();
+      for (Package candidate : candidates) {
+        if (version.equals(candidate.version)) {
+          matching.add(candidate);
+        }
+      }
+      return matching.isEmpty() ? candidates : matching;
+    }
+
+    /**
+     * @return the packages required by the project
+     */
+    List<Package> resolveAll(List<Requirement> requirements) {
+      Set<Package> direct = new LinkedHashSet<>();
+      for (Requirement requirement : requirements) {
+        direct.addAll(resolve(requirement.name, null));
+      }
+      return new ArrayList<>(direct);
+    }
+  }
+}
@@ -25,9 +25,13 @@
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.BiPredicate;
 import java.util.function.Predicate;
 import java.util.logging.Logger;
@@ -50,6 +54,9 @@ public class CycloneDXSbom implements Sbom {
   private String exhortIgnoreMethod;
   private final Bom bom;
   private PackageURL root;
+  // the first component and dependency of every reference, saving a scan of the lists per lookup
+  private final Map<String, Component> componentsByRef = new HashMap<>();
+  private final Map<String, Dependency> dependenciesByRef = new HashMap<>();
 
   private BiPredicate<Collection<?>, Component> belongingCriteriaBinaryAlgorithm;
 
@@ -98,8 +105,11 @@ public Sbom addRoot(PackageURL rootRef) {
     this.root = rootRef;
     Component rootComponent = newRootComponent(rootRef);
     bom.getMetadata().setComponent(rootComponent);
+    Dependency rootDependency = newDependency(rootRef);
     bom.getComponents().add(rootComponent);
-    bom.getDependencies().add(newDependency(rootRef));
+    bom.getDependencies().add(rootDependency);
+    componentsByRef.putIfAbsent(rootComponent.getBomRef(), rootComponent);
+    dependenciesByRef.putIfAbsent(rootDependency.getRef(), rootDependency);
     return this;
   }
 
@@ -172,7 +182,8 @@ private <T> Sbom filterIgnoredDepsInsensitive(Collection<T> ignoredDeps) {
     return removeIgnoredDepsFromSbom(refsToIgnore);
   }
 
-  private Sbom removeIgnoredDepsFromSbom(List<String> refsToIgnore) {
+  private Sbom removeIgnoredDepsFromSbom(List<String> ignoredRefs) {
+    Set<String> refsToIgnore = new HashSet<>(ignoredRefs);
     bom.setComponents(
         bom.getComponents().stream()
             .filter(c -> !refsToIgnore.contains(c.getBomRef()))
@@ -193,9 +204,17 @@ private Sbom removeIgnoredDepsFromSbom(List<String> refsToIgnore) {
                 d.setDependencies(filteredDeps);
               }
             });
+    reindex();
     return this;
   }
 
+  private void reindex() {
+    componentsByRef.clear();
+    dependenciesByRef.clear();
+    bom.getComponents().forEach(c -> componentsByRef.putIfAbsent(c.getBomRef(), c));
+    bom.getDependencies().forEach(d -> dependenciesByRef.putIfAbsent(d.getRef(), d));
+  }
+
   private <T> Sbom filterIgnoredDepsSensitive(Collection<T> ignoredDeps) {
 
     List<String> refsToIgnore =
@@ -230,33 +249,40 @@ public Sbom addDependency(PackageURL sourceRef, PackageURL targetRef, String s)
     }
     Component srcComp = newComponent(sourceRef, scope);
     Dependency srcDep;
-    if (bom.getComponents().stream().noneMatch(c -> c.getBomRef().equals(srcComp.getBomRef()))) {
-      bom.addComponent(srcComp);
+    if (!componentsByRef.containsKey(srcComp.getBomRef())) {
+      addComponent(srcComp);
       srcDep = newDependency(sourceRef);
-      bom.addDependency(srcDep);
+      addDependency(srcDep);
     } else {
-      Optional<Dependency> existingDep =
-          bom.getDependencies().stream()
-              .filter(d -> d.getRef().equals(srcComp.getBomRef()))
-              .findFirst();
-      if (existingDep.isPresent()) {
-        srcDep = existingDep.get();
+      Dependency existingDep = dependenciesByRef.get(srcComp.getBomRef());
+      if (existingDep != null) {
+        srcDep = existingDep;
       } else {
         srcDep = newDependency(sourceRef);
-        bom.addDependency(srcDep);
+        addDependency(srcDep);
       }
     }
     Dependency targetDep = newDependency(targetRef);
     srcDep.addDependency(targetDep);
-    if (bom.getDependencies().stream().noneMatch(d -> d.getRef().equals(targetDep.getRef()))) {
-      bom.addDependency(targetDep);
+    if (!dependenciesByRef.containsKey(targetDep.getRef())) {
+      addDependency(targetDep);
     }
-    if (bom.getComponents().stream().noneMatch(c -> c.getBomRef().equals(targetDep.getRef()))) {
-      bom.addComponent(newComponent(targetRef, scope));
+    if (!componentsByRef.containsKey(targetDep.getRef())) {
+      addComponent(newComponent(targetRef, scope));
     }
     return this;
   }
 
+  private void addComponent(Component component) {
+    bom.addComponent(component);
+    componentsByRef.putIfAbsent(component.getBomRef(), component);
+  }
+
+  private void addDependency(Dependency dependency) {
+    bom.addDependency(dependency);
+    dependenciesByRef.putIfAbsent(dependency.getRef(), dependency);
+  }
+
   @Override
   public String getAsJsonString() {
     try {
@@ -314,5 +340,6 @@ public void removeRootComponent() {
     bom.getDependencies()
         .removeIf((dependency) -> dependency.getRef().equals(this.root.getCoordinates()));
     bom.getMetadata().setComponent(null);
+    reindex();
   }
 }
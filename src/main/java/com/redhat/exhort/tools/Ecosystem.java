@@ -20,7 +20,9 @@
 import com.redhat.exhort.providers.GradleProvider;
 import com.redhat.exhort.providers.JavaMavenProvider;
 import com.redhat.exhort.providers.JavaScriptProviderFactory;
+import com.redhat.exhort.providers.PythonLockFileProvider;
 import com.redhat.exhort.providers.PythonPipProvider;
+import com.redhat.exhort.providers.python.model.PythonLockFile;
 import java.nio.file.Path;
 
 /** Utility class used for instantiating providers. * */
@@ -94,10 +96,15 @@ private static Provider resolveProvider(final Path manifestPath) {
         return new GoModulesProvider(manifestPath);
       case "requirements.txt":
         return new PythonPipProvider(manifestPath);
+      case PythonLockFile.PYPROJECT:
+        return new PythonLockFileProvider(manifestPath);
       case "build.gradle":
       case "build.gradle.kts":
         return new GradleProvider(manifestPath);
       default:
+        if (PythonLockFile.isPylock(manifestFile)) {
+          return new PythonLockFileProvider(manifestPath);
+        }
         throw new IllegalStateException(String.format("Unknown manifest file %s", manifestFile));
     }
   }
@@ -22,13 +22,18 @@
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -191,6 +196,51 @@ public static String runProcessGetOutput(Path dir, final String[] cmdList, Strin
     }
   }
 
+  /**
+   * Runs a command and hands its standard output over to a reader while it runs, so an output too
+   * large to hold in memory is read as it comes. The standard error is drained aside and reported
+   * if the command fails.
+   *
+   * @param dir the working directory of the command, or null for the current one
+   * @param cmdList the command and its arguments
+   * @param envList the environment of the command, or null to inherit it
+   * @param reader reads the standard output of the command
+   * @return what the reader read
+   */
+  public static <T> T runProcessReadOutput(
+      Path dir, final String[] cmdList, String[] envList, OutputReader<T> reader) {
+    try {
+      Process process =
+          Runtime.getRuntime().exec(cmdList, envList, dir == null ? null : dir.toFile());
+      CompletableFuture<String> stderr = drain(process.getErrorStream());
+      T result;
+      try (var output = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+        result = reader.read(output);
+      }
+      int exitCode = process.waitFor();
+      if (exitCode != 0) {
+        throw new RuntimeException(
+            String.format(
+                "failed to execute '%s', exit-code %d, message: %s",
+                join(" ", cmdList), exitCode, stderr.join().trim()));
+      }
+      return result;
+    } catch (IOException e) {
+      throw new RuntimeException(
+          String.format("Failed to execute command '%s' ", join(" ", cmdList)), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(
+          String.format("Failed to execute command '%s' ", join(" ", cmdList)), e);
+    }
+  }
+
+  /** Reads the standard output of a command, see {@link #runProcessReadOutput}. */
+  @FunctionalInterface
+  public interface OutputReader<T> {
+    T read(Reader output) throws IOException;
+  }
+
   public static ProcessExecOutput runProcessGetFullOutput(
       Path dir, final String[] cmdList, String[] envList) {
     try {
@@ -237,6 +287,58 @@ public static ProcessExecOutput runProcessGetFullOutput(
     }
   }
 
+  /**
+   * Runs a command for at most the given time, its standard output and error being drained while it
+   * runs. A command still running once the time is up is killed.
+   *
+   * @param dir the working directory of the command, or null for the current one
+   * @param cmdList the command and its arguments
+   * @param envList the environment of the command, or null to inherit it
+   * @param timeout the time the command may take
+   * @return the output, error and exit code of the command
+   * @throws RuntimeException caused by a {@link TimeoutException} if the command took longer
+   */
+  public static ProcessExecOutput runProcessGetFullOutput(
+      Path dir, final String[] cmdList, String[] envList, Duration timeout) {
+    try {
+      Process process =
+          Runtime.getRuntime().exec(cmdList, envList, dir == null ? null : dir.toFile());
+      CompletableFuture<String> output = drain(process.getInputStream());
+      CompletableFuture<String> error = drain(process.getErrorStream());
+      if (!process.waitFor(Math.max(0, timeout.toMillis()), TimeUnit.MILLISECONDS)) {
+        process.destroyForcibly();
+        throw new RuntimeException(
+            String.format("Command '%s' did not end within %s", join(" ", cmdList), timeout),
+            new TimeoutException());
+      }
+      return new ProcessExecOutput(output.join(), error.join(), process.exitValue());
+    } catch (IOException e) {
+      throw new RuntimeException(
+          String.format("Failed to execute command '%s' ", join(" ", cmdList)), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(
+          String.format("Failed to execute command '%s' ", join(" ", cmdList)), e);
+    }
+  }
+
+  // drains a stream of a process in a thread of its own, the common pool being too small to block
+  private static CompletableFuture<String> drain(InputStream stream) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          try (InputStream input = stream) {
+            return new String(input.readAllBytes());
+          } catch (IOException e) {
+            return "";
+          }
+        },
+        runnable -> {
+          Thread thread = new Thread(runnable, "exhort-process-output");
+          thread.setDaemon(true);
+          thread.start();
+        });
+  }
+
   public static class ProcessExecOutput {
     private final String output;
     private final String error;
@@ -311,6 +413,36 @@ public static String getExecutable(String command, String args) {
     return getExecutable(command, args, null);
   }
 
+  /**
+   * Finds an executable the way the shell would, a name without a directory being looked up in the
+   * directories of the PATH.
+   *
+   * @param executable the path or the name of the executable
+   * @return the absolute path of the executable, or null if it is not found
+   */
+  public static Path findExecutable(String executable) {
+    Path path = Path.of(executable);
+    if (path.getParent() != null || Files.isRegularFile(path)) {
+      return Files.isRegularFile(path) ? path.toAbsolutePath() : null;
+    }
+    String searchPath = System.getenv("PATH");
+    if (searchPath == null) {
+      return null;
+    }
+    for (String directory : searchPath.split(File.pathSeparator)) {
+      if (directory.isEmpty()) {
+        continue;
+      }
+      for (String candidate : List.of(executable, executable + ".exe")) {
+        Path found = Path.of(directory, candidate);
+        if (Files.isRegularFile(found) && Files.isExecutable(found)) {
+          return found.toAbsolutePath();
+        }
+      }
+    }
+    return null;
+  }
+
   /**
    * Checks whether a wrapper preference is set for a given tool name.
    *
@@ -340,36 +472,22 @@ public static String getMavenConfig(String configName) {
   /**
    * Attempts to retrieve the root directory of a Git repository for the given working directory.
    *
-   * <p>This method runs the command {@code git rev-parse --show-toplevel} in the specified
-   * directory, which returns the absolute path to the root of the current Git working tree. If the
-   * command executes successfully and produces output, the trimmed result is returned as an {@link
-   * Optional}. If the command fails or the output is empty, an empty {@code Optional} is returned.
+   * <p>This method looks for a {@code .git} directory, or a {@code .git} file of a worktree or a
+   * submodule, in the specified directory and its parents, like {@code git rev-parse
+   * --show-toplevel} does, without running git.
    *
-   * @param cwd the working directory in which to execute the Git command
+   * @param cwd the working directory to start looking from
    * @return an {@code Optional} containing the Git root directory path if found, otherwise {@code
    *     Optional.empty()}
    */
   public static Optional<String> getGitRootDir(String cwd) {
-    List<String> command = Arrays.asList("git", "rev-parse", "--show-toplevel");
-    ProcessBuilder builder =
-        new ProcessBuilder(command).directory(new File(cwd)).redirectErrorStream(true);
-    try {
-      Process process = builder.start();
-      try (BufferedReader reader =
-          new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-        String line = reader.readLine();
-        int exitCode = process.waitFor();
-        if (exitCode == 0) {
-          return Optional.ofNullable(line).map(String::trim);
-        } else {
-          log.warning("Git command exited with code " + exitCode + " in directory " + cwd);
-        }
+    for (Path current = Path.of(cwd).toAbsolutePath().normalize();
+        current != null;
+        current = current.getParent()) {
+      Path dotGit = current.resolve(".git");
+      if (Files.isRegularFile(dotGit.resolve("HEAD")) || Files.isRegularFile(dotGit)) {
+        return Optional.of(current.toString());
       }
-    } catch (IOException e) {
-      log.warning("I/O error executing git in " + cwd + ": " + e.getMessage());
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      log.warning("Git command interrupted in directory " + cwd + ": " + e.getMessage());
     }
     return Optional.empty();
   }
@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Digests and writes of the files kept across runs, e.g. in the temporary directory, which other
+ * processes may be reading or writing meanwhile.
+ */
+public final class CacheFiles {
+
+  private CacheFiles() {}
+
+  /** Writes the content of a file. */
+  @FunctionalInterface
+  public interface Content {
+    void writeTo(OutputStream out) throws IOException;
+  }
+
+  /**
+   * @return the hex SHA-256 digest of the content
+   */
+  public static String sha256(byte[] content) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported", e);
+    }
+  }
+
+  /**
+   * @return the hex SHA-256 digest of the UTF-8 bytes of the content
+   */
+  public static String sha256(String content) {
+    return sha256(content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @return the hex SHA-256 digest of the file, or {@code missing} if it is not a regular file
+   */
+  public static String sha256(Path file, String missing) throws IOException {
+    return Files.isRegularFile(file) ? sha256(Files.readAllBytes(file)) : missing;
+  }
+
+  /**
+   * Writes a file aside in its directory and moves it in place, a reader never seeing it partly.
+   */
+  public static void write(Path file, Content content) throws IOException {
+    Path tmpFile = Files.createTempFile(file.getParent(), file.getFileName() + ".", ".tmp");
+    try {
+      try (OutputStream out = Files.newOutputStream(tmpFile)) {
+        content.writeTo(out);
+      }
+      Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmpFile);
+    }
+  }
+
+  /**
+   * Writes a file aside in its directory and moves it in place, see {@link #write(Path, Content)}.
+   */
+  public static void write(Path file, byte[] content) throws IOException {
+    write(file, out -> out.write(content));
+  }
+}
@@ -38,4 +38,28 @@ public static boolean getBoolean(String key, boolean defaultValue) {
     }
     return defaultValue;
   }
+
+  public static int getInt(String key, int defaultValue) {
+    var val = get(key);
+    if (val != null) {
+      try {
+        return Integer.parseInt(val.trim());
+      } catch (NumberFormatException e) {
+        return defaultValue;
+      }
+    }
+    return defaultValue;
+  }
+
+  public static long getLong(String key, long defaultValue) {
+    var val = get(key);
+    if (val != null) {
+      try {
+        return Long.parseLong(val.trim());
+      } catch (NumberFormatException e) {
+        return defaultValue;
+      }
+    }
+    return defaultValue;
+  }
 }
@@ -30,9 +30,17 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -42,10 +50,17 @@ public abstract class PythonControllerBase {
   public static final String PROP_EXHORT_PIP_PIPDEPTREE = "EXHORT_PIP_PIPDEPTREE";
   public static final String PROP_EXHORT_PIP_FREEZE = "EXHORT_PIP_FREEZE";
   public static final String PROP_EXHORT_PIP_USE_DEP_TREE = "EXHORT_PIP_USE_DEP_TREE";
+  public static final String PROP_EXHORT_PIP_USE_SITE_PACKAGES = "EXHORT_PIP_USE_SITE_PACKAGES";
+  public static final String PROP_EXHORT_PYTHON_ENVIRONMENT_CACHE =
+      "EXHORT_PYTHON_ENVIRONMENT_CACHE";
   public static final String PROP_EXHORT_PYTHON_INSTALL_BEST_EFFORTS =
       "EXHORT_PYTHON_INSTALL_BEST_EFFORTS";
   public static final String PROP_EXHORT_PIP_SHOW = "EXHORT_PIP_SHOW";
   public static final String PROP_EXHORT_PYTHON_VIRTUAL_ENV = "EXHORT_PYTHON_VIRTUAL_ENV";
+  public static final String PROP_EXHORT_PYTHON_VIRTUAL_ENV_POOL_QUOTA_MB =
+      "EXHORT_PYTHON_VIRTUAL_ENV_POOL_QUOTA_MB";
+  public static final String PROP_EXHORT_PYTHON_INSTALL_PARALLELISM =
+      "EXHORT_PYTHON_INSTALL_PARALLELISM";
 
   private final Logger log = LoggersFactory.getLogger(this.getClass().getName());
   protected Path pythonEnvironmentDir;
@@ -62,8 +77,19 @@ public abstract class PythonControllerBase {
   public abstract boolean isRealEnv();
 
   void installPackages(String pathToRequirements) {
-    Operations.runProcess(pipBinaryLocation, "install", "-r", pathToRequirements);
-    Operations.runProcess(pipBinaryLocation, "freeze");
+    Operations.runProcess(pipCommand("install", "-r", pathToRequirements));
+    Operations.runProcess(pipCommand("freeze"));
+  }
+
+  /**
+   * @param args the arguments of pip
+   * @return the command running pip of the environment with the arguments
+   */
+  protected String[] pipCommand(String... args) {
+    String[] command = new String[args.length + 1];
+    command[0] = pipBinaryLocation;
+    System.arraycopy(args, 0, command, 1, args.length);
+    return command;
   }
 
   public abstract boolean isVirtualEnv();
@@ -72,75 +98,194 @@ void installPackages(String pathToRequirements) {
 
   public final List<Map<String, Object>> getDependencies(
       String pathToRequirements, boolean includeTransitive) {
+    return toMaps(
+        getDependencyGraph(pathToRequirements, includeTransitive), new IdentityHashMap<>());
+  }
+
+  /**
+   * Resolves the installed packages of the requirements, along with their dependencies when
+   * includeTransitive is set. A package required by several others is a single shared node, unless
+   * its subtree was cut to break a cycle.
+   *
+   * @param pathToRequirements the requirements.txt file
+   * @param includeTransitive whether to resolve the dependencies of the requirements
+   * @return a node per requirement, in the order of the requirements file
+   */
+  public final List<PythonDependencyNode> getDependencyGraph(
+      String pathToRequirements, boolean includeTransitive) {
     if (isVirtualEnv() || isRealEnv()) {
       prepareEnvironment(pathToPythonBin);
     }
-    if (automaticallyInstallPackageOnEnvironment()) {
-      boolean installBestEfforts =
-          Environment.getBoolean(PROP_EXHORT_PYTHON_INSTALL_BEST_EFFORTS, false);
-      /*
-       make best efforts to install the requirements.txt on the virtual environment created from
-       the python3 passed in. that means that it will install the packages without referring to
-       the versions, but will let pip choose the version tailored for version of the python
-       environment( and of pip package manager) for each package.
-      */
-      if (installBestEfforts) {
-        boolean matchManifestVersions = Environment.getBoolean(PROP_MATCH_MANIFEST_VERSIONS, true);
-        if (matchManifestVersions) {
-          throw new RuntimeException(
-              "Conflicting settings, "
-                  + PythonControllerBase.PROP_EXHORT_PYTHON_INSTALL_BEST_EFFORTS
-                  + "=true can only work with "
-                  + PROP_MATCH_MANIFEST_VERSIONS
-                  + "=false");
+    List<PythonDependencyNode> dependencies;
+    try {
+      if (automaticallyInstallPackageOnEnvironment()) {
+        boolean installBestEfforts =
+            Environment.getBoolean(PROP_EXHORT_PYTHON_INSTALL_BEST_EFFORTS, false);
+        /*
+         make best efforts to install the requirements.txt on the virtual environment created from
+         the python3 passed in. that means that it will install the packages without referring to
+         the versions, but will let pip choose the version tailored for version of the python
+         environment( and of pip package manager) for each package.
+        */
+        if (installBestEfforts) {
+          boolean matchManifestVersions =
+              Environment.getBoolean(PROP_MATCH_MANIFEST_VERSIONS, true);
+          if (matchManifestVersions) {
+            throw new RuntimeException(
+                "Conflicting settings, "
+                    + PythonControllerBase.PROP_EXHORT_PYTHON_INSTALL_BEST_EFFORTS
+                    + "=true can only work with "
+                    + PROP_MATCH_MANIFEST_VERSIONS
+                    + "=false");
+          } else {
+            installingRequirementsOneByOne(pathToRequirements);
+          }
         } else {
-          installingRequirementsOneByOne(pathToRequirements);
+          installPackages(pathToRequirements);
         }
-      } else {
-        installPackages(pathToRequirements);
       }
-    }
-    List<Map<String, Object>> dependencies =
-        getDependenciesImpl(pathToRequirements, includeTransitive);
-    if (isVirtualEnv()) {
-      cleanEnvironment(false);
+      dependencies = getDependenciesImpl(pathToRequirements, includeTransitive);
+    } finally {
+      // returns the environment to the pool, even when the analysis failed
+      if (isVirtualEnv()) {
+        cleanEnvironment(false);
+      }
     }
 
     return dependencies;
   }
 
-  private void installingRequirementsOneByOne(String pathToRequirements) {
+  /**
+   * Installs the requirements one by one, each at the version pip chooses for the environment. The
+   * packages are downloaded concurrently, as many at a time as set by {@value
+   * #PROP_EXHORT_PYTHON_INSTALL_PARALLELISM}, then installed from the downloaded files in the order
+   * of the requirements, pip being unsafe when installing in the same environment concurrently.
+   */
+  void installingRequirementsOneByOne(String pathToRequirements) {
+    List<String> dependencyNames;
     try {
-      List<String> requirementsRows = Files.readAllLines(Path.of(pathToRequirements));
-      requirementsRows.stream()
-          .filter((line) -> !line.trim().startsWith("#"))
-          .filter((line) -> !line.trim().isEmpty())
-          .forEach(
-              (dependency) -> {
-                String dependencyName = getDependencyName(dependency);
-                try {
-                  Operations.runProcess(this.pipBinaryLocation, "install", dependencyName);
-                } catch (RuntimeException e) {
-                  throw new RuntimeException(
-                      String.format(
-                          "Best efforts process - failed installing package - %s in created virtual"
-                              + " python environment --> error message got from underlying process"
-                              + " => %s ",
-                          dependencyName, e.getMessage()));
-                }
-              });
-
+      dependencyNames =
+          Files.readAllLines(Path.of(pathToRequirements)).stream()
+              .filter((line) -> !line.trim().startsWith("#"))
+              .filter((line) -> !line.trim().isEmpty())
+              .map(PythonControllerBase::getDependencyName)
+              .collect(Collectors.toList());
     } catch (IOException e) {
       throw new RuntimeException(
           "Cannot continue with analysis - error opening requirements.txt file in order to install"
               + " packages one by one in a best efforts manner - related error message => "
               + e.getMessage());
     }
+    Path downloads = null;
+    try {
+      downloads = Files.createTempDirectory("exhort_pip_downloads_");
+      downloadConcurrently(dependencyNames, downloads);
+    } catch (IOException e) {
+      log.fine("Could not download the packages before installing them: " + e);
+    }
+    try {
+      for (String dependencyName : dependencyNames) {
+        installDownloaded(dependencyName, downloads);
+      }
+    } finally {
+      deleteDirectory(downloads);
+    }
   }
 
-  private List<Map<String, Object>> getDependenciesImpl(
+  private void downloadConcurrently(List<String> dependencyNames, Path downloads) {
+    int parallelism =
+        Math.max(
+            1,
+            Math.min(
+                dependencyNames.size(),
+                Environment.getInt(
+                    PROP_EXHORT_PYTHON_INSTALL_PARALLELISM,
+                    Math.min(4, Runtime.getRuntime().availableProcessors()))));
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    try {
+      List<Future<?>> downloading = new ArrayList<>();
+      for (String dependencyName : dependencyNames) {
+        downloading.add(
+            executor.submit(
+                () ->
+                    // a failed download is reported when installing the package
+                    Operations.runProcessGetFullOutput(
+                        null,
+                        pipCommand("download", "--dest", downloads.toString(), dependencyName),
+                        null)));
+      }
+      for (Future<?> download : downloading) {
+        download.get();
+      }
+    } catch (ExecutionException e) {
+      log.fine("Could not download the packages before installing them: " + e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void installDownloaded(String dependencyName, Path downloads) {
+    if (downloads != null) {
+      Operations.ProcessExecOutput offline =
+          Operations.runProcessGetFullOutput(
+              null,
+              pipCommand(
+                  "install", "--no-index", "--find-links", downloads.toString(), dependencyName),
+              null);
+      if (offline.getExitCode() == 0) {
+        return;
+      }
+    }
+    try {
+      Operations.runProcess(pipCommand("install", dependencyName));
+    } catch (RuntimeException e) {
+      throw new RuntimeException(
+          String.format(
+              "Best efforts process - failed installing package - %s in created virtual"
+                  + " python environment --> error message got from underlying process"
+                  + " => %s ",
+              dependencyName, e.getMessage()));
+    }
+  }
+
+  private void deleteDirectory(Path directory) {
+    if (directory == null) {
+      return;
+    }
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.deleteIfExists(file);
+      }
+    } catch (IOException e) {
+      log.fine("Could not delete " + directory + ": " + e);
+    }
+  }
+
+  private static List<Map<String, Object>> toMaps(
+      List<PythonDependencyNode> nodes, Map<PythonDependencyNode, Map<String, Object>> converted) {
+    List<Map<String, Object>> maps = new ArrayList<>(nodes.size());
+    for (PythonDependencyNode node : nodes) {
+      Map<String, Object> dataMap = converted.get(node);
+      if (dataMap == null) {
+        dataMap = new HashMap<>();
+        dataMap.put("name", node.getName());
+        dataMap.put("version", node.getVersion());
+        if (node.getDependencies() != null) {
+          dataMap.put("dependencies", toMaps(node.getDependencies(), converted));
+        }
+        converted.put(node, dataMap);
+      }
+      maps.add(dataMap);
+    }
+    return maps;
+  }
+
+  private List<PythonDependencyNode> getDependenciesImpl(
       String requirements, boolean includeTransitive) {
-    List<Map<String, Object>> dependencies = new ArrayList<>();
+    List<PythonDependencyNode> dependencies = new ArrayList<>();
     Map<StringInsensitive, PythonDependency> cachedEnvironmentDeps = new HashMap<>();
     fillCacheWithEnvironmentDeps(cachedEnvironmentDeps);
     var requirementsPath = Path.of(requirements);
@@ -161,15 +306,8 @@ private List<Map<String, Object>> getDependenciesImpl(
               + " packages one by one");
       throw new RuntimeException("Unable to read requirements.txt file: " + e.getMessage());
     }
-    try {
-      ObjectMapper om = new ObjectMapper();
-      om.writerWithDefaultPrettyPrinter().writeValueAsString(cachedEnvironmentDeps);
-    } catch (JsonProcessingException e) {
-      log.warning(
-          "Error while trying to convert the cached environment dependencies to JSON string");
-      throw new RuntimeException(e);
-    }
     boolean matchManifestVersions = Environment.getBoolean(PROP_MATCH_MANIFEST_VERSIONS, true);
+    DependencyResolver resolver = new DependencyResolver(cachedEnvironmentDeps, includeTransitive);
 
     for (String dep : linesOfRequirements) {
       if (matchManifestVersions) {
@@ -207,37 +345,35 @@ private List<Map<String, Object>> getDependenciesImpl(
           }
         }
       }
-      List<String> path = new ArrayList<>();
       String selectedDepName = getDependencyName(dep.toLowerCase());
-      path.add(selectedDepName);
-      bringAllDependencies(
-          dependencies, selectedDepName, cachedEnvironmentDeps, includeTransitive, path);
+      if (!selectedDepName.isEmpty()) {
+        dependencies.add(resolver.resolve(selectedDepName));
+      }
     }
 
     return dependencies;
   }
 
   private String getPipShowFromEnvironment(List<String> depNames) {
-    var args = new ArrayList<>();
-    args.add(pipBinaryLocation);
+    var args = new ArrayList<String>();
     args.add("show");
     args.addAll(depNames);
-    return executeCommandOrExtractFromEnv(PROP_EXHORT_PIP_SHOW, args.toArray(new String[] {}));
+    return executeCommandOrExtractFromEnv(
+        PROP_EXHORT_PIP_SHOW, pipCommand(args.toArray(new String[] {})));
   }
 
   String getPipFreezeFromEnvironment() {
-    return executeCommandOrExtractFromEnv(
-        PROP_EXHORT_PIP_FREEZE, pipBinaryLocation, "freeze", "--all");
+    return executeCommandOrExtractFromEnv(PROP_EXHORT_PIP_FREEZE, pipCommand("freeze", "--all"));
   }
 
   List<PythonDependency> getDependencyTreeJsonFromPipDepTree() {
-    executeCommandOrExtractFromEnv(
-        PROP_EXHORT_PIP_PIPDEPTREE, pipBinaryLocation, "install", "pipdeptree");
+    executeCommandOrExtractFromEnv(PROP_EXHORT_PIP_PIPDEPTREE, pipCommand("install", "pipdeptree"));
 
     String pipdeptreeJsonString = "";
     if (isVirtualEnv()) {
       pipdeptreeJsonString =
-          executeCommandOrExtractFromEnv(PROP_EXHORT_PIP_PIPDEPTREE, "./bin/pipdeptree", "--json");
+          executeCommandOrExtractFromEnv(
+              PROP_EXHORT_PIP_PIPDEPTREE, getPythonInterpreter(), "-m", "pipdeptree", "--json");
     } else if (isRealEnv()) {
       pipdeptreeJsonString =
           executeCommandOrExtractFromEnv(
@@ -289,54 +425,71 @@ private String executeCommandOrExtractFromEnv(String EnvVar, String... cmdList)
     return new String(Base64.getDecoder().decode(envValue));
   }
 
-  private void bringAllDependencies(
-      List<Map<String, Object>> dependencyList,
-      String depName,
-      Map<StringInsensitive, PythonDependency> cachedTree,
-      boolean includeTransitive,
-      List<String> path) {
-
-    if (dependencyList == null || depName.trim().isEmpty()) return;
-
-    PythonDependency pythonDependency = cachedTree.get(new StringInsensitive(depName));
-    if (pythonDependency == null) {
-      throw new PackageNotInstalledException(
-          String.format(
-              "Package name=>%s is not installed on your python environment, either install it ("
-                  + " better to install requirements.txt altogether) or turn on environment"
-                  + " variable %s=true to automatically install it on"
-                  + " virtual environment (will slow down the analysis)",
-              depName, PROP_EXHORT_PYTHON_VIRTUAL_ENV));
+  /**
+   * Resolves the dependency trees of the requirements from the installed packages. A dependency
+   * already on the path from the requirement is left out to break the cycle, so the subtree of a
+   * package may depend on the path leading to it. The subtrees without any such cut don't, they are
+   * resolved once and shared, expanding every package of the environment at most once when there
+   * are no cycles.
+   */
+  private static final class DependencyResolver {
+    private static final Comparator<PythonDependencyNode> BY_NAME =
+        Comparator.comparing(PythonDependencyNode::getName);
+
+    private final Map<StringInsensitive, PythonDependency> cachedTree;
+    private final boolean includeTransitive;
+    private final Map<PythonDependency, PythonDependencyNode> resolved = new IdentityHashMap<>();
+    // the lower-cased names leading to the package being resolved
+    private final Set<String> path = new HashSet<>();
+    private int cuts;
+
+    DependencyResolver(
+        Map<StringInsensitive, PythonDependency> cachedTree, boolean includeTransitive) {
+      this.cachedTree = cachedTree;
+      this.includeTransitive = includeTransitive;
     }
 
-    Map<String, Object> dataMap = new HashMap<>();
-    dataMap.put("name", pythonDependency.getName());
-    dataMap.put("version", pythonDependency.getVersion());
-    dependencyList.add(dataMap);
-
-    List<Map<String, Object>> targetDeps = new ArrayList<>();
-    List<String> directDeps = pythonDependency.getDependencies();
-    for (String directDep : directDeps) {
-      if (!path.contains(directDep.toLowerCase())) {
-        List<String> depList = new ArrayList<>();
-        depList.add(directDep.toLowerCase());
-
-        if (includeTransitive) {
-          bringAllDependencies(
-              targetDeps,
-              directDep,
-              cachedTree,
-              true,
-              Stream.concat(path.stream(), depList.stream()).collect(Collectors.toList()));
+    PythonDependencyNode resolve(String depName) {
+      PythonDependency pythonDependency = cachedTree.get(new StringInsensitive(depName));
+      if (pythonDependency == null) {
+        throw new PackageNotInstalledException(
+            String.format(
+                "Package name=>%s is not installed on your python environment, either install it ("
+                    + " better to install requirements.txt altogether) or turn on environment"
+                    + " variable %s=true to automatically install it on"
+                    + " virtual environment (will slow down the analysis)",
+                depName, PROP_EXHORT_PYTHON_VIRTUAL_ENV));
+      }
+      PythonDependencyNode node = resolved.get(pythonDependency);
+      if (node != null) {
+        return node;
+      }
+      String pathName = depName.toLowerCase();
+      boolean onPath = path.add(pathName);
+      int cutsBefore = cuts;
+      List<PythonDependencyNode> targetDeps = null;
+      List<String> directDeps = pythonDependency.getDependencies();
+      if (!directDeps.isEmpty()) {
+        targetDeps = new ArrayList<>(directDeps.size());
+        for (String directDep : directDeps) {
+          if (path.contains(directDep.toLowerCase())) {
+            cuts++;
+          } else if (includeTransitive) {
+            targetDeps.add(resolve(directDep));
+          }
         }
+        targetDeps.sort(BY_NAME);
+      }
+      if (onPath) {
+        path.remove(pathName);
       }
-      targetDeps.sort(
-          (map1, map2) -> {
-            String string1 = (String) (map1.get("name"));
-            String string2 = (String) (map2.get("name"));
-            return Arrays.compare(string1.toCharArray(), string2.toCharArray());
-          });
-      dataMap.put("dependencies", targetDeps);
+      node =
+          new PythonDependencyNode(
+              pythonDependency.getName(), pythonDependency.getVersion(), targetDeps);
+      if (cuts == cutsBefore) {
+        resolved.put(pythonDependency, node);
+      }
+      return node;
     }
   }
 
@@ -413,33 +566,61 @@ private void fillCacheWithEnvironmentDeps(Map<StringInsensitive, PythonDependenc
     boolean usePipDepTree = Environment.getBoolean(PROP_EXHORT_PIP_USE_DEP_TREE, false);
     if (usePipDepTree) {
       getDependencyTreeJsonFromPipDepTree().forEach(d -> saveToCacheWithKeyVariations(cache, d));
-    } else {
-      String freezeOutput = getPipFreezeFromEnvironment();
-      if (debugLoggingIsNeeded()) {
-        String freezeMessage =
-            String.format(
-                "Package Manager PIP freeze --all command result output -> %s %s",
-                System.lineSeparator(), freezeOutput);
-        log.info(freezeMessage);
-      }
-      String[] deps = freezeOutput.split(System.lineSeparator());
-      var depNames =
-          Arrays.stream(deps)
-              .filter(line -> !line.contains("@ file"))
-              .map(PythonControllerBase::getDependencyName)
-              .collect(Collectors.toList());
-      String pipShowOutput = getPipShowFromEnvironment(depNames);
-      if (debugLoggingIsNeeded()) {
-        String pipShowMessage =
-            String.format(
-                "Package Manager PIP show command result output -> %s %s",
-                System.lineSeparator(), pipShowOutput);
-        log.info(pipShowMessage);
-      }
-      splitPipShowLines(pipShowOutput).stream()
-          .map(this::getPythonDependencyByShowStringBlock)
-          .forEach(d -> saveToCacheWithKeyVariations(cache, d));
+      return;
     }
+    // the installed packages are read from site-packages, unless the outputs of pip are passed in
+    boolean useSitePackages =
+        Environment.getBoolean(PROP_EXHORT_PIP_USE_SITE_PACKAGES, true)
+            && Environment.get(PROP_EXHORT_PIP_FREEZE, "").isBlank()
+            && Environment.get(PROP_EXHORT_PIP_SHOW, "").isBlank();
+    PythonSitePackages sitePackages =
+        useSitePackages ? PythonSitePackages.locate(getPythonInterpreter()) : null;
+    if (sitePackages == null) {
+      getPythonDependenciesFromPipShow().forEach(d -> saveToCacheWithKeyVariations(cache, d));
+      return;
+    }
+    List<PythonDependency> installed = sitePackages.readInstalledPackages();
+    if (debugLoggingIsNeeded()) {
+      log.info(
+          String.format(
+              "Read %d installed packages from %s", installed.size(), sitePackages.getPaths()));
+    }
+    installed.forEach(d -> saveToCacheWithKeyVariations(cache, d));
+  }
+
+  /**
+   * @return the interpreter of the environment the packages are installed in
+   */
+  protected String getPythonInterpreter() {
+    return pathToPythonBin;
+  }
+
+  private List<PythonDependency> getPythonDependenciesFromPipShow() {
+    String freezeOutput = getPipFreezeFromEnvironment();
+    if (debugLoggingIsNeeded()) {
+      String freezeMessage =
+          String.format(
+              "Package Manager PIP freeze --all command result output -> %s %s",
+              System.lineSeparator(), freezeOutput);
+      log.info(freezeMessage);
+    }
+    String[] deps = freezeOutput.split(System.lineSeparator());
+    var depNames =
+        Arrays.stream(deps)
+            .filter(line -> !line.contains("@ file"))
+            .map(PythonControllerBase::getDependencyName)
+            .collect(Collectors.toList());
+    String pipShowOutput = getPipShowFromEnvironment(depNames);
+    if (debugLoggingIsNeeded()) {
+      String pipShowMessage =
+          String.format(
+              "Package Manager PIP show command result output -> %s %s",
+              System.lineSeparator(), pipShowOutput);
+      log.info(pipShowMessage);
+    }
+    return splitPipShowLines(pipShowOutput).stream()
+        .map(this::getPythonDependencyByShowStringBlock)
+        .collect(Collectors.toList());
   }
 
   private void saveToCacheWithKeyVariations(
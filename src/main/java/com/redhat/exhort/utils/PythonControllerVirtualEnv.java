@@ -15,41 +15,102 @@
  */
 package com.redhat.exhort.utils;
 
+import com.redhat.exhort.logging.LoggersFactory;
 import com.redhat.exhort.tools.Operations;
 import java.io.IOException;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Comparator;
+import java.util.logging.Logger;
 
+/**
+ * Installs the requirements in a virtual environment leased from a pool shared by the analyses of
+ * the host, so concurrent analyses never share an environment and an analysis of requirements
+ * already installed by a previous one reuses its environment without installing anything.
+ */
 public class PythonControllerVirtualEnv extends PythonControllerBase {
 
-  //  private System.Logger log = System.getLogger("name");
+  private final Logger log = LoggersFactory.getLogger(this.getClass().getName());
+  private final PythonVirtualEnvPool pool;
+  private PythonVirtualEnvPool.Lease lease;
+  private boolean installed;
+
   public PythonControllerVirtualEnv(String pathToPythonBin) {
-    this.pipBinaryDir =
-        Path.of(FileSystems.getDefault().getSeparator(), "tmp", "exhort_env", "bin");
-    this.pythonEnvironmentDir =
-        Path.of(FileSystems.getDefault().getSeparator(), "tmp", "exhort_env");
+    this(pathToPythonBin, PythonVirtualEnvPool.getDefault());
+  }
+
+  PythonControllerVirtualEnv(String pathToPythonBin, PythonVirtualEnvPool pool) {
     this.pathToPythonBin = pathToPythonBin;
+    this.pool = pool;
   }
 
   @Override
   public void prepareEnvironment(String pathToPythonBin) {
+    // the environment depends on the requirements, it is leased when installing them
+    this.pathToPythonBin = pathToPythonBin;
+  }
+
+  @Override
+  void installPackages(String pathToRequirements) {
+    if (leaseEnvironment(pathToRequirements, "install")) {
+      super.installPackages(pathToRequirements);
+    }
+    installed = true;
+  }
+
+  @Override
+  void installingRequirementsOneByOne(String pathToRequirements) {
+    if (leaseEnvironment(pathToRequirements, "best efforts")) {
+      super.installingRequirementsOneByOne(pathToRequirements);
+    }
+    installed = true;
+  }
+
+  /**
+   * @return whether the requirements need to be installed in the leased environment
+   */
+  private boolean leaseEnvironment(String pathToRequirements, String mode) {
+    String requirements;
     try {
-      if (!Files.exists(pythonEnvironmentDir)) {
-        Files.createDirectory(pythonEnvironmentDir);
-      }
+      requirements = mode + "\n" + Files.readString(Path.of(pathToRequirements));
     } catch (IOException e) {
-      throw new RuntimeException(e);
+      throw new RuntimeException(
+          "Cannot continue with analysis - error reading the requirements file "
+              + pathToRequirements,
+          e);
     }
-    Operations.runProcessGetOutput(
-        Path.of("."), pathToPythonBin, "-m", "venv", pythonEnvironmentDir.toString());
-    String envBinDir = pipBinaryDir.toString();
-    if (pathToPythonBin.contains("python3")) {
-      this.pipBinaryLocation = Path.of(envBinDir, "pip3").toString();
-    } else {
-      this.pipBinaryLocation = Path.of(envBinDir, "pip").toString();
+    releaseEnvironment();
+    lease = pool.lease(pathToPythonBin, requirements);
+    installed = false;
+    this.pythonEnvironmentDir = lease.getEnvironment();
+    // the scripts of a windows environment are not in bin
+    this.pipBinaryDir = pythonEnvironmentDir.resolve(Operations.isWindows() ? "Scripts" : "bin");
+    if (lease.isPopulated()) {
+      log.fine("Reusing the python virtual environment " + pythonEnvironmentDir);
+      return false;
     }
+    // clears what an interrupted analysis may have left in the environment
+    Operations.runProcessGetOutput(
+        Path.of("."), pathToPythonBin, "-m", "venv", "--clear", pythonEnvironmentDir.toString());
+    return true;
+  }
+
+  @Override
+  protected String getPythonInterpreter() {
+    return pipBinaryDir.resolve(Operations.isWindows() ? "python.exe" : "python").toString();
+  }
+
+  /**
+   * @return the command running pip as a module of the interpreter of the environment, which always
+   *     has it whatever the name of its pip scripts
+   */
+  @Override
+  protected String[] pipCommand(String... args) {
+    String[] command = new String[args.length + 3];
+    command[0] = getPythonInterpreter();
+    command[1] = "-m";
+    command[2] = "pip";
+    System.arraycopy(args, 0, command, 3, args.length);
+    return command;
   }
 
   @Override
@@ -67,37 +128,41 @@ public boolean isVirtualEnv() {
     return true;
   }
 
+  /**
+   * Returns the leased environment to the pool, to be reused by the next analyses of the same
+   * requirements if they were installed, and evicts the least recently used environments of the
+   * pool exceeding its quota.
+   *
+   * @param deleteEnvironment whether to delete the leased environment instead
+   */
   @Override
   public void cleanEnvironment(boolean deleteEnvironment) {
-    if (deleteEnvironment) {
-      try {
-        Files.walk(pythonEnvironmentDir)
-            .sorted(Comparator.reverseOrder())
-            .forEach(
-                file -> {
-                  try {
-                    Files.delete(file);
-                  } catch (IOException e) {
-                    throw new RuntimeException(e);
-                  }
-                });
-      } catch (IOException e) {
-        throw new RuntimeException(e);
+    if (lease == null) {
+      return;
+    }
+    Path environment = lease.getEnvironment();
+    try {
+      if (deleteEnvironment || !installed) {
+        lease.delete();
+      } else if (!lease.isPopulated()) {
+        lease.markPopulated();
       }
-    } else {
-      Path envRequirements = Path.of(pythonEnvironmentDir.toString(), "requirements.txt");
-      try {
-        Files.deleteIfExists(envRequirements);
-        String freezeOutput =
-            Operations.runProcessGetOutput(pythonEnvironmentDir, pipBinaryLocation, "freeze");
-        Files.createFile(envRequirements);
-        Files.write(envRequirements, freezeOutput.getBytes());
-        Operations.runProcessGetOutput(
-            pythonEnvironmentDir, pipBinaryLocation, "uninstall", "-y", "-r", "requirements.txt");
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      releaseEnvironment();
+    }
+    pool.evict(environment);
+  }
 
+  private void releaseEnvironment() {
+    if (lease != null) {
+      try {
+        lease.close();
       } catch (IOException e) {
-        throw new RuntimeException(e);
+        log.fine("Could not release the python virtual environment: " + e);
       }
+      lease = null;
     }
   }
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.utils;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.List;
+
+/**
+ * An installed package in the dependency tree resolved by {@link PythonControllerBase}. Nodes whose
+ * subtree does not depend on the path leading to them are resolved once and shared by all their
+ * parents, making the tree a directed acyclic graph.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class PythonDependencyNode {
+  private final String name;
+  private final String version;
+  private final List<PythonDependencyNode> dependencies;
+
+  PythonDependencyNode(String name, String version, List<PythonDependencyNode> dependencies) {
+    this.name = name;
+    this.version = version;
+    this.dependencies = dependencies;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getVersion() {
+    return version;
+  }
+
+  /**
+   * @return the dependencies sorted by name, or null if the package requires no other package
+   */
+  public List<PythonDependencyNode> getDependencies() {
+    return dependencies;
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redhat.exhort.logging.LoggersFactory;
+import com.redhat.exhort.tools.Operations;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * The packages installed for a python interpreter, persisted in the temporary directory to be
+ * reused by the next analyses, in this JVM or another one. A snapshot is valid as long as its
+ * fingerprint, made of the modification times of the directories of sys.path and of the metadata of
+ * every installed package, is unchanged.
+ */
+final class PythonEnvironmentSnapshot {
+
+  private static final Logger log =
+      LoggersFactory.getLogger(PythonEnvironmentSnapshot.class.getName());
+
+  private static final int FORMAT = 1;
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  // the variables changing the directories of sys.path for the same interpreter
+  private static final List<String> PYTHON_VARIABLES =
+      List.of("PYTHONPATH", "PYTHONHOME", "PYTHONUSERBASE", "PYTHONNOUSERSITE", "PYTHONSAFEPATH");
+
+  final List<Path> paths;
+  final Map<String, String> markers;
+  final String fingerprint;
+  final List<PythonDependency> packages;
+
+  PythonEnvironmentSnapshot(
+      List<Path> paths,
+      Map<String, String> markers,
+      String fingerprint,
+      List<PythonDependency> packages) {
+    this.paths = paths;
+    this.markers = markers;
+    this.fingerprint = fingerprint;
+    this.packages = packages;
+  }
+
+  /**
+   * @param pathToPythonBin the python interpreter, a path or a command on the PATH
+   * @return the file of the snapshot of the interpreter, or null if the interpreter was not found
+   */
+  static Path fileFor(String pathToPythonBin) {
+    Path interpreter = Operations.findExecutable(pathToPythonBin);
+    if (interpreter == null) {
+      return null;
+    }
+    StringBuilder key = new StringBuilder(interpreter.toString());
+    try {
+      // the interpreter of a virtual environment is a link, its own path gives the environment
+      BasicFileAttributes attributes =
+          Files.readAttributes(interpreter.toRealPath(), BasicFileAttributes.class);
+      key.append('\n').append(attributes.lastModifiedTime().toMillis());
+      key.append('\n').append(attributes.size());
+    } catch (IOException e) {
+      return null;
+    }
+    for (String variable : PYTHON_VARIABLES) {
+      key.append('\n').append(Environment.get(variable, ""));
+    }
+    key.append('\n').append(System.getProperty("user.home"));
+    return Path.of(System.getProperty("java.io.tmpdir"))
+        .resolve(
+            String.format(
+                "exhort-python-env-%s.json", CacheFiles.sha256(key.toString()).substring(0, 16)));
+  }
+
+  /**
+   * @param paths the directories of sys.path
+   * @param distributions the metadata directories and files found in these directories
+   * @return a digest of the modification times of the directories, of the metadata and of the files
+   *     read from them, a package being installed, removed or upgraded changing at least one
+   */
+  static String fingerprint(List<Path> paths, List<Path> distributions) {
+    StringBuilder state = new StringBuilder();
+    for (Path path : paths) {
+      appendState(state, path);
+    }
+    for (Path distribution : distributions) {
+      appendState(state, distribution);
+      if (Files.isDirectory(distribution)) {
+        appendState(state, distribution.resolve("METADATA"));
+        appendState(state, distribution.resolve("PKG-INFO"));
+        appendState(state, distribution.resolve("requires.txt"));
+      }
+    }
+    return CacheFiles.sha256(state.toString());
+  }
+
+  private static void appendState(StringBuilder state, Path path) {
+    state.append(path).append(' ');
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      state.append(attributes.lastModifiedTime().toMillis()).append(' ').append(attributes.size());
+    } catch (IOException e) {
+      state.append('-');
+    }
+    state.append('\n');
+  }
+
+  /**
+   * @return the persisted snapshot, or null if there is none or it can't be read
+   */
+  static PythonEnvironmentSnapshot read(Path file) {
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    try {
+      JsonNode root = MAPPER.readTree(file.toFile());
+      if (root.path("format").asInt() != FORMAT) {
+        return null;
+      }
+      List<Path> paths = new ArrayList<>();
+      root.get("paths").forEach(path -> paths.add(Path.of(path.asText())));
+      Map<String, String> markers = new LinkedHashMap<>();
+      root.get("markers")
+          .fields()
+          .forEachRemaining(e -> markers.put(e.getKey(), e.getValue().asText()));
+      List<PythonDependency> packages = new ArrayList<>();
+      for (JsonNode pkg : root.get("packages")) {
+        List<String> requires = new ArrayList<>();
+        pkg.get("requires").forEach(name -> requires.add(name.asText()));
+        packages.add(
+            new PythonDependency(pkg.get("name").asText(), pkg.get("version").asText(), requires));
+      }
+      return new PythonEnvironmentSnapshot(
+          List.copyOf(paths), markers, root.get("fingerprint").asText(), packages);
+    } catch (IOException | RuntimeException e) {
+      log.fine("Ignoring the unreadable python environment snapshot " + file + ": " + e);
+      return null;
+    }
+  }
+
+  /** Writes the snapshot aside and moves it, other processes may be reading it. */
+  void write(Path file) {
+    ObjectNode root = MAPPER.createObjectNode();
+    root.put("format", FORMAT);
+    ArrayNode pathsNode = root.putArray("paths");
+    paths.forEach(path -> pathsNode.add(path.toString()));
+    ObjectNode markersNode = root.putObject("markers");
+    markers.forEach(markersNode::put);
+    root.put("fingerprint", fingerprint);
+    ArrayNode packagesNode = root.putArray("packages");
+    for (PythonDependency pkg : packages) {
+      ObjectNode pkgNode = packagesNode.addObject();
+      pkgNode.put("name", pkg.getName());
+      pkgNode.put("version", pkg.getVersion());
+      ArrayNode requiresNode = pkgNode.putArray("requires");
+      pkg.getDependencies().forEach(requiresNode::add);
+    }
+    try {
+      CacheFiles.write(file, MAPPER.writeValueAsBytes(root));
+    } catch (IOException e) {
+      log.fine("Could not write the python environment snapshot " + file + ": " + e);
+    }
+  }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates the environment markers of a requirement, like {@code python_version < "3.8" and
+ * sys_platform == "win32"}, following PEP 508. Comparisons of versions follow PEP 440 and fall back
+ * to comparing strings when either side is not a version, like the packaging library used by pip.
+ */
+final class PythonMarker {
+
+  private static final Pattern VERSION =
+      Pattern.compile(
+          "v?(?:(\\d+)!)?(\\d+(?:\\.\\d+)*)"
+              + "(?:[-_.]?(a|alpha|b|beta|c|rc|pre|preview)[-_.]?(\\d*))?"
+              + "(?:-(\\d+)|[-_.]?(?:post|rev|r)[-_.]?(\\d*))?"
+              + "(?:[-_.]?dev[-_.]?(\\d*))?"
+              + "(?:\\+[a-z0-9]+(?:[-_.][a-z0-9]+)*)?",
+          Pattern.CASE_INSENSITIVE);
+
+  private static final Map<String, String> LEGACY_VARIABLES =
+      Map.of(
+          "os.name", "os_name",
+          "sys.platform", "sys_platform",
+          "platform.version", "platform_version",
+          "platform.machine", "platform_machine",
+          "platform.python_implementation", "platform_python_implementation",
+          "python_implementation", "platform_python_implementation");
+
+  private final List<String> tokens;
+  private final Map<String, String> environment;
+  private int position;
+
+  private PythonMarker(String marker, Map<String, String> environment) {
+    this.tokens = tokenize(marker);
+    this.environment = environment;
+  }
+
+  /**
+   * @param marker the marker following the semicolon of a requirement
+   * @param environment the values of the marker variables, the extra variable being empty when no
+   *     extra is requested
+   * @return whether the marker holds in the environment
+   * @throws IllegalArgumentException if the marker is not valid
+   */
+  static boolean evaluate(String marker, Map<String, String> environment) {
+    PythonMarker parser = new PythonMarker(marker, environment);
+    boolean result = parser.or();
+    if (parser.position != parser.tokens.size()) {
+      throw new IllegalArgumentException("Unexpected token in marker: " + marker);
+    }
+    return result;
+  }
+
+  private boolean or() {
+    boolean result = and();
+    while (accept("or")) {
+      // both sides are parsed whatever the value of the left one
+      result = and() | result;
+    }
+    return result;
+  }
+
+  private boolean and() {
+    boolean result = comparison();
+    while (accept("and")) {
+      result = comparison() & result;
+    }
+    return result;
+  }
+
+  private boolean comparison() {
+    if (accept("(")) {
+      boolean result = or();
+      expect(")");
+      return result;
+    }
+    String left = value();
+    String operator = next();
+    if (operator.equals("not")) {
+      expect("in");
+      operator = "not in";
+    }
+    String right = value();
+    return compare(left, operator, right);
+  }
+
+  private String value() {
+    String token = next();
+    if (token.startsWith("\"") || token.startsWith("'")) {
+      return token.substring(1, token.length() - 1);
+    }
+    String variable = LEGACY_VARIABLES.getOrDefault(token, token);
+    String value = environment.get(variable);
+    if (value == null) {
+      throw new IllegalArgumentException("Unknown marker variable: " + token);
+    }
+    return value;
+  }
+
+  private boolean accept(String token) {
+    if (position < tokens.size() && tokens.get(position).equals(token)) {
+      position++;
+      return true;
+    }
+    return false;
+  }
+
+  private void expect(String token) {
+    if (!accept(token)) {
+      throw new IllegalArgumentException("Expected " + token + " in marker");
+    }
+  }
+
+  private String next() {
+    if (position >= tokens.size()) {
+      throw new IllegalArgumentException("Unexpected end of marker");
+    }
+    return tokens.get(position++);
+  }
+
+  private static List<String> tokenize(String marker) {
+    List<String> tokens = new ArrayList<>();
+    int length = marker.length();
+    int i = 0;
+    while (i < length) {
+      char c = marker.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == '(' || c == ')') {
+        tokens.add(String.valueOf(c));
+        i++;
+      } else if (c == '"' || c == '\'') {
+        int end = marker.indexOf(c, i + 1);
+        if (end < 0) {
+          throw new IllegalArgumentException("Unterminated string in marker: " + marker);
+        }
+        tokens.add(marker.substring(i, end + 1));
+        i = end + 1;
+      } else if ("<>=!~".indexOf(c) >= 0) {
+        int start = i;
+        while (i < length && "<>=!~".indexOf(marker.charAt(i)) >= 0) {
+          i++;
+        }
+        tokens.add(marker.substring(start, i));
+      } else {
+        int start = i;
+        while (i < length
+            && !Character.isWhitespace(marker.charAt(i))
+            && "()\"'<>=!~".indexOf(marker.charAt(i)) < 0) {
+          i++;
+        }
+        tokens.add(marker.substring(start, i));
+      }
+    }
+    return tokens;
+  }
+
+  private static boolean compare(String left, String operator, String right) {
+    switch (operator) {
+      case "in":
+        return right.contains(left);
+      case "not in":
+        return !right.contains(left);
+      case "===":
+        return left.equals(right);
+      default:
+    }
+    boolean wildcard = (operator.equals("==") || operator.equals("!=")) && right.endsWith(".*");
+    String rightVersion = wildcard ? right.substring(0, right.length() - 2) : right;
+    long[] leftKey = versionKey(left);
+    long[] rightKey = versionKey(rightVersion);
+    if (rightKey == null) {
+      return compareStrings(left, operator, right);
+    }
+    if (leftKey == null) {
+      // a version specifier never contains what is not a version
+      return operator.equals("!=");
+    }
+    if (wildcard) {
+      boolean prefix = releaseStartsWith(left, rightVersion);
+      return operator.equals("==") == prefix;
+    }
+    int comparison = compareKeys(leftKey, rightKey);
+    switch (operator) {
+      case "<":
+        return comparison < 0;
+      case "<=":
+        return comparison <= 0;
+      case ">":
+        return comparison > 0;
+      case ">=":
+        return comparison >= 0;
+      case "==":
+        return comparison == 0;
+      case "!=":
+        return comparison != 0;
+      case "~=":
+        // compatible release, ~=3.8.1 is >=3.8.1 and ==3.8.*
+        String release = releaseOf(rightVersion);
+        int lastDot = release.lastIndexOf('.');
+        return lastDot > 0
+            && comparison >= 0
+            && releaseStartsWith(left, release.substring(0, lastDot));
+      default:
+        throw new IllegalArgumentException("Unknown marker operator: " + operator);
+    }
+  }
+
+  private static boolean compareStrings(String left, String operator, String right) {
+    switch (operator) {
+      case "==":
+        return left.equals(right);
+      case "!=":
+        return !left.equals(right);
+      case "<":
+        return left.compareTo(right) < 0;
+      case "<=":
+        return left.compareTo(right) <= 0;
+      case ">":
+        return left.compareTo(right) > 0;
+      case ">=":
+        return left.compareTo(right) >= 0;
+      default:
+        // ~= is only defined for versions
+        return false;
+    }
+  }
+
+  private static String releaseOf(String version) {
+    Matcher matcher = VERSION.matcher(version.trim());
+    return matcher.matches() ? matcher.group(2) : version;
+  }
+
+  private static boolean releaseStartsWith(String version, String prefix) {
+    String[] release = releaseOf(version).split("\\.");
+    String[] expected = releaseOf(prefix).split("\\.");
+    for (int i = 0; i < expected.length; i++) {
+      long part = i < release.length ? Long.parseLong(release[i]) : 0;
+      if (part != Long.parseLong(expected[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the epoch, the release padded to 3 parts and the pre, post and dev parts of a version
+   *     as comparable numbers, or null if it is not a version
+   */
+  private static long[] versionKey(String version) {
+    Matcher matcher = VERSION.matcher(version.trim());
+    if (!matcher.matches()) {
+      return null;
+    }
+    String[] release = matcher.group(2).split("\\.");
+    int releaseLength = Math.max(release.length, 3);
+    long[] key = new long[releaseLength + 6];
+    key[0] = matcher.group(1) == null ? 0 : Long.parseLong(matcher.group(1));
+    for (int i = 0; i < release.length; i++) {
+      key[i + 1] = Long.parseLong(release[i]);
+    }
+    int index = releaseLength + 1;
+    String preType = matcher.group(3);
+    boolean post = matcher.group(5) != null || matcher.group(6) != null;
+    boolean dev = matcher.group(7) != null;
+    if (preType != null) {
+      char type = Character.toLowerCase(preType.charAt(0));
+      // alpha < beta < release candidate, c, pre and preview being release candidates
+      key[index] = type == 'a' ? 0 : type == 'b' && preType.length() <= 4 ? 1 : 2;
+      key[index + 1] = number(matcher.group(4));
+    } else if (dev && !post) {
+      // a development release comes before the pre-releases
+      key[index] = -1;
+    } else {
+      key[index] = Long.MAX_VALUE;
+    }
+    if (post) {
+      key[index + 2] = 1;
+      key[index + 3] = number(matcher.group(5) != null ? matcher.group(5) : matcher.group(6));
+    }
+    key[index + 4] = dev ? number(matcher.group(7)) : Long.MAX_VALUE;
+    return key;
+  }
+
+  private static long number(String digits) {
+    return digits == null || digits.isEmpty() ? 0 : Long.parseLong(digits);
+  }
+
+  private static int compareKeys(long[] left, long[] right) {
+    int leftRelease = left.length - 6;
+    int rightRelease = right.length - 6;
+    // the epoch, then the release parts padded with zeros to the longest release
+    for (int i = 0; i <= Math.max(leftRelease, rightRelease); i++) {
+      long l = i <= leftRelease ? left[i] : 0;
+      long r = i <= rightRelease ? right[i] : 0;
+      if (l != r) {
+        return Long.compare(l, r);
+      }
+    }
+    for (int i = 1; i <= 5; i++) {
+      if (left[leftRelease + i] != right[rightRelease + i]) {
+        return Long.compare(left[leftRelease + i], right[rightRelease + i]);
+      }
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.exhort.logging.LoggersFactory;
+import com.redhat.exhort.tools.Operations;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The packages installed for a python interpreter, read from the {@code *.dist-info} and {@code
+ * *.egg-info} metadata in the directories of its {@code sys.path}, the way pip lists them, without
+ * running pip. The directories and the values of the environment markers are asked once to the
+ * interpreter and cached for the life of the JVM.
+ */
+final class PythonSitePackages {
+
+  private static final Logger log = LoggersFactory.getLogger(PythonSitePackages.class.getName());
+
+  // prints the directories of sys.path and the PEP 508 marker environment as JSON
+  private static final String LOCATE_SCRIPT =
+      String.join(
+          System.lineSeparator(),
+          "import json, os, platform, sys",
+          "v = sys.implementation.version",
+          "iv = '%d.%d.%d' % (v.major, v.minor, v.micro)",
+          "if v.releaselevel != 'final':",
+          "    iv += v.releaselevel[0] + str(v.serial)",
+          "print(json.dumps({",
+          "    'path': [os.path.abspath(p) for p in sys.path if p and os.path.isdir(p)],",
+          "    'markers': {",
+          "        'implementation_name': sys.implementation.name,",
+          "        'implementation_version': iv,",
+          "        'os_name': os.name,",
+          "        'platform_machine': platform.machine(),",
+          "        'platform_python_implementation': platform.python_implementation(),",
+          "        'platform_release': platform.release(),",
+          "        'platform_system': platform.system(),",
+          "        'platform_version': platform.version(),",
+          "        'python_full_version': platform.python_version(),",
+          "        'python_version': '.'.join(platform.python_version_tuple()[:2]),",
+          "        'sys_platform': sys.platform}}))");
+
+  private static final Map<String, PythonSitePackages> LOCATED = new ConcurrentHashMap<>();
+
+  private static final Pattern REQUIREMENT_NAME =
+      Pattern.compile("^\\s*([A-Za-z0-9](?:[A-Za-z0-9._-]*[A-Za-z0-9])?)");
+  private static final Pattern MARKER_SEPARATOR = Pattern.compile(";");
+  // the marker of a requirement on a URL must be separated from the URL by a space
+  private static final Pattern URL_MARKER_SEPARATOR = Pattern.compile("\\s;");
+  private static final Pattern EGG_INFO_SECTION = Pattern.compile("^\\[([^:\\]]*)(?::(.*))?]$");
+
+  private final String pathToPythonBin;
+  private final Path snapshotFile;
+  private final List<Path> paths;
+  private final Map<String, String> markers;
+  private final Map<String, String> markerEnvironment;
+  // whether the interpreter told the directories in this JVM, or they come from a snapshot
+  private final boolean located;
+  private volatile PythonEnvironmentSnapshot snapshot;
+
+  PythonSitePackages(List<Path> paths, Map<String, String> markers) {
+    this(paths, markers, null);
+  }
+
+  PythonSitePackages(List<Path> paths, Map<String, String> markers, Path snapshotFile) {
+    this(null, snapshotFile, paths, markers, true, null);
+  }
+
+  PythonSitePackages(Path snapshotFile, PythonEnvironmentSnapshot snapshot) {
+    this(null, snapshotFile, snapshot.paths, snapshot.markers, false, snapshot);
+  }
+
+  private PythonSitePackages(
+      String pathToPythonBin,
+      Path snapshotFile,
+      List<Path> paths,
+      Map<String, String> markers,
+      boolean located,
+      PythonEnvironmentSnapshot snapshot) {
+    this.pathToPythonBin = pathToPythonBin;
+    this.snapshotFile = snapshotFile;
+    this.paths = paths;
+    this.markers = markers;
+    Map<String, String> environment = new HashMap<>(markers);
+    // no extra is requested, like in pip show
+    environment.put("extra", "");
+    this.markerEnvironment = Collections.unmodifiableMap(environment);
+    this.located = located;
+    this.snapshot = snapshot;
+  }
+
+  /**
+   * Locates the directories of an interpreter, from the snapshot of its environment persisted by a
+   * previous analysis if there is one, otherwise by asking the interpreter.
+   *
+   * @param pathToPythonBin the python interpreter
+   * @return the directories where the interpreter looks for packages, or null if the interpreter
+   *     could not tell them
+   */
+  static PythonSitePackages locate(String pathToPythonBin) {
+    Path snapshotFile =
+        Environment.getBoolean(PythonControllerBase.PROP_EXHORT_PYTHON_ENVIRONMENT_CACHE, true)
+            ? PythonEnvironmentSnapshot.fileFor(pathToPythonBin)
+            : null;
+    // the snapshot file is named after the interpreter, its modification time and its variables
+    String key = snapshotFile != null ? snapshotFile.toString() : pathToPythonBin;
+    PythonSitePackages sitePackages = LOCATED.get(key);
+    if (sitePackages == null) {
+      PythonEnvironmentSnapshot persisted =
+          snapshotFile != null ? PythonEnvironmentSnapshot.read(snapshotFile) : null;
+      if (persisted != null) {
+        sitePackages =
+            new PythonSitePackages(
+                pathToPythonBin,
+                snapshotFile,
+                persisted.paths,
+                persisted.markers,
+                false,
+                persisted);
+      } else {
+        sitePackages = askInterpreter(pathToPythonBin, snapshotFile);
+      }
+      if (sitePackages != null) {
+        LOCATED.put(key, sitePackages);
+      }
+    }
+    return sitePackages;
+  }
+
+  private static PythonSitePackages askInterpreter(String pathToPythonBin, Path snapshotFile) {
+    Operations.ProcessExecOutput output;
+    try {
+      output =
+          Operations.runProcessGetFullOutput(
+              null, new String[] {pathToPythonBin, "-c", LOCATE_SCRIPT}, null);
+    } catch (RuntimeException e) {
+      log.log(Level.FINE, "Could not run " + pathToPythonBin, e);
+      return null;
+    }
+    if (output == null || output.getExitCode() != 0) {
+      return null;
+    }
+    try {
+      JsonNode located = new ObjectMapper().readTree(output.getOutput());
+      List<Path> paths = new ArrayList<>();
+      located.get("path").forEach(path -> paths.add(Path.of(path.asText())));
+      Map<String, String> markers = new LinkedHashMap<>();
+      located
+          .get("markers")
+          .fields()
+          .forEachRemaining(e -> markers.put(e.getKey(), e.getValue().asText()));
+      return new PythonSitePackages(
+          pathToPythonBin, snapshotFile, List.copyOf(paths), markers, true, null);
+    } catch (IOException | RuntimeException e) {
+      log.log(Level.FINE, "Unexpected output of " + pathToPythonBin + ": " + output.getOutput(), e);
+      return null;
+    }
+  }
+
+  List<Path> getPaths() {
+    return paths;
+  }
+
+  /**
+   * Reads the metadata of all the installed packages in parallel, unless they did not change since
+   * the last snapshot. A package installed in several directories is the one of the first directory
+   * of sys.path, like for the python import system.
+   *
+   * @return the installed packages, with the names of the packages they require in the environment
+   */
+  List<PythonDependency> readInstalledPackages() {
+    List<Path> distributions =
+        paths.stream()
+            .flatMap(path -> listDistributions(path).stream())
+            .collect(Collectors.toList());
+    String fingerprint = PythonEnvironmentSnapshot.fingerprint(paths, distributions);
+    PythonEnvironmentSnapshot current = snapshot;
+    if (current != null && current.fingerprint.equals(fingerprint)) {
+      return new ArrayList<>(current.packages);
+    }
+    if (!located && pathToPythonBin != null) {
+      // the environment changed since the snapshot, the .pth files installed with the packages
+      // may have changed sys.path
+      PythonSitePackages relocated = askInterpreter(pathToPythonBin, snapshotFile);
+      if (relocated != null) {
+        LOCATED.put(snapshotFile.toString(), relocated);
+        return relocated.readInstalledPackages();
+      }
+    }
+    List<PythonDependency> read =
+        distributions.parallelStream().map(this::readDistribution).collect(Collectors.toList());
+    Map<String, PythonDependency> installed = new LinkedHashMap<>();
+    for (PythonDependency dependency : read) {
+      if (dependency != null) {
+        installed.putIfAbsent(canonicalName(dependency.getName()), dependency);
+      }
+    }
+    List<PythonDependency> packages = List.copyOf(installed.values());
+    PythonEnvironmentSnapshot updated =
+        new PythonEnvironmentSnapshot(paths, markers, fingerprint, packages);
+    snapshot = updated;
+    if (snapshotFile != null) {
+      updated.write(snapshotFile);
+    }
+    return new ArrayList<>(packages);
+  }
+
+  private static List<Path> listDistributions(Path directory) {
+    try (Stream<Path> children = Files.list(directory)) {
+      // the .dist-info of a package takes precedence over a leftover .egg-info
+      return children
+          .filter(
+              child -> {
+                String name = child.getFileName().toString();
+                return name.endsWith(".dist-info") || name.endsWith(".egg-info");
+              })
+          .sorted(
+              Comparator.comparing((Path child) -> child.toString().endsWith(".egg-info"))
+                  .thenComparing(Path::toString))
+          .collect(Collectors.toList());
+    } catch (IOException | UncheckedIOException e) {
+      log.fine("Could not list " + directory + ": " + e.getMessage());
+      return List.of();
+    }
+  }
+
+  /**
+   * @param distribution a {@code .dist-info} directory, or a {@code .egg-info} directory or file
+   * @return the package, or null if its metadata could not be read
+   */
+  PythonDependency readDistribution(Path distribution) {
+    boolean eggInfo = distribution.getFileName().toString().endsWith(".egg-info");
+    Path metadataFile;
+    if (!eggInfo) {
+      metadataFile = distribution.resolve("METADATA");
+    } else if (Files.isDirectory(distribution)) {
+      metadataFile = distribution.resolve("PKG-INFO");
+    } else {
+      metadataFile = distribution;
+    }
+    try {
+      Map<String, List<String>> headers = readHeaders(metadataFile);
+      String name = first(headers, "name");
+      String version = first(headers, "version");
+      if (name == null || version == null) {
+        return null;
+      }
+      List<String> requirements = headers.getOrDefault("requires-dist", List.of());
+      if (requirements.isEmpty() && eggInfo && Files.isDirectory(distribution)) {
+        requirements = readEggInfoRequires(distribution.resolve("requires.txt"));
+      }
+      return new PythonDependency(name, version, requiredNames(requirements));
+    } catch (IOException | UncheckedIOException e) {
+      log.fine("Could not read the metadata of " + distribution + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * @return the names of the requirements whose marker holds, sorted case-insensitively like in the
+   *     output of pip show
+   */
+  private List<String> requiredNames(List<String> requirements) {
+    Set<String> seen = new HashSet<>();
+    List<String> names = new ArrayList<>();
+    for (String requirement : requirements) {
+      Matcher matcher = REQUIREMENT_NAME.matcher(requirement);
+      if (!matcher.find()) {
+        continue;
+      }
+      String name = matcher.group(1);
+      String rest = requirement.substring(matcher.end());
+      Matcher separator =
+          (rest.trim().startsWith("@") ? URL_MARKER_SEPARATOR : MARKER_SEPARATOR).matcher(rest);
+      if (separator.find() && !markerHolds(rest.substring(separator.end()).trim())) {
+        continue;
+      }
+      if (seen.add(name.toLowerCase(Locale.ROOT))) {
+        names.add(name);
+      }
+    }
+    names.sort(String.CASE_INSENSITIVE_ORDER);
+    return names;
+  }
+
+  private boolean markerHolds(String marker) {
+    if (marker.isEmpty()) {
+      return true;
+    }
+    try {
+      return PythonMarker.evaluate(marker, markerEnvironment);
+    } catch (IllegalArgumentException e) {
+      // better reporting a dependency too many than missing one
+      log.fine("Could not evaluate the marker " + marker + ": " + e.getMessage());
+      return true;
+    }
+  }
+
+  /**
+   * Converts the requires.txt file of an egg-info to requirements with markers: sections name an
+   * extra and a marker, like {@code [security:sys_platform == "win32"]}.
+   */
+  private static List<String> readEggInfoRequires(Path requiresTxt) throws IOException {
+    if (!Files.isRegularFile(requiresTxt)) {
+      return List.of();
+    }
+    List<String> requirements = new ArrayList<>();
+    String extra = "";
+    String marker = null;
+    for (String line : Files.readAllLines(requiresTxt, StandardCharsets.UTF_8)) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      Matcher section = EGG_INFO_SECTION.matcher(line);
+      if (section.matches()) {
+        extra = section.group(1).trim();
+        marker = section.group(2);
+      } else if (extra.isEmpty()) {
+        requirements.add(marker == null || marker.isBlank() ? line : line + " ; " + marker);
+      }
+      // requirements of an extra are only installed when the extra is requested
+    }
+    return requirements;
+  }
+
+  /**
+   * Reads the headers of a metadata file, in the email format, up to the empty line starting the
+   * description.
+   */
+  private static Map<String, List<String>> readHeaders(Path metadataFile) throws IOException {
+    Map<String, List<String>> headers = new HashMap<>();
+    try (BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(Files.newInputStream(metadataFile), StandardCharsets.UTF_8))) {
+      String line;
+      List<String> lastValues = null;
+      while ((line = reader.readLine()) != null && !line.isEmpty()) {
+        if ((line.startsWith(" ") || line.startsWith("\t")) && lastValues != null) {
+          int last = lastValues.size() - 1;
+          lastValues.set(last, lastValues.get(last) + " " + line.trim());
+          continue;
+        }
+        int colon = line.indexOf(':');
+        if (colon > 0) {
+          lastValues =
+              headers.computeIfAbsent(
+                  line.substring(0, colon).trim().toLowerCase(Locale.ROOT), k -> new ArrayList<>());
+          lastValues.add(line.substring(colon + 1).trim());
+        }
+      }
+    }
+    return headers;
+  }
+
+  private static String first(Map<String, List<String>> headers, String name) {
+    List<String> values = headers.get(name);
+    return values == null || values.isEmpty() || values.get(0).isEmpty() ? null : values.get(0);
+  }
+
+  /** The normalized name of a package, following PEP 503. */
+  static String canonicalName(String name) {
+    return name.replaceAll("[-_.]+", "-").toLowerCase(Locale.ROOT);
+  }
+}
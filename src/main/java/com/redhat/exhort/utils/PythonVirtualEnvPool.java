@@ -0,0 +1,307 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.utils;
+
+import com.redhat.exhort.logging.LoggersFactory;
+import com.redhat.exhort.tools.Operations;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Virtual environments shared by the analyses of this host, in the temporary directory. An
+ * environment is keyed by the version of the interpreter creating it and by the requirements
+ * installed in it, so an analysis of the same requirements reuses it as is. An environment is
+ * leased by a single analysis at a time, through a lock file next to it which also records when it
+ * was last used. The least recently used environments are deleted along with their lock files when
+ * the pool exceeds its quota.
+ */
+final class PythonVirtualEnvPool {
+
+  private static final Logger log = LoggersFactory.getLogger(PythonVirtualEnvPool.class.getName());
+
+  private static final long DEFAULT_QUOTA_MB = 1024;
+  private static final String LOCK_SUFFIX = ".lock";
+  // the environments of the same requirements leased at the same time
+  private static final int MAX_SLOTS = 32;
+  // held while opening or deleting the lock files of the environments
+  private static final String POOL_LOCK_FILE = "pool.lock";
+  // written once the requirements are installed, holds the size of the environment
+  private static final String POPULATED_FILE = ".exhort-populated";
+  private static final Map<String, String> INTERPRETER_VERSIONS = new ConcurrentHashMap<>();
+
+  private final Path root;
+  private final long quotaBytes;
+
+  PythonVirtualEnvPool(Path root, long quotaBytes) {
+    this.root = root;
+    this.quotaBytes = quotaBytes;
+  }
+
+  static PythonVirtualEnvPool getDefault() {
+    long quotaMb =
+        Environment.getLong(
+            PythonControllerBase.PROP_EXHORT_PYTHON_VIRTUAL_ENV_POOL_QUOTA_MB, DEFAULT_QUOTA_MB);
+    return new PythonVirtualEnvPool(
+        Path.of(System.getProperty("java.io.tmpdir"), "exhort_env_pool"), quotaMb * 1024 * 1024);
+  }
+
+  /**
+   * @param pathToPythonBin the interpreter creating the environment
+   * @param requirements what is installed in the environment, the content of the requirements and
+   *     how they are installed
+   * @return an environment of the pool leased to the caller, populated with the requirements if a
+   *     previous analysis installed them, otherwise to be created
+   * @throws RuntimeException if all the environments of the requirements are leased
+   */
+  Lease lease(String pathToPythonBin, String requirements) {
+    String key =
+        CacheFiles.sha256(interpreterVersion(pathToPythonBin) + "\n" + requirements)
+            .substring(0, 16);
+    try {
+      Files.createDirectories(root);
+      for (int slot = 0; slot < MAX_SLOTS; slot++) {
+        Path environment = root.resolve(key + "-" + slot);
+        Lease lease = tryLease(environment);
+        if (lease != null) {
+          return lease;
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Could not lease a python virtual environment in " + root, e);
+    }
+    throw new RuntimeException(
+        String.format(
+            "Could not lease a python virtual environment in %s, the %d environments of the"
+                + " requirements are leased",
+            root, MAX_SLOTS));
+  }
+
+  private Lease tryLease(Path environment) throws IOException {
+    Path lockFile = lockFileOf(environment);
+    return withPoolLock(
+        () -> {
+          FileChannel channel =
+              FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+          FileLock lock;
+          try {
+            lock = channel.tryLock();
+          } catch (OverlappingFileLockException e) {
+            // leased by another analysis of this JVM
+            lock = null;
+          }
+          if (lock == null) {
+            channel.close();
+            return null;
+          }
+          // the modification time of the lock file tells the least recently used environments
+          Files.setLastModifiedTime(lockFile, FileTime.fromMillis(System.currentTimeMillis()));
+          return new Lease(
+              this, environment, channel, Files.exists(environment.resolve(POPULATED_FILE)));
+        });
+  }
+
+  /**
+   * Runs an action holding the lock of the pool. A lock file is only opened by the analysis leasing
+   * its environment while holding the lock of the pool, so deleting the lock file of a leased
+   * environment while holding it never lets another analysis lock a file about to be deleted.
+   */
+  private <T> T withPoolLock(PoolAction<T> action) throws IOException {
+    synchronized (PythonVirtualEnvPool.class) {
+      try (FileChannel channel =
+              FileChannel.open(
+                  root.resolve(POOL_LOCK_FILE),
+                  StandardOpenOption.CREATE,
+                  StandardOpenOption.WRITE);
+          FileLock lock = channel.lock()) {
+        return action.run();
+      }
+    }
+  }
+
+  private interface PoolAction<T> {
+    T run() throws IOException;
+  }
+
+  private static Path lockFileOf(Path environment) {
+    return environment.resolveSibling(environment.getFileName() + LOCK_SUFFIX);
+  }
+
+  /**
+   * Deletes the least recently used environments which are not leased, until the environments of
+   * the pool fit in the quota. The environments never populated count for what they hold, like the
+   * leftovers of an interrupted analysis.
+   */
+  void evict(Path keep) {
+    List<Path> lockFiles;
+    try (Stream<Path> files = Files.list(root)) {
+      lockFiles =
+          files
+              .filter(file -> file.getFileName().toString().endsWith(LOCK_SUFFIX))
+              .filter(file -> !file.getFileName().toString().equals(POOL_LOCK_FILE))
+              .collect(Collectors.toList());
+    } catch (IOException e) {
+      log.fine("Could not list the python virtual environments of " + root + ": " + e);
+      return;
+    }
+    long total = 0;
+    List<Path> environments = new ArrayList<>();
+    Map<Path, FileTime> lastUsed = new HashMap<>();
+    for (Path lockFile : lockFiles) {
+      String name = lockFile.getFileName().toString();
+      Path environment = root.resolve(name.substring(0, name.length() - LOCK_SUFFIX.length()));
+      try {
+        lastUsed.put(environment, Files.getLastModifiedTime(lockFile));
+      } catch (IOException e) {
+        continue;
+      }
+      total += sizeOf(environment);
+      environments.add(environment);
+    }
+    environments.sort(Comparator.comparing(lastUsed::get));
+    for (Path environment : environments) {
+      if (total <= quotaBytes) {
+        break;
+      }
+      if (environment.equals(keep)) {
+        continue;
+      }
+      try (Lease lease = tryLease(environment)) {
+        if (lease != null) {
+          long size = sizeOf(environment);
+          lease.delete();
+          total -= size;
+          log.fine("Evicted the python virtual environment " + environment);
+        }
+      } catch (IOException e) {
+        log.fine("Could not evict the python virtual environment " + environment + ": " + e);
+      }
+    }
+  }
+
+  private static long sizeOf(Path environment) {
+    try {
+      return Long.parseLong(Files.readString(environment.resolve(POPULATED_FILE)).trim());
+    } catch (IOException | NumberFormatException e) {
+      return sizeOfFiles(environment);
+    }
+  }
+
+  private static long sizeOfFiles(Path environment) {
+    if (!Files.isDirectory(environment)) {
+      return 0;
+    }
+    try (Stream<Path> files = Files.walk(environment)) {
+      return files
+          .filter(Files::isRegularFile)
+          .mapToLong(
+              file -> {
+                try {
+                  return Files.size(file);
+                } catch (IOException e) {
+                  return 0;
+                }
+              })
+          .sum();
+    } catch (IOException | UncheckedIOException e) {
+      return 0;
+    }
+  }
+
+  private static String interpreterVersion(String pathToPythonBin) {
+    return INTERPRETER_VERSIONS.computeIfAbsent(
+        pathToPythonBin,
+        python -> Operations.runProcessGetOutput(null, python, "--version").trim());
+  }
+
+  /** An environment of the pool, leased until it is closed. */
+  static final class Lease implements AutoCloseable {
+
+    private final PythonVirtualEnvPool pool;
+    private final Path environment;
+    private final FileChannel channel;
+    private final boolean populated;
+
+    private Lease(
+        PythonVirtualEnvPool pool, Path environment, FileChannel channel, boolean populated) {
+      this.pool = pool;
+      this.environment = environment;
+      this.channel = channel;
+      this.populated = populated;
+    }
+
+    Path getEnvironment() {
+      return environment;
+    }
+
+    /**
+     * @return whether the requirements were installed in the environment by a previous analysis
+     */
+    boolean isPopulated() {
+      return populated;
+    }
+
+    /** Records that the requirements are installed in the environment, for the next analyses. */
+    void markPopulated() throws IOException {
+      Files.writeString(
+          environment.resolve(POPULATED_FILE), String.valueOf(sizeOfFiles(environment)));
+    }
+
+    /**
+     * Deletes the environment, the marker first so it is never reused half deleted, then releases
+     * the lease and deletes its lock file. Both happen under the pool lock, so no other analysis
+     * opens the lock file in between, and the channel is closed first as an open file cannot be
+     * deleted on Windows.
+     */
+    void delete() throws IOException {
+      Files.deleteIfExists(environment.resolve(POPULATED_FILE));
+      if (Files.exists(environment)) {
+        try (Stream<Path> files = Files.walk(environment)) {
+          for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+            Files.deleteIfExists(file);
+          }
+        }
+      }
+      pool.withPoolLock(
+          () -> {
+            channel.close();
+            Files.deleteIfExists(lockFileOf(environment));
+            return null;
+          });
+    }
+
+    @Override
+    public void close() throws IOException {
+      // closing the channel releases the lock
+      channel.close();
+    }
+  }
+}
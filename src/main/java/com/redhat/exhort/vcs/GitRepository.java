@@ -0,0 +1,829 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.vcs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the metadata of a git repository straight from its git directory: HEAD, the loose and
+ * packed refs, and the commit and tag objects, loose or in pack files, inflated with zlib. It
+ * answers what a pseudo-version needs, the HEAD commit, its time and the nearest tag, without
+ * launching git. Repositories using SHA-256 object names are not supported.
+ */
+final class GitRepository implements Closeable {
+
+  private static final int OBJ_COMMIT = 1;
+  private static final int OBJ_TREE = 2;
+  private static final int OBJ_BLOB = 3;
+  private static final int OBJ_TAG = 4;
+  private static final int OBJ_OFS_DELTA = 6;
+  private static final int OBJ_REF_DELTA = 7;
+  private static final Pattern OBJECT_ID = Pattern.compile("[0-9a-f]{40}");
+  private static final String TAGS_PREFIX = "refs/tags/";
+  // the number of tags git describe considers before picking the nearest one
+  private static final int MAX_CANDIDATES = 10;
+
+  private final Path workTree;
+  private final Path gitDir;
+  private final Path commonDir;
+  private List<Path> objectDirs;
+  private List<Pack> packs;
+
+  private GitRepository(Path workTree, Path gitDir, Path commonDir) {
+    this.workTree = workTree;
+    this.gitDir = gitDir;
+    this.commonDir = commonDir;
+  }
+
+  /**
+   * Finds the repository whose work tree contains the directory, looking for a .git directory, or a
+   * .git file pointing to the git directory of a worktree or a submodule, in the directory and its
+   * parents.
+   *
+   * @param directory a directory of the work tree
+   * @return the repository, empty if the directory is not in a work tree
+   */
+  static Optional<GitRepository> find(Path directory) throws IOException {
+    for (Path current = directory.toAbsolutePath().normalize();
+        current != null;
+        current = current.getParent()) {
+      Path dotGit = current.resolve(".git");
+      Path gitDir = null;
+      if (Files.isRegularFile(dotGit.resolve("HEAD"))) {
+        gitDir = dotGit;
+      } else if (Files.isRegularFile(dotGit)) {
+        String content = Files.readString(dotGit).trim();
+        if (content.startsWith("gitdir:")) {
+          gitDir = current.resolve(content.substring("gitdir:".length()).trim()).normalize();
+        }
+      }
+      if (gitDir != null) {
+        Path commonDir = gitDir;
+        Path commonDirFile = gitDir.resolve("commondir");
+        if (Files.isRegularFile(commonDirFile)) {
+          commonDir = gitDir.resolve(Files.readString(commonDirFile).trim()).normalize();
+        }
+        return Optional.of(new GitRepository(current, gitDir, commonDir));
+      }
+    }
+    return Optional.empty();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (packs != null) {
+      for (Pack pack : packs) {
+        pack.close();
+      }
+    }
+  }
+
+  Path getWorkTree() {
+    return workTree;
+  }
+
+  Path getGitDir() {
+    return gitDir;
+  }
+
+  /**
+   * @return the commit HEAD points to, or null if the current branch has no commits yet
+   */
+  String resolveHead() throws IOException {
+    String head = Files.readString(gitDir.resolve("HEAD")).trim();
+    for (int depth = 0; head.startsWith("ref:") && depth < 5; depth++) {
+      head = readRef(head.substring("ref:".length()).trim());
+      if (head == null) {
+        return null;
+      }
+    }
+    if (!OBJECT_ID.matcher(head).matches()) {
+      throw new IOException("Unsupported HEAD in " + gitDir + ": " + head);
+    }
+    return head;
+  }
+
+  /**
+   * @return a stamp changing when tags are added to or removed from the repository
+   */
+  long getTagsStamp() throws IOException {
+    long stamp = 0;
+    Path packedRefs = commonDir.resolve("packed-refs");
+    if (Files.exists(packedRefs)) {
+      stamp = Files.getLastModifiedTime(packedRefs).toMillis();
+    }
+    Path looseTags = commonDir.resolve(TAGS_PREFIX);
+    if (Files.isDirectory(looseTags)) {
+      // the tags may be nested, i.e. refs/tags/release/1.0, every directory and tag is stamped
+      try (Stream<Path> paths = Files.walk(looseTags)) {
+        for (Path path : (Iterable<Path>) paths.sorted()::iterator) {
+          stamp = 31 * stamp + path.hashCode();
+          stamp = 31 * stamp + Files.getLastModifiedTime(path).toMillis();
+        }
+      }
+    }
+    return stamp;
+  }
+
+  private String readRef(String name) throws IOException {
+    // the refs of a worktree, like HEAD, are in its own git directory, the branches are shared
+    for (Path dir : List.of(gitDir, commonDir)) {
+      Path loose = dir.resolve(name);
+      if (Files.isRegularFile(loose)) {
+        return Files.readString(loose).trim();
+      }
+    }
+    String[] packed = readPackedRefs().get(name);
+    return packed == null ? null : packed[0];
+  }
+
+  /**
+   * @return the packed refs by name, with their object and their peeled object when known
+   */
+  private Map<String, String[]> readPackedRefs() throws IOException {
+    Map<String, String[]> refs = new HashMap<>();
+    Path packedRefs = commonDir.resolve("packed-refs");
+    if (!Files.isRegularFile(packedRefs)) {
+      return refs;
+    }
+    boolean fullyPeeled = false;
+    String[] previous = null;
+    for (String line : Files.readAllLines(packedRefs)) {
+      if (line.startsWith("#")) {
+        fullyPeeled = line.contains(" fully-peeled");
+      } else if (line.startsWith("^") && previous != null) {
+        previous[1] = line.substring(1).trim();
+      } else if (line.length() > 41) {
+        // without a peeled line, a ref of a fully peeled file points to a non tag object
+        previous = new String[] {line.substring(0, 40), fullyPeeled ? "" : null};
+        refs.put(line.substring(41).trim(), previous);
+      }
+    }
+    return refs;
+  }
+
+  /**
+   * Finds the nearest tag reachable from a commit, like git describe: the history is walked from
+   * the commit, newest commits first, the first tagged commits met being the candidates. The depth
+   * of a candidate is the number of commits reachable from the commit but not from the candidate,
+   * and the candidate of the least depth wins, the first met on a tie. Annotated tags are looked
+   * for first, lightweight tags only if no annotated tag is reachable. Among the tags of the same
+   * commit, annotated tags win over lightweight ones, then the newest, then the first by name.
+   *
+   * @param commit the commit to describe
+   * @return the name of the nearest tag and its commit, empty if no tag is reachable
+   */
+  Optional<String[]> findNearestTag(String commit) throws IOException {
+    Map<String, List<Tag>> tagsByCommit = readTags();
+    if (tagsByCommit.isEmpty()) {
+      return Optional.empty();
+    }
+    boolean hasAnnotated =
+        tagsByCommit.values().stream().flatMap(List::stream).anyMatch(tag -> tag.annotated);
+    Optional<String[]> nearest = Optional.empty();
+    if (hasAnnotated) {
+      nearest = walkToTag(commit, tagsByCommit, true);
+    }
+    if (nearest.isEmpty()) {
+      nearest = walkToTag(commit, tagsByCommit, false);
+    }
+    return nearest;
+  }
+
+  private Optional<String[]> walkToTag(
+      String start, Map<String, List<Tag>> tagsByCommit, boolean annotatedOnly) throws IOException {
+    Set<String> shallow = readShallow();
+    // the candidates reaching every seen commit, a bit per candidate
+    Map<String, Integer> reachedBy = new HashMap<>();
+    // newest commits first, the first queued on the same time
+    PriorityQueue<Commit> queue =
+        new PriorityQueue<>(
+            Comparator.comparingLong((Commit commit) -> commit.time)
+                .reversed()
+                .thenComparingLong(commit -> commit.order));
+    long order = 0;
+    List<Candidate> candidates = new ArrayList<>();
+    int seen = 0;
+    reachedBy.put(start, 0);
+    queue.add(readCommit(start).withOrder(order++));
+    while (!queue.isEmpty()) {
+      Commit commit = queue.poll();
+      seen++;
+      Optional<Tag> tag = getBestTag(tagsByCommit, commit.id, annotatedOnly);
+      if (tag.isPresent()) {
+        if (candidates.size() == MAX_CANDIDATES) {
+          queue.add(commit);
+          break;
+        }
+        // the commits seen before are not reachable from the candidate
+        Candidate candidate = new Candidate(tag.get().name, commit.id, seen - 1, candidates.size());
+        candidates.add(candidate);
+        reachedBy.merge(commit.id, candidate.flag, (first, second) -> first | second);
+      }
+      int flags = reachedBy.get(commit.id);
+      for (Candidate candidate : candidates) {
+        if ((flags & candidate.flag) == 0) {
+          candidate.depth++;
+        }
+      }
+      order = queueParents(commit, flags, shallow, reachedBy, queue, order);
+    }
+    Optional<Candidate> best =
+        candidates.stream().min(Comparator.comparingInt((Candidate candidate) -> candidate.depth));
+    if (best.isPresent() && !queue.isEmpty()) {
+      // the walk gave up on more candidates, the depth of the best one is yet to be finished
+      Candidate candidate = best.get();
+      while (!queue.isEmpty()) {
+        Commit commit = queue.poll();
+        int flags = reachedBy.get(commit.id);
+        if ((flags & candidate.flag) != 0) {
+          if (queue.stream().allMatch(next -> (reachedBy.get(next.id) & candidate.flag) != 0)) {
+            break;
+          }
+        } else {
+          candidate.depth++;
+        }
+        order = queueParents(commit, flags, shallow, reachedBy, queue, order);
+      }
+    }
+    return best.map(candidate -> new String[] {candidate.name, candidate.commit});
+  }
+
+  private long queueParents(
+      Commit commit,
+      int flags,
+      Set<String> shallow,
+      Map<String, Integer> reachedBy,
+      PriorityQueue<Commit> queue,
+      long order)
+      throws IOException {
+    if (shallow.contains(commit.id)) {
+      return order;
+    }
+    for (String parent : commit.parents) {
+      Integer parentFlags = reachedBy.get(parent);
+      if (parentFlags == null) {
+        reachedBy.put(parent, flags);
+        queue.add(readCommit(parent).withOrder(order++));
+      } else {
+        reachedBy.put(parent, parentFlags | flags);
+      }
+    }
+    return order;
+  }
+
+  private Optional<Tag> getBestTag(
+      Map<String, List<Tag>> tagsByCommit, String commit, boolean annotatedOnly) {
+    return tagsByCommit.getOrDefault(commit, Collections.emptyList()).stream()
+        .filter(tag -> tag.annotated || !annotatedOnly)
+        .min(
+            Comparator.comparing((Tag tag) -> !tag.annotated)
+                .thenComparing(Comparator.comparingLong(this::getTaggerTime).reversed())
+                .thenComparing(tag -> tag.name));
+  }
+
+  private long getTaggerTime(Tag tag) {
+    if (!tag.annotated) {
+      return 0;
+    }
+    try {
+      return parseTime(readObject(tag.objectId).text(), "tagger ")[0];
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  private Set<String> readShallow() throws IOException {
+    Path shallowFile = commonDir.resolve("shallow");
+    if (!Files.isRegularFile(shallowFile)) {
+      return Collections.emptySet();
+    }
+    return new HashSet<>(Files.readAllLines(shallowFile));
+  }
+
+  /**
+   * @return the tags of the repository by the commit they point to, annotated tags peeled
+   */
+  private Map<String, List<Tag>> readTags() throws IOException {
+    Map<String, String[]> refs = new HashMap<>();
+    readPackedRefs()
+        .forEach(
+            (name, ref) -> {
+              if (name.startsWith(TAGS_PREFIX)) {
+                refs.put(name, ref);
+              }
+            });
+    Path looseTags = commonDir.resolve(TAGS_PREFIX);
+    if (Files.isDirectory(looseTags)) {
+      try (Stream<Path> files = Files.walk(looseTags)) {
+        for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+          String name = TAGS_PREFIX + looseTags.relativize(file).toString().replace('\\', '/');
+          refs.put(name, new String[] {Files.readString(file).trim(), null});
+        }
+      }
+    }
+    Map<String, List<Tag>> tagsByCommit = new HashMap<>();
+    for (Map.Entry<String, String[]> ref : refs.entrySet()) {
+      String objectId = ref.getValue()[0];
+      String peeled = ref.getValue()[1];
+      boolean annotated;
+      if (peeled == null) {
+        // peel the tag objects down to the tagged object
+        annotated = false;
+        peeled = objectId;
+        for (int depth = 0; depth < 10; depth++) {
+          GitObject object = readObject(peeled);
+          if (object.type != OBJ_TAG) {
+            break;
+          }
+          annotated = true;
+          peeled = object.text().substring("object ".length(), "object ".length() + 40);
+        }
+      } else {
+        annotated = !peeled.isEmpty();
+        peeled = annotated ? peeled : objectId;
+      }
+      tagsByCommit
+          .computeIfAbsent(peeled, commit -> new ArrayList<>())
+          .add(new Tag(ref.getKey().substring(TAGS_PREFIX.length()), objectId, annotated));
+    }
+    return tagsByCommit;
+  }
+
+  Commit readCommit(String id) throws IOException {
+    GitObject object = readObject(id);
+    if (object.type != OBJ_COMMIT) {
+      throw new IOException("Not a commit: " + id);
+    }
+    String text = object.text();
+    List<String> parents = new ArrayList<>();
+    int headersEnd = text.indexOf("\n\n");
+    for (String header : (headersEnd < 0 ? text : text.substring(0, headersEnd)).split("\n")) {
+      if (header.startsWith("parent ")) {
+        parents.add(header.substring("parent ".length()).trim());
+      }
+    }
+    long[] time = parseTime(text, "committer ");
+    return new Commit(id, parents, time[0], (int) time[1]);
+  }
+
+  /**
+   * @return the seconds since the epoch and the time zone offset in seconds of the person line
+   */
+  private static long[] parseTime(String text, String header) throws IOException {
+    for (String line : text.split("\n")) {
+      if (line.isEmpty()) {
+        break;
+      }
+      if (line.startsWith(header)) {
+        // "committer Name <email> 1700000000 +0200"
+        String[] parts = line.substring(line.lastIndexOf('>') + 1).trim().split("\\s+");
+        long seconds = Long.parseLong(parts[0]);
+        int offset = 0;
+        if (parts.length > 1 && parts[1].length() == 5) {
+          int hours = Integer.parseInt(parts[1].substring(1, 3));
+          int minutes = Integer.parseInt(parts[1].substring(3, 5));
+          offset = (hours * 3600 + minutes * 60) * (parts[1].charAt(0) == '-' ? -1 : 1);
+        }
+        return new long[] {seconds, offset};
+      }
+    }
+    throw new IOException("Missing " + header.trim() + " in object");
+  }
+
+  GitObject readObject(String id) throws IOException {
+    for (Path objectDir : getObjectDirs()) {
+      Path loose = objectDir.resolve(id.substring(0, 2)).resolve(id.substring(2));
+      if (Files.isRegularFile(loose)) {
+        return readLooseObject(loose);
+      }
+    }
+    byte[] name = toBytes(id);
+    for (Pack pack : getPacks()) {
+      long offset = pack.findOffset(name);
+      if (offset >= 0) {
+        return pack.readObject(offset);
+      }
+    }
+    throw new IOException("Object " + id + " not found in " + commonDir);
+  }
+
+  private List<Path> getObjectDirs() throws IOException {
+    if (objectDirs == null) {
+      List<Path> dirs = new ArrayList<>();
+      Path objects = commonDir.resolve("objects");
+      dirs.add(objects);
+      Path alternates = objects.resolve("info").resolve("alternates");
+      if (Files.isRegularFile(alternates)) {
+        for (String line : Files.readAllLines(alternates)) {
+          if (!line.isBlank() && !line.startsWith("#")) {
+            dirs.add(objects.resolve(line.trim()).normalize());
+          }
+        }
+      }
+      objectDirs = dirs;
+    }
+    return objectDirs;
+  }
+
+  private List<Pack> getPacks() throws IOException {
+    if (packs == null) {
+      List<Pack> found = new ArrayList<>();
+      for (Path objectDir : getObjectDirs()) {
+        Path packDir = objectDir.resolve("pack");
+        if (!Files.isDirectory(packDir)) {
+          continue;
+        }
+        try (Stream<Path> files = Files.list(packDir)) {
+          for (Path idx :
+              (Iterable<Path>) files.filter(f -> f.toString().endsWith(".idx"))::iterator) {
+            String fileName = idx.getFileName().toString();
+            Path pack = idx.resolveSibling(fileName.substring(0, fileName.length() - 4) + ".pack");
+            if (Files.isRegularFile(pack)) {
+              found.add(new Pack(idx, pack));
+            }
+          }
+        }
+      }
+      packs = found;
+    }
+    return packs;
+  }
+
+  private static GitObject readLooseObject(Path file) throws IOException {
+    byte[] content = inflate(Files.readAllBytes(file), -1);
+    int headerEnd = 0;
+    while (headerEnd < content.length && content[headerEnd] != 0) {
+      headerEnd++;
+    }
+    String header = new String(content, 0, headerEnd, StandardCharsets.US_ASCII);
+    String typeName = header.substring(0, header.indexOf(' '));
+    int type;
+    switch (typeName) {
+      case "commit":
+        type = OBJ_COMMIT;
+        break;
+      case "tree":
+        type = OBJ_TREE;
+        break;
+      case "blob":
+        type = OBJ_BLOB;
+        break;
+      case "tag":
+        type = OBJ_TAG;
+        break;
+      default:
+        throw new IOException("Unknown object type " + typeName + " in " + file);
+    }
+    byte[] data = new byte[content.length - headerEnd - 1];
+    System.arraycopy(content, headerEnd + 1, data, 0, data.length);
+    return new GitObject(type, data);
+  }
+
+  /**
+   * Inflates zlib data, all of it or the given number of bytes when the size is known.
+   *
+   * @param size the inflated size, or -1 if unknown
+   */
+  private static byte[] inflate(byte[] compressed, int size) throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressed);
+      if (size >= 0) {
+        byte[] result = new byte[size];
+        int length = 0;
+        while (length < size && !inflater.finished()) {
+          int count = inflater.inflate(result, length, size - length);
+          if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+            throw new IOException("Truncated git object");
+          }
+          length += count;
+        }
+        return result;
+      }
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      while (!inflater.finished()) {
+        int count = inflater.inflate(buffer);
+        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IOException("Truncated git object");
+        }
+        out.write(buffer, 0, count);
+      }
+      return out.toByteArray();
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupt git object", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static byte[] toBytes(String id) {
+    byte[] bytes = new byte[id.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) Integer.parseInt(id.substring(i * 2, i * 2 + 2), 16);
+    }
+    return bytes;
+  }
+
+  /** Applies a git delta, a sequence of copy and insert instructions, to its base object. */
+  private static byte[] applyDelta(byte[] base, byte[] delta) throws IOException {
+    int[] position = {0};
+    readVarInt(delta, position); // the base size
+    int resultSize = (int) readVarInt(delta, position);
+    byte[] result = new byte[resultSize];
+    int length = 0;
+    int i = position[0];
+    while (i < delta.length) {
+      int instruction = delta[i++] & 0xff;
+      if ((instruction & 0x80) != 0) {
+        int offset = 0;
+        int size = 0;
+        for (int bit = 0; bit < 4; bit++) {
+          if ((instruction & (1 << bit)) != 0) {
+            offset |= (delta[i++] & 0xff) << (8 * bit);
+          }
+        }
+        for (int bit = 0; bit < 3; bit++) {
+          if ((instruction & (0x10 << bit)) != 0) {
+            size |= (delta[i++] & 0xff) << (8 * bit);
+          }
+        }
+        if (size == 0) {
+          size = 0x10000;
+        }
+        System.arraycopy(base, offset, result, length, size);
+        length += size;
+      } else if (instruction != 0) {
+        System.arraycopy(delta, i, result, length, instruction);
+        i += instruction;
+        length += instruction;
+      } else {
+        throw new IOException("Invalid delta instruction");
+      }
+    }
+    return result;
+  }
+
+  private static long readVarInt(byte[] data, int[] position) {
+    long value = 0;
+    int shift = 0;
+    int b;
+    do {
+      b = data[position[0]++] & 0xff;
+      value |= (long) (b & 0x7f) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+
+  static final class GitObject {
+    final int type;
+    final byte[] data;
+
+    GitObject(int type, byte[] data) {
+      this.type = type;
+      this.data = data;
+    }
+
+    String text() {
+      return new String(data, StandardCharsets.UTF_8);
+    }
+  }
+
+  static final class Commit {
+    final String id;
+    final List<String> parents;
+    final long time;
+    final int offsetSeconds;
+    // the order the commit was queued in during a walk
+    private long order;
+
+    Commit(String id, List<String> parents, long time, int offsetSeconds) {
+      this.id = id;
+      this.parents = parents;
+      this.time = time;
+      this.offsetSeconds = offsetSeconds;
+    }
+
+    private Commit withOrder(long order) {
+      this.order = order;
+      return this;
+    }
+
+    /**
+     * @return the commit time in the time zone of the committer, like git show --format=%cI
+     */
+    LocalDateTime getLocalTime() {
+      return LocalDateTime.ofEpochSecond(time, 0, ZoneOffset.ofTotalSeconds(offsetSeconds));
+    }
+  }
+
+  /** A tag git describe considers, with the number of walked commits it does not reach. */
+  private static final class Candidate {
+    final String name;
+    final String commit;
+    final int flag;
+    int depth;
+
+    Candidate(String name, String commit, int depth, int index) {
+      this.name = name;
+      this.commit = commit;
+      this.depth = depth;
+      this.flag = 1 << index;
+    }
+  }
+
+  private static final class Tag {
+    final String name;
+    final String objectId;
+    final boolean annotated;
+
+    Tag(String name, String objectId, boolean annotated) {
+      this.name = name;
+      this.objectId = objectId;
+      this.annotated = annotated;
+    }
+  }
+
+  /** A pack file and its version 1 or 2 index, the index mapped in memory. */
+  private static final class Pack implements Closeable {
+    private final MappedByteBuffer index;
+    private final Path packFile;
+    private final boolean version2;
+    private final int count;
+    private RandomAccessFile file;
+
+    Pack(Path indexFile, Path packFile) throws IOException {
+      try (FileChannel channel = FileChannel.open(indexFile)) {
+        this.index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      this.packFile = packFile;
+      this.version2 = index.getInt(0) == 0xff744f63 && index.getInt(4) == 2;
+      this.count = index.getInt(fanoutStart() + 255 * 4);
+    }
+
+    private int fanoutStart() {
+      return version2 ? 8 : 0;
+    }
+
+    /**
+     * @return the offset of the object in the pack, or -1 if the pack does not contain it
+     */
+    long findOffset(byte[] name) {
+      int first = name[0] & 0xff;
+      int low = first == 0 ? 0 : index.getInt(fanoutStart() + (first - 1) * 4);
+      int high = index.getInt(fanoutStart() + first * 4) - 1;
+      int namesStart = fanoutStart() + 256 * 4;
+      int entrySize = version2 ? 20 : 24;
+      int nameOffset = version2 ? 0 : 4;
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        int position = namesStart + middle * entrySize + nameOffset;
+        int comparison = 0;
+        for (int i = 0; i < 20 && comparison == 0; i++) {
+          comparison = Integer.compare(index.get(position + i) & 0xff, name[i] & 0xff);
+        }
+        if (comparison < 0) {
+          low = middle + 1;
+        } else if (comparison > 0) {
+          high = middle - 1;
+        } else if (!version2) {
+          return index.getInt(namesStart + middle * entrySize) & 0xffffffffL;
+        } else {
+          int offsetsStart = namesStart + count * 20 + count * 4;
+          int offset = index.getInt(offsetsStart + middle * 4);
+          if ((offset & 0x80000000) == 0) {
+            return offset;
+          }
+          // large offsets are in a table of 8 bytes entries after the 4 bytes ones
+          return index.getLong(offsetsStart + count * 4 + (offset & 0x7fffffff) * 8);
+        }
+      }
+      return -1;
+    }
+
+    synchronized GitObject readObject(long offset) throws IOException {
+      if (file == null) {
+        file = new RandomAccessFile(packFile.toFile(), "r");
+      }
+      return readObject(file, offset, 0);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      if (file != null) {
+        file.close();
+        file = null;
+      }
+    }
+
+    private GitObject readObject(RandomAccessFile file, long offset, int depth) throws IOException {
+      if (depth > 1000) {
+        throw new IOException("Delta chain too long in " + packFile);
+      }
+      file.seek(offset);
+      int b = file.readUnsignedByte();
+      int type = (b >> 4) & 0x7;
+      long size = b & 0x0f;
+      int shift = 4;
+      while ((b & 0x80) != 0) {
+        b = file.readUnsignedByte();
+        size |= (long) (b & 0x7f) << shift;
+        shift += 7;
+      }
+      if (type == OBJ_OFS_DELTA) {
+        b = file.readUnsignedByte();
+        long baseDistance = b & 0x7f;
+        while ((b & 0x80) != 0) {
+          b = file.readUnsignedByte();
+          baseDistance = ((baseDistance + 1) << 7) | (b & 0x7f);
+        }
+        byte[] delta = inflateAt(file, file.getFilePointer(), (int) size);
+        GitObject base = readObject(file, offset - baseDistance, depth + 1);
+        return new GitObject(base.type, applyDelta(base.data, delta));
+      }
+      if (type == OBJ_REF_DELTA) {
+        byte[] baseName = new byte[20];
+        file.readFully(baseName);
+        byte[] delta = inflateAt(file, file.getFilePointer(), (int) size);
+        long baseOffset = findOffset(baseName);
+        if (baseOffset < 0) {
+          throw new IOException("Delta base not found in " + packFile);
+        }
+        GitObject base = readObject(file, baseOffset, depth + 1);
+        return new GitObject(base.type, applyDelta(base.data, delta));
+      }
+      return new GitObject(type, inflateAt(file, file.getFilePointer(), (int) size));
+    }
+
+    private static byte[] inflateAt(RandomAccessFile file, long position, int size)
+        throws IOException {
+      Inflater inflater = new Inflater();
+      try {
+        byte[] result = new byte[size];
+        byte[] input = new byte[Math.max(64, Math.min(size + 64, 8192))];
+        int length = 0;
+        file.seek(position);
+        InputStream in = Channels.newInputStream(file.getChannel());
+        while (length < size) {
+          if (inflater.finished()) {
+            throw new IOException("Truncated pack object");
+          }
+          if (inflater.needsInput()) {
+            int read = in.read(input);
+            if (read < 0) {
+              throw new IOException("Truncated pack object");
+            }
+            inflater.setInput(input, 0, read);
+          }
+          length += inflater.inflate(result, length, size - length);
+        }
+        return result;
+      } catch (DataFormatException e) {
+        throw new IOException("Corrupt pack object", e);
+      } finally {
+        inflater.end();
+      }
+    }
+  }
+}
@@ -15,23 +15,105 @@
  */
 package com.redhat.exhort.vcs;
 
+import com.redhat.exhort.logging.LoggersFactory;
 import com.redhat.exhort.tools.Operations;
+import com.redhat.exhort.utils.Environment;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
 public class GitVersionControlSystemImpl implements VersionControlSystem {
 
+  private static final Logger log =
+      LoggersFactory.getLogger(GitVersionControlSystemImpl.class.getName());
+
+  private static final int TAG_INFO_CACHE_SIZE = 64;
+  // the tag info of the recently used repositories, by git directory, HEAD commit and tags stamp
+  private static final Map<String, TagInfo> TAG_INFO_CACHE =
+      Collections.synchronizedMap(
+          new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TagInfo> eldest) {
+              return size() > TAG_INFO_CACHE_SIZE;
+            }
+          });
+
   private final String gitBinary;
 
   public GitVersionControlSystemImpl() {
     gitBinary = Operations.getCustomPathOrElse("git");
   }
 
+  /**
+   * Gets the latest tag by reading the repository metadata in-process, the results are cached per
+   * repository and HEAD commit. The git binary is only used for repositories the reader does not
+   * support.
+   */
   @Override
   public TagInfo getLatestTag(Path repoLocation) {
+    try {
+      Optional<GitRepository> found = GitRepository.find(repoLocation);
+      if (found.isPresent()) {
+        try (GitRepository repository = found.get()) {
+          return copyOf(readLatestTag(repository));
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      log.fine(
+          String.format("Unable to read the git metadata of %s, using git: %s", repoLocation, e));
+    }
+    return getLatestTagFromGit(repoLocation);
+  }
+
+  private static TagInfo readLatestTag(GitRepository repository) throws IOException {
+    TagInfo tagInfo = new TagInfo();
+    String head = repository.resolveHead();
+    // empty git repo with no commits
+    if (head == null) {
+      tagInfo.setTagName("");
+      tagInfo.setCurrentCommitPointedByTag(false);
+      tagInfo.setCommitTimestamp(
+          LocalDateTime.parse(LocalDateTime.MIN.toString(), DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+      tagInfo.setCurrentCommitDigest("");
+      return tagInfo;
+    }
+    String key = String.format("%s:%s:%d", repository.getGitDir(), head, repository.getTagsStamp());
+    TagInfo cached = TAG_INFO_CACHE.get(key);
+    if (cached != null) {
+      return cached;
+    }
+    tagInfo.setCurrentCommitDigest(head);
+    tagInfo.setCommitTimestamp(repository.readCommit(head).getLocalTime());
+    Optional<String[]> nearestTag = repository.findNearestTag(head);
+    if (nearestTag.isPresent()) {
+      tagInfo.setTagName(nearestTag.get()[0]);
+      tagInfo.setCurrentCommitPointedByTag(nearestTag.get()[1].equals(head));
+    } else {
+      tagInfo.setTagName("");
+      tagInfo.setCurrentCommitPointedByTag(false);
+    }
+    TAG_INFO_CACHE.put(key, tagInfo);
+    return tagInfo;
+  }
+
+  private static TagInfo copyOf(TagInfo tagInfo) {
+    TagInfo copy = new TagInfo();
+    copy.setTagName(tagInfo.getTagName());
+    copy.setCurrentCommitPointedByTag(tagInfo.isCurrentCommitPointedByTag());
+    copy.setCurrentCommitDigest(tagInfo.getCurrentCommitDigest());
+    copy.setCommitTimestamp(tagInfo.getCommitTimestamp());
+    return copy;
+  }
+
+  private TagInfo getLatestTagFromGit(Path repoLocation) {
     TagInfo tagInfo = new TagInfo();
 
     // get current commit hash digest
@@ -92,6 +174,13 @@ public TagInfo getLatestTag(Path repoLocation) {
   @Override
   public boolean isDirectoryRepo(Path repoLocation) {
     try {
+      if (GitRepository.find(repoLocation).isPresent()) {
+        return true;
+      }
+      // a bare repository, or a git directory set by the environment
+      if (Environment.get("GIT_DIR") == null) {
+        return false;
+      }
       String resultFromInvocation =
           Operations.runProcessGetOutput(
               repoLocation, gitBinary, "rev-parse", "--is-inside-work-tree");
@@ -0,0 +1,244 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.image;
+
+import static com.redhat.exhort.image.ImageSbomCache.EXHORT_IMAGE_SBOM_CACHE_DIR;
+import static com.redhat.exhort.image.ImageUtils.EXHORT_SYFT_CONFIG_PATH;
+import static com.redhat.exhort.image.ImageUtils.EXHORT_SYFT_IMAGE_SOURCE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.packageurl.MalformedPackageURLException;
+import com.redhat.exhort.ExhortTest;
+import com.redhat.exhort.tools.Operations;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junitpioneer.jupiter.ClearSystemProperty;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+class ImageSbomCacheTest extends ExhortTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @Test
+  void test_the_sbom_is_cached_compressed(@TempDir Path directory) throws IOException {
+    var cache = new ImageSbomCache(directory, 1024 * 1024);
+    var sbom = MAPPER.readTree("{\"bomFormat\":\"CycloneDX\",\"components\":[]}");
+
+    assertThat(cache.read("image")).isNull();
+    cache.write("image", sbom);
+
+    assertThat(cache.read("image")).isEqualTo(sbom);
+    assertThat(cache.read("other image")).isNull();
+    try (Stream<Path> files = Files.list(directory)) {
+      var cached = files.collect(Collectors.toList());
+      assertThat(cached).singleElement().matches(file -> file.toString().endsWith(".json.gz"));
+      var header = Files.readAllBytes(cached.get(0));
+      assertThat(header[0]).isEqualTo((byte) 0x1f);
+      assertThat(header[1]).isEqualTo((byte) 0x8b);
+    }
+  }
+
+  @Test
+  void test_an_unreadable_sbom_is_dropped(@TempDir Path directory) throws IOException {
+    var cache = new ImageSbomCache(directory, 1024 * 1024);
+    cache.write("image", MAPPER.readTree("{}"));
+    try (Stream<Path> files = Files.list(directory)) {
+      Files.writeString(files.findFirst().orElseThrow(), "not gzipped");
+    }
+
+    assertThat(cache.read("image")).isNull();
+    try (Stream<Path> files = Files.list(directory)) {
+      assertThat(files).isEmpty();
+    }
+  }
+
+  @Test
+  void test_the_least_recently_used_sboms_are_evicted(@TempDir Path directory) throws IOException {
+    var sbom = MAPPER.readTree("{\"components\":[{\"name\":\"" + "a".repeat(4096) + "\"}]}");
+    var cache = new ImageSbomCache(directory, Long.MAX_VALUE);
+    cache.write("first", sbom);
+    long entrySize;
+    try (Stream<Path> files = Files.list(directory)) {
+      entrySize = Files.size(files.findFirst().orElseThrow());
+    }
+    // room for two SBOMs
+    cache = new ImageSbomCache(directory, entrySize * 2);
+    cache.write("first", sbom);
+    cache.write("second", sbom);
+    age(directory, 2_000);
+    // the first is used after the second
+    assertThat(cache.read("first")).isEqualTo(sbom);
+
+    cache.write("third", sbom);
+
+    assertThat(cache.read("first")).isEqualTo(sbom);
+    assertThat(cache.read("second")).isNull();
+    assertThat(cache.read("third")).isEqualTo(sbom);
+  }
+
+  @Test
+  @ClearSystemProperty(key = "EXHORT_SYFT_PATH")
+  @ClearSystemProperty(key = EXHORT_SYFT_CONFIG_PATH)
+  @ClearSystemProperty(key = "EXHORT_DOCKER_PATH")
+  @ClearSystemProperty(key = "EXHORT_PODMAN_PATH")
+  @ClearSystemProperty(key = EXHORT_SYFT_IMAGE_SOURCE)
+  void test_an_image_pinned_by_digest_is_generated_once_per_syft_version(@TempDir Path directory)
+      throws IOException, MalformedPackageURLException {
+    var imageRef =
+        new ImageRef(
+            "test.io/test/test-app:test-version@sha256:1fafb0905264413501df60d90a92ca32df8a2011cbfb4876ddff5ceb20c8f165",
+            "linux/amd64");
+    var syftCommand =
+        new String[] {
+          "syft",
+          imageRef.getImage().getFullName(),
+          "-s",
+          "all-layers",
+          "-o",
+          "cyclonedx-json",
+          "-q"
+        };
+    System.setProperty(EXHORT_IMAGE_SBOM_CACHE_DIR, directory.toString());
+    try (MockedStatic<Operations> mock = Mockito.mockStatic(Operations.class);
+        var is = getResourceAsStreamDecision(this.getClass(), "msc/image/image_sbom.json")) {
+      var json =
+          new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))
+              .lines()
+              .collect(Collectors.joining("\n"));
+      mock.when(() -> Operations.getCustomPathOrElse(eq("syft"))).thenReturn("syft");
+      mock.when(() -> Operations.getExecutable(eq("syft"), any())).thenReturn("syft");
+      mock.when(
+              () ->
+                  Operations.runProcessGetFullOutput(
+                      isNull(), aryEq(new String[] {"syft", "--version"}), isNull()))
+          .thenReturn(new Operations.ProcessExecOutput("syft 1.0.0\n", "", 0));
+      mock.when(() -> Operations.runProcessGetFullOutput(isNull(), aryEq(syftCommand), isNull()))
+          .thenReturn(new Operations.ProcessExecOutput(json, "", 0));
+
+      JsonNode generated = ImageUtils.generateImageSBOM(imageRef);
+      JsonNode cached = ImageUtils.generateImageSBOM(imageRef);
+
+      assertThat(cached).isEqualTo(generated);
+      assertThat(cached.at("/metadata/component/purl").asText())
+          .isEqualTo(imageRef.getPackageURL().canonicalize());
+      mock.verify(
+          () -> Operations.runProcessGetFullOutput(isNull(), aryEq(syftCommand), isNull()),
+          times(1));
+
+      mock.when(
+              () ->
+                  Operations.runProcessGetFullOutput(
+                      isNull(), aryEq(new String[] {"syft", "--version"}), isNull()))
+          .thenReturn(new Operations.ProcessExecOutput("syft 1.1.0\n", "", 0));
+
+      assertThat(ImageUtils.generateImageSBOM(imageRef)).isEqualTo(generated);
+      mock.verify(
+          () -> Operations.runProcessGetFullOutput(isNull(), aryEq(syftCommand), isNull()),
+          times(2));
+    } finally {
+      System.clearProperty(EXHORT_IMAGE_SBOM_CACHE_DIR);
+    }
+  }
+
+  @Test
+  @ClearSystemProperty(key = EXHORT_SYFT_CONFIG_PATH)
+  @ClearSystemProperty(key = "EXHORT_DOCKER_PATH")
+  @ClearSystemProperty(key = "EXHORT_PODMAN_PATH")
+  @ClearSystemProperty(key = EXHORT_SYFT_IMAGE_SOURCE)
+  void test_a_cache_hit_runs_syft_once_per_binary(@TempDir Path directory)
+      throws IOException, MalformedPackageURLException {
+    var imageRef =
+        new ImageRef(
+            "test.io/test/test-app:test-version@sha256:1fafb0905264413501df60d90a92ca32df8a2011cbfb4876ddff5ceb20c8f165",
+            "linux/amd64");
+    var syft = Files.writeString(directory.resolve("syft"), "#!/bin/sh\n");
+    var versionCommand = new String[] {syft.toString(), "--version"};
+    var syftCommand =
+        new String[] {
+          syft.toString(),
+          imageRef.getImage().getFullName(),
+          "-s",
+          "all-layers",
+          "-o",
+          "cyclonedx-json",
+          "-q"
+        };
+    System.setProperty(EXHORT_IMAGE_SBOM_CACHE_DIR, directory.resolve("cache").toString());
+    try (MockedStatic<Operations> mock = Mockito.mockStatic(Operations.class);
+        var is = getResourceAsStreamDecision(this.getClass(), "msc/image/image_sbom.json")) {
+      var json =
+          new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))
+              .lines()
+              .collect(Collectors.joining("\n"));
+      mock.when(() -> Operations.getCustomPathOrElse(eq("syft"))).thenReturn(syft.toString());
+      mock.when(() -> Operations.getExecutable(eq("syft"), any())).thenReturn(syft.toString());
+      mock.when(() -> Operations.findExecutable(syft.toString())).thenReturn(syft);
+      mock.when(() -> Operations.runProcessGetFullOutput(isNull(), aryEq(versionCommand), isNull()))
+          .thenReturn(new Operations.ProcessExecOutput("syft 1.0.0\n", "", 0));
+      mock.when(() -> Operations.runProcessGetFullOutput(isNull(), aryEq(syftCommand), isNull()))
+          .thenReturn(new Operations.ProcessExecOutput(json, "", 0));
+
+      JsonNode generated = ImageUtils.generateImageSBOM(imageRef);
+      assertThat(ImageUtils.generateImageSBOM(imageRef)).isEqualTo(generated);
+
+      mock.verify(
+          () -> Operations.runProcessGetFullOutput(isNull(), aryEq(versionCommand), isNull()),
+          times(1));
+      mock.verify(
+          () -> Operations.runProcessGetFullOutput(isNull(), aryEq(syftCommand), isNull()),
+          times(1));
+
+      // a replaced binary is asked its version again
+      Files.writeString(syft, "#!/bin/sh\nexit 0\n");
+
+      assertThat(ImageUtils.generateImageSBOM(imageRef)).isEqualTo(generated);
+      mock.verify(
+          () -> Operations.runProcessGetFullOutput(isNull(), aryEq(versionCommand), isNull()),
+          times(2));
+      mock.verify(
+          () -> Operations.runProcessGetFullOutput(isNull(), aryEq(syftCommand), isNull()),
+          times(1));
+    } finally {
+      System.clearProperty(EXHORT_IMAGE_SBOM_CACHE_DIR);
+    }
+  }
+
+  private static void age(Path directory, long millis) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : files.collect(Collectors.toList())) {
+        Files.setLastModifiedTime(
+            file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() - millis));
+      }
+    }
+  }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.image;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.redhat.exhort.ExhortTest;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+class ImageSbomSchedulerTest extends ExhortTest {
+
+  private static final String DIGEST =
+      "sha256:333224a233db31852ac1085c6cd702016ab8aaf54cecde5c4bed5451d636adcf";
+
+  @Test
+  @Timeout(30)
+  void test_the_images_are_generated_up_to_the_parallelism_at_a_time() {
+    var imageRefs = imageRefs(8);
+    var running = new AtomicInteger();
+    var maxRunning = new AtomicInteger();
+    var threads = ConcurrentHashMap.<String>newKeySet();
+
+    var sboms =
+        new ImageSbomScheduler(
+                2,
+                Duration.ZERO,
+                (imageRef, deadline) -> {
+                  maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                  threads.add(Thread.currentThread().getName());
+                  try {
+                    Thread.sleep(50);
+                  } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                  } finally {
+                    running.decrementAndGet();
+                  }
+                  return sbom(imageRef);
+                })
+            .generateAll(imageRefs);
+
+    assertThat(sboms).hasSize(8);
+    imageRefs.forEach(imageRef -> assertThat(sboms.get(imageRef)).isEqualTo(sbom(imageRef)));
+    assertThat(maxRunning.get()).isEqualTo(2);
+    assertThat(threads).hasSize(2).noneMatch(Thread.currentThread().getName()::equals);
+  }
+
+  @Test
+  void test_an_image_failing_is_left_out_of_the_batch() {
+    var imageRefs = imageRefs(3);
+    var broken = imageRefs.get(1);
+
+    var sboms =
+        new ImageSbomScheduler(
+                4,
+                Duration.ZERO,
+                (imageRef, deadline) -> {
+                  if (imageRef.equals(broken)) {
+                    throw new IOException("syft failed");
+                  }
+                  return sbom(imageRef);
+                })
+            .generateAll(imageRefs);
+
+    assertThat(sboms).containsOnlyKeys(imageRefs.get(0), imageRefs.get(2));
+  }
+
+  @Test
+  @Timeout(30)
+  void test_an_image_exceeding_the_timeout_is_left_out_of_the_batch() {
+    var imageRefs = imageRefs(2);
+    var stuck = imageRefs.get(0);
+    var release = new CountDownLatch(1);
+
+    var scheduler =
+        new ImageSbomScheduler(
+            2,
+            Duration.ofMillis(200),
+            (imageRef, deadline) -> {
+              if (imageRef.equals(stuck)) {
+                try {
+                  release.await(20, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                  throw new RuntimeException(e);
+                }
+              }
+              return sbom(imageRef);
+            });
+    try {
+      var futures = scheduler.submit(imageRefs);
+      assertThatThrownBy(() -> futures.get(stuck).get())
+          .isInstanceOf(ExecutionException.class)
+          .hasCauseInstanceOf(TimeoutException.class);
+
+      assertThat(scheduler.generateAll(imageRefs)).containsOnlyKeys(imageRefs.get(1));
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  @Timeout(30)
+  void test_the_timeout_of_an_image_starts_with_its_generation() {
+    var imageRefs = imageRefs(6);
+    var deadlines = ConcurrentHashMap.<Instant>newKeySet();
+
+    // 3 rounds of 150ms at a time, every image within its timeout but not the batch
+    var sboms =
+        new ImageSbomScheduler(
+                2,
+                Duration.ofMillis(400),
+                (imageRef, deadline) -> {
+                  deadlines.add(deadline);
+                  try {
+                    Thread.sleep(150);
+                  } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                  }
+                  return sbom(imageRef);
+                })
+            .generateAll(imageRefs);
+
+    assertThat(sboms).hasSize(6);
+    assertThat(deadlines).hasSize(6).doesNotContainNull();
+  }
+
+  @Test
+  @Timeout(30)
+  void test_the_images_killed_at_their_deadline_free_their_slot() {
+    var imageRefs = imageRefs(6);
+    var started = new AtomicInteger();
+
+    // every image runs until its deadline, like syft killed once it is reached
+    assertThatThrownBy(
+            () ->
+                new ImageSbomScheduler(
+                        2,
+                        Duration.ofMillis(100),
+                        (imageRef, deadline) -> {
+                          started.incrementAndGet();
+                          try {
+                            Thread.sleep(
+                                Math.max(0, Duration.between(Instant.now(), deadline).toMillis()));
+                          } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                          }
+                          throw new RuntimeException("syft killed");
+                        })
+                    .generateAll(imageRefs))
+        .isInstanceOf(RuntimeException.class);
+
+    assertThat(started.get()).isEqualTo(6);
+  }
+
+  @Test
+  @Timeout(30)
+  void test_the_batch_timeout_gives_up_on_the_images_when_hung_images_hold_every_slot() {
+    var imageRefs = imageRefs(6);
+    var release = new CountDownLatch(1);
+    var started = new AtomicInteger();
+    var deadlines = ConcurrentHashMap.<Instant>newKeySet();
+
+    var scheduler =
+        new ImageSbomScheduler(
+            2,
+            Duration.ofSeconds(20),
+            Duration.ofMillis(300),
+            (imageRef, deadline) -> {
+              started.incrementAndGet();
+              deadlines.add(deadline);
+              try {
+                release.await(20, TimeUnit.SECONDS);
+              } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+              }
+              return sbom(imageRef);
+            });
+    try {
+      var start = System.nanoTime();
+      assertThatThrownBy(() -> scheduler.generateAll(imageRefs))
+          .isInstanceOf(RuntimeException.class)
+          .hasCauseInstanceOf(TimeoutException.class);
+
+      assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+      // the images queued behind the hung ones were never started, both given the batch deadline
+      assertThat(started.get()).isEqualTo(2);
+      assertThat(deadlines).hasSize(1);
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  @Timeout(30)
+  void test_a_single_image_exceeding_the_timeout_is_not_waited_for() {
+    var imageRef = imageRefs(1).get(0);
+    var release = new CountDownLatch(1);
+
+    var scheduler =
+        new ImageSbomScheduler(
+            4,
+            Duration.ofMillis(200),
+            (ref, deadline) -> {
+              assertThat(deadline).isNotNull();
+              try {
+                release.await(20, TimeUnit.SECONDS);
+              } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+              }
+              return sbom(ref);
+            });
+    try {
+      assertThatThrownBy(() -> scheduler.generateAll(Set.of(imageRef)))
+          .isInstanceOf(RuntimeException.class)
+          .hasCauseInstanceOf(TimeoutException.class);
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  void test_the_batch_fails_when_every_image_failed() {
+    var imageRefs = imageRefs(2);
+
+    assertThatThrownBy(
+            () ->
+                new ImageSbomScheduler(
+                        2,
+                        Duration.ZERO,
+                        (imageRef, deadline) -> {
+                          throw new RuntimeException("syft failed");
+                        })
+                    .generateAll(imageRefs))
+        .isInstanceOf(RuntimeException.class)
+        .hasMessage("syft failed");
+  }
+
+  @Test
+  void test_a_single_image_is_generated_in_the_calling_thread() {
+    var imageRef = imageRefs(1).get(0);
+    var caller = Thread.currentThread();
+
+    var sboms =
+        new ImageSbomScheduler(
+                4,
+                Duration.ZERO,
+                (ref, deadline) -> {
+                  assertThat(Thread.currentThread()).isSameAs(caller);
+                  return sbom(ref);
+                })
+            .generateAll(Set.of(imageRef));
+
+    assertThat(sboms).containsOnlyKeys(imageRef);
+  }
+
+  private static List<ImageRef> imageRefs(int count) {
+    List<ImageRef> imageRefs = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      imageRefs.add(new ImageRef("test.io/test/app-" + i + "@" + DIGEST, "linux/amd64"));
+    }
+    return imageRefs;
+  }
+
+  private static JsonNode sbom(ImageRef imageRef) {
+    return new TextNode(imageRef.getImage().toString());
+  }
+}
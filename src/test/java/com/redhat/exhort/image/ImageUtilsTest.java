@@ -30,6 +30,7 @@
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 
@@ -46,6 +47,8 @@
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -424,6 +427,45 @@ void test_exec_syft() {
     }
   }
 
+  @Test
+  @ClearSystemProperty(key = EXHORT_SYFT_CONFIG_PATH)
+  @ClearSystemProperty(key = EXHORT_SYFT_IMAGE_SOURCE)
+  void test_exec_syft_with_deadline() {
+    try (MockedStatic<Environment> mockEnv =
+        Mockito.mockStatic(Environment.class, Mockito.CALLS_REAL_METHODS)) {
+      mockEnv.when(() -> Environment.get("PATH")).thenReturn(null);
+      try (MockedStatic<Operations> mock = Mockito.mockStatic(Operations.class)) {
+        var output = new Operations.ProcessExecOutput("test-output", "", 0);
+
+        mock.when(() -> Operations.getExecutable(eq("syft"), any())).thenReturn("syft");
+
+        mock.when(
+                () ->
+                    Operations.runProcessGetFullOutput(
+                        isNull(),
+                        aryEq(
+                            new String[] {
+                              "syft",
+                              mockImageRef.getImage().getFullName(),
+                              "-s",
+                              "all-layers",
+                              "-o",
+                              "cyclonedx-json",
+                              "-q"
+                            }),
+                        isNull(),
+                        argThat(
+                            (Duration timeout) ->
+                                timeout.compareTo(Duration.ZERO) > 0
+                                    && timeout.compareTo(Duration.ofMinutes(1)) <= 0)))
+            .thenReturn(output);
+
+        assertThat(ImageUtils.execSyft(mockImageRef, Instant.now().plus(Duration.ofMinutes(1))))
+            .isEqualTo(output);
+      }
+    }
+  }
+
   @Test
   @ClearSystemProperty(key = EXHORT_SYFT_CONFIG_PATH)
   @ClearSystemProperty(key = EXHORT_SYFT_IMAGE_SOURCE)
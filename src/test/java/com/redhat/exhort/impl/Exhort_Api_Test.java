@@ -782,6 +782,43 @@ void test_get_batch_image_analysis_reports() throws IOException, MalformedPackag
     }
   }
 
+  @Test
+  void stackAnalysisPerModule_should_send_a_batch_of_module_sboms_and_return_reports_per_module()
+      throws IOException, ExecutionException, InterruptedException {
+    var tmpFile = Files.createTempFile("exhort_test_pom_", ".xml");
+    var moduleA = "pkg:maven/com.example/module-a@1.0.0";
+    var moduleB = "pkg:maven/com.example/module-b@1.0.0";
+    var modules = new HashMap<String, Provider.Content>();
+    modules.put(moduleA, new Provider.Content("{\"name\":\"a\"}".getBytes(), "fake-type"));
+    modules.put(moduleB, new Provider.Content("{\"name\":\"b\"}".getBytes(), "fake-type"));
+    given(mockProvider.provideStackPerModule()).willReturn(modules);
+
+    ArgumentMatcher<HttpRequest> matchesRequest =
+        r ->
+            r.uri()
+                    .equals(
+                        URI.create(
+                            String.format("%s/api/v4/batch-analysis", exhortApiSut.getEndpoint())))
+                && r.headers().firstValue("Content-Type").get().equals(Api.CYCLONEDX_MEDIA_TYPE)
+                && r.headers().firstValue("rhda-operation-type").get().equals("Stack Analysis")
+                && r.method().equals("POST");
+
+    var httpResponse = mock(HttpResponse.class);
+    when(httpResponse.statusCode()).thenReturn(200);
+    when(httpResponse.body()).thenReturn(String.format("{\"%s\":{},\"%s\":{}}", moduleA, moduleB));
+
+    try (var ecosystemTool = mockStatic(Ecosystem.class)) {
+      ecosystemTool.when(() -> Ecosystem.getProvider(tmpFile)).thenReturn(mockProvider);
+      when(mockHttpClient.sendAsync(argThat(matchesRequest), any()))
+          .thenReturn(CompletableFuture.completedFuture(httpResponse));
+
+      var reports = exhortApiSut.stackAnalysisPerModule(tmpFile.toString()).get();
+      then(reports).containsOnlyKeys(moduleA, moduleB);
+      then(exhortApiSut.getBatchModuleSboms(mockProvider)).containsOnlyKeys(moduleA, moduleB);
+    }
+    Files.deleteIfExists(tmpFile);
+  }
+
   @Test
   void test_get_batch_image_analysis_reports_error_response() {
     var httpResponse = mock(HttpResponse.class);
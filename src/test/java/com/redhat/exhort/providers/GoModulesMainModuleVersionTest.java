@@ -99,6 +99,45 @@ void determine_Main_Module_Version_GitRepo_commit_is_after_tag() {
     assertThat(goModulesProvider.getMainModuleVersion()).matches("v1.0.1-0.[0-9]{14}-[a-f0-9]{12}");
   }
 
+  @Test
+  void determine_Main_Module_Version_GitRepo_commit_is_tag_with_suffix() {
+    gitCommit("sample");
+    gitTag("v1.0.0-rc1", "release candidate");
+
+    goModulesProvider.determineMainModuleVersion(testGitRepo);
+    assertEquals("v1.0.0-rc1", goModulesProvider.getMainModuleVersion());
+  }
+
+  @Test
+  void determine_Main_Module_Version_GitRepo_many_commits_after_tag() {
+    gitCommit("sample");
+    gitTag("v1.0.0", "sample tag");
+    for (int i = 0; i < 10; i++) {
+      gitCommit("sample-" + i);
+    }
+
+    goModulesProvider.determineMainModuleVersion(testGitRepo);
+    assertThat(goModulesProvider.getMainModuleVersion()).matches("v1.0.1-0.[0-9]{14}-[a-f0-9]{12}");
+  }
+
+  @Test
+  void determine_Main_Module_Version_GitRepo_packed() {
+    gitCommit("sample");
+    gitTag("v1.0.0", "sample tag");
+    gitCommit("sample-2");
+    goModulesProvider.determineMainModuleVersion(testGitRepo);
+    String looseVersion = goModulesProvider.getMainModuleVersion();
+
+    // the objects and refs are moved to a pack file and to packed-refs
+    Operations.runProcessGetOutput(testGitRepo, "git", "-c", getConfigParam(), "gc", "-q");
+    goModulesProvider.determineMainModuleVersion(testGitRepo);
+    assertThat(goModulesProvider.getMainModuleVersion()).isEqualTo(looseVersion);
+    assertThat(looseVersion)
+        .endsWith(
+            Operations.runProcessGetOutput(testGitRepo, "git", "rev-parse", "HEAD")
+                .substring(0, 12));
+  }
+
   private void gitInit() {
     Operations.runProcessGetOutput(testGitRepo, "git", "-c", getConfigParam(), "init");
   }
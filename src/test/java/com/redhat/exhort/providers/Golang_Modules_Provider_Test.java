@@ -20,6 +20,7 @@
 import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -29,11 +30,17 @@
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.redhat.exhort.Api;
 import com.redhat.exhort.ExhortTest;
+import com.redhat.exhort.providers.golang.model.GoMod;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
+import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -164,6 +171,23 @@ void Test_Golang_Modules_with_Match_Manifest_Version(boolean MatchManifestVersio
     }
   }
 
+  @Test
+  @SuppressWarnings("deprecation")
+  void Test_Ignored_Lines_Are_Requirements_With_An_Exhortignore_Comment() {
+    GoModulesProvider goModulesProvider = new GoModulesProvider(Path.of("."));
+
+    assertTrue(goModulesProvider.IgnoredLine("\tgithub.com/acme/lib v1.2.3 // exhortignore"));
+    assertTrue(goModulesProvider.IgnoredLine("require github.com/acme/lib v1.2.3 //exhortignore"));
+    assertTrue(
+        goModulesProvider.IgnoredLine("\tgithub.com/acme/lib v1.2.3 // indirect //exhortignore"));
+    assertFalse(goModulesProvider.IgnoredLine("\tgithub.com/acme/lib v1.2.3 // indirect"));
+    assertFalse(goModulesProvider.IgnoredLine("module github.com/acme/app // exhortignore"));
+    assertFalse(goModulesProvider.IgnoredLine("require ( // exhortignore"));
+    assertFalse(
+        goModulesProvider.IgnoredLine(
+            "\tgithub.com/acme/lib v1.2.3 => github.com/fork/lib v1.2.4 // exhortignore"));
+  }
+
   @Test
   void Test_Golang_MvS_Logic_Disabled() throws IOException {
     System.setProperty(GoModulesProvider.PROP_EXHORT_GO_MVS_LOGIC_ENABLED, "false");
@@ -197,6 +221,212 @@ void Test_Golang_MvS_Logic_Disabled() throws IOException {
             == 1);
   }
 
+  @Test
+  void Test_Go_Mod_Graph_Edges_Are_Grouped_By_Parent_In_A_Single_Pass() {
+    String goModGraph =
+        String.join(
+            System.lineSeparator(),
+            "example.com/app github.com/a/one@v1.0.0",
+            "example.com/app go@1.21",
+            "github.com/a/one@v1.0.0 github.com/b/two@v1.2.0",
+            "example.com/app github.com/b/two@v1.2.0",
+            "github.com/a/one@v1.0.0 toolchain@go1.21.1",
+            "github.com/b/two@v1.2.0 go@1.20",
+            "");
+
+    var edges = GoModulesProvider.parseModGraph(goModGraph);
+
+    // the edges of a parent are collected wherever they are in the output, without go entries
+    // the parents are iterated in the order of the output
+    assertThat(edges.keySet())
+        .containsExactly("example.com/app", "github.com/a/one@v1.0.0", "github.com/b/two@v1.2.0");
+    assertThat(edges.get("example.com/app"))
+        .containsExactly("github.com/a/one@v1.0.0", "github.com/b/two@v1.2.0");
+    assertThat(edges.get("github.com/a/one@v1.0.0"))
+        .containsExactly("github.com/b/two@v1.2.0", "toolchain@go1.21.1");
+    assertThat(edges.get("github.com/b/two@v1.2.0")).isEmpty();
+    // every occurrence of a module shares one string
+    assertThat(edges.get("example.com/app").get(1))
+        .isSameAs(edges.get("github.com/a/one@v1.0.0").get(0));
+  }
+
+  @Test
+  void Test_Go_Module_Versions_Compare_By_Semantic_Versioning() {
+    assertThat(GoModulesProvider.compareSemver("v1.10.0", "v1.9.0")).isPositive();
+    assertThat(GoModulesProvider.compareSemver("v1.2.0", "v1.2.0-rc.1")).isPositive();
+    assertThat(GoModulesProvider.compareSemver("v1.2.0-rc.10", "v1.2.0-rc.9")).isPositive();
+    assertThat(GoModulesProvider.compareSemver("v1.2.0-beta", "v1.2.0-alpha.1")).isPositive();
+    // a pseudo-version is a pre-release of the version following its base
+    assertThat(
+            GoModulesProvider.compareSemver(
+                "v0.0.0-20230301143203-a9d515a09cc2", "v0.0.0-20221128193559-754e69321358"))
+        .isPositive();
+    assertThat(GoModulesProvider.compareSemver("v0.1.0", "v0.0.0-20230301143203-a9d515a09cc2"))
+        .isPositive();
+    // the build metadata takes no part in the precedence
+    assertThat(GoModulesProvider.compareSemver("v2.0.0+incompatible", "v2.0.0")).isZero();
+    assertThat(GoModulesProvider.compareSemver("v3.0.0+incompatible", "v2.9.9+incompatible"))
+        .isPositive();
+  }
+
+  @Test
+  void Test_Go_Minimal_Version_Selection_Picks_The_Highest_Reachable_Version() {
+    Map<String, List<String>> edges = new HashMap<>();
+    edges.put("example.com/app", List.of("github.com/a/one@v1.0.0", "github.com/b/two@v1.1.0"));
+    edges.put("github.com/a/one@v1.0.0", List.of("github.com/b/two@v1.10.0", "toolchain@go1.21.1"));
+    edges.put("github.com/b/two@v1.1.0", List.of("github.com/c/three@v2.0.0+incompatible"));
+    edges.put("github.com/b/two@v1.10.0", List.of("example.com/app@v0.1.0"));
+    // not reachable from the main module
+    edges.put("github.com/d/four@v1.0.0", List.of("github.com/b/two@v1.20.0"));
+
+    assertThat(GoModulesProvider.selectModuleVersions(edges, "example.com/app"))
+        .containsOnly(
+            Map.entry("github.com/a/one", "v1.0.0"),
+            Map.entry("github.com/b/two", "v1.10.0"),
+            Map.entry("github.com/c/three", "v2.0.0+incompatible"));
+  }
+
+  @Test
+  void Test_Go_Minimal_Version_Selection_Matches_The_Tidy_Go_Mod() throws IOException {
+    // the expected sbom without the mvs logic holds the whole go mod graph of the module, and its
+    // tidy go.mod requires the selected version of every module of the build list
+    JsonNode sbom =
+        JSON_MAPPER.readTree(
+            getStringFromFile("msc/golang/mvs_logic/expected_sbom_stack_analysis.json"));
+    Map<String, List<String>> edges = new HashMap<>();
+    String mainModule = null;
+    for (JsonNode dependency : sbom.get("dependencies")) {
+      String module = dependency.get("ref").asText().substring("pkg:golang/".length());
+      if (mainModule == null) {
+        mainModule = module;
+      }
+      List<String> dependsOn = new ArrayList<>();
+      dependency
+          .get("dependsOn")
+          .forEach(ref -> dependsOn.add(ref.asText().substring("pkg:golang/".length())));
+      edges.put(module, dependsOn);
+    }
+    Map<String, String> required = new HashMap<>();
+    for (String line :
+        getStringFromFile("msc/golang/mvs_logic/go.mod").split(System.lineSeparator())) {
+      String[] parts = line.trim().split("\\s+");
+      if (parts.length >= 2 && parts[1].startsWith("v")) {
+        // the package urls of the sbom are lower cased
+        required.put(parts[0].toLowerCase(), parts[1]);
+      }
+    }
+
+    Map<String, String> selected = GoModulesProvider.selectModuleVersions(edges, mainModule);
+
+    assertThat(required).isNotEmpty();
+    assertThat(selected).containsAllEntriesOf(required);
+    assertThat(selected).containsEntry("go.opencensus.io", "v0.22.4");
+  }
+
+  @Test
+  void Test_Go_Mod_Directives_Are_Read_Without_Go() {
+    GoMod goMod =
+        new GoMod(
+            String.join(
+                System.lineSeparator(),
+                "// a comment line",
+                "module \"example.com/app\" // the main module",
+                "",
+                "go 1.21",
+                "toolchain go1.21.1",
+                "",
+                "require github.com/a/one v1.0.0",
+                "require(",
+                "    github.com/b/two v1.2.0 //exhortignore",
+                "    github.com/c/three  v0.0.0-20230301143203-a9d515a09cc2 // indirect",
+                "    github.com/d/four v1.1.0 // indirect //exhortignore",
+                "    github.com/e/five v2.0.0+incompatible // indirect exhortignore",
+                ")",
+                "exclude (",
+                "    github.com/a/one v1.0.1",
+                ")",
+                "replace github.com/a/one => ../one",
+                "replace (",
+                "    github.com/b/two v1.2.0=>github.com/fork/two v1.2.1",
+                ")"));
+
+    assertThat(goMod.module).isEqualTo("example.com/app");
+    assertThat(goMod.requires)
+        .extracting(Object::toString)
+        .containsExactly(
+            "github.com/a/one@v1.0.0",
+            "github.com/b/two@v1.2.0",
+            "github.com/c/three@v0.0.0-20230301143203-a9d515a09cc2",
+            "github.com/d/four@v1.1.0",
+            "github.com/e/five@v2.0.0+incompatible");
+    assertThat(goMod.requires)
+        .extracting(require -> require.indirect)
+        .containsExactly(false, false, true, true, true);
+    assertThat(goMod.requires)
+        .extracting(require -> require.ignored)
+        .containsExactly(false, true, false, true, true);
+    assertThat(goMod.excludes).containsExactly("github.com/a/one@v1.0.1");
+    assertThat(goMod.replaces).hasSize(2);
+    assertThat(goMod.replaces.get(0).oldVersion).isNull();
+    assertThat(goMod.replaces.get(0).newPath).isEqualTo("../one");
+    assertThat(goMod.replaces.get(1).oldVersion).isEqualTo("v1.2.0");
+    assertThat(goMod.replaces.get(1).newPath).isEqualTo("github.com/fork/two");
+    assertThat(goMod.replaces.get(1).newVersion).isEqualTo("v1.2.1");
+  }
+
+  @Test
+  void Test_Golang_Match_Manifest_Version_With_Vendored_Modules() throws IOException {
+    var tmpGoModulesDir = Files.createTempDirectory("exhort_test_");
+    var goMod =
+        Files.writeString(
+            tmpGoModulesDir.resolve("go.mod"),
+            String.join(
+                System.lineSeparator(),
+                "module example.com/app",
+                "",
+                "go 1.19",
+                "",
+                "require (",
+                "    github.com/google/uuid v1.1.0",
+                "    github.com/kr/text v0.2.0 // indirect",
+                ")",
+                ""));
+    var modulesTxt = tmpGoModulesDir.resolve("vendor").resolve("modules.txt");
+    Files.createDirectories(modulesTxt.getParent());
+    Files.writeString(
+        modulesTxt,
+        String.join(
+            System.lineSeparator(),
+            "# github.com/google/uuid v1.1.1",
+            "## explicit",
+            "github.com/google/uuid",
+            "# github.com/kr/text v0.2.0",
+            "## explicit; go 1.12",
+            "github.com/kr/text",
+            ""));
+    var goModulesProvider = new GoModulesProvider(goMod);
+    System.setProperty(PROP_MATCH_MANIFEST_VERSIONS, "true");
+    try {
+      // the installed versions are read from vendor/modules.txt, without running go
+      RuntimeException runtimeException =
+          assertThrows(
+              RuntimeException.class, () -> goModulesProvider.getDependenciesSbom(goMod, false));
+      assertThat(runtimeException.getMessage())
+          .contains(
+              "versions mismatch for dependency name=github.com/google/uuid, manifest"
+                  + " version=v1.1.0, installed Version=v1.1.1");
+
+      Files.writeString(
+          modulesTxt, Files.readString(modulesTxt).replace("uuid v1.1.1", "uuid v1.1.0"));
+      assertThat(goModulesProvider.getDependenciesSbom(goMod, false).getAsJsonString())
+          .contains("pkg:golang/github.com/google/uuid@v1.1.0")
+          .contains("pkg:golang/github.com/kr/text@v0.2.0");
+    } finally {
+      System.clearProperty(PROP_MATCH_MANIFEST_VERSIONS);
+      FileUtils.deleteDirectory(tmpGoModulesDir.toFile());
+    }
+  }
+
   private String dropIgnoredKeepFormat(String s) {
     return s.replaceAll("goarch=\\w+&goos=\\w+&", "")
         .replaceAll("\"timestamp\" : \"[a-zA-Z0-9\\-\\:]+\",\n    ", "");
@@ -16,9 +16,12 @@
 package com.redhat.exhort.providers;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 
 import com.redhat.exhort.Api;
 import com.redhat.exhort.ExhortTest;
@@ -26,11 +29,18 @@
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.junitpioneer.jupiter.ClearSystemProperty;
+import org.junitpioneer.jupiter.SetSystemProperty;
 import org.mockito.ArgumentMatcher;
 import org.mockito.MockedStatic;
+import org.mockito.invocation.InvocationOnMock;
 
 abstract class Gradle_Provider_Test extends ExhortTest {
 
@@ -55,8 +65,15 @@ static Stream<String> testFolders() {
         "deps_with_duplicate_different_versions");
   }
 
+  // the test folders whose declared dependencies are all resolved, and so locked, the invented
+  // dependency of deps_with_ignore_named_params cannot be resolved
+  static Stream<String> lockedTestFolders() {
+    return testFolders().filter(folder -> !folder.equals("deps_with_ignore_named_params"));
+  }
+
   @ParameterizedTest
   @MethodSource("testFolders")
+  @SetSystemProperty(key = "EXHORT_GRADLE_INIT_SCRIPT_ENABLED", value = "false")
   void test_the_provideStack(String testFolder) throws IOException {
     // create temp file hosting our sut build.gradle
     var tmpGradleDir = Files.createTempDirectory("exhort_test_");
@@ -160,6 +177,7 @@ void test_the_provideStack(String testFolder) throws IOException {
 
   @ParameterizedTest
   @MethodSource("testFolders")
+  @SetSystemProperty(key = "EXHORT_GRADLE_INIT_SCRIPT_ENABLED", value = "false")
   void test_the_provideComponent(String testFolder) throws IOException {
     // create temp file hosting our sut build.gradle
     var tmpGradleDir = Files.createTempDirectory("exhort_test_");
@@ -260,6 +278,394 @@ void test_the_provideComponent(String testFolder) throws IOException {
     }
   }
 
+  @ParameterizedTest
+  @MethodSource("testFolders")
+  @SetSystemProperty(key = "EXHORT_GRADLE_INIT_SCRIPT_ENABLED", value = "true")
+  void test_the_provideStack_from_the_dependency_graph(String testFolder) throws IOException {
+    var tmpGradleFile = createTempProject(testFolder);
+    String expectedSbom = getTestResource(testFolder, "expected_stack_sbom.json");
+    String depGraph = getTestResource(testFolder, "depGraph.json");
+    try (MockedStatic<Operations> mockedOperations = mockStatic(Operations.class)) {
+      mockedOperations.when(() -> Operations.getCustomPathOrElse("gradle")).thenReturn("gradle");
+      mockedOperations
+          .when(() -> Operations.getExecutable("gradle", "--version"))
+          .thenReturn("gradle");
+      mockedOperations
+          .when(() -> Operations.runProcess(any(Path.class), any(String[].class)))
+          .thenAnswer(invocationOnMock -> writeDependencyGraph(invocationOnMock, depGraph));
+
+      // when providing stack content for our build script
+      var content = new GradleProvider(tmpGradleFile).provideStack();
+
+      // verify gradle was invoked only once, running the init script task
+      mockedOperations.verify(
+          () -> Operations.runProcess(any(Path.class), any(String[].class)), times(1));
+      mockedOperations.verify(
+          () -> Operations.runProcessGetOutput(any(Path.class), any(String[].class)), never());
+      // verify the same SBOM as from the dependencies task output is returned
+      assertThat(content.type).isEqualTo(Api.CYCLONEDX_MEDIA_TYPE);
+      assertThat(dropIgnored(new String(content.buffer))).isEqualTo(dropIgnored(expectedSbom));
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("testFolders")
+  @SetSystemProperty(key = "EXHORT_GRADLE_INIT_SCRIPT_ENABLED", value = "true")
+  void test_the_provideComponent_from_the_dependency_graph(String testFolder) throws IOException {
+    var tmpGradleFile = createTempProject(testFolder);
+    String expectedSbom = getTestResource(testFolder, "expected_component_sbom.json");
+    String depGraph = getTestResource(testFolder, "depGraph.json");
+    try (MockedStatic<Operations> mockedOperations = mockStatic(Operations.class)) {
+      mockedOperations.when(() -> Operations.getCustomPathOrElse("gradle")).thenReturn("gradle");
+      mockedOperations
+          .when(() -> Operations.getExecutable("gradle", "--version"))
+          .thenReturn("gradle");
+      mockedOperations
+          .when(() -> Operations.runProcess(any(Path.class), any(String[].class)))
+          .thenAnswer(invocationOnMock -> writeDependencyGraph(invocationOnMock, depGraph));
+
+      // when providing component content for our build script
+      var content = new GradleProvider(tmpGradleFile).provideComponent();
+
+      // verify the same SBOM as from the dependencies task output is returned
+      assertThat(content.type).isEqualTo(Api.CYCLONEDX_MEDIA_TYPE);
+      assertThat(dropIgnored(new String(content.buffer))).isEqualTo(dropIgnored(expectedSbom));
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("testFolders")
+  @SetSystemProperty(key = "EXHORT_GRADLE_INIT_SCRIPT_ENABLED", value = "true")
+  @ClearSystemProperty(key = "EXHORT_GRADLE_DAEMON_ENABLED")
+  void test_the_provideStackPerModule_from_the_dependency_graphs(String testFolder)
+      throws IOException {
+    var tmpGradleFile = createTempProject(testFolder);
+    String expectedSbom = getTestResource(testFolder, "expected_stack_sbom.json");
+    // the subproject graph points at its own build file holding the ignored dependencies, the
+    // root project only aggregates the subprojects and has no classpath configurations
+    String subprojectGraph =
+        getTestResource(testFolder, "depGraph.json")
+            .replaceFirst(
+                "\"configurations\"",
+                String.format(
+                    "\"buildFile\":\"%s\",\"configurations\"",
+                    tmpGradleFile.toString().replace("\\", "\\\\")));
+    String rootGraph =
+        "{\"group\":\"org.acme\",\"name\":\"multi\",\"version\":\"1.0\",\"configurations\":{}}";
+    List<String> gradleArgs = new ArrayList<>();
+    try (MockedStatic<Operations> mockedOperations = mockStatic(Operations.class)) {
+      mockedOperations.when(() -> Operations.getCustomPathOrElse("gradle")).thenReturn("gradle");
+      mockedOperations
+          .when(() -> Operations.getExecutable("gradle", "--version"))
+          .thenReturn("gradle");
+      mockedOperations
+          .when(() -> Operations.runProcess(any(Path.class), any(String[].class)))
+          .thenAnswer(
+              invocationOnMock -> {
+                gradleArgs.addAll(List.of((String[]) invocationOnMock.getRawArguments()[1]));
+                return writeDependencyGraphs(
+                    invocationOnMock, Map.of("root.json", rootGraph, "app.json", subprojectGraph));
+              });
+
+      // when providing stack content per module for our build
+      var contents = new GradleProvider(tmpGradleFile).provideStackPerModule();
+
+      // verify gradle was invoked only once for all the projects
+      mockedOperations.verify(
+          () -> Operations.runProcess(any(Path.class), any(String[].class)), times(1));
+      assertThat(gradleArgs).contains("-DexhortGraphAllProjects=true").doesNotContain("--daemon");
+      // verify the aggregating root project is left out
+      assertThat(contents)
+          .containsOnlyKeys("pkg:maven/org.acme.dbaas/postgresql-orm-quarkus@1.0.0-SNAPSHOT");
+      var content = contents.values().iterator().next();
+      assertThat(content.type).isEqualTo(Api.CYCLONEDX_MEDIA_TYPE);
+      assertThat(dropIgnored(new String(content.buffer))).isEqualTo(dropIgnored(expectedSbom));
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("testFolders")
+  @SetSystemProperty(key = "EXHORT_GRADLE_INIT_SCRIPT_ENABLED", value = "true")
+  @SetSystemProperty(key = "EXHORT_GRADLE_DAEMON_ENABLED", value = "true")
+  @ClearSystemProperty(key = "EXHORT_PREFER_GRADLEW")
+  void test_the_provideStack_prefers_the_gradle_wrapper(String testFolder) throws IOException {
+    var tmpGradleFile = createTempProject(testFolder);
+    var gradlew = tmpGradleFile.getParent().resolve("gradlew");
+    Files.writeString(gradlew, "#!/bin/sh\n");
+    assumeTrue(gradlew.toFile().setExecutable(true));
+    String depGraph = getTestResource(testFolder, "depGraph.json");
+    List<String> gradleArgs = new ArrayList<>();
+    try (MockedStatic<Operations> mockedOperations = mockStatic(Operations.class)) {
+      mockedOperations.when(() -> Operations.getCustomPathOrElse("gradle")).thenReturn("gradle");
+      mockedOperations
+          .when(() -> Operations.runProcess(any(Path.class), any(String[].class)))
+          .thenAnswer(
+              invocationOnMock -> {
+                gradleArgs.addAll(List.of((String[]) invocationOnMock.getRawArguments()[1]));
+                return writeDependencyGraph(invocationOnMock, depGraph);
+              });
+
+      // when providing stack content for our build script
+      new GradleProvider(tmpGradleFile).provideStack();
+
+      // verify the wrapper of the project was invoked and the gradle executable was not looked up
+      mockedOperations.verify(() -> Operations.getExecutable("gradle", "--version"), never());
+      assertThat(gradleArgs.get(0)).isEqualTo(gradlew.toAbsolutePath().toString());
+      // verify the daemon was requested
+      assertThat(gradleArgs).contains("--daemon");
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("testFolders")
+  @SetSystemProperty(key = "EXHORT_GRADLE_INIT_SCRIPT_ENABLED", value = "true")
+  @ClearSystemProperty(key = "EXHORT_GRADLE_DAEMON_ENABLED")
+  @SetSystemProperty(key = "EXHORT_PREFER_GRADLEW", value = "false")
+  void test_the_provideStack_uses_the_gradle_executable_when_the_wrapper_is_not_preferred(
+      String testFolder) throws IOException {
+    var tmpGradleFile = createTempProject(testFolder);
+    var gradlew = tmpGradleFile.getParent().resolve("gradlew");
+    Files.writeString(gradlew, "#!/bin/sh\n");
+    assumeTrue(gradlew.toFile().setExecutable(true));
+    String depGraph = getTestResource(testFolder, "depGraph.json");
+    List<String> gradleArgs = new ArrayList<>();
+    try (MockedStatic<Operations> mockedOperations = mockStatic(Operations.class)) {
+      mockedOperations.when(() -> Operations.getCustomPathOrElse("gradle")).thenReturn("gradle");
+      mockedOperations
+          .when(() -> Operations.getExecutable("gradle", "--version"))
+          .thenReturn("gradle");
+      mockedOperations
+          .when(() -> Operations.runProcess(any(Path.class), any(String[].class)))
+          .thenAnswer(
+              invocationOnMock -> {
+                gradleArgs.addAll(List.of((String[]) invocationOnMock.getRawArguments()[1]));
+                return writeDependencyGraph(invocationOnMock, depGraph);
+              });
+
+      // when providing stack content for our build script opting out of the wrapper
+      new GradleProvider(tmpGradleFile).provideStack();
+
+      // verify the gradle executable was invoked, without requesting the daemon
+      assertThat(gradleArgs.get(0)).isEqualTo("gradle");
+      assertThat(gradleArgs).doesNotContain("--daemon");
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("lockedTestFolders")
+  @SetSystemProperty(key = "EXHORT_GRADLE_INIT_SCRIPT_ENABLED", value = "true")
+  void test_the_provideComponent_from_the_lockfile(String testFolder) throws IOException {
+    var tmpGradleFile = createTempProject(testFolder);
+    Files.writeString(
+        tmpGradleFile.resolveSibling("gradle.lockfile"),
+        getTestResource(testFolder, "gradle.lockfile"));
+    String expectedSbom = getTestResource(testFolder, "expected_component_sbom.json");
+    try (MockedStatic<Operations> mockedOperations = mockStatic(Operations.class)) {
+      mockedOperations.when(() -> Operations.getCustomPathOrElse("gradle")).thenReturn("gradle");
+      mockedOperations
+          .when(() -> Operations.getExecutable("gradle", "--version"))
+          .thenReturn("gradle");
+
+      // when providing component content for our build script
+      var content = new GradleProvider(tmpGradleFile).provideComponent();
+
+      // verify gradle was not invoked, the locked versions are read from the lockfile
+      mockedOperations.verify(() -> Operations.getExecutable("gradle", "--version"), never());
+      mockedOperations.verify(
+          () -> Operations.runProcess(any(Path.class), any(String[].class)), never());
+      mockedOperations.verify(
+          () -> Operations.runProcessGetOutput(any(Path.class), any(String[].class)), never());
+      // verify the same SBOM as resolved by gradle is returned
+      assertThat(content.type).isEqualTo(Api.CYCLONEDX_MEDIA_TYPE);
+      assertThat(dropIgnored(new String(content.buffer))).isEqualTo(dropIgnored(expectedSbom));
+    }
+  }
+
+  @Test
+  void test_the_provideComponent_from_the_lockfile_reads_the_top_level_blocks_only()
+      throws IOException {
+    var tmpGradleFile = createTempProject("deps_with_nested_blocks");
+    Files.writeString(
+        tmpGradleFile.resolveSibling("gradle.lockfile"),
+        getTestResource("deps_with_nested_blocks", "gradle.lockfile"));
+    String expectedSbom =
+        getTestResource("deps_with_nested_blocks", "expected_component_sbom.json");
+    try (MockedStatic<Operations> mockedOperations = mockStatic(Operations.class)) {
+      // when providing component content for a build script declaring dependencies and a version
+      // in the buildscript, constraints, subprojects and publishing blocks
+      var content = new GradleProvider(tmpGradleFile).provideComponent();
+
+      // verify gradle was not invoked and only the project dependencies and version are read
+      mockedOperations.verify(
+          () -> Operations.runProcess(any(Path.class), any(String[].class)), never());
+      assertThat(dropIgnored(new String(content.buffer))).isEqualTo(dropIgnored(expectedSbom));
+    }
+  }
+
+  @Test
+  @SetSystemProperty(key = "EXHORT_GRADLE_INIT_SCRIPT_ENABLED", value = "true")
+  void test_the_provideComponent_resolves_with_gradle_a_declaration_in_a_nested_block()
+      throws IOException {
+    var tmpGradleFile = createTempProject("deps_with_nested_blocks");
+    // a declaration depending on a condition
+    Files.writeString(
+        tmpGradleFile,
+        Files.readString(tmpGradleFile)
+            .replace(
+                "    constraints {",
+                "    if (project.hasProperty('extra')) {\n"
+                    + "        implementation 'org.acme:acme-extra:1.0.0'\n"
+                    + "    }\n"
+                    + "    constraints {"));
+    Files.writeString(
+        tmpGradleFile.resolveSibling("gradle.lockfile"),
+        getTestResource("deps_with_nested_blocks", "gradle.lockfile"));
+    String depGraph = getTestResource("deps_with_no_ignore_common_paths", "depGraph.json");
+    try (MockedStatic<Operations> mockedOperations = mockStatic(Operations.class)) {
+      mockedOperations.when(() -> Operations.getCustomPathOrElse("gradle")).thenReturn("gradle");
+      mockedOperations
+          .when(() -> Operations.getExecutable("gradle", "--version"))
+          .thenReturn("gradle");
+      mockedOperations
+          .when(() -> Operations.runProcess(any(Path.class), any(String[].class)))
+          .thenAnswer(invocationOnMock -> writeDependencyGraph(invocationOnMock, depGraph));
+
+      new GradleProvider(tmpGradleFile).provideComponent();
+
+      // verify gradle was invoked to resolve the dependencies
+      mockedOperations.verify(
+          () -> Operations.runProcess(any(Path.class), any(String[].class)), times(1));
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("testFolders")
+  @SetSystemProperty(key = "EXHORT_GRADLE_INIT_SCRIPT_ENABLED", value = "true")
+  void test_the_provideComponent_resolves_with_gradle_when_the_lock_state_is_missing(
+      String testFolder) throws IOException {
+    var tmpGradleFile = createTempProject(testFolder);
+    // only the runtime classpath is locked
+    Files.writeString(
+        tmpGradleFile.resolveSibling("gradle.lockfile"),
+        getTestResource(testFolder, "gradle.lockfile")
+            .replace("compileClasspath,runtimeClasspath", "runtimeClasspath")
+            .replaceAll("(?m)^.*=compileClasspath$", ""));
+    String expectedSbom = getTestResource(testFolder, "expected_component_sbom.json");
+    String depGraph = getTestResource(testFolder, "depGraph.json");
+    try (MockedStatic<Operations> mockedOperations = mockStatic(Operations.class)) {
+      mockedOperations.when(() -> Operations.getCustomPathOrElse("gradle")).thenReturn("gradle");
+      mockedOperations
+          .when(() -> Operations.getExecutable("gradle", "--version"))
+          .thenReturn("gradle");
+      mockedOperations
+          .when(() -> Operations.runProcess(any(Path.class), any(String[].class)))
+          .thenAnswer(invocationOnMock -> writeDependencyGraph(invocationOnMock, depGraph));
+
+      // when providing component content for our build script
+      var content = new GradleProvider(tmpGradleFile).provideComponent();
+
+      // verify gradle was invoked to resolve the dependencies
+      mockedOperations.verify(
+          () -> Operations.runProcess(any(Path.class), any(String[].class)), times(1));
+      assertThat(content.type).isEqualTo(Api.CYCLONEDX_MEDIA_TYPE);
+      assertThat(dropIgnored(new String(content.buffer))).isEqualTo(dropIgnored(expectedSbom));
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("testFolders")
+  @SetSystemProperty(key = "EXHORT_GRADLE_INIT_SCRIPT_ENABLED", value = "true")
+  void test_the_provideStack_falls_back_to_the_dependencies_task_when_the_init_script_fails(
+      String testFolder) throws IOException {
+    var tmpGradleFile = createTempProject(testFolder);
+    String expectedSbom = getTestResource(testFolder, "expected_stack_sbom.json");
+    String depTree = getTestResource(testFolder, "depTree.txt");
+    String gradleProperties = getTestResource(testFolder, "gradle.properties");
+    List<Path> graphsDirs = new ArrayList<>();
+    ArgumentMatcher<String> gradle = string -> string.equals("gradle");
+    ArgumentMatcher<String> dependencies = string -> string.equals("dependencies");
+    ArgumentMatcher<String> properties = string -> string.equals("properties");
+    try (MockedStatic<Operations> mockedOperations = mockStatic(Operations.class)) {
+      mockedOperations.when(() -> Operations.getCustomPathOrElse("gradle")).thenReturn("gradle");
+      mockedOperations
+          .when(() -> Operations.getExecutable("gradle", "--version"))
+          .thenReturn("gradle");
+      mockedOperations
+          .when(() -> Operations.runProcess(any(Path.class), any(String[].class)))
+          .thenAnswer(
+              invocationOnMock -> {
+                for (String arg : (String[]) invocationOnMock.getRawArguments()[1]) {
+                  if (arg.startsWith("-DexhortGraphOutput=")) {
+                    graphsDirs.add(Path.of(arg.substring("-DexhortGraphOutput=".length())));
+                  }
+                }
+                throw new RuntimeException("the build failed");
+              });
+      mockedOperations
+          .when(
+              () ->
+                  Operations.runProcessGetOutput(
+                      any(Path.class), argThat(gradle), argThat(dependencies)))
+          .thenReturn(depTree);
+      mockedOperations
+          .when(
+              () ->
+                  Operations.runProcessGetOutput(
+                      any(Path.class), argThat(gradle), argThat(properties)))
+          .thenReturn(gradleProperties);
+
+      // when providing stack content for a build failing with the init script
+      var content = new GradleProvider(tmpGradleFile).provideStack();
+
+      // verify the output directory of the graphs was deleted
+      assertThat(graphsDirs).singleElement().matches(Files::notExists);
+      // verify the SBOM from the dependencies task output is returned
+      assertThat(dropIgnored(new String(content.buffer))).isEqualTo(dropIgnored(expectedSbom));
+    }
+  }
+
+  private Path createTempProject(String testFolder) throws IOException {
+    var tmpGradleDir = Files.createTempDirectory("exhort_test_");
+    var tmpGradleFile = tmpGradleDir.resolve(getManifestName());
+    Files.writeString(tmpGradleFile, getTestResource(testFolder, getManifestName()));
+    Files.writeString(
+        tmpGradleDir.resolve(getSettingsName()), getTestResource(testFolder, getSettingsName()));
+    var subGradleDir = Files.createDirectories(tmpGradleDir.resolve("gradle"));
+    Files.writeString(
+        subGradleDir.resolve("libs.versions.toml"),
+        getTestResource(testFolder, "gradle/libs.versions.toml"));
+    return tmpGradleFile;
+  }
+
+  private String getTestResource(String testFolder, String fileName) throws IOException {
+    try (var is =
+        getClass()
+            .getClassLoader()
+            .getResourceAsStream(
+                String.join("/", "tst_manifests", getProviderFolder(), testFolder, fileName))) {
+      return new String(is.readAllBytes());
+    }
+  }
+
+  private static Object writeDependencyGraph(InvocationOnMock invocationOnMock, String depGraph)
+      throws IOException {
+    return writeDependencyGraphs(invocationOnMock, Map.of("root.json", depGraph));
+  }
+
+  private static Object writeDependencyGraphs(
+      InvocationOnMock invocationOnMock, Map<String, String> depGraphs) throws IOException {
+    String[] args = (String[]) invocationOnMock.getRawArguments()[1];
+    for (String arg : args) {
+      if (arg.startsWith("-DexhortGraphOutput=")) {
+        var graphsDir = Path.of(arg.substring("-DexhortGraphOutput=".length()));
+        for (var depGraph : depGraphs.entrySet()) {
+          Files.writeString(graphsDir.resolve(depGraph.getKey()), depGraph.getValue());
+        }
+      }
+    }
+    return null;
+  }
+
   private String dropIgnored(String s) {
     return s.replaceAll("\\s+", "").replaceAll("\"timestamp\":\"[a-zA-Z0-9\\-\\:]+\",", "");
   }
@@ -18,7 +18,9 @@
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
 
 import com.redhat.exhort.Api;
 import com.redhat.exhort.ExhortTest;
@@ -28,7 +30,9 @@
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -208,6 +212,284 @@ void test_the_provideComponent_With_Path(String testFolder) throws IOException {
     }
   }
 
+  @Test
+  void test_the_provideComponent_reuses_the_effective_pom_of_an_unchanged_pom() throws IOException {
+    // create a unique pom in a temp folder so no earlier analysis is cached for it
+    var tmpDir = Files.createTempDirectory("exhort_test_");
+    var tmpPomFile = tmpDir.resolve("pom.xml");
+    var pom = getStringFromFile("tst_manifests/maven/deps_with_ignore_on_artifact/pom.xml");
+    Files.writeString(tmpPomFile, pom + String.format("<!-- %s -->", UUID.randomUUID()));
+    String effectivePom =
+        getStringFromFile("tst_manifests/maven/deps_with_ignore_on_artifact/effectivePom.xml");
+    try (MockedStatic<Operations> mockedOperations = mockStatic(Operations.class)) {
+      mockedOperations
+          .when(() -> Operations.runProcess(any(), any(), any()))
+          .thenAnswer(
+              invocationOnMock ->
+                  getOutputFileAndOverwriteItWithMock(effectivePom, invocationOnMock, "-Doutput"));
+      mockedOperations.when(() -> Operations.getCustomPathOrElse(anyString())).thenReturn("mvn");
+      mockedOperations
+          .when(() -> Operations.getExecutable(anyString(), anyString()))
+          .thenReturn("mvn");
+
+      // when providing component content twice for the same pom
+      var first = new JavaMavenProvider(tmpPomFile).provideComponent();
+      var second = new JavaMavenProvider(tmpPomFile).provideComponent();
+      // verify the effective pom was generated only once and the same content is returned
+      mockedOperations.verify(() -> Operations.runProcess(any(), any(), any()), times(1));
+      assertThat(dropIgnored(new String(second.buffer)))
+          .isEqualTo(dropIgnored(new String(first.buffer)));
+
+      // when the pom is modified
+      Files.writeString(tmpPomFile, pom + String.format("<!-- %s -->", UUID.randomUUID()));
+      new JavaMavenProvider(tmpPomFile).provideComponent();
+      // verify the effective pom was generated again
+      mockedOperations.verify(() -> Operations.runProcess(any(), any(), any()), times(2));
+    } finally {
+      Files.deleteIfExists(tmpPomFile);
+      Files.deleteIfExists(tmpDir);
+    }
+  }
+
+  @Test
+  void test_the_provideComponent_regenerates_the_effective_pom_of_a_changed_configuration()
+      throws IOException {
+    var tmpDir = Files.createTempDirectory("exhort_test_");
+    var tmpPomFile = tmpDir.resolve("pom.xml");
+    var mavenConfig = tmpDir.resolve(".mvn").resolve("maven.config");
+    var pom = getStringFromFile("tst_manifests/maven/deps_with_ignore_on_artifact/pom.xml");
+    Files.writeString(tmpPomFile, pom + String.format("<!-- %s -->", UUID.randomUUID()));
+    String effectivePom =
+        getStringFromFile("tst_manifests/maven/deps_with_ignore_on_artifact/effectivePom.xml");
+    try (MockedStatic<Operations> mockedOperations = mockStatic(Operations.class)) {
+      mockedOperations
+          .when(() -> Operations.runProcess(any(), any(), any()))
+          .thenAnswer(
+              invocationOnMock ->
+                  getOutputFileAndOverwriteItWithMock(effectivePom, invocationOnMock, "-Doutput"));
+      mockedOperations.when(() -> Operations.getCustomPathOrElse(anyString())).thenReturn("mvn");
+      mockedOperations
+          .when(() -> Operations.getExecutable(anyString(), anyString()))
+          .thenReturn("mvn");
+
+      new JavaMavenProvider(tmpPomFile).provideComponent();
+      // when the maven configuration of the project is added, then modified
+      Files.createDirectories(mavenConfig.getParent());
+      Files.writeString(mavenConfig, "-Pfirst");
+      new JavaMavenProvider(tmpPomFile).provideComponent();
+      new JavaMavenProvider(tmpPomFile).provideComponent();
+      Files.writeString(mavenConfig, "-Psecond");
+      new JavaMavenProvider(tmpPomFile).provideComponent();
+      // verify the effective pom was generated again for every configuration
+      mockedOperations.verify(() -> Operations.runProcess(any(), any(), any()), times(3));
+    } finally {
+      Files.deleteIfExists(mavenConfig);
+      Files.deleteIfExists(mavenConfig.getParent());
+      Files.deleteIfExists(tmpPomFile);
+      Files.deleteIfExists(tmpDir);
+    }
+  }
+
+  @Test
+  void test_the_provideComponent_does_not_reuse_the_effective_pom_importing_a_snapshot_bom()
+      throws IOException {
+    var tmpDir = Files.createTempDirectory("exhort_test_");
+    var tmpPomFile = tmpDir.resolve("pom.xml");
+    var pom =
+        getStringFromFile("tst_manifests/maven/deps_with_ignore_on_artifact/pom.xml")
+            .replace(
+                "<dependencies>",
+                "<properties><bom.version>1.0-SNAPSHOT</bom.version></properties>"
+                    + "<dependencyManagement><dependencies><dependency>"
+                    + "<groupId>org.acme</groupId><artifactId>bom</artifactId>"
+                    + "<version>${bom.version}</version><type>pom</type><scope>import</scope>"
+                    + "</dependency></dependencies></dependencyManagement>"
+                    + "<dependencies>");
+    Files.writeString(tmpPomFile, pom + String.format("<!-- %s -->", UUID.randomUUID()));
+    String effectivePom =
+        getStringFromFile("tst_manifests/maven/deps_with_ignore_on_artifact/effectivePom.xml");
+    try (MockedStatic<Operations> mockedOperations = mockStatic(Operations.class)) {
+      mockedOperations
+          .when(() -> Operations.runProcess(any(), any(), any()))
+          .thenAnswer(
+              invocationOnMock ->
+                  getOutputFileAndOverwriteItWithMock(effectivePom, invocationOnMock, "-Doutput"));
+      mockedOperations.when(() -> Operations.getCustomPathOrElse(anyString())).thenReturn("mvn");
+      mockedOperations
+          .when(() -> Operations.getExecutable(anyString(), anyString()))
+          .thenReturn("mvn");
+
+      new JavaMavenProvider(tmpPomFile).provideComponent();
+      new JavaMavenProvider(tmpPomFile).provideComponent();
+      // verify the effective pom was generated every time, the snapshot bom may have changed
+      mockedOperations.verify(() -> Operations.runProcess(any(), any(), any()), times(2));
+    } finally {
+      Files.deleteIfExists(tmpPomFile);
+      Files.deleteIfExists(tmpDir);
+    }
+  }
+
+  @Test
+  void test_the_provideStack_excludes_ignored_dependencies_from_the_tree() throws IOException {
+    var pom = resolveFile("tst_manifests/maven/deps_with_ignore_on_artifact/pom.xml");
+    String depTree =
+        getStringFromFile("tst_manifests/maven/deps_with_ignore_on_artifact/depTree.txt");
+    try (MockedStatic<Operations> mockedOperations = mockStatic(Operations.class)) {
+      mockedOperations
+          .when(() -> Operations.runProcess(any(), any(), any()))
+          .thenAnswer(
+              invocationOnMock ->
+                  getOutputFileAndOverwriteItWithMock(depTree, invocationOnMock, "-DoutputFile"));
+      mockedOperations.when(() -> Operations.getCustomPathOrElse(anyString())).thenReturn("mvn");
+      mockedOperations
+          .when(() -> Operations.getExecutable(anyString(), anyString()))
+          .thenReturn("mvn");
+
+      // when providing stack content for a pom with an ignored dependency
+      new JavaMavenProvider(pom).provideStack();
+      // verify the ignored dependency is passed as an exclude pattern to the tree goal
+      mockedOperations.verify(
+          () ->
+              Operations.runProcess(
+                  any(),
+                  argThat(args -> Arrays.asList(args).contains("-Dexcludes=log4j:log4j:*:1.2.17")),
+                  any()));
+    }
+  }
+
+  @Test
+  void test_the_provideStack_drops_an_excluded_dependency_printed_with_its_dependencies()
+      throws IOException {
+    var pom = resolveFile("tst_manifests/maven/deps_no_trivial_with_ignore/pom.xml");
+    // the tree goal prints an excluded artifact having dependencies, along with them
+    String depTree =
+        getStringFromFile("tst_manifests/maven/deps_no_trivial_with_ignore/depTree.txt");
+    assertThat(depTree).contains("\\- io.quarkus:quarkus-jdbc-postgresql:jar:2.13.6.Final:compile");
+    String expectedSbom =
+        getStringFromFile(
+            "tst_manifests/maven/deps_no_trivial_with_ignore/expected_stack_sbom.json");
+    try (MockedStatic<Operations> mockedOperations = mockStatic(Operations.class)) {
+      mockedOperations
+          .when(() -> Operations.runProcess(any(), any(), any()))
+          .thenAnswer(
+              invocationOnMock ->
+                  getOutputFileAndOverwriteItWithMock(depTree, invocationOnMock, "-DoutputFile"));
+      mockedOperations.when(() -> Operations.getCustomPathOrElse(anyString())).thenReturn("mvn");
+      mockedOperations
+          .when(() -> Operations.getExecutable(anyString(), anyString()))
+          .thenReturn("mvn");
+
+      var content = new JavaMavenProvider(pom).provideStack();
+
+      mockedOperations.verify(
+          () ->
+              Operations.runProcess(
+                  any(),
+                  argThat(
+                      args ->
+                          Arrays.asList(args)
+                              .contains(
+                                  "-Dexcludes=io.quarkus:quarkus-jdbc-postgresql:*:2.13.6.Final")),
+                  any()));
+      // the ignored artifact is dropped from the SBOM, its dependencies are kept
+      var sbom = new String(content.buffer);
+      assertThat(sbom)
+          .doesNotContain("quarkus-jdbc-postgresql")
+          .contains("pkg:maven/org.postgresql/postgresql@42.5.1");
+      assertThat(dropIgnored(sbom)).isEqualTo(dropIgnored(expectedSbom));
+    }
+  }
+
+  @Test
+  void test_the_provideStack_for_a_reactor() throws IOException {
+    var reactorPom = resolveFile("tst_manifests/maven/multi_module/pom.xml");
+    String expectedSbom =
+        getStringFromFile("tst_manifests/maven/multi_module/expected_stack_sbom.json");
+    String depTree = getStringFromFile("tst_manifests/maven/multi_module/depTree.txt");
+    try (MockedStatic<Operations> mockedOperations = mockStatic(Operations.class)) {
+      mockedOperations
+          .when(() -> Operations.runProcess(any(), any(), any()))
+          .thenAnswer(
+              invocationOnMock ->
+                  getOutputFileAndOverwriteItWithMock(depTree, invocationOnMock, "-DoutputFile"));
+      mockedOperations.when(() -> Operations.getCustomPathOrElse(anyString())).thenReturn("mvn");
+      mockedOperations
+          .when(() -> Operations.getExecutable(anyString(), anyString()))
+          .thenReturn("mvn");
+
+      // when providing stack content for the aggregating pom
+      var content = new JavaMavenProvider(reactorPom).provideStack();
+      // verify the tree goal ran once for the whole reactor, appending the modules output
+      mockedOperations.verify(
+          () ->
+              Operations.runProcess(
+                  any(),
+                  argThat(args -> Arrays.asList(args).contains("-DappendOutput=true")),
+                  any()));
+      // verify the dependencies ignored in a module are not excluded from the other modules trees
+      mockedOperations.verify(
+          () ->
+              Operations.runProcess(
+                  any(),
+                  argThat(
+                      args ->
+                          Arrays.stream(args).anyMatch(arg -> arg.startsWith("-DappendOutput"))
+                              && Arrays.stream(args)
+                                  .noneMatch(arg -> arg.startsWith("-Dexcludes"))),
+                  any()));
+      // verify a merged SBOM of all modules is returned
+      assertThat(content.type).isEqualTo(Api.CYCLONEDX_MEDIA_TYPE);
+      assertThat(dropIgnored(new String(content.buffer))).isEqualTo(dropIgnored(expectedSbom));
+    }
+  }
+
+  @Test
+  void test_the_provideStackPerModule_for_a_reactor() throws IOException {
+    var reactorPom = resolveFile("tst_manifests/maven/multi_module/pom.xml");
+    String depTree = getStringFromFile("tst_manifests/maven/multi_module/depTree.txt");
+    try (MockedStatic<Operations> mockedOperations = mockStatic(Operations.class)) {
+      mockedOperations
+          .when(() -> Operations.runProcess(any(), any(), any()))
+          .thenAnswer(
+              invocationOnMock ->
+                  getOutputFileAndOverwriteItWithMock(depTree, invocationOnMock, "-DoutputFile"));
+      mockedOperations.when(() -> Operations.getCustomPathOrElse(anyString())).thenReturn("mvn");
+      mockedOperations
+          .when(() -> Operations.getExecutable(anyString(), anyString()))
+          .thenReturn("mvn");
+
+      // when providing stack content per module for the aggregating pom
+      var contents = new JavaMavenProvider(reactorPom).provideStackPerModule();
+      // verify every module got its own SBOM, without the aggregators, nested ones included
+      assertThat(contents)
+          .containsOnlyKeys(
+              "pkg:maven/com.example/module-a@1.0.0",
+              "pkg:maven/com.example/module-b@1.0.0",
+              "pkg:maven/com.example/module-c@1.0.0");
+      var moduleA = new String(contents.get("pkg:maven/com.example/module-a@1.0.0").buffer);
+      // the inter-module edge is kept and ignored or test dependencies are dropped
+      assertThat(moduleA)
+          .contains("pkg:maven/com.example/module-b@1.0.0")
+          .contains("pkg:maven/log4j/log4j@1.2.17")
+          .doesNotContain("commons-io")
+          .doesNotContain("junit");
+      // the dependencies ignored in the other modules are kept
+      var moduleB = new String(contents.get("pkg:maven/com.example/module-b@1.0.0").buffer);
+      assertThat(moduleB)
+          .contains("pkg:maven/log4j/log4j@1.2.17")
+          .contains("pkg:maven/commons-io/commons-io@2.11.0")
+          .doesNotContain("module-a")
+          .doesNotContain("reactor-parent");
+      // the dependencies ignored in a module of a nested reactor are dropped
+      var moduleC = new String(contents.get("pkg:maven/com.example/module-c@1.0.0").buffer);
+      assertThat(moduleC)
+          .contains("pkg:maven/com.example/module-b@1.0.0")
+          .contains("pkg:maven/commons-io/commons-io@2.11.0")
+          .doesNotContain("log4j")
+          .doesNotContain("nested");
+    }
+  }
+
   private String dropIgnored(String s) {
     return s.replaceAll("\\s+", "").replaceAll("\"timestamp\":\"[a-zA-Z0-9\\-\\:]+\",", "");
   }
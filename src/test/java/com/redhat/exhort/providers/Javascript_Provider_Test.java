@@ -16,28 +16,50 @@
 package com.redhat.exhort.providers;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.redhat.exhort.Api;
 import com.redhat.exhort.ExhortTest;
+import com.redhat.exhort.providers.javascript.model.Manifest;
+import com.redhat.exhort.sbom.SbomFactory;
 import com.redhat.exhort.tools.Ecosystem;
 import com.redhat.exhort.tools.Operations;
 import java.io.IOException;
+import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.stream.Stream;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.junitpioneer.jupiter.SetSystemProperty;
 import org.mockito.MockedStatic;
 
 @ExtendWith(HelperExtension.class)
+// the optional packages of other platforms, e.g. fsevents, are left out on any host
+@SetSystemProperty(key = "EXHORT_JS_PLATFORM", value = "linux")
+@SetSystemProperty(key = "EXHORT_JS_ARCH", value = "x64")
 class Javascript_Provider_Test extends ExhortTest {
   // test folder are located at src/test/resources/tst_manifests/npm
   // each folder should contain:
@@ -105,7 +127,13 @@ void test_the_provideStack(String pkgManager, String testFolder) throws IOExcept
       Files.deleteIfExists(tmpFolder);
       // verify expected SBOM is returned
       assertThat(content.type).isEqualTo(Api.CYCLONEDX_MEDIA_TYPE);
-      assertThat(dropIgnored(new String(content.buffer))).isEqualTo(dropIgnored(expectedSbom));
+      if (pkgManager.equals(Ecosystem.Type.PNPM.getType())) {
+        // the lock file sorts the dependencies of a package by name, pnpm ls lists them in the
+        // order of its package.json
+        assertThat(sorted(new String(content.buffer))).isEqualTo(sorted(expectedSbom));
+      } else {
+        assertThat(dropIgnored(new String(content.buffer))).isEqualTo(dropIgnored(expectedSbom));
+      }
     }
   }
 
@@ -193,10 +221,426 @@ void test_the_provideComponent_with_Path(String pkgManager, String testFolder) t
     }
   }
 
+  @Test
+  void test_the_provideStack_from_the_package_lock() throws IOException {
+    var tmpFolder = Files.createTempDirectory("exhort_test_");
+    var tmpFile = copyNpmResource("deps_from_lock_file", "package.json", tmpFolder);
+    var tmpLockFile =
+        copyNpmResource("deps_from_lock_file", JavaScriptNpmProvider.LOCK_FILE, tmpFolder);
+    String expectedSbom;
+    try (var is =
+        getResourceAsStreamDecision(
+            this.getClass(), "tst_manifests/npm/deps_from_lock_file/expected_stack_sbom.json")) {
+      expectedSbom = new String(is.readAllBytes());
+    }
+
+    try (MockedStatic<Operations> mockedOperations = mockOperations("npm", "{}", false)) {
+      var content = JavaScriptProviderFactory.create(tmpFile).provideStack();
+      Files.deleteIfExists(tmpFile);
+      Files.deleteIfExists(tmpLockFile);
+      Files.deleteIfExists(tmpFolder);
+      // the nested, hoisted and linked packages are resolved without running npm
+      assertThat(dropIgnored(new String(content.buffer))).isEqualTo(dropIgnored(expectedSbom));
+      mockedOperations.verify(() -> Operations.runProcess(any(), any(), any()), never());
+      mockedOperations.verify(
+          () -> Operations.runProcessGetOutput(any(), any(String[].class), any()), never());
+    }
+  }
+
+  @Test
+  void test_the_provideStack_with_an_outdated_package_lock() throws IOException {
+    var tmpFolder = Files.createTempDirectory("exhort_test_");
+    var tmpFile = copyNpmResource("deps_from_lock_file", "package.json", tmpFolder);
+    var tmpLockFile =
+        copyNpmResource("deps_from_lock_file", JavaScriptNpmProvider.LOCK_FILE, tmpFolder);
+    // a dependency added to package.json after the lock file was written
+    Files.writeString(
+        tmpFile, Files.readString(tmpFile).replace("\"a\": \"^1.0.0\"", "\"a\": \"^1.1.0\""));
+    String listingStack;
+    try (var is =
+        getResourceAsStreamDecision(
+            this.getClass(), "tst_manifests/npm/deps_with_no_ignore/npm-ls-stack.json")) {
+      listingStack = new String(is.readAllBytes());
+    }
+
+    try (MockedStatic<Operations> mockedOperations = mockOperations("npm", listingStack, false)) {
+      var content = JavaScriptProviderFactory.create(tmpFile).provideStack();
+      Files.deleteIfExists(tmpFile);
+      Files.deleteIfExists(tmpLockFile);
+      Files.deleteIfExists(tmpFolder);
+      // npm updates the lock file and lists the dependencies
+      mockedOperations.verify(() -> Operations.runProcess(any(), any(), any()));
+      assertThat(new String(content.buffer)).contains("pkg:npm/express@4.21.2");
+    }
+  }
+
+  @Test
+  void test_the_lock_file_is_not_updated_again_while_consistent() throws IOException {
+    var tmpFolder = Files.createTempDirectory("exhort_test_").toRealPath();
+    var tmpFile = copyNpmResource("deps_from_lock_file", "package.json", tmpFolder);
+    copyNpmResource("deps_from_lock_file", JavaScriptNpmProvider.LOCK_FILE, tmpFolder);
+    // the lock file is outdated, the dependencies are listed by npm
+    Files.writeString(
+        tmpFile, Files.readString(tmpFile).replace("\"a\": \"^1.0.0\"", "\"a\": \"^1.1.0\""));
+    String listingStack;
+    try (var is =
+        getResourceAsStreamDecision(
+            this.getClass(), "tst_manifests/npm/deps_with_no_ignore/npm-ls-stack.json")) {
+      listingStack = new String(is.readAllBytes());
+    }
+
+    Path stampFile = null;
+    try (MockedStatic<Operations> mockedOperations = mockOperations("npm", listingStack, false)) {
+      var provider = (JavaScriptNpmProvider) JavaScriptProviderFactory.create(tmpFile);
+      stampFile = LockFileStamp.fileFor(tmpFolder, provider.updateLockFileCmd(tmpFolder));
+      provider.provideStack();
+      JavaScriptProviderFactory.create(tmpFile).provideStack();
+      // the second analysis finds the lock file as the first one left it
+      mockedOperations.verify(() -> Operations.runProcess(any(), any(), any()), times(1));
+
+      Files.writeString(tmpFile, Files.readString(tmpFile).replace("^1.1.0", "^1.2.0"));
+      JavaScriptProviderFactory.create(tmpFile).provideStack();
+      mockedOperations.verify(() -> Operations.runProcess(any(), any(), any()), times(2));
+    } finally {
+      FileUtils.deleteDirectory(tmpFolder.toFile());
+      if (stampFile != null) {
+        Files.deleteIfExists(stampFile);
+      }
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"lock_file_v6", "lock_file_v9"})
+  void test_the_provideStack_from_the_pnpm_lock(String testFolder) throws IOException {
+    var tmpDir =
+        new TempDirFromResources()
+            .addDirectory("project", String.format("tst_manifests/pnpm/%s", testFolder))
+            .getTempDir();
+    var manifest = tmpDir.resolve("project").resolve("package.json");
+    var expectedSbom =
+        Files.readString(tmpDir.resolve("project").resolve("expected_stack_sbom.json"));
+
+    try (MockedStatic<Operations> mockedOperations = mockOperations("pnpm", "[]", false)) {
+      var content = JavaScriptProviderFactory.create(manifest).provideStack();
+      FileUtils.deleteDirectory(tmpDir.toFile());
+      // the aliased, peer resolved and linked packages are resolved without running pnpm
+      assertThat(dropIgnored(new String(content.buffer))).isEqualTo(dropIgnored(expectedSbom));
+      mockedOperations.verify(() -> Operations.runProcess(any(), any(), any()), never());
+      mockedOperations.verify(
+          () -> Operations.runProcessGetOutput(any(), any(String[].class), any()), never());
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"yarn-classic", "yarn-berry"})
+  void test_the_provideStack_from_the_yarn_lock(String pkgManager) throws IOException {
+    var tmpDir =
+        new TempDirFromResources()
+            .addDirectory("project", String.format("tst_manifests/%s/lock_file", pkgManager))
+            .getTempDir();
+    var manifest = tmpDir.resolve("project").resolve("package.json");
+    var expectedSbom =
+        Files.readString(tmpDir.resolve("project").resolve("expected_stack_sbom.json"));
+
+    try (MockedStatic<Operations> mockedOperations = mockOperations(pkgManager, "[]", false)) {
+      var content = JavaScriptProviderFactory.create(manifest).provideStack();
+      FileUtils.deleteDirectory(tmpDir.toFile());
+      // the aliased, virtual and workspace packages are resolved, yarn being run for its version
+      assertThat(dropIgnored(new String(content.buffer))).isEqualTo(dropIgnored(expectedSbom));
+      mockedOperations.verify(() -> Operations.runProcess(any(), any(), any()), never());
+      mockedOperations.verify(
+          () -> Operations.runProcessGetOutput(any(), any(String[].class), any()), times(1));
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("providers")
+  void test_the_provideStackPerModule_from_the_workspaces(String pkgManager) throws IOException {
+    var tmpDir =
+        new TempDirFromResources()
+            .addDirectory("project", String.format("tst_manifests/%s/workspaces", pkgManager))
+            .getTempDir();
+    var manifest = tmpDir.resolve("project").resolve("package.json");
+
+    try (MockedStatic<Operations> mockedOperations = mockOperations(pkgManager, "[]", false)) {
+      // when providing stack content per workspace for the root package.json
+      var contents = JavaScriptProviderFactory.create(manifest).provideStackPerModule();
+      FileUtils.deleteDirectory(tmpDir.toFile());
+      // verify every workspace got its own SBOM, the project having dependencies of its own
+      assertThat(contents)
+          .containsOnlyKeys("pkg:npm/app@1.0.0", "pkg:npm/lib@1.0.0", "pkg:npm/monorepo@1.0.0");
+      var app = new String(contents.get("pkg:npm/app@1.0.0").buffer);
+      // the edge to the other workspace is kept and the dev dependencies are dropped
+      assertThat(app)
+          .contains("pkg:npm/lib@1.0.0")
+          .contains("pkg:npm/b@1.0.0")
+          .contains("pkg:npm/c@1.0.0")
+          .doesNotContain("dev-tool")
+          .doesNotContain("monorepo");
+      var lib = new String(contents.get("pkg:npm/lib@1.0.0").buffer);
+      assertThat(lib).contains("pkg:npm/c@1.0.0").doesNotContain("pkg:npm/app");
+      // the lock file being consistent, it is read once without running the package manager
+      mockedOperations.verify(() -> Operations.runProcess(any(), any(), any()), never());
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("providers")
+  @SetSystemProperty(key = "EXHORT_JS_MERGE_WORKSPACES", value = "true")
+  void test_the_provideStack_merges_the_workspaces(String pkgManager) throws IOException {
+    var tmpDir =
+        new TempDirFromResources()
+            .addDirectory("project", String.format("tst_manifests/%s/workspaces", pkgManager))
+            .getTempDir();
+    var manifest = tmpDir.resolve("project").resolve("package.json");
+    var expectedSbom =
+        Files.readString(tmpDir.resolve("project").resolve("expected_stack_sbom.json"));
+
+    try (MockedStatic<Operations> mockedOperations = mockOperations(pkgManager, "[]", false)) {
+      var content = JavaScriptProviderFactory.create(manifest).provideStack();
+      FileUtils.deleteDirectory(tmpDir.toFile());
+      // every workspace is a dependency of the project
+      assertThat(dropIgnored(new String(content.buffer))).isEqualTo(dropIgnored(expectedSbom));
+      mockedOperations.verify(() -> Operations.runProcess(any(), any(), any()), never());
+    }
+  }
+
+  @Test
+  void test_the_provideStackPerModule_lists_the_workspaces_when_the_lock_file_cannot_be_read()
+      throws IOException {
+    var project = createUnreadableWorkspaces();
+    var listing = "{\"dependencies\":{\"x\":{\"version\":\"1.0.0\"}}}";
+
+    try (MockedStatic<Operations> mockedOperations = mockOperations("npm", listing, false)) {
+      var contents =
+          JavaScriptProviderFactory.create(project.resolve("package.json")).provideStackPerModule();
+      FileUtils.deleteDirectory(project.getParent().toFile());
+      // the workspace without a name is named after its directory
+      assertThat(contents)
+          .containsOnlyKeys("pkg:npm/app@1.0.0", "pkg:npm/lib@1.0.0", "pkg:npm/monorepo@1.0.0");
+      assertThat(new String(contents.get("pkg:npm/lib@1.0.0").buffer)).contains("pkg:npm/x@1.0.0");
+      mockedOperations.verify(() -> Operations.runProcess(any(), any(), any()), atLeastOnce());
+    }
+  }
+
+  @Test
+  @SetSystemProperty(key = "EXHORT_JS_MERGE_WORKSPACES", value = "true")
+  void test_the_provideStack_merges_the_listed_workspaces_when_the_lock_file_cannot_be_read()
+      throws IOException {
+    var project = createUnreadableWorkspaces();
+    var listing = "{\"dependencies\":{\"x\":{\"version\":\"1.0.0\"}}}";
+
+    try (MockedStatic<Operations> mockedOperations = mockOperations("npm", listing, false)) {
+      var content =
+          JavaScriptProviderFactory.create(project.resolve("package.json")).provideStack();
+      FileUtils.deleteDirectory(project.getParent().toFile());
+      var dependencies = new ObjectMapper().readTree(content.buffer).get("dependencies");
+      assertThat(dependencies.findValuesAsText("ref"))
+          .contains("pkg:npm/monorepo@1.0.0", "pkg:npm/app@1.0.0", "pkg:npm/lib@1.0.0");
+      for (JsonNode dependency : dependencies) {
+        List<String> dependsOn = new ArrayList<>();
+        dependency.get("dependsOn").forEach(ref -> dependsOn.add(ref.asText()));
+        switch (dependency.get("ref").asText()) {
+          case "pkg:npm/monorepo@1.0.0":
+            assertThat(dependsOn)
+                .containsExactlyInAnyOrder(
+                    "pkg:npm/x@1.0.0", "pkg:npm/app@1.0.0", "pkg:npm/lib@1.0.0");
+            break;
+          case "pkg:npm/app@1.0.0":
+          case "pkg:npm/lib@1.0.0":
+            assertThat(dependsOn).containsExactly("pkg:npm/x@1.0.0");
+            break;
+          default:
+            assertThat(dependsOn).isEmpty();
+        }
+      }
+    }
+  }
+
+  @Test
+  void test_the_provideStackPerModule_fails_on_workspaces_of_the_same_coordinates()
+      throws IOException {
+    var tmpDir =
+        new TempDirFromResources()
+            .addDirectory("project", "tst_manifests/npm/workspaces")
+            .getTempDir();
+    var project = tmpDir.resolve("project");
+    var app = project.resolve("packages").resolve("app").resolve("package.json");
+    Files.writeString(app, Files.readString(app).replace("\"app\"", "\"lib\""));
+
+    try (MockedStatic<Operations> mockedOperations = mockOperations("npm", "[]", false)) {
+      var provider = JavaScriptProviderFactory.create(project.resolve("package.json"));
+      assertThatIllegalStateException()
+          .isThrownBy(provider::provideStackPerModule)
+          .withMessageContaining("packages/app")
+          .withMessageContaining("packages/lib")
+          .withMessageContaining("pkg:npm/lib@1.0.0");
+    } finally {
+      FileUtils.deleteDirectory(tmpDir.toFile());
+    }
+  }
+
+  /**
+   * @return the npm workspaces project with a lock file of npm 6, which is not read, and a
+   *     workspace without a name
+   */
+  private Path createUnreadableWorkspaces() throws IOException {
+    var project =
+        new TempDirFromResources()
+            .addDirectory("project", "tst_manifests/npm/workspaces")
+            .getTempDir()
+            .resolve("project");
+    Files.writeString(project.resolve("package-lock.json"), "{\"lockfileVersion\":1}");
+    var lib = project.resolve("packages").resolve("lib").resolve("package.json");
+    Files.writeString(lib, Files.readString(lib).replace("\"name\": \"lib\",", ""));
+    return project;
+  }
+
+  private Path copyNpmResource(String testFolder, String fileName, Path tmpFolder)
+      throws IOException {
+    var tmpFile = tmpFolder.resolve(fileName);
+    try (var is =
+        getResourceAsStreamDecision(
+            this.getClass(), String.format("tst_manifests/npm/%s/%s", testFolder, fileName))) {
+      Files.write(tmpFile, is.readAllBytes());
+    }
+    return tmpFile;
+  }
+
+  // a tree listing 2^40 occurrences of 80 packages, each package depending on both packages of the
+  // next level, which can only be walked in time once per package
+  private static final int LATTICE_DEPTH = 40;
+
+  @Test
+  @Timeout(10)
+  void test_the_npm_listed_tree_is_walked_once_per_package() throws IOException {
+    var mapper = new ObjectMapper();
+    ObjectNode level = null;
+    for (int i = LATTICE_DEPTH - 1; i >= 0; i--) {
+      var dependencies = mapper.createObjectNode();
+      for (String suffix : List.of("a", "b")) {
+        var dependency = dependencies.putObject("p" + i + "-" + suffix).put("version", "1.0.0");
+        if (level != null) {
+          dependency.set("dependencies", level);
+        }
+      }
+      level = dependencies;
+    }
+    var tree = mapper.createObjectNode().set("dependencies", level);
+
+    var tmpFile = createLatticeManifest();
+    try (var ignored = mockOperations("npm", "", false)) {
+      var provider = new JavaScriptNpmProvider(tmpFile);
+      var sbom = SbomFactory.newInstance();
+      sbom.addRoot(provider.manifest.root);
+      provider.addDependenciesToSbom(sbom, tree);
+      assertLattice(mapper.readTree(sbom.getAsJsonString()));
+    } finally {
+      FileUtils.deleteDirectory(tmpFile.getParent().toFile());
+    }
+  }
+
+  @Test
+  @Timeout(10)
+  void test_the_yarn_classic_listed_tree_is_walked_once_per_package() throws IOException {
+    var mapper = new ObjectMapper();
+    ArrayNode level = null;
+    for (int i = LATTICE_DEPTH - 1; i >= 0; i--) {
+      var children = mapper.createArrayNode();
+      for (String suffix : List.of("a", "b")) {
+        var child = children.addObject().put("name", "p" + i + "-" + suffix + "@1.0.0");
+        if (level != null) {
+          child.set("children", level);
+        }
+      }
+      level = children;
+    }
+    var tree = mapper.createObjectNode();
+    tree.putObject("data").set("trees", level);
+
+    var tmpFile = createLatticeManifest();
+    try {
+      var processor = new YarnClassicProcessor("yarn", new Manifest(tmpFile));
+      var sbom = SbomFactory.newInstance();
+      sbom.addRoot(processor.manifest.root);
+      processor.addDependenciesToSbom(sbom, tree);
+      assertLattice(mapper.readTree(sbom.getAsJsonString()));
+    } finally {
+      FileUtils.deleteDirectory(tmpFile.getParent().toFile());
+    }
+  }
+
+  @Test
+  void test_the_yarn_berry_info_output_is_read_object_by_object() throws IOException {
+    var tmpFile = createLatticeManifest();
+    try {
+      var processor = new YarnBerryProcessor("yarn", new Manifest(tmpFile));
+      var mapper = new ObjectMapper();
+      var output =
+          "{\"value\":\"p0-a@npm:1.0.0\",\"children\":{\"Version\":\"1.0.0\"}}\r\n"
+              + "{\"value\":\"p0-b@npm:1.0.0\",\"children\":{\"Version\":\"1.0.0\","
+              + "\"Exported Binaries\":[\"}{\"]}}\n";
+      var rootDependencies = processor.getRootDependencies(mapper, new StringReader(output));
+      assertThat(rootDependencies).containsOnlyKeys("p0-a", "p0-b");
+      var depTree = processor.readDepTree(mapper, new StringReader(output));
+      assertThat(depTree.get(1).get("children").get("Exported Binaries").get(0).asText())
+          .isEqualTo("}{");
+      assertThat(processor.getRootDependencies(mapper, new StringReader(""))).isEmpty();
+    } finally {
+      FileUtils.deleteDirectory(tmpFile.getParent().toFile());
+    }
+  }
+
+  private Path createLatticeManifest() throws IOException {
+    var tmpFile = Files.createTempDirectory("exhort_test_").resolve("package.json");
+    Files.writeString(
+        tmpFile,
+        "{\"name\": \"lattice\", \"version\": \"1.0.0\", "
+            + "\"dependencies\": {\"p0-a\": \"1.0.0\", \"p0-b\": \"1.0.0\"}}");
+    return tmpFile;
+  }
+
+  private void assertLattice(JsonNode sbom) {
+    assertThat(sbom.get("components")).hasSize(2 * LATTICE_DEPTH + 1);
+    int edges = 0;
+    for (JsonNode dependency : sbom.get("dependencies")) {
+      edges += dependency.get("dependsOn").size();
+    }
+    // two from the root, four between every two levels
+    assertThat(edges).isEqualTo(2 + 4 * (LATTICE_DEPTH - 1));
+  }
+
   private String dropIgnored(String s) {
     return s.replaceAll("\\s+", "").replaceAll("\"timestamp\":\"[a-zA-Z0-9\\-\\:]+\"", "");
   }
 
+  /**
+   * @return the SBOM without its timestamp, its components, its dependencies and the references of
+   *     each dependency sorted
+   */
+  private JsonNode sorted(String sbom) throws IOException {
+    ObjectNode root = (ObjectNode) new ObjectMapper().readTree(sbom);
+    ((ObjectNode) root.get("metadata")).remove("timestamp");
+    sort((ArrayNode) root.get("components"), "bom-ref");
+    ArrayNode dependencies = (ArrayNode) root.get("dependencies");
+    sort(dependencies, "ref");
+    for (JsonNode dependency : dependencies) {
+      ArrayNode dependsOn = (ArrayNode) dependency.get("dependsOn");
+      List<JsonNode> refs = new ArrayList<>();
+      dependsOn.forEach(refs::add);
+      refs.sort(Comparator.comparing(JsonNode::asText));
+      dependsOn.removeAll().addAll(refs);
+    }
+    return root;
+  }
+
+  private void sort(ArrayNode array, String field) {
+    List<JsonNode> elements = new ArrayList<>();
+    array.forEach(elements::add);
+    elements.sort(Comparator.comparing(element -> element.get(field).asText()));
+    array.removeAll().addAll(elements);
+  }
+
   private String getLockFile(String pkgManager) {
     Ecosystem.Type mgr;
     if (pkgManager.startsWith(Ecosystem.Type.YARN.getType().toLowerCase())) {
@@ -220,14 +664,18 @@ private String getLockFile(String pkgManager) {
   private MockedStatic<Operations> mockOperations(
       String pkgManager, String listResult, boolean withPath) {
     var mockedOperations = mockStatic(Operations.class);
-    if (pkgManager.equalsIgnoreCase("yarn-classic")) {
+    if (pkgManager.startsWith("yarn")) {
       mockedOperations
           .when(() -> Operations.runProcessGetOutput(any(), any(), isNull()))
-          .thenReturn("1.22.22", listResult);
-    } else if (pkgManager.equalsIgnoreCase("yarn-berry")) {
+          .thenReturn(pkgManager.equalsIgnoreCase("yarn-classic") ? "1.22.22" : "4.9.1");
+      // yarn's listing is read as yarn runs
       mockedOperations
-          .when(() -> Operations.runProcessGetOutput(any(), any(), isNull()))
-          .thenReturn("4.9.1", listResult);
+          .when(() -> Operations.runProcessReadOutput(any(), any(), isNull(), any()))
+          .thenAnswer(
+              invocation ->
+                  invocation
+                      .getArgument(3, Operations.OutputReader.class)
+                      .read(new StringReader(listResult)));
     } else {
       mockedOperations
           .when(() -> Operations.runProcessGetOutput(any(), any(), isNull()))
@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.providers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+import com.redhat.exhort.Api;
+import com.redhat.exhort.ExhortTest;
+import com.redhat.exhort.tools.Ecosystem;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class Python_Lock_File_Provider_Test extends ExhortTest {
+
+  static Stream<Arguments> testFolders() {
+    return Stream.of(
+        Arguments.of("pip_uv_lock", "pyproject.toml"),
+        Arguments.of("pip_poetry_lock", "pyproject.toml"),
+        Arguments.of("pip_pylock", "pylock.toml"));
+  }
+
+  @ParameterizedTest
+  @MethodSource("testFolders")
+  void test_the_provideStack(String testFolder, String manifestName) throws IOException {
+    var manifest =
+        Path.of(
+            String.format("src/test/resources/tst_manifests/pip/%s/%s", testFolder, manifestName));
+    String expectedSbom =
+        getStringFromFile(
+            String.format("tst_manifests/pip/%s/expected_stack_sbom.json", testFolder));
+
+    var content = Ecosystem.getProvider(manifest).provideStack();
+
+    assertThat(content.type).isEqualTo(Api.CYCLONEDX_MEDIA_TYPE);
+    assertThat(dropIgnored(new String(content.buffer))).isEqualTo(dropIgnored(expectedSbom));
+  }
+
+  @ParameterizedTest
+  @MethodSource("testFolders")
+  void test_the_provideComponent(String testFolder, String manifestName) throws IOException {
+    var manifest =
+        Path.of(
+            String.format("src/test/resources/tst_manifests/pip/%s/%s", testFolder, manifestName));
+    String expectedSbom =
+        getStringFromFile(
+            String.format("tst_manifests/pip/%s/expected_component_sbom.json", testFolder));
+
+    var content = Ecosystem.getProvider(manifest).provideComponent();
+
+    assertThat(content.type).isEqualTo(Api.CYCLONEDX_MEDIA_TYPE);
+    assertThat(dropIgnored(new String(content.buffer))).isEqualTo(dropIgnored(expectedSbom));
+  }
+
+  @Test
+  void test_a_pyproject_without_lock_file(@TempDir Path project) throws IOException {
+    var manifest =
+        Files.writeString(project.resolve("pyproject.toml"), "[project]\nname = \"a\"\n");
+
+    assertThatIllegalStateException()
+        .isThrownBy(() -> Ecosystem.getProvider(manifest))
+        .withMessageContaining("Lock file does not exist");
+  }
+
+  @Test
+  void test_the_provideStackPerModule_of_a_single_project() throws IOException {
+    var manifest = Path.of("src/test/resources/tst_manifests/pip/pip_uv_lock/pyproject.toml");
+    String expectedSbom =
+        getStringFromFile("tst_manifests/pip/pip_uv_lock/expected_stack_sbom.json");
+
+    var modules = Ecosystem.getProvider(manifest).provideStackPerModule();
+
+    assertThat(modules).containsOnlyKeys("pkg:pypi/demo@1.0.0");
+    var content = modules.get("pkg:pypi/demo@1.0.0");
+    assertThat(content.type).isEqualTo(Api.CYCLONEDX_MEDIA_TYPE);
+    assertThat(dropIgnored(new String(content.buffer))).isEqualTo(dropIgnored(expectedSbom));
+  }
+
+  private String dropIgnored(String s) {
+    return s.replaceAll("\\s+", "").replaceAll("\"timestamp\":\"[a-zA-Z0-9\\-\\:]+\"", "");
+  }
+}
@@ -15,11 +15,20 @@
  */
 package com.redhat.exhort.tools;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatNoException;
 import static org.assertj.core.api.Assertions.assertThatRuntimeException;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
 
 class OperationsTest {
 
@@ -50,4 +59,75 @@ void when_running_process_get_full_output_for_existing_command_should_not_throw_
                     new String[] {"unknown", "--command"},
                     new String[] {"PATH=123"}));
   }
+
+  @Test
+  void when_running_process_read_output_should_hand_the_output_over_to_the_reader() {
+    String output =
+        Operations.runProcessReadOutput(
+            null,
+            new String[] {"sh", "-c", "echo first; echo second; echo error >&2"},
+            null,
+            reader -> new BufferedReader(reader).lines().collect(Collectors.joining(",")));
+    assertThat(output).isEqualTo("first,second");
+    assertThatRuntimeException()
+        .isThrownBy(
+            () ->
+                Operations.runProcessReadOutput(
+                    null,
+                    new String[] {"sh", "-c", "echo failed >&2; exit 3"},
+                    null,
+                    reader -> reader.read()))
+        .withMessageContaining("exit-code 3")
+        .withMessageContaining("failed");
+  }
+
+  @Test
+  @Timeout(30)
+  void when_running_process_with_a_timeout_should_kill_it_once_the_time_is_up() {
+    var output =
+        Operations.runProcessGetFullOutput(
+            null,
+            new String[] {"sh", "-c", "echo out; echo err >&2"},
+            null,
+            Duration.ofSeconds(10));
+    assertThat(output.getOutput()).isEqualTo("out\n");
+    assertThat(output.getError()).isEqualTo("err\n");
+    assertThat(output.getExitCode()).isZero();
+
+    long start = System.nanoTime();
+    assertThatRuntimeException()
+        .isThrownBy(
+            () ->
+                Operations.runProcessGetFullOutput(
+                    null, new String[] {"sh", "-c", "exec sleep 30"}, null, Duration.ofMillis(200)))
+        .withCauseInstanceOf(TimeoutException.class);
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(10));
+  }
+
+  @Test
+  void when_finding_an_executable_should_look_it_up_in_the_path(@TempDir Path tempDir)
+      throws IOException {
+    Path sh = Operations.findExecutable("sh");
+    assertThat(sh).isNotNull().isAbsolute();
+    assertThat(Operations.findExecutable(sh.toString())).isEqualTo(sh);
+    assertThat(Operations.findExecutable(tempDir.resolve("missing").toString())).isNull();
+    assertThat(Operations.findExecutable("exhort-missing-executable")).isNull();
+  }
+
+  @Test
+  void when_getting_git_root_dir_should_find_the_nearest_work_tree(@TempDir Path tempDir)
+      throws IOException {
+    Path repo = tempDir.resolve("repo");
+    Files.createDirectories(repo.resolve(".git"));
+    Files.writeString(repo.resolve(".git").resolve("HEAD"), "ref: refs/heads/main\n");
+    Path module = Files.createDirectories(repo.resolve("a").resolve("b"));
+    // a worktree or a submodule has a .git file pointing to its git directory
+    Path worktree = Files.createDirectories(repo.resolve("worktree"));
+    Files.writeString(worktree.resolve(".git"), "gitdir: ../.git/worktrees/worktree\n");
+
+    assertThat(Operations.getGitRootDir(module.toString())).contains(repo.toString());
+    assertThat(Operations.getGitRootDir(worktree.resolve("c").toString()))
+        .contains(worktree.toString());
+    assertThat(Operations.getGitRootDir(tempDir.toString())).isEmpty();
+  }
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CacheFilesTest {
+
+  @TempDir Path dir;
+
+  @Test
+  void test_the_digests_of_a_content_and_of_a_file() throws IOException {
+    var digest = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+    Path file = Files.writeString(dir.resolve("file"), "hello");
+
+    assertThat(CacheFiles.sha256("hello")).isEqualTo(digest);
+    assertThat(CacheFiles.sha256("hello".getBytes(StandardCharsets.UTF_8))).isEqualTo(digest);
+    assertThat(CacheFiles.sha256(file, "-")).isEqualTo(digest);
+    assertThat(CacheFiles.sha256(dir.resolve("missing"), "-")).isEqualTo("-");
+  }
+
+  @Test
+  void test_a_file_is_replaced_without_leaving_a_temporary_file() throws IOException {
+    Path file = Files.writeString(dir.resolve("file"), "old");
+
+    CacheFiles.write(file, "new".getBytes(StandardCharsets.UTF_8));
+    assertThat(file).hasContent("new");
+
+    assertThatThrownBy(
+            () ->
+                CacheFiles.write(
+                    file,
+                    out -> {
+                      out.write('x');
+                      throw new IOException("failed");
+                    }))
+        .hasMessage("failed");
+    assertThat(file).hasContent("new");
+    try (var files = Files.list(dir)) {
+      assertThat(files).containsExactly(file);
+    }
+  }
+}
@@ -16,10 +16,14 @@
 package com.redhat.exhort.utils;
 
 import static com.redhat.exhort.Provider.PROP_MATCH_MANIFEST_VERSIONS;
+import static com.redhat.exhort.utils.PythonControllerBase.PROP_EXHORT_PIP_USE_SITE_PACKAGES;
 import static com.redhat.exhort.utils.PythonControllerBaseTest.matchCommandPipFreeze;
 import static com.redhat.exhort.utils.PythonControllerBaseTest.matchCommandPipShow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
@@ -61,6 +65,7 @@ void tearDown() {}
 
   @ParameterizedTest
   @ValueSource(booleans = {true, false})
+  @SetSystemProperty(key = PROP_EXHORT_PIP_USE_SITE_PACKAGES, value = "false")
   void get_Dependencies_With_Match_Manifest_Versions(boolean MatchManifestVersionsEnabled) {
     Set<String> expectedSetOfPackages =
         Set.of(
@@ -262,6 +267,7 @@ private void accumulateAllPackages(Map<String, Object> entry, Set actualSetOfPac
   @Test
   @RestoreSystemProperties
   @SetSystemProperty(key = PROP_MATCH_MANIFEST_VERSIONS, value = "false")
+  @SetSystemProperty(key = PROP_EXHORT_PIP_USE_SITE_PACKAGES, value = "false")
   void get_Dependencies_from_Cyclic_Tree() {
     MockedStatic<Operations> operationsMockedStatic = Mockito.mockStatic(Operations.class);
 
@@ -280,6 +286,52 @@ void get_Dependencies_from_Cyclic_Tree() {
     operationsMockedStatic.close();
   }
 
+  @Test
+  @RestoreSystemProperties
+  @SetSystemProperty(key = PROP_MATCH_MANIFEST_VERSIONS, value = "false")
+  @SetSystemProperty(key = PROP_EXHORT_PIP_USE_SITE_PACKAGES, value = "false")
+  void get_Dependency_Graph_shares_subtrees_and_cuts_cycles() {
+    MockedStatic<Operations> operationsMockedStatic = Mockito.mockStatic(Operations.class);
+    operationsMockedStatic
+        .when(() -> Operations.runProcessGetOutput(any(Path.class), argThat(matchCommandPipFreeze)))
+        .thenReturn("a==1\nb==2\nc==3\nd==4\ne==5\nf==6\n");
+    operationsMockedStatic
+        .when(() -> Operations.runProcessGetOutput(any(Path.class), argThat(matchCommandPipShow)))
+        .thenReturn(
+            "Name: a\nVersion: 1\nRequires: c, b\n---\n"
+                + "Name: b\nVersion: 2\nRequires: c\n---\n"
+                + "Name: c\nVersion: 3\nRequires: \n---\n"
+                + "Name: d\nVersion: 4\nRequires: C\n---\n"
+                + "Name: e\nVersion: 5\nRequires: f\n---\n"
+                + "Name: f\nVersion: 6\nRequires: e\n");
+    String requirementsTxt = getFileFromString("requirements.txt", "a\nd\ne\nf\n");
+
+    List<PythonDependencyNode> graph =
+        pythonControllerRealEnv.getDependencyGraph(requirementsTxt, true);
+    operationsMockedStatic.close();
+
+    assertEquals(4, graph.size());
+    PythonDependencyNode a = graph.get(0);
+    // dependencies sorted by name, the package c resolved once for a, b and d
+    assertEquals(List.of("b", "c"), names(a.getDependencies()));
+    PythonDependencyNode c = a.getDependencies().get(1);
+    assertSame(c, a.getDependencies().get(0).getDependencies().get(0));
+    assertSame(c, graph.get(1).getDependencies().get(0));
+    assertNull(c.getDependencies());
+    // e -> f -> e is cut under e and f -> e -> f under f, those subtrees are not shared
+    PythonDependencyNode e = graph.get(2);
+    PythonDependencyNode f = graph.get(3);
+    assertEquals(List.of("f"), names(e.getDependencies()));
+    assertEquals(List.of(), e.getDependencies().get(0).getDependencies());
+    assertEquals(List.of("e"), names(f.getDependencies()));
+    assertEquals(List.of(), f.getDependencies().get(0).getDependencies());
+    assertNotSame(f, e.getDependencies().get(0));
+  }
+
+  private static List<String> names(List<PythonDependencyNode> nodes) {
+    return nodes.stream().map(PythonDependencyNode::getName).collect(Collectors.toList());
+  }
+
   @Test
   void get_Dependency_Name_requirements() {
     assertEquals("something", PythonControllerRealEnv.getDependencyName("something==2.0.5"));
@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PythonSitePackagesTest {
+
+  private static final Map<String, String> LINUX_PYTHON_3_11 =
+      Map.of(
+          "implementation_name", "cpython",
+          "os_name", "posix",
+          "platform_machine", "x86_64",
+          "platform_python_implementation", "CPython",
+          "platform_system", "Linux",
+          "python_full_version", "3.11.2",
+          "python_version", "3.11",
+          "sys_platform", "linux",
+          "extra", "");
+
+  @Test
+  void evaluate_markers() {
+    assertTrue(PythonMarker.evaluate("python_version >= \"3.8\"", LINUX_PYTHON_3_11));
+    assertFalse(PythonMarker.evaluate("python_version < \"3.10\"", LINUX_PYTHON_3_11));
+    assertTrue(PythonMarker.evaluate("python_full_version == '3.11.*'", LINUX_PYTHON_3_11));
+    assertTrue(PythonMarker.evaluate("python_full_version ~= '3.11.0'", LINUX_PYTHON_3_11));
+    assertFalse(PythonMarker.evaluate("python_full_version ~= '3.10.0'", LINUX_PYTHON_3_11));
+    assertFalse(
+        PythonMarker.evaluate(
+            "sys_platform == \"win32\" or platform_system == 'Darwin'", LINUX_PYTHON_3_11));
+    assertTrue(
+        PythonMarker.evaluate(
+            "(os_name == 'nt' or os_name == 'posix') and platform_machine in 'x86_64 aarch64'",
+            LINUX_PYTHON_3_11));
+    assertTrue(PythonMarker.evaluate("'arm' not in platform_machine", LINUX_PYTHON_3_11));
+    assertFalse(PythonMarker.evaluate("extra == \"test\"", LINUX_PYTHON_3_11));
+  }
+
+  @Test
+  void read_installed_packages(@TempDir Path sitePackages) throws IOException {
+    write(
+        sitePackages.resolve("httplib2-0.20.4.dist-info/METADATA"),
+        "Metadata-Version: 2.1\n"
+            + "Name: httplib2\n"
+            + "Version: 0.20.4\n"
+            + "Requires-Dist: pyparsing (<3,>=2.4.2) ; python_version < \"3.0\"\n"
+            + "Requires-Dist: pyparsing (!=3.0.0,<4,>=2.4.2) ; python_version > \"3.0\"\n"
+            + "Requires-Dist: Six>=1.16\n"
+            + "Requires-Dist: pytest ; extra == 'test'\n"
+            + "Requires-Dist: certifi @ https://example.com/certifi.whl ; sys_platform == 'linux'\n"
+            + "\n"
+            + "Requires-Dist: ignored, part of the description\n");
+    write(
+        sitePackages.resolve("PyJWT-2.6.0.egg-info/PKG-INFO"),
+        "Metadata-Version: 2.1\nName: PyJWT\nVersion: 2.6.0\n");
+    write(
+        sitePackages.resolve("PyJWT-2.6.0.egg-info/requires.txt"),
+        "typing_extensions\n\n"
+            + "[:python_version < \"3.8\"]\nimportlib-metadata\n\n"
+            + "[:sys_platform == \"linux\"]\njeepney\n\n"
+            + "[crypto]\ncryptography>=3.4.0\n");
+    // the .dist-info of a package wins over its leftover .egg-info
+    write(sitePackages.resolve("six-1.16.0.dist-info/METADATA"), "Name: six\nVersion: 1.16.0\n");
+    write(sitePackages.resolve("six.egg-info"), "Name: six\nVersion: 1.15.0\n");
+    Files.createDirectories(sitePackages.resolve("broken-1.0.dist-info"));
+
+    List<PythonDependency> installed =
+        new PythonSitePackages(List.of(sitePackages), LINUX_PYTHON_3_11).readInstalledPackages();
+
+    Map<String, PythonDependency> byName =
+        installed.stream().collect(Collectors.toMap(PythonDependency::getName, d -> d));
+    assertEquals(3, installed.size());
+    assertEquals("0.20.4", byName.get("httplib2").getVersion());
+    assertEquals(List.of("certifi", "pyparsing", "Six"), byName.get("httplib2").getDependencies());
+    assertEquals(List.of("jeepney", "typing_extensions"), byName.get("PyJWT").getDependencies());
+    assertEquals("1.16.0", byName.get("six").getVersion());
+  }
+
+  @Test
+  void first_directory_of_sys_path_wins(@TempDir Path root) throws IOException {
+    Path user = root.resolve("user");
+    Path system = root.resolve("system");
+    write(user.resolve("Flask-2.0.3.dist-info/METADATA"), "Name: Flask\nVersion: 2.0.3\n");
+    write(system.resolve("flask-1.1.2.dist-info/METADATA"), "Name: flask\nVersion: 1.1.2\n");
+
+    List<PythonDependency> installed =
+        new PythonSitePackages(List.of(user, system), LINUX_PYTHON_3_11).readInstalledPackages();
+
+    assertEquals(1, installed.size());
+    assertEquals("2.0.3", installed.get(0).getVersion());
+  }
+
+  @Test
+  void reuse_the_snapshot_while_the_environment_is_unchanged(@TempDir Path root)
+      throws IOException {
+    Path sitePackages = root.resolve("site-packages");
+    Path snapshotFile = root.resolve("snapshot.json");
+    Path metadata = sitePackages.resolve("six-1.16.0.dist-info/METADATA");
+    write(metadata, "Name: six\nVersion: 1.16.0\n");
+
+    new PythonSitePackages(List.of(sitePackages), LINUX_PYTHON_3_11, snapshotFile)
+        .readInstalledPackages();
+    PythonEnvironmentSnapshot persisted = PythonEnvironmentSnapshot.read(snapshotFile);
+    assertNotNull(persisted);
+    assertEquals(List.of(sitePackages), persisted.paths);
+
+    // same size and modification time, only a snapshot can still tell 1.16.0
+    FileTime modified = Files.getLastModifiedTime(metadata);
+    Files.writeString(metadata, "Name: six\nVersion: 9.99.9\n");
+    Files.setLastModifiedTime(metadata, modified);
+    List<PythonDependency> installed =
+        new PythonSitePackages(snapshotFile, persisted).readInstalledPackages();
+    assertEquals(1, installed.size());
+    assertEquals("1.16.0", installed.get(0).getVersion());
+
+    // installing a package changes the fingerprint, the metadata is read again
+    write(sitePackages.resolve("idna-3.4.dist-info/METADATA"), "Name: idna\nVersion: 3.4\n");
+    installed =
+        new PythonSitePackages(snapshotFile, PythonEnvironmentSnapshot.read(snapshotFile))
+            .readInstalledPackages();
+    Map<String, String> versions =
+        installed.stream()
+            .collect(Collectors.toMap(PythonDependency::getName, PythonDependency::getVersion));
+    assertEquals(Map.of("six", "9.99.9", "idna", "3.4"), versions);
+    assertEquals(2, PythonEnvironmentSnapshot.read(snapshotFile).packages.size());
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.writeString(file, content);
+  }
+}
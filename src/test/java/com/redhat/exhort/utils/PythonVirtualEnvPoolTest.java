@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.redhat.exhort.tools.Operations;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PythonVirtualEnvPoolTest {
+
+  private static final String PYTHON = Operations.getCustomPathOrElse("python3");
+
+  @Test
+  void lease_an_environment_per_analysis_and_reuse_populated_ones(@TempDir Path root)
+      throws IOException {
+    PythonVirtualEnvPool pool = new PythonVirtualEnvPool(root, Long.MAX_VALUE);
+
+    Path populated;
+    try (PythonVirtualEnvPool.Lease first = pool.lease(PYTHON, "flask==2.0.3");
+        PythonVirtualEnvPool.Lease second = pool.lease(PYTHON, "flask==2.0.3")) {
+      assertNotEquals(first.getEnvironment(), second.getEnvironment());
+      assertFalse(first.isPopulated());
+      Files.createDirectories(first.getEnvironment().resolve("bin"));
+      first.markPopulated();
+      populated = first.getEnvironment();
+    }
+
+    try (PythonVirtualEnvPool.Lease again = pool.lease(PYTHON, "flask==2.0.3");
+        PythonVirtualEnvPool.Lease other = pool.lease(PYTHON, "flask==3.0.0")) {
+      assertEquals(populated, again.getEnvironment());
+      assertTrue(again.isPopulated());
+      assertFalse(other.isPopulated());
+    }
+  }
+
+  @Test
+  void evict_the_least_recently_used_environments(@TempDir Path root) throws IOException {
+    PythonVirtualEnvPool pool = new PythonVirtualEnvPool(root, 1500);
+    Path oldest = populate(pool, "a", 1000, 1);
+    Path leased = populate(pool, "b", 1000, 2);
+    Path newest = populate(pool, "c", 1000, 3);
+
+    try (PythonVirtualEnvPool.Lease lease = pool.lease(PYTHON, "b")) {
+      assertEquals(leased, lease.getEnvironment());
+      pool.evict(newest);
+    }
+
+    // the leased environment is skipped, the kept one too although the pool still exceeds its quota
+    assertFalse(Files.exists(oldest));
+    assertFalse(Files.exists(lockFileOf(oldest)));
+    assertTrue(Files.exists(leased));
+    assertTrue(Files.exists(newest));
+  }
+
+  @Test
+  void evict_the_environments_never_populated_for_what_they_hold(@TempDir Path root)
+      throws IOException {
+    PythonVirtualEnvPool pool = new PythonVirtualEnvPool(root, 1500);
+    Path interrupted;
+    try (PythonVirtualEnvPool.Lease lease = pool.lease(PYTHON, "a")) {
+      interrupted = lease.getEnvironment();
+      Files.createDirectories(interrupted);
+      Files.write(interrupted.resolve("package.py"), new byte[1000]);
+    }
+    Files.setLastModifiedTime(lockFileOf(interrupted), FileTime.fromMillis(1));
+    Path newest = populate(pool, "b", 1000, 2);
+
+    pool.evict(newest);
+
+    assertFalse(Files.exists(interrupted));
+    assertFalse(Files.exists(lockFileOf(interrupted)));
+    assertTrue(Files.exists(newest));
+  }
+
+  @Test
+  void lease_a_bounded_number_of_environments_of_the_same_requirements(@TempDir Path root)
+      throws IOException {
+    PythonVirtualEnvPool pool = new PythonVirtualEnvPool(root, Long.MAX_VALUE);
+    List<PythonVirtualEnvPool.Lease> leases = new ArrayList<>();
+    try {
+      RuntimeException exception =
+          assertThrows(
+              RuntimeException.class,
+              () -> {
+                while (true) {
+                  leases.add(pool.lease(PYTHON, "flask==2.0.3"));
+                }
+              });
+      assertTrue(exception.getMessage().contains("are leased"));
+      assertEquals(32, leases.size());
+    } finally {
+      for (PythonVirtualEnvPool.Lease lease : leases) {
+        lease.close();
+      }
+    }
+  }
+
+  private static Path populate(
+      PythonVirtualEnvPool pool, String requirements, int size, long lastUsed) throws IOException {
+    try (PythonVirtualEnvPool.Lease lease = pool.lease(PYTHON, requirements)) {
+      Path environment = lease.getEnvironment();
+      Files.createDirectories(environment);
+      Files.write(environment.resolve("package.py"), new byte[size]);
+      lease.markPopulated();
+      Files.setLastModifiedTime(lockFileOf(environment), FileTime.fromMillis(lastUsed));
+      return environment;
+    }
+  }
+
+  private static Path lockFileOf(Path environment) {
+    return environment.resolveSibling(environment.getFileName() + ".lock");
+  }
+}
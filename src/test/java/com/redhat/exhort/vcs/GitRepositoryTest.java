@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2023 Red Hat, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.redhat.exhort.vcs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.redhat.exhort.ExhortTest;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GitRepositoryTest extends ExhortTest {
+
+  @TempDir Path repo;
+
+  // the seconds after the first commit
+  private long time;
+
+  @BeforeEach
+  void init() throws IOException, InterruptedException {
+    assumeTrue(git("init", "-q", "-b", "main") != null, "git is not available");
+  }
+
+  @Test
+  void test_the_nearest_tag_of_a_merge_is_the_one_of_the_least_depth()
+      throws IOException, InterruptedException {
+    commit("root", 0);
+    git("checkout", "-q", "-b", "side");
+    // the newest tag, right on its branch
+    commit("side tagged", 30);
+    git("tag", "-a", "side-tag", "-m", "side-tag");
+    git("checkout", "-q", "main");
+    // an older tag, after 20 commits and followed by one more
+    for (int i = 1; i <= 20; i++) {
+      commit("main " + i, i);
+    }
+    commit("main tagged", 21);
+    git("tag", "-a", "main-tag", "-m", "main-tag");
+    commit("main 22", 40);
+    time = 100;
+    git("merge", "-q", "--no-ff", "-m", "merge", "side");
+
+    try (GitRepository repository = GitRepository.find(repo).orElseThrow()) {
+      var nearest = repository.findNearestTag(repository.resolveHead()).orElseThrow();
+
+      // side-tag is met first walking the history, but 3 commits are not reachable from
+      // main-tag against 23 from side-tag
+      assertThat(nearest[0]).isEqualTo("main-tag");
+      assertThat(git("describe")).startsWith("main-tag-3-g");
+    }
+  }
+
+  @Test
+  void test_the_tags_stamp_changes_with_a_nested_tag() throws IOException, InterruptedException {
+    commit("root", 0);
+    git("tag", "release/1.0");
+
+    try (GitRepository repository = GitRepository.find(repo).orElseThrow()) {
+      long stamp = repository.getTagsStamp();
+      assertThat(repository.getTagsStamp()).isEqualTo(stamp);
+
+      git("tag", "release/1.1");
+
+      assertThat(repository.getTagsStamp()).isNotEqualTo(stamp);
+    }
+  }
+
+  private void commit(String message, long time) throws IOException, InterruptedException {
+    this.time = time;
+    git("commit", "-q", "--allow-empty", "-m", message);
+  }
+
+  private String git(String... args) throws IOException, InterruptedException {
+    List<String> command = new ArrayList<>(List.of("git", "-c", "user.name=test"));
+    command.addAll(List.of("-c", "user.email=test@example.com", "-c", "tag.gpgSign=false"));
+    command.addAll(List.of("-c", "commit.gpgSign=false"));
+    command.addAll(List.of(args));
+    var processBuilder = new ProcessBuilder(command).directory(repo.toFile());
+    processBuilder.redirectErrorStream(true);
+    String date = String.format("%d +0000", 1_700_000_000L + time);
+    processBuilder.environment().put("GIT_AUTHOR_DATE", date);
+    processBuilder.environment().put("GIT_COMMITTER_DATE", date);
+    Process process;
+    try {
+      process = processBuilder.start();
+    } catch (IOException e) {
+      return null;
+    }
+    String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+    assertThat(process.waitFor()).as(output).isZero();
+    return output.trim();
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * This file was generated by the Gradle "init" task.
+ */
+
+buildscript {
+    repositories {
+        mavenCentral()
+    }
+    dependencies {
+        classpath("org.acme.plugins:acme-gradle-plugin:1.0.0")
+        implementation("org.acme.plugins:acme-plugin-support:1.0.0")
+    }
+}
+
+plugins {
+    id("java-library")
+    id("maven-publish")
+}
+
+repositories {
+    mavenLocal()
+    maven {
+        url = uri("https://maven.repository.redhat.com/ga/")
+    }
+
+    maven {
+        url = uri("https://maven.repository.redhat.com/earlyaccess/all/")
+    }
+
+    maven {
+        url = uri("https://repo.maven.apache.org/maven2/")
+    }
+}
+
+dependencies {
+    api(libs.io.quarkus.quarkus.hibernate.orm)
+    api(libs.io.quarkus.quarkus.agroal)
+    api(libs.io.quarkus.quarkus.resteasy)
+    api(libs.io.quarkus.quarkus.resteasy.jackson)
+    api(libs.io.quarkus.quarkus.jdbc.postgresql)
+    api(libs.io.quarkus.quarkus.kubernetes.service.binding)
+    api(libs.io.quarkus.quarkus.container.image.docker)
+    api(libs.jakarta.validation.jakarta.validation.api)
+    api(libs.io.quarkus.quarkus.vertx.http)
+    compileOnly(libs.io.quarkus.quarkus.hibernate.orm.deployment)
+    constraints {
+        implementation("org.acme:acme-constrained:2.0.0") // { not a block }
+    }
+}
+
+group = "org.acme.dbaas"
+version = "1.0.0-SNAPSHOT"
+description = "postgresql-orm-quarkus"
+java.sourceCompatibility = JavaVersion.VERSION_11
+
+subprojects {
+    version = "2.0.0"
+    dependencies {
+        implementation("org.acme:acme-subproject-support:1.0.0")
+    }
+}
+
+publishing {
+    publications {
+        maven(MavenPublication) {
+            from(components.java)
+            version = "1.0.0-PUBLISHED"
+        }
+    }
+}
+
+tasks.withType(JavaCompile) {
+    options.encoding = "UTF-8"
+}
+
+tasks.withType(Javadoc) {
+    /* options.encoding = "{" */
+    options.encoding = "UTF-8"
+}